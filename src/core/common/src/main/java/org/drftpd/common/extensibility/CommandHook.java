@@ -31,4 +31,14 @@ public @interface CommandHook {
     int priority() default 1;
 
     HookType type() default HookType.POST;
+
+    /**
+     * Post hooks only. An asynchronous hook runs on a hook thread and does not delay the reply to the client,
+     * changes it makes to the response are not sent. The asynchronous hooks of a command run in priority order,
+     * and after those of earlier commands of the same connection.
+     * <p>
+     * They always run after all synchronous post hooks of the command, whatever their priority. The session
+     * may have moved on by then, read what the hook needs from the request and the response only.
+     */
+    boolean async() default false;
 }
@@ -0,0 +1,54 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.network;
+
+import org.drftpd.common.protocol.MessageCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * @version $Id$
+ */
+public class AsyncCommandArgumentCodec extends MessageCodec<AsyncCommandArgument> {
+
+    public Class<AsyncCommandArgument> getMessageClass() {
+        return AsyncCommandArgument.class;
+    }
+
+    public void encode(AsyncCommandArgument message, DataOutputStream out) throws IOException {
+        writeString(out, message.getIndex());
+        writeString(out, message.getName());
+        String[] args = message.getArgsArray();
+        out.writeInt(args.length);
+        for (String arg : args) {
+            writeString(out, arg);
+        }
+    }
+
+    public AsyncCommandArgument decode(DataInputStream in) throws IOException {
+        String index = readString(in);
+        String name = readString(in);
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = readString(in);
+        }
+        return new AsyncCommandArgument(index, name, args);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.network;
+
+import org.drftpd.common.protocol.MessageCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * @version $Id$
+ */
+public class AsyncCommandCodec extends MessageCodec<AsyncCommand> {
+
+    public Class<AsyncCommand> getMessageClass() {
+        return AsyncCommand.class;
+    }
+
+    public void encode(AsyncCommand message, DataOutputStream out) throws IOException {
+        writeString(out, message.getIndex());
+        writeString(out, message.getName());
+    }
+
+    public AsyncCommand decode(DataInputStream in) throws IOException {
+        return new AsyncCommand(readString(in), readString(in));
+    }
+}
@@ -55,9 +55,27 @@ public class PassiveConnection extends Connection {
      * @throws IOException Creates a PassiveConnection - If ctx==null, the Connection will not use SSL
      */
     public PassiveConnection(SSLContext ctx, PortRange portRange, boolean useSSLClientMode, InetAddress bindIP) throws IOException {
+        this(ctx, portRange, useSSLClientMode, bindIP, false);
+    }
+
+    /**
+     * Creates a PassiveConnection - If ctx==null, the Connection will not use SSL
+     *
+     * @param ctx The SSL/TLS Security Context
+     * @param portRange The port range we can use to get a local port
+     * @param useSSLClientMode Whether this will be a server connection or client connection
+     * @param bindIP The InetAddress representing the ip we need to bind to or null in which case we bind to all interfaces
+     * @param useChannel Whether plain (ctx==null) connections should be backed by a SocketChannel
+     *
+     * @throws IOException If we are unable to open the listening socket
+     */
+    public PassiveConnection(SSLContext ctx, PortRange portRange, boolean useSSLClientMode, InetAddress bindIP,
+                             boolean useChannel) throws IOException {
         _useSSLClientMode = useSSLClientMode;
         if (ctx != null) {
             _serverSocket = portRange.getPort(ctx.getServerSocketFactory(), bindIP);
+        } else if (useChannel) {
+            _serverSocket = portRange.getPort(ChannelServerSocketFactory.getDefault(), bindIP);
         } else {
             _serverSocket = portRange.getPort(ServerSocketFactory.getDefault(), bindIP);
         }
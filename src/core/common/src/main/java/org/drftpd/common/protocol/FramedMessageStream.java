@@ -0,0 +1,201 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.protocol;
+
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Length-prefixed binary wire format.
+ *
+ * Every frame starts with its length followed by a frame type. The first time a message class with a
+ * {@link MessageCodec} is sent, a definition frame assigns it a small id for this connection, after that
+ * messages of that class only carry the id and the codec's encoding. Message classes without a codec
+ * are sent as a serialized object inside a frame.
+ *
+ * @version $Id$
+ */
+public class FramedMessageStream implements MessageStream {
+
+    public static final String NAME = "framed";
+
+    private static final byte FRAME_DEFINE = 0;
+
+    private static final byte FRAME_CODEC = 1;
+
+    private static final byte FRAME_SERIALIZED = 2;
+
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    // A frame that started arriving is allowed this many socket timeouts before the connection is considered broken
+    private static final int MAX_FRAME_TIMEOUTS = 6;
+
+    private final InputStream _in;
+
+    private final DataOutputStream _out;
+
+    private final MessageCodecRegistry _registry;
+
+    private final Object _writeLock = new Object();
+
+    private final Map<Class<?>, Short> _sentTypes = new HashMap<>();
+
+    private final Map<Short, MessageCodec<?>> _receivedTypes = new HashMap<>();
+
+    // Reused for every frame, reset() keeps the allocated buffer
+    private final ByteArrayOutputStream _frame = new ByteArrayOutputStream(8192);
+
+    private final DataOutputStream _frameOut = new DataOutputStream(_frame);
+
+    private final byte[] _lengthBuffer = new byte[3];
+
+    private byte[] _readBuffer = new byte[8192];
+
+    /**
+     * @param in The stream to read from, has to be the same (buffered) stream used before switching format
+     * @param out The stream to write to, has to be the same (buffered) stream used before switching format
+     * @param registry The codecs available on this side
+     */
+    public FramedMessageStream(InputStream in, OutputStream out, MessageCodecRegistry registry) {
+        _in = in;
+        _out = new DataOutputStream(out);
+        _registry = registry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeMessage(Object message) throws IOException {
+        synchronized (_writeLock) {
+            MessageCodec<Object> codec = (MessageCodec<Object>) _registry.getCodec(message.getClass());
+            if (codec == null) {
+                _frame.reset();
+                _frameOut.writeByte(FRAME_SERIALIZED);
+                ObjectOutputStream oos = new ObjectOutputStream(_frameOut);
+                oos.writeObject(message);
+                oos.flush();
+                writeFrame();
+            } else {
+                Short id = _sentTypes.get(message.getClass());
+                if (id == null) {
+                    id = (short) _sentTypes.size();
+                    _frame.reset();
+                    _frameOut.writeByte(FRAME_DEFINE);
+                    _frameOut.writeShort(id);
+                    _frameOut.writeUTF(message.getClass().getName());
+                    writeFrame();
+                    _sentTypes.put(message.getClass(), id);
+                }
+                _frame.reset();
+                _frameOut.writeByte(FRAME_CODEC);
+                _frameOut.writeShort(id);
+                codec.encode(message, _frameOut);
+                writeFrame();
+            }
+            _out.flush();
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        _frameOut.flush();
+        _out.writeInt(_frame.size());
+        _frame.writeTo(_out);
+    }
+
+    public Object readMessage() throws IOException, ClassNotFoundException {
+        while (true) {
+            int length = readFrameLength();
+            if (length <= 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (_readBuffer.length < length) {
+                _readBuffer = new byte[Math.max(length, _readBuffer.length * 2)];
+            }
+            readFully(_readBuffer, 0, length);
+
+            DataInputStream frame = new DataInputStream(new ByteArrayInputStream(_readBuffer, 0, length));
+            byte type = frame.readByte();
+            switch (type) {
+                case FRAME_DEFINE: {
+                    short id = frame.readShort();
+                    String className = frame.readUTF();
+                    MessageCodec<?> codec = _registry.getCodec(className);
+                    if (codec == null) {
+                        throw new IOException("No message codec available for " + className);
+                    }
+                    _receivedTypes.put(id, codec);
+                    continue;
+                }
+                case FRAME_CODEC: {
+                    short id = frame.readShort();
+                    MessageCodec<?> codec = _receivedTypes.get(id);
+                    if (codec == null) {
+                        throw new IOException("Received message for undefined type " + id);
+                    }
+                    return codec.decode(frame);
+                }
+                case FRAME_SERIALIZED:
+                    return new ObjectInputStream(frame).readObject();
+                default:
+                    throw new IOException("Unknown frame type " + type);
+            }
+        }
+    }
+
+    private int readFrameLength() throws IOException {
+        // Only a timeout before a frame started is passed on, the caller may retry after that
+        int first = _in.read();
+        if (first == -1) {
+            throw new EOFException();
+        }
+        readFully(_lengthBuffer, 0, 3);
+        return (first << 24) | ((_lengthBuffer[0] & 0xFF) << 16) | ((_lengthBuffer[1] & 0xFF) << 8) | (_lengthBuffer[2] & 0xFF);
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        int timeouts = 0;
+        while (len > 0) {
+            int count;
+            try {
+                count = _in.read(b, off, len);
+            } catch (SocketTimeoutException e) {
+                if (++timeouts > MAX_FRAME_TIMEOUTS) {
+                    throw new IOException("Timed out in the middle of a frame", e);
+                }
+                continue;
+            }
+            if (count == -1) {
+                throw new EOFException();
+            }
+            off += count;
+            len -= count;
+        }
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void close() throws IOException {
+        try {
+            _in.close();
+        } finally {
+            _out.close();
+        }
+    }
+}
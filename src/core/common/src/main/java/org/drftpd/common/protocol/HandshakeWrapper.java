@@ -18,6 +18,7 @@
 package org.drftpd.common.protocol;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * HandshakeWrapper is the object which is serialized by the slave and
@@ -26,10 +27,13 @@ import java.io.Serializable;
  * @author fr0w
  * @version $Id$
  */
-@SuppressWarnings("serial")
 public class HandshakeWrapper implements Serializable {
+    // Pinned to the value computed before wire formats were added, so older masters and slaves can still handshake
+    private static final long serialVersionUID = 1132945343705718899L;
+
     private boolean _status;
     private Exception _exception;
+    private List<String> _wireFormats;
 
     /**
      * @return true if *all* plugins were found on the slave-side
@@ -72,6 +76,23 @@ public class HandshakeWrapper implements Serializable {
         _status = status;
     }
 
+    /**
+     * @return The wire formats the slave supports besides java serialization, null for slaves that predate this
+     * @see MessageStream
+     */
+    public List<String> getWireFormats() {
+        return _wireFormats;
+    }
+
+    /**
+     * Offering wire formats means the slave waits for the master to pick one before sending anything else.
+     *
+     * @param wireFormats The wire formats the slave supports, in order of preference
+     */
+    public void setWireFormats(List<String> wireFormats) {
+        _wireFormats = wireFormats;
+    }
+
     public String toString() {
         return getClass().getName() + "[pluginStatus=" + pluginStatus() + "]";
     }
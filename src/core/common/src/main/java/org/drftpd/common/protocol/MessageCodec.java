@@ -0,0 +1,97 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.protocol;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes one message class for the framed master/slave wire format.
+ * Implementations are discovered at startup by both master and slave, so a codec has to live
+ * in a module that both sides load (core common/slave or a plugin's common module).
+ *
+ * A codec is only used for its exact message class, subclasses need their own codec
+ * or are sent using java serialization.
+ *
+ * @param <T> The message class handled by this codec
+ * @version $Id$
+ */
+public abstract class MessageCodec<T> {
+
+    /**
+     * @return The exact class this codec handles
+     */
+    public abstract Class<T> getMessageClass();
+
+    public abstract void encode(T message, DataOutputStream out) throws IOException;
+
+    public abstract T decode(DataInputStream in) throws IOException;
+
+    /**
+     * Writes a string that may be null, unlike {@link DataOutputStream#writeUTF(String)} without a length limit
+     */
+    protected static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an object using java serialization, for rarely sent fields like exceptions
+     */
+    protected static void writeSerializable(DataOutputStream out, Object o) throws IOException {
+        if (o == null) {
+            out.writeInt(-1);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(o);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    protected static Object readSerializable(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to read serialized field", e);
+        }
+    }
+}
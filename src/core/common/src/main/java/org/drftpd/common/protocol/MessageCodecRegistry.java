@@ -0,0 +1,84 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.protocol;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the {@link MessageCodec}s known to this side of the master/slave connection.
+ *
+ * @version $Id$
+ */
+public class MessageCodecRegistry {
+    private static final Logger logger = LogManager.getLogger(MessageCodecRegistry.class);
+
+    private final Map<Class<?>, MessageCodec<?>> _codecsByClass = new HashMap<>();
+
+    private final Map<String, MessageCodec<?>> _codecsByName = new HashMap<>();
+
+    public MessageCodecRegistry() {
+    }
+
+    /**
+     * Creates a registry with an instance of every concrete codec class given.
+     *
+     * @param codecClasses The codec classes, usually found by scanning the classpath
+     */
+    @SuppressWarnings("rawtypes")
+    public MessageCodecRegistry(Collection<Class<? extends MessageCodec>> codecClasses) {
+        for (Class<? extends MessageCodec> codecClass : codecClasses) {
+            if (Modifier.isAbstract(codecClass.getModifiers())) {
+                continue;
+            }
+            try {
+                register(codecClass.getConstructor().newInstance());
+            } catch (Exception e) {
+                logger.error("Unable to load message codec {}", codecClass.getName(), e);
+            }
+        }
+    }
+
+    public synchronized void register(MessageCodec<?> codec) {
+        _codecsByClass.put(codec.getMessageClass(), codec);
+        _codecsByName.put(codec.getMessageClass().getName(), codec);
+        logger.debug("Message codec loaded for {}", codec.getMessageClass().getName());
+    }
+
+    /**
+     * @return The codec for exactly this message class or null if it has to be serialized
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> MessageCodec<T> getCodec(Class<T> messageClass) {
+        return (MessageCodec<T>) _codecsByClass.get(messageClass);
+    }
+
+    public synchronized MessageCodec<?> getCodec(String messageClassName) {
+        return _codecsByName.get(messageClassName);
+    }
+
+    public synchronized Map<String, MessageCodec<?>> getCodecs() {
+        return Collections.unmodifiableMap(new HashMap<>(_codecsByName));
+    }
+}
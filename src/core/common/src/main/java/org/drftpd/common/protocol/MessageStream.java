@@ -0,0 +1,50 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The wire format used to exchange commands and responses between master and slave.
+ *
+ * Reads and writes may happen from different threads, but only one thread may read
+ * and writes are serialized by the implementation.
+ *
+ * @version $Id$
+ */
+public interface MessageStream extends Closeable {
+
+    /**
+     * Writes the message and flushes it to the other side
+     */
+    void writeMessage(Object message) throws IOException;
+
+    /**
+     * Blocks until the next message has been read
+     *
+     * @throws java.net.SocketTimeoutException If no message started arriving within the socket timeout,
+     *                                         the stream can still be used after this.
+     */
+    Object readMessage() throws IOException, ClassNotFoundException;
+
+    /**
+     * @return The name of the wire format as used during the handshake
+     */
+    String getName();
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.protocol;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * The original wire format, every message is written with java serialization and the
+ * stream is reset afterwards so no references to old messages are kept.
+ *
+ * @version $Id$
+ */
+public class ObjectMessageStream implements MessageStream {
+
+    public static final String NAME = "object";
+
+    private final ObjectInputStream _in;
+
+    private final ObjectOutputStream _out;
+
+    public ObjectMessageStream(ObjectInputStream in, ObjectOutputStream out) {
+        _in = in;
+        _out = out;
+    }
+
+    public void writeMessage(Object message) throws IOException {
+        synchronized (_out) {
+            _out.writeObject(message);
+            _out.flush();
+            _out.reset();
+        }
+    }
+
+    public Object readMessage() throws IOException, ClassNotFoundException {
+        return _in.readObject();
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void close() throws IOException {
+        try {
+            _in.close();
+        } finally {
+            _out.close();
+        }
+    }
+}
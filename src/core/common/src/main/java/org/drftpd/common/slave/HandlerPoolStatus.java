@@ -0,0 +1,125 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.slave;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of one of the worker pools a slave executes master commands in.
+ * Latencies are in milliseconds and cover the commands finished since the previous snapshot.
+ *
+ * @version $Id$
+ */
+public class HandlerPoolStatus implements Serializable {
+    private static final long serialVersionUID = -2466153405512357370L;
+
+    private final String _name;
+
+    private final int _maxThreads;
+
+    private final int _activeThreads;
+
+    private final int _queued;
+
+    private final long _completed;
+
+    private final long _rejected;
+
+    private final long _avgWait;
+
+    private final long _maxWait;
+
+    private final long _avgRun;
+
+    private final long _maxRun;
+
+    public HandlerPoolStatus(String name, int maxThreads, int activeThreads, int queued, long completed,
+                             long rejected, long avgWait, long maxWait, long avgRun, long maxRun) {
+        _name = name;
+        _maxThreads = maxThreads;
+        _activeThreads = activeThreads;
+        _queued = queued;
+        _completed = completed;
+        _rejected = rejected;
+        _avgWait = avgWait;
+        _maxWait = maxWait;
+        _avgRun = avgRun;
+        _maxRun = maxRun;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public int getMaxThreads() {
+        return _maxThreads;
+    }
+
+    public int getActiveThreads() {
+        return _activeThreads;
+    }
+
+    /**
+     * @return The number of commands waiting for a free thread
+     */
+    public int getQueued() {
+        return _queued;
+    }
+
+    /**
+     * @return The number of commands finished since the slave started
+     */
+    public long getCompleted() {
+        return _completed;
+    }
+
+    /**
+     * @return The number of commands refused since the slave started because the pool was full
+     */
+    public long getRejected() {
+        return _rejected;
+    }
+
+    /**
+     * @return Average time commands waited for a thread
+     */
+    public long getAvgWait() {
+        return _avgWait;
+    }
+
+    public long getMaxWait() {
+        return _maxWait;
+    }
+
+    /**
+     * @return Average time the handlers took to run
+     */
+    public long getAvgRun() {
+        return _avgRun;
+    }
+
+    public long getMaxRun() {
+        return _maxRun;
+    }
+
+    public String toString() {
+        return getClass().getName() + "[name=" + getName() + ",active=" + getActiveThreads() + "/" + getMaxThreads()
+                + ",queued=" + getQueued() + ",completed=" + getCompleted() + ",rejected=" + getRejected()
+                + ",avgWait=" + getAvgWait() + "ms,avgRun=" + getAvgRun() + "ms]";
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A fixed list of compiled patterns that finds the first one matching an input in a single pass.
+ *
+ * The patterns are combined into one alternation when the set is created, each pattern in a
+ * group of its own, and the group that took part in the match tells which pattern matched. As
+ * alternatives are tried in order this is the first matching pattern. Patterns that can not be
+ * combined without changing their meaning, like those using back references or comments, are
+ * checked one by one after the combined pattern.
+ *
+ * @version $Id$
+ */
+public class PatternSet {
+
+    // back references are numbered within the combined pattern, comments and unterminated quotes run to the end of it
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?[a-zA-Z-]*x");
+
+    private static final int INLINE_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL
+            | Pattern.MULTILINE | Pattern.UNIX_LINES | Pattern.UNICODE_CHARACTER_CLASS;
+
+    private final List<Pattern> _patterns;
+
+    private Pattern _combined = null;
+
+    // group of the combined pattern -> index of the pattern, -1 for groups of the patterns themselves
+    private int[] _groupIndex = new int[0];
+
+    // indexes of the patterns not in the combined pattern
+    private final int[] _separate;
+
+    public PatternSet(List<Pattern> patterns) {
+        _patterns = new ArrayList<>(patterns);
+        StringBuilder combined = new StringBuilder();
+        ArrayList<Integer> groupIndex = new ArrayList<>();
+        ArrayList<Integer> separate = new ArrayList<>();
+        groupIndex.add(-1);
+        for (int i = 0; i < _patterns.size(); i++) {
+            Pattern pattern = _patterns.get(i);
+            if ((pattern.flags() & ~INLINE_FLAGS) != 0 || NOT_COMBINABLE.matcher(pattern.pattern()).find()) {
+                separate.add(i);
+                continue;
+            }
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append('(').append(getInlineFlags(pattern.flags())).append(pattern.pattern()).append("))");
+            groupIndex.add(i);
+            for (int g = pattern.matcher("").groupCount(); g > 0; g--) {
+                groupIndex.add(-1);
+            }
+        }
+        if (combined.length() > 0) {
+            try {
+                _combined = Pattern.compile(combined.toString());
+                _groupIndex = groupIndex.stream().mapToInt(Integer::intValue).toArray();
+            } catch (PatternSyntaxException e) {
+                // the same group name used by several patterns, check all of them one by one
+                separate.clear();
+                for (int i = 0; i < _patterns.size(); i++) {
+                    separate.add(i);
+                }
+            }
+        }
+        _separate = separate.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String getInlineFlags(int flags) {
+        StringBuilder inline = new StringBuilder("(?");
+        if ((flags & Pattern.CASE_INSENSITIVE) != 0) inline.append('i');
+        if ((flags & Pattern.UNICODE_CASE) != 0) inline.append('u');
+        if ((flags & Pattern.DOTALL) != 0) inline.append('s');
+        if ((flags & Pattern.MULTILINE) != 0) inline.append('m');
+        if ((flags & Pattern.UNIX_LINES) != 0) inline.append('d');
+        if ((flags & Pattern.UNICODE_CHARACTER_CLASS) != 0) inline.append('U');
+        return inline.append(':').toString();
+    }
+
+    public int size() {
+        return _patterns.size();
+    }
+
+    public Pattern get(int index) {
+        return _patterns.get(index);
+    }
+
+    /**
+     * @return The index of the first pattern, in the order they were given, matching the entire input, -1 if none does
+     */
+    public int firstMatch(CharSequence input) {
+        int first = Integer.MAX_VALUE;
+        if (_combined != null) {
+            Matcher m = _combined.matcher(input);
+            if (m.matches()) {
+                for (int g = 1; g < _groupIndex.length; g++) {
+                    if (_groupIndex[g] != -1 && m.start(g) != -1) {
+                        first = _groupIndex[g];
+                        break;
+                    }
+                }
+            }
+        }
+        for (int index : _separate) {
+            if (index > first) {
+                break;
+            }
+            if (_patterns.get(index).matcher(input).matches()) {
+                return index;
+            }
+        }
+        return first == Integer.MAX_VALUE ? -1 : first;
+    }
+
+    /**
+     * @return The index of the first pattern, in the order they were given, not matching the entire input, -1 if all do
+     */
+    public int firstMismatch(CharSequence input) {
+        for (int i = 0; i < _patterns.size(); i++) {
+            if (!_patterns.get(i).matcher(input).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.util;
+
+import java.util.*;
+
+/**
+ * A fixed set of substrings matched case insensitive against a text in a single pass.
+ *
+ * The substrings are compiled into an Aho-Corasick automaton, so the time to check a text only
+ * depends on the length of the text and not on the number of substrings.
+ * Substrings are identified by their index in the list they were created from.
+ *
+ * @version $Id$
+ */
+public class SubstringSet {
+
+    private static final int[] NONE = new int[0];
+
+    private final int _size;
+
+    // transitions of each state, sorted by character
+    private final char[][] _chars;
+
+    private final int[][] _next;
+
+    private final int[] _fail;
+
+    // indexes of the substrings ending in each state
+    private final int[][] _output;
+
+    // nearest state on the fail chain that has an output, -1 if there is none
+    private final int[] _outputLink;
+
+    // lowest index ending in each state or any state on its fail chain
+    private final int[] _first;
+
+    public SubstringSet(List<String> substrings) {
+        _size = substrings.size();
+        ArrayList<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int i = 0; i < substrings.size(); i++) {
+            String s = substrings.get(i).toLowerCase();
+            int state = 0;
+            for (int j = 0; j < s.length(); j++) {
+                Integer next = trie.get(state).get(s.charAt(j));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(s.charAt(j), next);
+                    trie.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            outputs.get(state).add(i);
+        }
+
+        int states = trie.size();
+        _chars = new char[states][];
+        _next = new int[states][];
+        _fail = new int[states];
+        _output = new int[states][];
+        _outputLink = new int[states];
+        _first = new int[states];
+        for (int state = 0; state < states; state++) {
+            TreeMap<Character, Integer> transitions = trie.get(state);
+            _chars[state] = new char[transitions.size()];
+            _next[state] = new int[transitions.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                _chars[state][k] = entry.getKey();
+                _next[state][k++] = entry.getValue();
+            }
+            ArrayList<Integer> output = outputs.get(state);
+            _output[state] = output.isEmpty() ? NONE : output.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // breadth first, so the fail state of each state is done before the state itself
+        _outputLink[0] = -1;
+        _first[0] = _output[0].length > 0 ? _output[0][0] : Integer.MAX_VALUE;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : _next[0]) {
+            _fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int fail = _fail[state];
+            _outputLink[state] = _output[fail].length > 0 ? fail : _outputLink[fail];
+            int first = _output[state].length > 0 ? _output[state][0] : Integer.MAX_VALUE;
+            _first[state] = Math.min(first, _first[fail]);
+            for (int k = 0; k < _chars[state].length; k++) {
+                int child = _next[state][k];
+                _fail[child] = state == 0 ? 0 : step(fail, _chars[state][k]);
+                queue.add(child);
+            }
+        }
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return The index of the first substring, in the order they were given, text contains, -1 if it contains none
+     */
+    public int firstContained(String text) {
+        String lower = text.toLowerCase();
+        int state = 0;
+        int first = _first[0];
+        for (int i = 0; i < lower.length(); i++) {
+            state = step(state, lower.charAt(i));
+            first = Math.min(first, _first[state]);
+        }
+        return first == Integer.MAX_VALUE ? -1 : first;
+    }
+
+    /**
+     * @return The index of the first substring, in the order they were given, text does not contain, -1 if it contains all
+     */
+    public int firstMissing(String text) {
+        BitSet found = new BitSet(_size);
+        String lower = text.toLowerCase();
+        int state = 0;
+        collect(state, found);
+        for (int i = 0; i < lower.length(); i++) {
+            state = step(state, lower.charAt(i));
+            collect(state, found);
+        }
+        int missing = found.nextClearBit(0);
+        return missing < _size ? missing : -1;
+    }
+
+    private void collect(int state, BitSet found) {
+        for (int s = _output[state].length > 0 ? state : _outputLink[state]; s != -1; s = _outputLink[s]) {
+            for (int index : _output[s]) {
+                found.set(index);
+            }
+        }
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int k = Arrays.binarySearch(_chars[state], c);
+            if (k >= 0) {
+                return _next[state][k];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = _fail[state];
+        }
+    }
+}
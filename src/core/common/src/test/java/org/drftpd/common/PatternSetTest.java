@@ -0,0 +1,72 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common;
+
+import org.drftpd.common.util.GlobPattern;
+import org.drftpd.common.util.PatternSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatternSetTest {
+
+    @Test
+    public void testFirstMatch() {
+        PatternSet set = new PatternSet(List.of(
+                Pattern.compile("^.*\\.(?i)xvid-.*$"),
+                Pattern.compile("(.)\\1.*"),
+                Pattern.compile(".*-(GRP|OTHER)"),
+                Pattern.compile(".*GRP", Pattern.CASE_INSENSITIVE)));
+        assertEquals(0, set.firstMatch("Movie.2019.XViD-GRP"));
+        assertEquals(1, set.firstMatch("aaMovie-GRP"));
+        assertEquals(2, set.firstMatch("Movie-GRP"));
+        assertEquals(3, set.firstMatch("Movie-grp"));
+        assertEquals(-1, set.firstMatch("Movie-NONE"));
+        // the inline flag of the first pattern does not leak into the others
+        assertEquals(-1, set.firstMatch("Movie-other"));
+    }
+
+    @Test
+    public void testGroups() {
+        PatternSet set = new PatternSet(List.of(
+                Pattern.compile("/(?<truncate>tv)/(.*)/", Pattern.CASE_INSENSITIVE),
+                Pattern.compile("/(mp3)/(.*)/"),
+                GlobPattern.compile("/movies/*")));
+        assertEquals(0, set.firstMatch("/TV/Show/"));
+        assertEquals(1, set.firstMatch("/mp3/Album/"));
+        assertEquals(2, set.firstMatch("/movies/Movie/"));
+        assertEquals(-1, set.firstMatch("/MP3/Album/"));
+
+        // the same group name in two patterns, checked one by one
+        set = new PatternSet(List.of(
+                Pattern.compile("/(?<truncate>tv)/.*"),
+                Pattern.compile("/(?<truncate>mp3)/.*")));
+        assertEquals(1, set.firstMatch("/mp3/Album/"));
+    }
+
+    @Test
+    public void testFirstMismatch() {
+        PatternSet set = new PatternSet(List.of(Pattern.compile(".*-.*"), Pattern.compile(".*\\..*")));
+        assertEquals(-1, set.firstMismatch("Movie.2019-GRP"));
+        assertEquals(1, set.firstMismatch("Movie-GRP"));
+        assertEquals(0, set.firstMismatch("Movie.2019"));
+    }
+}
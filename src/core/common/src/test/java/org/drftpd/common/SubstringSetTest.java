@@ -0,0 +1,82 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common;
+
+import org.drftpd.common.util.SubstringSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SubstringSetTest {
+
+    @Test
+    public void testFirstContained() {
+        SubstringSet set = new SubstringSet(List.of("XViD", "he", "she", "hers", "720p"));
+        assertEquals(0, set.firstContained("Some.Movie.2019.DVDRip.xvid-GRP"));
+        // "he" is found inside "she" and comes first in the list
+        assertEquals(1, set.firstContained("ushers"));
+        assertEquals(4, set.firstContained("Show.S01E01.720p.HDTV"));
+        assertEquals(-1, set.firstContained("Nothing.To.See"));
+        assertEquals(-1, new SubstringSet(List.of()).firstContained("anything"));
+    }
+
+    @Test
+    public void testFirstMissing() {
+        SubstringSet set = new SubstringSet(List.of("-", ".", "x264"));
+        assertEquals(-1, set.firstMissing("Show.S01E01.720p.HDTV.x264-GRP"));
+        assertEquals(0, set.firstMissing("Show.S01E01.x264"));
+        assertEquals(2, set.firstMissing("Show.S01E01-GRP"));
+        assertEquals(-1, new SubstringSet(List.of()).firstMissing("anything"));
+    }
+
+    @Test
+    public void testAgainstContains() {
+        Random random = new Random(42);
+        ArrayList<String> substrings = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            substrings.add(randomString(random, 1 + random.nextInt(4)));
+        }
+        SubstringSet set = new SubstringSet(substrings);
+        for (int i = 0; i < 1000; i++) {
+            String text = randomString(random, random.nextInt(30));
+            int contained = -1;
+            int missing = -1;
+            for (int j = substrings.size() - 1; j >= 0; j--) {
+                if (text.toLowerCase().contains(substrings.get(j).toLowerCase())) {
+                    contained = j;
+                } else {
+                    missing = j;
+                }
+            }
+            assertEquals(contained, set.firstContained(text), text);
+            assertEquals(missing, set.firstMissing(text), text);
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append("abcABC.-".charAt(random.nextInt(8)));
+        }
+        return sb.toString();
+    }
+}
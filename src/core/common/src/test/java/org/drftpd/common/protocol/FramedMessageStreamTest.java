@@ -0,0 +1,98 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.protocol;
+
+import org.drftpd.common.exceptions.AsyncResponseException;
+import org.drftpd.common.network.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramedMessageStreamTest {
+
+    private MessageCodecRegistry _registry;
+
+    @BeforeEach
+    public void setUp() {
+        _registry = new MessageCodecRegistry(Arrays.asList(AsyncCommandArgumentCodec.class,
+                AsyncCommandCodec.class, AsyncResponseCodec.class));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        FramedMessageStream writer = new FramedMessageStream(InputStream.nullInputStream(), wire, _registry);
+        writer.writeMessage(new AsyncCommandArgument("01", "transfer", new String[]{"a", null, "c"}));
+        writer.writeMessage(new AsyncCommand("02", "ping"));
+        writer.writeMessage(new AsyncResponse("03"));
+        writer.writeMessage(new AsyncCommandArgument("04", "delete", "/some/path"));
+        writer.writeMessage(new AsyncResponseException("05", new IOException("no codec, serialized")));
+
+        FramedMessageStream reader = new FramedMessageStream(new ByteArrayInputStream(wire.toByteArray()),
+                OutputStream.nullOutputStream(), _registry);
+        AsyncCommandArgument aca = (AsyncCommandArgument) reader.readMessage();
+        assertEquals("01", aca.getIndex());
+        assertEquals("transfer", aca.getName());
+        assertArrayEquals(new String[]{"a", null, "c"}, aca.getArgsArray());
+
+        AsyncCommand ac = (AsyncCommand) reader.readMessage();
+        assertEquals(AsyncCommand.class, ac.getClass());
+        assertEquals("ping", ac.getName());
+
+        assertEquals("03", ((AsyncResponse) reader.readMessage()).getIndex());
+        assertEquals("/some/path", ((AsyncCommandArgument) reader.readMessage()).getArgs());
+
+        AsyncResponseException are = (AsyncResponseException) reader.readMessage();
+        assertEquals("no codec, serialized", are.getThrowable().getMessage());
+
+        assertThrows(EOFException.class, reader::readMessage);
+    }
+
+    @Test
+    public void testTypeIsOnlyDefinedOnce() throws Exception {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        FramedMessageStream writer = new FramedMessageStream(InputStream.nullInputStream(), wire, _registry);
+        writer.writeMessage(new AsyncResponse("01"));
+        int first = wire.size();
+        writer.writeMessage(new AsyncResponse("02"));
+        int second = wire.size() - first;
+        assertTrue(second < first);
+    }
+
+    @Test
+    public void testSwitchFromObjectStream() throws Exception {
+        // Mimics the handshake, the format is picked through java serialization and then the same buffered streams are reused
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        BufferedOutputStream rawOut = new BufferedOutputStream(wire);
+        ObjectOutputStream out = new ObjectOutputStream(rawOut);
+        out.writeObject(FramedMessageStream.NAME);
+        out.flush();
+        new FramedMessageStream(InputStream.nullInputStream(), rawOut, _registry)
+                .writeMessage(new AsyncCommand("01", "remerge"));
+
+        BufferedInputStream rawIn = new BufferedInputStream(new ByteArrayInputStream(wire.toByteArray()));
+        ObjectInputStream in = new ObjectInputStream(rawIn);
+        assertEquals(FramedMessageStream.NAME, in.readObject());
+        FramedMessageStream reader = new FramedMessageStream(rawIn, OutputStream.nullOutputStream(), _registry);
+        assertEquals("remerge", ((AsyncCommand) reader.readMessage()).getName());
+    }
+}
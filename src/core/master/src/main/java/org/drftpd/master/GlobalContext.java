@@ -29,6 +29,7 @@ import org.drftpd.common.network.SSLGetContext;
 import org.drftpd.common.util.PortRange;
 import org.drftpd.common.util.PropertyHelper;
 import org.drftpd.master.commands.CommandManagerInterface;
+import org.drftpd.master.commands.PostHookExecutor;
 import org.drftpd.master.config.ConfigInterface;
 import org.drftpd.master.config.ConfigManager;
 import org.drftpd.master.cron.TimeEventInterface;
@@ -46,6 +47,7 @@ import org.drftpd.master.usermanager.UserManager;
 import org.drftpd.master.vfs.CommitManager;
 import org.drftpd.master.vfs.DirectoryHandle;
 import org.drftpd.master.vfs.VirtualFileSystem;
+import org.drftpd.master.vfs.VirtualFileSystemWarmup;
 import org.reflections.Reflections;
 import org.reflections.scanners.MethodAnnotationsScanner;
 import org.reflections.util.ClasspathHelper;
@@ -90,6 +92,7 @@ public class GlobalContext {
     private SSLContext _sslContext;
     private TimeManager _timeManager;
     private IndexEngineInterface _indexEngine;
+    private VirtualFileSystemWarmup _vfsWarmup;
 
     /**
      * If you're creating a GlobalContext object and it's not part of a TestCase
@@ -378,6 +381,13 @@ public class GlobalContext {
         return _timer;
     }
 
+    /**
+     * @return the startup warm-up of the VFS, null before init().
+     */
+    public VirtualFileSystemWarmup getVirtualFileSystemWarmup() {
+        return _vfsWarmup;
+    }
+
     public SlaveSelectionManagerInterface getSlaveSelectionManager() {
         return _slaveSelectionManager;
     }
@@ -401,8 +411,11 @@ public class GlobalContext {
     public void init() {
         _config = new ConfigManager();
         _config.reload();
+        eventService.configure(getConfig().getMainProperties());
 
         CommitManager.getCommitManager().start();
+        _vfsWarmup = new VirtualFileSystemWarmup(getConfig().getMainProperties());
+        _vfsWarmup.start();
         _timeManager = new TimeManager();
         loadUserManager(getConfig().getMainProperties());
         addTimeEvent(getUserManager());
@@ -445,6 +458,13 @@ public class GlobalContext {
                 } catch (InterruptedException ignored) {
                 }
             }
+            while (PostHookExecutor.getPostHookExecutor().getQueueSize() > 0) {
+                logger.info("Waiting for asynchronous hooks to finish - {} remaining", PostHookExecutor.getPostHookExecutor().getQueueSize());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ignored) {
+                }
+            }
             while (GlobalContext.getEventService().getQueueSize() > 0) {
                 logger.info("Waiting for queued events to be processed - {} remaining", GlobalContext.getEventService().getQueueSize());
                 try {
@@ -459,6 +479,7 @@ public class GlobalContext {
                 } catch (InterruptedException ignored) {
                 }
             }
+            VirtualFileSystem.getVirtualFileSystem().close();
             logger.info("Shutdown complete, exiting");
             System.exit(0);
         }
@@ -32,6 +32,7 @@ import org.drftpd.master.network.ConnectionThreadFactory;
 import org.drftpd.master.network.FtpReply;
 import org.drftpd.master.usermanager.NoSuchUserException;
 import org.drftpd.master.usermanager.User;
+import org.drftpd.master.vfs.VirtualFileSystemWarmup;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -267,6 +268,13 @@ public class Master {
             sock.close();
             return;
         }
+        VirtualFileSystemWarmup warmup = getGlobalContext().getVirtualFileSystemWarmup();
+        if (warmup != null && !warmup.isLoginAllowed()) {
+            PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
+            out.println("421 The file system is still loading, please try again in a moment");
+            sock.close();
+            return;
+        }
 
         /*
          * TODO: Reserved for Implicit SSL:
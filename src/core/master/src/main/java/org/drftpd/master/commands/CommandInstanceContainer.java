@@ -17,6 +17,8 @@
  */
 package org.drftpd.master.commands;
 
+import org.drftpd.master.util.LatencyHistogram;
+
 import java.lang.reflect.Method;
 
 /**
@@ -27,6 +29,7 @@ public class CommandInstanceContainer {
 
     private Method _method = null;
     private CommandInterface _interfaceInstance = null;
+    private final LatencyHistogram _latency = new LatencyHistogram();
 
     public CommandInstanceContainer(Method m, CommandInterface interfaceInstance) {
         _method = m;
@@ -40,4 +43,11 @@ public class CommandInstanceContainer {
     public CommandInterface getCommandInterfaceInstance() {
         return _interfaceInstance;
     }
+
+    /**
+     * @return how long the executions of the command took, hooks included
+     */
+    public LatencyHistogram getLatency() {
+        return _latency;
+    }
 }
@@ -33,7 +33,9 @@ import org.drftpd.master.usermanager.UserFileException;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -47,7 +49,9 @@ public abstract class CommandInterface {
 
     protected String[] _featReplies;
 
-    private Multimap<Integer, HookContainer> _postHooks;
+    private List<HookContainer> _postHooks = Collections.emptyList();
+
+    private List<HookContainer> _asyncPostHooks = Collections.emptyList();
 
     private Multimap<Integer, HookContainer> _preHooks;
 
@@ -80,7 +84,7 @@ public abstract class CommandInterface {
                 if (type.equals(HookType.PRE)) {
                     preHooks.put(priority, new HookContainer(annotatedMethod, hookClass));
                 } else {
-                    postHooks.put(priority, new HookContainer(annotatedMethod, hookClass));
+                    postHooks.put(priority, new HookContainer(annotatedMethod, hookClass, annotation.async()));
                 }
             }
         } catch (Exception e) {
@@ -88,35 +92,47 @@ public abstract class CommandInterface {
         }
         logger.debug("[{}:{}] Loaded [{}] prehooks and [{}] posthooks", pluginName, method, preHooks.size(), postHooks.size());
         _preHooks = preHooks;
-        _postHooks = postHooks;
+        List<HookContainer> syncPostHooks = new ArrayList<>();
+        List<HookContainer> asyncPostHooks = new ArrayList<>();
+        for (HookContainer hook : postHooks.values()) {
+            (hook.isAsync() ? asyncPostHooks : syncPostHooks).add(hook);
+        }
+        _postHooks = syncPostHooks;
+        _asyncPostHooks = asyncPostHooks;
     }
 
     protected void doPostHooks(CommandRequestInterface request, CommandResponseInterface response) {
-        for (HookContainer hook : _postHooks.values()) {
-            Method m = hook.getMethod();
-            try {
-                m.invoke(hook.getHookInterfaceInstance(), request, response);
-            } catch (Exception e) {
-                // Not that important, this just means that this post hook failed and we'll just move onto the next one
-                logger.error("Error while loading/invoking posthook {}", m.toString(), e.getCause());
-            }
+        PostHookExecutor.runHooks(_postHooks, request, response);
+        if (!_asyncPostHooks.isEmpty()) {
+            PostHookExecutor.getPostHookExecutor().execute(_asyncPostHooks, request, response);
         }
     }
 
     protected CommandRequestInterface doPreHooks(CommandRequestInterface request) {
         request.setAllowed(true);
         for (HookContainer hook : _preHooks.values()) {
-            Method m = hook.getMethod();
             try {
-                request = (CommandRequestInterface) m.invoke(hook.getHookInterfaceInstance(), new Object[]{request});
-            } catch (Exception e) {
+                request = hook.invokePreHook(request);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
                 // Not that important, this just means that this pre hook failed and we'll just move onto the next one
-                logger.error("Error while loading/invoking prehook [{}], reason: {}", m.toString(), e.getCause());
+                logger.error("Error while invoking prehook [{}], reason: {}", hook.getMethod().toString(), t);
             }
         }
         return request;
     }
 
+    /**
+     * @return the pre hooks followed by the post hooks attached to this command
+     */
+    public List<HookContainer> getHooks() {
+        List<HookContainer> hooks = new ArrayList<>(_preHooks.values());
+        hooks.addAll(_postHooks);
+        hooks.addAll(_asyncPostHooks);
+        return hooks;
+    }
+
     protected User getUserObject(String user) throws NoSuchUserException, UserFileException {
         return GlobalContext.getGlobalContext().getUserManager().getUserByName(user);
     }
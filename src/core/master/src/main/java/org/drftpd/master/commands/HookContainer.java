@@ -17,19 +17,43 @@
  */
 package org.drftpd.master.commands;
 
+import org.drftpd.master.util.LatencyHistogram;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 /**
+ * A hook method bound to the instance it is called on, along with how long its calls took.
+ *
  * @author zubov
  * @version $Id$
  */
 public class HookContainer {
+    private static final MethodType PRE_HOOK_TYPE = MethodType.methodType(CommandRequestInterface.class,
+            CommandRequestInterface.class);
+
+    private static final MethodType POST_HOOK_TYPE = MethodType.methodType(void.class,
+            CommandRequestInterface.class, CommandResponseInterface.class);
+
     private final Method _method;
     private final Object _interfaceInstance;
+    private final MethodHandle _handle;
+    private final boolean _async;
+
+    private final LatencyHistogram _latency = new LatencyHistogram();
 
-    public HookContainer(Method m, Object interfaceInstance) {
+    public HookContainer(Method m, Object interfaceInstance) throws IllegalAccessException {
+        this(m, interfaceInstance, false);
+    }
+
+    public HookContainer(Method m, Object interfaceInstance, boolean async) throws IllegalAccessException {
         _method = m;
         _interfaceInstance = interfaceInstance;
+        _async = async;
+        MethodHandle handle = MethodHandles.lookup().unreflect(m).bindTo(interfaceInstance);
+        _handle = handle.asType(m.getParameterCount() == 1 ? PRE_HOOK_TYPE : POST_HOOK_TYPE);
     }
 
     public Method getMethod() {
@@ -39,4 +63,40 @@ public class HookContainer {
     public Object getHookInterfaceInstance() {
         return _interfaceInstance;
     }
+
+    public boolean isAsync() {
+        return _async;
+    }
+
+    /**
+     * @return the declaring class and method name of the hook
+     */
+    public String getName() {
+        return _method.getDeclaringClass().getSimpleName() + "." + _method.getName();
+    }
+
+    public CommandRequestInterface invokePreHook(CommandRequestInterface request) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return (CommandRequestInterface) _handle.invokeExact(request);
+        } finally {
+            _latency.record(System.nanoTime() - start);
+        }
+    }
+
+    public void invokePostHook(CommandRequestInterface request, CommandResponseInterface response) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            _handle.invokeExact(request, response);
+        } finally {
+            _latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return how long the calls of this hook took
+     */
+    public LatencyHistogram getLatency() {
+        return _latency;
+    }
 }
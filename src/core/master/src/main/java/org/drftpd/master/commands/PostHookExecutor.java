@@ -0,0 +1,116 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.commands;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.util.PropertyHelper;
+import org.drftpd.master.GlobalContext;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs asynchronous post hooks after the command returned its response.
+ * <p>
+ * The hooks of a connection are always run by the same thread, so they run in the order the commands
+ * were executed in. With hooks.async.threads set to 0 they are run right away on the command's thread.
+ *
+ * @version $Id$
+ */
+public class PostHookExecutor {
+    private static final Logger logger = LogManager.getLogger(PostHookExecutor.class);
+
+    private static PostHookExecutor _instance;
+
+    private final ExecutorService[] _lanes;
+
+    private final AtomicInteger _queued = new AtomicInteger();
+
+    private PostHookExecutor(int threads) {
+        _lanes = new ExecutorService[threads];
+        AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, "PostHook-" + count.incrementAndGet()));
+            lane.allowCoreThreadTimeOut(true);
+            _lanes[i] = lane;
+        }
+        logger.debug("Starting PostHookExecutor with {} threads", threads);
+    }
+
+    public static synchronized PostHookExecutor getPostHookExecutor() {
+        if (_instance == null) {
+            _instance = new PostHookExecutor(getThreads());
+        }
+        return _instance;
+    }
+
+    private static int getThreads() {
+        Properties cfg = GlobalContext.getConfig().getMainProperties();
+        String threads = PropertyHelper.getProperty(cfg, "hooks.async.threads", "2").trim();
+        try {
+            return Math.max(0, Integer.parseInt(threads));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value '{}' for hooks.async.threads, using 2 threads", threads);
+        }
+        return 2;
+    }
+
+    /**
+     * Runs the hooks, in the given order, on the thread of the request's connection.
+     */
+    public void execute(List<HookContainer> hooks, CommandRequestInterface request, CommandResponseInterface response) {
+        if (_lanes.length == 0) {
+            runHooks(hooks, request, response);
+            return;
+        }
+        Object key = request.getSession() != null ? request.getSession() : request;
+        ExecutorService lane = _lanes[(System.identityHashCode(key) & 0x7fffffff) % _lanes.length];
+        _queued.incrementAndGet();
+        lane.execute(() -> {
+            try {
+                runHooks(hooks, request, response);
+            } finally {
+                _queued.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @return the number of commands with hooks that did not finish yet
+     */
+    public int getQueueSize() {
+        return _queued.get();
+    }
+
+    static void runHooks(List<HookContainer> hooks, CommandRequestInterface request, CommandResponseInterface response) {
+        for (HookContainer hook : hooks) {
+            try {
+                hook.invokePostHook(request, response);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // Not that important, this just means that this post hook failed and we'll just move onto the next one
+                logger.error("Error while invoking posthook {}", hook.getMethod().toString(), t);
+            }
+        }
+    }
+}
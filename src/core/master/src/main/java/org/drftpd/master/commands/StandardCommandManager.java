@@ -209,6 +209,14 @@ public class StandardCommandManager implements CommandManagerInterface {
             return genericResponse("RESPONSE_502_COMMAND_NOT_IMPLEMENTED");
         }
         long start = System.nanoTime();
+        try {
+            return execute(commandContainer, request, start);
+        } finally {
+            commandContainer.getLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    private CommandResponseInterface execute(CommandInstanceContainer commandContainer, CommandRequestInterface request, long start) {
         logger.debug("Command {} execution start time (nano): {}", request.getCommand(), start);
         request.setProperties(request.getSession().getCommands().get(request.getCommand()));
         CommandResponseInterface response;
@@ -952,12 +952,15 @@ public class DataConnectionHandler extends CommandInterface {
             //transfer
             try {
                 String address = request.getSession().getObject(INET_ADDRESS, "*@*");
+                // the slave applies its per user and per section bandwidth limits with these
+                String section = GlobalContext.getGlobalContext().getSectionManager()
+                        .lookup(ts.getTransferFile().getParent()).getName();
 
                 if (isRetr) {
                     ts.sendFile(ts.getTransferFile().getPath(), ts.getType(),
                             ts.getResumePosition(), address,
                             request.getObjectLong(MIN_XFER_SPEED),
-                            request.getObjectLong(MAX_XFER_SPEED));
+                            request.getObjectLong(MAX_XFER_SPEED), request.getUser(), section);
 
                     while (true) {
                         synchronized (ts) {
@@ -975,7 +978,7 @@ public class DataConnectionHandler extends CommandInterface {
                     ts.receiveFile(ts.getTransferFile().getPath(), ts.getType(),
                             ts.getResumePosition(), address,
                             request.getObjectLong(MIN_XFER_SPEED),
-                            request.getObjectLong(MAX_XFER_SPEED));
+                            request.getObjectLong(MAX_XFER_SPEED), request.getUser(), section);
 
                     while (true) {
                         synchronized (ts) {
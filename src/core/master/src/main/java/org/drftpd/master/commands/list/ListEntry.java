@@ -0,0 +1,201 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.commands.list;
+
+import org.drftpd.common.vfs.InodeHandleInterface;
+import org.drftpd.master.exceptions.NoAvailableSlaveException;
+import org.drftpd.master.slavemanagement.RemoteSlave;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.LinkHandle;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Immutable snapshot of the attributes of a single listing entry.
+ * Every attribute is read from the VFS exactly once when the snapshot is taken, so the
+ * formatted line is consistent even if the inode changes while the listing is written.
+ *
+ * @version $Id$
+ */
+public class ListEntry implements InodeHandleInterface {
+
+    private final String _name;
+
+    private final String _path;
+
+    private final String _username;
+
+    private final String _group;
+
+    private final long _size;
+
+    private final long _lastModified;
+
+    private final boolean _directory;
+
+    private final boolean _file;
+
+    private final boolean _link;
+
+    private final String _linkTarget;
+
+    private final boolean _available;
+
+    private final Collection<String> _slaves;
+
+    private final long _checkSum;
+
+    private final long _xfertime;
+
+    private ListEntry(InodeHandleInterface inode, boolean mlst, boolean slavenames) throws FileNotFoundException {
+        _name = inode.getName();
+        _path = inode.getPath();
+        _username = inode.getUsername();
+        _group = inode.getGroup();
+        _size = inode.getSize();
+        _lastModified = inode.lastModified();
+        _directory = inode.isDirectory();
+        _link = inode.isLink();
+        _file = inode.isFile();
+        _linkTarget = _link && inode instanceof LinkHandle ? ((LinkHandle) inode).getTargetString() : null;
+        if (_file && inode instanceof FileHandle) {
+            FileHandle file = (FileHandle) inode;
+            _available = file.isAvailable();
+            if (mlst) {
+                Collection<String> slaves = new ArrayList<>();
+                for (RemoteSlave rslave : file.getSlaves()) {
+                    slaves.add(rslave.getName());
+                }
+                _slaves = slaves;
+                _checkSum = getCheckSum(file);
+                _xfertime = file.getXfertime();
+            } else {
+                _slaves = slavenames ? file.getSlaveNames() : Collections.emptySet();
+                _checkSum = 0L;
+                _xfertime = 0L;
+            }
+        } else {
+            _available = true;
+            _slaves = null;
+            _checkSum = 0L;
+            _xfertime = 0L;
+        }
+    }
+
+    /**
+     * @param inode The entry to take a snapshot of
+     * @param mlst Whether the attributes only shown by MLST/MLSD (checksum, slaves, xfertime) are needed
+     * @param slavenames Whether the slaves of files are needed for a LIST
+     * @return the snapshot, or the inode itself if it already is one
+     * @throws FileNotFoundException if the entry was removed while the snapshot was taken
+     */
+    public static ListEntry of(InodeHandleInterface inode, boolean mlst, boolean slavenames) throws FileNotFoundException {
+        if (inode instanceof ListEntry) {
+            return (ListEntry) inode;
+        }
+        return new ListEntry(inode, mlst, slavenames);
+    }
+
+    private static long getCheckSum(FileHandle file) throws FileNotFoundException {
+        try {
+            return file.getCheckSum();
+        } catch (NoAvailableSlaveException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public String getGroup() {
+        return _group;
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+
+    @Override
+    public long getSize() {
+        return _size;
+    }
+
+    @Override
+    public String getUsername() {
+        return _username;
+    }
+
+    @Override
+    public long lastModified() {
+        return _lastModified;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return _directory;
+    }
+
+    @Override
+    public boolean isFile() {
+        return _file;
+    }
+
+    @Override
+    public boolean isLink() {
+        return _link;
+    }
+
+    @Override
+    public String getPath() {
+        return _path;
+    }
+
+    /**
+     * @return the target of a link, null for files and directories.
+     */
+    public String getLinkTarget() {
+        return _linkTarget;
+    }
+
+    /**
+     * @return false if the entry is a file and none of its slaves is online.
+     */
+    public boolean isAvailable() {
+        return _available;
+    }
+
+    /**
+     * @return the names of the slaves holding the file, null if the entry is not a VFS file.
+     */
+    public Collection<String> getSlaves() {
+        return _slaves;
+    }
+
+    /**
+     * @return the CRC32 of the file, 0 if unknown or not taken for this listing.
+     */
+    public long getCheckSum() {
+        return _checkSum;
+    }
+
+    public long getXfertime() {
+        return _xfertime;
+    }
+}
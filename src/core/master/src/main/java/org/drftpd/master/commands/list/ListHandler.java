@@ -21,12 +21,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bushe.swing.event.annotation.AnnotationProcessor;
+import org.bushe.swing.event.annotation.EventSubscriber;
 import org.drftpd.common.slave.LightRemoteInode;
 import org.drftpd.common.vfs.InodeHandleInterface;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.Master;
 import org.drftpd.master.commands.*;
-import org.drftpd.master.exceptions.NoAvailableSlaveException;
+import org.drftpd.master.event.ReloadEvent;
 import org.drftpd.master.network.*;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 import org.drftpd.master.usermanager.User;
@@ -34,8 +35,11 @@ import org.drftpd.master.vfs.*;
 import org.reflections.Reflections;
 
 import java.io.*;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 /**
@@ -46,26 +50,39 @@ public class ListHandler extends CommandInterface {
 
     private static final Logger logger = LogManager.getLogger(ListHandler.class);
 
-    private static final DateFormat AFTER_SIX = new SimpleDateFormat(" yyyy");
+    private static final DateTimeFormatter AFTER_SIX = DateTimeFormatter.ofPattern(" yyyy");
 
-    private static final DateFormat BEFORE_SIX = new SimpleDateFormat("HH:mm");
+    private static final DateTimeFormatter BEFORE_SIX = DateTimeFormatter.ofPattern("HH:mm");
 
-    private static final DateFormat FULL = new SimpleDateFormat("HH:mm:ss yyyy");
+    private static final DateTimeFormatter FULL = DateTimeFormatter.ofPattern("HH:mm:ss yyyy");
 
     private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May",
             "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
 
-    private static final SimpleDateFormat MLSTTIME = new SimpleDateFormat("yyyyMMddHHmmss.SSS");
+    private static final DateTimeFormatter MLSTTIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss.SSS")
+            .withZone(ZoneOffset.UTC);
     private static final String NEWLINE = "\r\n";
     private static final String DELIM = " ";
     private static final String PADDING = "          ";
 
-    static {
-        MLSTTIME.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
+    // Directories larger than this are never cached, a handful of huge archive dirs should not evict everything else
+    private static final int MAX_CACHED_ENTRIES = 10000;
+
+    private static final int DATA_BUFFER_SIZE = 64 * 1024;
 
     private final ArrayList<AddListElementsInterface> _listAddons = new ArrayList<>();
 
+    private final Map<String, CachedEntries> _listingCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedEntries> eldest) {
+            return size() > _cacheSize;
+        }
+    };
+
+    private volatile int _cacheSize;
+
+    private volatile boolean _offlineFilesEnabled;
+
     private StandardCommandManager _cManager;
 
     private ResourceBundle _bundle;
@@ -78,6 +95,7 @@ public class ListHandler extends CommandInterface {
                 "MLST type*,x.crc32*,size*,modify*,unix.owner*,unix.group*,x.slaves*,x.xfertime*"
         };
         _bundle = cManager.getResourceBundle();
+        loadConfig();
 
         // Subscribe to events
         AnnotationProcessor.process(this);
@@ -97,6 +115,26 @@ public class ListHandler extends CommandInterface {
         }
     }
 
+    private void loadConfig() {
+        Properties cfg = GlobalContext.getConfig().getMainProperties();
+        _offlineFilesEnabled = cfg.getProperty("files.offline.enabled", "true").equals("true");
+        try {
+            _cacheSize = Integer.parseInt(cfg.getProperty("list.cache.size", "1000").trim());
+        } catch (NumberFormatException e) {
+            logger.error("Invalid value for list.cache.size, disabling the listing cache", e);
+            _cacheSize = 0;
+        }
+        synchronized (_listingCache) {
+            _listingCache.clear();
+        }
+    }
+
+    @EventSubscriber
+    public void onReloadEvent(ReloadEvent event) {
+        loadConfig();
+    }
+
+
     public CommandResponse doLIST(CommandRequest request) throws ImproperUsageException {
         return list(request, true, false, false, false);
     }
@@ -211,33 +249,66 @@ public class ListHandler extends CommandInterface {
                 conn.printOutput(new FtpReply(StandardCommandManager.genericResponse("RESPONSE_150_OK")));
 
                 try {
-                    os = new PrintWriter(new OutputStreamWriter(ts.getDataSocketForLIST().getOutputStream()));
+                    os = new BufferedWriter(new OutputStreamWriter(ts.getDataSocketForLIST().getOutputStream()),
+                            DATA_BUFFER_SIZE);
                 } catch (IOException ex) {
                     logger.warn(ex);
                     return new CommandResponse(425, ex.getMessage());
                 }
             }
-            ListElementsContainer container = null;
             boolean slavenames = request.getProperties().getProperty("slavenames", "false").equalsIgnoreCase("true");
+            boolean isUnixList = isStat || isList;
+            ListElementsContainer container;
             try {
-                container = listElements(directoryFile, conn, request.getUser(), slavenames);
+                // The versions have to be read before the snapshot, a change racing with the listing
+                // then only makes the cached copy look older than it is
+                long version = directoryFile.getListingVersion();
+                long availability = RemoteSlave.getAvailabilityVersion();
+                DirectorySnapshot snapshot = takeSnapshot(directoryFile, user);
+                boolean allChildren = isUnixList || request.getArgument().isEmpty();
+                String cacheKey = null;
+                List<ListEntry> entries = null;
+                if (_cacheSize > 0 && (isList || isMlsd) && allChildren) {
+                    cacheKey = directoryFile.getPath() + '\0' + (isList ? "LIST" : "MLSD") + '\0'
+                            + slavenames + '\0' + snapshot.getVisibilityClass();
+                    entries = getCachedEntries(cacheKey, version, availability);
+                    if (entries != null) {
+                        logger.debug("Serving cached listing of {}", directoryFile.getPath());
+                    }
+                }
+                if (entries == null) {
+                    Collection<InodeHandle> children = snapshot.getVisible();
+                    if (!allChildren) {
+                        // Only the requested entry is shown, don't fetch checksums for all the others
+                        children = new ArrayList<>();
+                        for (InodeHandle child : snapshot.getVisible()) {
+                            if (child.getName().equals(request.getArgument())) {
+                                children.add(child);
+                            }
+                        }
+                    }
+                    entries = takeEntries(children, !isUnixList, slavenames);
+                    if (cacheKey != null && entries.size() <= MAX_CACHED_ENTRIES) {
+                        synchronized (_listingCache) {
+                            _listingCache.put(cacheKey, new CachedEntries(version, availability, entries));
+                        }
+                    }
+                }
+
+                // everything depending on the user is rendered for every request
+                container = listElements(directoryFile, entries, conn, request.getUser(), slavenames);
+
+                // execute list addons.
+                for (AddListElementsInterface listAddon : _listAddons) {
+                    container = listAddon.addElements(directoryFile, container);
+                }
             } catch (IOException e) {
                 logger.error(e);
                 return new CommandResponse(450, e.getMessage());
             }
 
-            // execute list addons.
-            for (AddListElementsInterface listAddon : _listAddons) {
-                container = listAddon.addElements(directoryFile, container);
-            }
-
             try {
-                if (isStat || isList) {
-                    os.write("total 0" + NEWLINE);
-                    os.write(toList(container.getElements(), fulldate, slavenames));
-                } else {
-                    os.write(toMLST(container.getElements(), request.getArgument()));
-                }
+                render(os, container.getElements(), isUnixList, fulldate, slavenames, request.getArgument());
                 if (isStat || isMlst)
                     return response;
                 os.close();
@@ -254,44 +325,96 @@ public class ListHandler extends CommandInterface {
         }
     }
 
-    protected ListElementsContainer listElements(DirectoryHandle dir, Session session, String user, boolean slavenames) throws IOException {
+    /**
+     * Takes one copy of the children of the directory and splits off what the user may not see.
+     * Users that have the same entries hidden share the same visibility class and thereby the same cached listings.
+     */
+    private DirectorySnapshot takeSnapshot(DirectoryHandle dir, User user) throws FileNotFoundException {
+        Set<InodeHandle> children = dir.getInodeHandlesUnchecked();
+        ArrayList<InodeHandle> visible = new ArrayList<>(children.size());
+        ArrayList<String> hidden = null;
+        for (InodeHandle child : children) {
+            try {
+                if (child.isHidden(user)) {
+                    if (hidden == null) {
+                        hidden = new ArrayList<>();
+                    }
+                    hidden.add(child.getName());
+                } else {
+                    visible.add(child);
+                }
+            } catch (FileNotFoundException e) {
+                // entry was deleted whilst taking the snapshot, it will simply be omitted
+            }
+        }
+        String visibilityClass = "";
+        if (hidden != null) {
+            Collections.sort(hidden);
+            visibilityClass = String.join("/", hidden);
+        }
+        return new DirectorySnapshot(visible, visibilityClass);
+    }
+
+    private List<ListEntry> getCachedEntries(String cacheKey, long version, long availability) {
+        synchronized (_listingCache) {
+            CachedEntries cached = _listingCache.get(cacheKey);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.getVersion() != version || cached.getAvailability() != availability) {
+                _listingCache.remove(cacheKey);
+                return null;
+            }
+            return cached.getEntries();
+        }
+    }
+
+    /**
+     * Takes the snapshot of every entry, the result does not depend on the user listing the directory
+     */
+    private List<ListEntry> takeEntries(Collection<InodeHandle> children, boolean mlst, boolean slavenames) {
+        ArrayList<ListEntry> entries = new ArrayList<>(children.size());
+        for (InodeHandle element : children) {
+            try {
+                entries.add(ListEntry.of(element, mlst, slavenames));
+            } catch (FileNotFoundException e) {
+                //File No Longer Exists - This can happen and is normal
+                // if file is deleted to to bad crc or aborted during the list process
+                // Ignore
+            }
+        }
+        return entries;
+    }
+
+    protected ListElementsContainer listElements(DirectoryHandle dir, Collection<ListEntry> entries, Session session,
+                                                 String user, boolean slavenames) {
         ListElementsContainer container = new ListElementsContainer(session, user, _cManager);
-        ArrayList<InodeHandle> tempFileList = new ArrayList<>(dir.getInodeHandles(session.getUserNull(user)));
         ArrayList<InodeHandleInterface> listFiles = container.getElements();
         ArrayList<String> fileTypes = container.getFileTypes();
         int numOnline = container.getNumOnline();
         int numTotal = container.getNumTotal();
+        boolean offlineFilesEnabled = _offlineFilesEnabled;
 
-        for (InodeHandle element : tempFileList) {
-            boolean offlineFilesEnabled = GlobalContext.getConfig().getMainProperties().getProperty("files.offline.enabled", "true").equals("true");
+        for (ListEntry entry : entries) {
+            if (offlineFilesEnabled && entry.isFile() && !entry.isAvailable()) {
+                Map<String, Object> env = new HashMap<>();
+                env.put("ofilename", entry.getName());
+                String oFileName = session.jprintf(_bundle, "files.offline.filename", env, user);
 
-            if (offlineFilesEnabled && element.isFile()) {
-                try {
-                    if (!((FileHandleInterface) element).isAvailable()) {
-                        Map<String, Object> env = new HashMap<>();
-                        env.put("ofilename", element.getName());
-                        String oFileName = session.jprintf(_bundle, "files.offline.filename", env, user);
-
-                        listFiles.add(new LightRemoteInode(oFileName, element.getUsername(),
-                                slavenames ? getSlaveList((FileHandle) element) : element.getGroup(), element.lastModified(), element.getSize()));
-                        numTotal++;
-                    }
-                } catch (IOException e) {
-                    //File No Longer Exists - This can happen and is normal
-                    // if file is deleted to to bad crc or aborted during the list process
-                    // Ignore
-                }
+                listFiles.add(new LightRemoteInode(oFileName, entry.getUsername(),
+                        slavenames ? getSlaveList(entry) : entry.getGroup(), entry.lastModified(), entry.getSize()));
+                numTotal++;
                 // -OFFLINE and "ONLINE" files will both be present until someone implements
                 // a way to reupload OFFLINE files.
                 // It could be confusing to the user and/or client if the file doesn't exist, but you can't upload it.
             }
 
-            if (element.isFile()) {
+            if (entry.isFile()) {
                 //else element is a file, and is online
-                int typePosition = element.getName().lastIndexOf(".");
+                int typePosition = entry.getName().lastIndexOf(".");
                 String fileType;
                 if (typePosition != -1) {
-                    fileType = element.getName().substring(typePosition);
+                    fileType = entry.getName().substring(typePosition);
                     if (!fileTypes.contains(fileType)) {
                         fileTypes.add(fileType);
                     }
@@ -299,7 +422,7 @@ public class ListHandler extends CommandInterface {
             }
             numOnline++;
             numTotal++;
-            listFiles.add(element);
+            listFiles.add(entry);
         }
 
         container.setNumOnline(numOnline);
@@ -307,129 +430,103 @@ public class ListHandler extends CommandInterface {
         return container;
     }
 
-    private String toMLST(Collection<InodeHandleInterface> listElements, String filename) {
-        StringBuilder output = new StringBuilder();
-
+    /**
+     * Writes the entries one line at a time, the listing as a whole is never held in memory.
+     */
+    private void render(Writer os, Collection<InodeHandleInterface> listElements, boolean isUnixList,
+                        boolean fulldate, boolean slavenames, String filename) throws IOException {
+        if (isUnixList) {
+            os.write("total 0" + NEWLINE);
+        }
+        StringBuilder line = new StringBuilder(128);
         for (InodeHandleInterface inode : listElements) {
-            if (filename.isEmpty() || inode.getName().equals(filename)) {
-                try {
-                    StringBuilder line = new StringBuilder();
-                    if (inode.isLink()) {
-                        line.append("type=OS.unix=slink:" + ((LinkHandle) inode).getTargetString() + ";");
-                    } else if (inode.isFile()) {
-                        line.append("type=file;");
-                    } else if (inode.isDirectory()) {
-                        line.append("type=dir;");
-                    } else {
-                        throw new RuntimeException("type");
-                    }
-
-                    FileHandle file = null;
-                    boolean isFileHandle = false;
-                    if (inode.isFile() && inode instanceof FileHandle) {
-                        file = (FileHandle) inode;
-                        isFileHandle = true;
-                    }
-
-                    try {
-                        if (isFileHandle && file.getCheckSum() != 0) {
-                            line.append("x.crc32=" + Checksum.formatChecksum(file.getCheckSum()) + ";");
-                        }
-                    } catch (NoAvailableSlaveException e) {
-                        logger.debug("Unable to fetch checksum for: {}", inode.getPath());
-                    }
-
-                    line.append("size=" + inode.getSize() + ";");
-                    synchronized (MLSTTIME) {
-                        line.append("modify=" + MLSTTIME.format(new Date(inode.lastModified())) + ";");
-                    }
-
-                    line.append("unix.owner=" + inode.getUsername() + ";");
-                    line.append("unix.group=" + inode.getGroup() + ";");
+            ListEntry entry;
+            try {
+                entry = ListEntry.of(inode, !isUnixList, slavenames);
+            } catch (FileNotFoundException e) {
+                // entry was deleted whilst listing the dir, it will simply be omitted
+                continue;
+            }
+            line.setLength(0);
+            if (isUnixList) {
+                appendList(line, entry, fulldate, slavenames);
+            } else if (filename.isEmpty() || entry.getName().equals(filename)) {
+                appendMLST(line, entry);
+            }
+            os.append(line);
+        }
+    }
 
-                    if (isFileHandle) {
-                        Iterator<RemoteSlave> iter = file.getSlaves().iterator();
-                        line.append("x.slaves=");
+    private void appendMLST(StringBuilder line, ListEntry entry) {
+        if (entry.isLink()) {
+            line.append("type=OS.unix=slink:").append(entry.getLinkTarget()).append(';');
+        } else if (entry.isFile()) {
+            line.append("type=file;");
+        } else if (entry.isDirectory()) {
+            line.append("type=dir;");
+        } else {
+            throw new RuntimeException("type");
+        }
 
-                        if (iter.hasNext()) {
-                            line.append(iter.next().getName());
+        if (entry.getCheckSum() != 0) {
+            line.append("x.crc32=").append(Checksum.formatChecksum(entry.getCheckSum())).append(';');
+        }
 
-                            while (iter.hasNext()) {
-                                line.append("," + iter.next().getName());
-                            }
-                        }
+        line.append("size=").append(entry.getSize()).append(';');
+        line.append("modify=").append(MLSTTIME.format(Instant.ofEpochMilli(entry.lastModified()))).append(';');
 
-                        line.append(";");
-                    }
+        line.append("unix.owner=").append(entry.getUsername()).append(';');
+        line.append("unix.group=").append(entry.getGroup()).append(';');
 
-                    if (isFileHandle && file.getXfertime() != 0) {
-                        line.append("x.xfertime=" + file.getXfertime() + ";");
-                    }
+        if (entry.getSlaves() != null) {
+            line.append("x.slaves=");
+            line.append(String.join(",", entry.getSlaves()));
+            line.append(';');
+        }
 
-                    line.append(" " + inode.getName());
-                    line.append(NEWLINE);
-                    output.append(line.toString());
-                } catch (FileNotFoundException e) {
-                    // entry was deleted whilst listing the dir, it will simply be omitted
-                }
-            }
+        if (entry.getXfertime() != 0) {
+            line.append("x.xfertime=").append(entry.getXfertime()).append(';');
         }
-        return output.toString();
-    }
 
-    private String toList(Collection<InodeHandleInterface> listElements, boolean fulldate, boolean slavenames) {
-        StringBuilder output = new StringBuilder();
+        line.append(' ').append(entry.getName());
+        line.append(NEWLINE);
+    }
 
-        for (InodeHandleInterface inode : listElements) {
-            try {
-                StringBuilder line = new StringBuilder();
-                if (inode instanceof FileHandle
-                        && !((FileHandle) inode).isAvailable()) {
-                    line.append("----------");
-                } else {
-                    addPermission(inode, line);
-                }
+    private void appendList(StringBuilder line, ListEntry entry, boolean fulldate, boolean slavenames) {
+        if (!entry.isAvailable()) {
+            line.append("----------");
+        } else {
+            addPermission(entry, line);
+        }
 
-                line.append(DELIM);
-                line.append((inode.isDirectory() ? "3" : "1"));
-                line.append(DELIM);
-                line.append(padToLength(inode.getUsername(), 8));
-                line.append(DELIM);
-                if (inode.isFile() && slavenames && inode instanceof FileHandle) {
-                    // Replace group name with a list of all slaves file exist on.
-                    line.append(padToLength(getSlaveList((FileHandle) inode), 8));
-                } else {
-                    line.append(padToLength(inode.getGroup(), 8));
-                }
-                line.append(DELIM);
-                line.append(inode.getSize());
-                line.append(DELIM);
-                line.append(getUnixDate(inode.lastModified(), fulldate));
-                line.append(DELIM);
-                line.append(inode.getName());
-                if (inode.isLink()) {
-                    line.append(DELIM + "->" + DELIM + ((LinkHandle) inode).getTargetString());
-                }
-                line.append(NEWLINE);
-                output.append(line.toString());
-            } catch (FileNotFoundException e) {
-                // entry was deleted whilst listing the dir, it will simply be omitted
-            }
+        line.append(DELIM);
+        line.append((entry.isDirectory() ? "3" : "1"));
+        line.append(DELIM);
+        line.append(padToLength(entry.getUsername(), 8));
+        line.append(DELIM);
+        if (slavenames && entry.getSlaves() != null) {
+            // Replace group name with a list of all slaves file exist on.
+            line.append(padToLength(getSlaveList(entry), 8));
+        } else {
+            line.append(padToLength(entry.getGroup(), 8));
         }
-        return output.toString();
+        line.append(DELIM);
+        line.append(entry.getSize());
+        line.append(DELIM);
+        line.append(getUnixDate(entry.lastModified(), fulldate));
+        line.append(DELIM);
+        line.append(entry.getName());
+        if (entry.isLink()) {
+            line.append(DELIM).append("->").append(DELIM).append(entry.getLinkTarget());
+        }
+        line.append(NEWLINE);
     }
 
-    private String getSlaveList(FileHandle file) {
-        String slaveList = "";
-        try {
-            slaveList = StringUtils.join(file.getSlaveNames(), ",");
-        } catch (FileNotFoundException e) {
-            //File removed
-        }
-        return slaveList;
+    private String getSlaveList(ListEntry entry) {
+        return entry.getSlaves() == null ? "" : StringUtils.join(entry.getSlaves(), ",");
     }
 
-    protected void addPermission(InodeHandleInterface inode, StringBuilder output) throws FileNotFoundException {
+    protected void addPermission(ListEntry inode, StringBuilder output) {
         if (inode.isLink()) {
             output.append("l");
         } else if (inode.isDirectory()) {
@@ -448,19 +545,15 @@ public class ListHandler extends CommandInterface {
     }
 
     protected String getUnixDate(long date, boolean fulldate) {
-        Date date1 = new Date(date);
-        long dateTime = date1.getTime();
-
-        if (dateTime < 0) {
+        if (date < 0) {
             return "------------";
         }
 
-        Calendar cal = new GregorianCalendar();
-        cal.setTime(date1);
+        ZonedDateTime dateTime = Instant.ofEpochMilli(date).atZone(ZoneId.systemDefault());
 
-        String firstPart = MONTHS[cal.get(Calendar.MONTH)] + ' ';
+        String firstPart = MONTHS[dateTime.getMonthValue() - 1] + ' ';
 
-        String dateStr = String.valueOf(cal.get(Calendar.DATE));
+        String dateStr = String.valueOf(dateTime.getDayOfMonth());
 
         if (dateStr.length() == 1) {
             dateStr = ' ' + dateStr;
@@ -471,17 +564,11 @@ public class ListHandler extends CommandInterface {
         long nowTime = System.currentTimeMillis();
 
         if (fulldate) {
-            synchronized (FULL) {
-                return firstPart + FULL.format(date1);
-            }
-        } else if (Math.abs(nowTime - dateTime) > (183L * 24L * 60L * 60L * 1000L)) {
-            synchronized (AFTER_SIX) {
-                return firstPart + AFTER_SIX.format(date1);
-            }
+            return firstPart + FULL.format(dateTime);
+        } else if (Math.abs(nowTime - date) > (183L * 24L * 60L * 60L * 1000L)) {
+            return firstPart + AFTER_SIX.format(dateTime);
         } else {
-            synchronized (BEFORE_SIX) {
-                return firstPart + BEFORE_SIX.format(date1);
-            }
+            return firstPart + BEFORE_SIX.format(dateTime);
         }
     }
 
@@ -503,4 +590,46 @@ public class ListHandler extends CommandInterface {
     public ArrayList<AddListElementsInterface> getAddons() {
         return new ArrayList<>(_listAddons);
     }
+
+    private static class DirectorySnapshot {
+        private final List<InodeHandle> _visible;
+        private final String _visibilityClass;
+
+        private DirectorySnapshot(List<InodeHandle> visible, String visibilityClass) {
+            _visible = visible;
+            _visibilityClass = visibilityClass;
+        }
+
+        private List<InodeHandle> getVisible() {
+            return _visible;
+        }
+
+        private String getVisibilityClass() {
+            return _visibilityClass;
+        }
+    }
+
+    private static class CachedEntries {
+        private final long _version;
+        private final long _availability;
+        private final List<ListEntry> _entries;
+
+        private CachedEntries(long version, long availability, List<ListEntry> entries) {
+            _version = version;
+            _availability = availability;
+            _entries = Collections.unmodifiableList(entries);
+        }
+
+        private long getVersion() {
+            return _version;
+        }
+
+        private long getAvailability() {
+            return _availability;
+        }
+
+        private List<ListEntry> getEntries() {
+            return _entries;
+        }
+    }
 }
@@ -23,6 +23,9 @@ import org.drftpd.master.GlobalContext;
 import org.drftpd.master.commands.*;
 import org.drftpd.master.network.Session;
 import org.drftpd.master.slavemanagement.RemoteSlave;
+import org.drftpd.master.slavemanagement.SlaveConnectStats;
+import org.drftpd.master.slavemanagement.SlaveManager;
+import org.drftpd.master.util.LatencyHistogram;
 import org.drftpd.master.util.Time;
 import org.drftpd.slave.exceptions.ObjectNotFoundException;
 
@@ -38,12 +41,13 @@ public class ServerStatus extends CommandInterface {
 
     private ResourceBundle _bundle;
 
+    private StandardCommandManager _cManager;
 
     public void initialize(String method, String pluginName, StandardCommandManager cManager) {
         super.initialize(method, pluginName, cManager);
         StatusSubscriber.checkSubscription();
         _bundle = cManager.getResourceBundle();
-
+        _cManager = cManager;
     }
 
     public CommandResponse doMasterUptime(CommandRequest request) {
@@ -200,5 +204,106 @@ public class ServerStatus extends CommandInterface {
 
         return response;
     }
-} 
 
+    public CommandResponse doPerf(CommandRequest request) throws ImproperUsageException {
+        CommandResponse response = StandardCommandManager.genericResponse("RESPONSE_200_COMMAND_OK");
+        Map<String, Object> env = new HashMap<>();
+        Session session = request.getSession();
+
+        StringTokenizer st = new StringTokenizer(request.hasArgument() ? request.getArgument() : "commands");
+        String type = st.nextToken().toLowerCase();
+        int minutes = LatencyHistogram.WINDOW_MINUTES;
+        if (st.hasMoreTokens()) {
+            String window = st.nextToken().toLowerCase();
+            if (window.equals("all")) {
+                minutes = 0;
+            } else {
+                try {
+                    minutes = Integer.parseInt(window);
+                } catch (NumberFormatException e) {
+                    throw new ImproperUsageException();
+                }
+                if (minutes < 1 || minutes > LatencyHistogram.WINDOW_MINUTES) {
+                    throw new ImproperUsageException();
+                }
+            }
+        }
+
+        if (type.equals("events")) {
+            env.put("queued", GlobalContext.getEventService().getQueueSize());
+            env.put("hooks.queued", PostHookExecutor.getPostHookExecutor().getQueueSize());
+            response.addComment(session.jprintf(_bundle, env, "perf.events.header"));
+            for (Map.Entry<String, String> entry : GlobalContext.getEventService().getSubscriberStatus().entrySet()) {
+                env.put("name", entry.getKey());
+                env.put("status", entry.getValue());
+                response.addComment(session.jprintf(_bundle, env, "perf.events"));
+            }
+            return response;
+        }
+
+        // hooks attached to several commands are added up
+        Map<String, LatencyHistogram.Snapshot> snapshots = new HashMap<>();
+        if (type.equals("slaves")) {
+            SlaveManager slaveManager = GlobalContext.getGlobalContext().getSlaveManager();
+            SlaveConnectStats stats = slaveManager.getConnectStats();
+            env.put("accepted", stats.getAccepted());
+            env.put("connected", stats.getConnected());
+            env.put("rejected", stats.getRejected());
+            env.put("timedout", stats.getTimedOut());
+            env.put("failed", stats.getFailed());
+            env.put("handshakes", slaveManager.getPendingHandshakes());
+            env.put("remerges", slaveManager.getRunningRemerges());
+            env.put("remerges.waiting", slaveManager.getWaitingRemerges());
+            response.addComment(session.jprintf(_bundle, env, "perf.slaves.header"));
+            response.addComment(session.jprintf(_bundle, env, "perf.slaves.pending"));
+            snapshots.put("TLS handshake", getSnapshot(stats.getTLSHandshakeLatency(), minutes));
+            snapshots.put("Name exchange", getSnapshot(stats.getIdentifyLatency(), minutes));
+            snapshots.put("Accept to connected", getSnapshot(stats.getConnectLatency(), minutes));
+        } else {
+            for (Map.Entry<String, CommandInstanceContainer> entry : _cManager.getCommandHandlersMap().entrySet()) {
+                if (type.equals("commands")) {
+                    snapshots.put(entry.getKey(), getSnapshot(entry.getValue().getLatency(), minutes));
+                } else if (type.equals("hooks")) {
+                    for (HookContainer hook : entry.getValue().getCommandInterfaceInstance().getHooks()) {
+                        snapshots.computeIfAbsent(hook.getName(), k -> new LatencyHistogram.Snapshot())
+                                .add(getSnapshot(hook.getLatency(), minutes));
+                    }
+                } else {
+                    throw new ImproperUsageException();
+                }
+            }
+        }
+
+        List<Map.Entry<String, LatencyHistogram.Snapshot>> sorted = new ArrayList<>(snapshots.entrySet());
+        sorted.removeIf(entry -> entry.getValue().getCount() == 0);
+        // slowest first
+        sorted.sort((a, b) -> Long.compare(b.getValue().getPercentile(99), a.getValue().getPercentile(99)));
+
+        env.put("window", minutes == 0 ? "since startup" : "the last " + minutes + " minutes");
+        response.addComment(session.jprintf(_bundle, env, "perf.header"));
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : sorted) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue();
+            env.put("name", entry.getKey());
+            env.put("count", snapshot.getCount());
+            env.put("p50", formatLatency(snapshot.getPercentile(50)));
+            env.put("p99", formatLatency(snapshot.getPercentile(99)));
+            env.put("max", formatLatency(snapshot.getMax()));
+            response.addComment(session.jprintf(_bundle, env, "perf.latency"));
+        }
+        return response;
+    }
+
+    private static LatencyHistogram.Snapshot getSnapshot(LatencyHistogram histogram, int minutes) {
+        return minutes == 0 ? histogram.getSnapshot() : histogram.getSnapshot(minutes);
+    }
+
+    private static String formatLatency(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        if (micros < 1000000) {
+            return String.format("%.1fms", micros / 1000D);
+        }
+        return Time.formatTime(micros / 1000);
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.logging.log4j.Logger;
 import org.drftpd.common.dynamicdata.KeyNotFoundException;
 import org.drftpd.common.exceptions.DuplicateElementException;
 import org.drftpd.common.exceptions.RemoteIOException;
+import org.drftpd.common.slave.HandlerPoolStatus;
 import org.drftpd.common.util.Bytes;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.commands.*;
@@ -232,10 +233,27 @@ public class SlaveManagement extends CommandInterface {
                 Map<String, Object> env = new HashMap<>();
                 env.put("slavename", slaveName);
                 env.put("renamesize", rslave.getRenameQueue().size());
-                env.put("remergesize", rslave.getRemergeQueue().size());
-                env.put("remergecrcsize", rslave.getCRCQueue().size());
+                env.put("remergesize", rslave.getRemergeQueueSize());
+                env.put("remergecrcsize", rslave.getCRCQueueSize());
                 response.addComment(request.getSession().jprintf(_bundle,
                         "slave.queues", env, request.getUser()));
+                List<HandlerPoolStatus> pools = rslave.getHandlerPools();
+                if (pools != null) {
+                    for (HandlerPoolStatus pool : pools) {
+                        env.put("pool", pool.getName());
+                        env.put("active", pool.getActiveThreads());
+                        env.put("threads", pool.getMaxThreads());
+                        env.put("queued", pool.getQueued());
+                        env.put("completed", pool.getCompleted());
+                        env.put("rejected", pool.getRejected());
+                        env.put("avgwait", pool.getAvgWait());
+                        env.put("maxwait", pool.getMaxWait());
+                        env.put("avgrun", pool.getAvgRun());
+                        env.put("maxrun", pool.getMaxRun());
+                        response.addComment(request.getSession().jprintf(_bundle,
+                                "slave.queues.pool", env, request.getUser()));
+                    }
+                }
                 return response;
             } else {
                 throw new ImproperUsageException();
@@ -307,7 +325,7 @@ public class SlaveManagement extends CommandInterface {
         rslave.setRemerging(true);
         try {
             rslave.fetchResponse(SlaveManager.getBasicIssuer().issueRemergeToSlave(rslave,
-                    request.getCurrentDirectory().getPath(), false, 0L, 0L, false), 0);
+                    request.getCurrentDirectory().getPath(), false, 0L, 0L, false, null), 0);
         } catch (RemoteIOException e) {
             rslave.setOffline("IOException during remerge()");
 
@@ -323,7 +341,7 @@ public class SlaveManagement extends CommandInterface {
         rslave.putRemergeQueue(new RemergeMessage(rslave));
 
         // Wait for remerge and crc queues to drain
-        while (!rslave.getRemergeQueue().isEmpty() && !rslave.getCRCQueue().isEmpty()) {
+        while (rslave.getRemergeQueueSize() > 0 && rslave.getCRCQueueSize() > 0) {
             try {
                 Thread.sleep(500);
             } catch (InterruptedException ignored) {}
@@ -477,8 +495,8 @@ public class SlaveManagement extends CommandInterface {
             return StandardCommandManager.genericResponse("RESPONSE_200_COMMAND_OK");
         } else if (command.equalsIgnoreCase("queues")) {
             env.put("renamesize", rslave.getRenameQueue().size());
-            env.put("remergesize", rslave.getRemergeQueue().size());
-            env.put("remergecrcsize", rslave.getCRCQueue().size());
+            env.put("remergesize", rslave.getRemergeQueueSize());
+            env.put("remergecrcsize", rslave.getCRCQueueSize());
             response.addComment(session.jprintf(_bundle,
                     "slave.queues", env, request.getUser()));
             return response;
@@ -604,8 +622,8 @@ public class SlaveManagement extends CommandInterface {
             }
 
             int renameSize = rslave.getRenameQueue().size();
-            int remergeSize = rslave.getRemergeQueue().size();
-            int remergeCRCSize = rslave.getCRCQueue().size();
+            int remergeSize = rslave.getRemergeQueueSize();
+            int remergeCRCSize = rslave.getCRCQueueSize();
             if (!rslave.isOnline()) {
                 arr.add(rslave.getName() + " is offline");
             } else if (!rslave.isRemerging()) {
@@ -614,15 +632,19 @@ public class SlaveManagement extends CommandInterface {
                 Map<String, Object> env = new HashMap<>();
                 env.put("slavename", rslave.getName());
                 env.put("renamesize", rslave.getRenameQueue().size());
-                env.put("remergesize", rslave.getRemergeQueue().size());
-                env.put("remergecrcsize", rslave.getCRCQueue().size());
+                env.put("remergesize", rslave.getRemergeQueueSize());
+                env.put("remergecrcsize", rslave.getCRCQueueSize());
                 arr.add((request.getSession().jprintf(_bundle,
                         "slave.queues", env, request.getUser())));
             } else {
                 arr.add(rslave.getName() + " remergequeue size is 0 but remerge is ongoing");
             }
         }
-        arr.add("Total commit:" + CommitManager.getCommitManager().getQueueSize());
+        CommitManager commitManager = CommitManager.getCommitManager();
+        arr.add("Total commit:" + commitManager.getQueueSize() + " (oldest " + commitManager.getOldestAge()
+                + "ms, " + commitManager.getWriteCount() + " written, " + commitManager.getFailureCount()
+                + " failed, write avg " + commitManager.getAverageWriteTime() + "ms/max "
+                + commitManager.getMaxWriteTime() + "ms)");
 
         CommandResponse response = StandardCommandManager.genericResponse("RESPONSE_200_COMMAND_OK");
         for (String str : arr) {
@@ -26,6 +26,7 @@ import org.drftpd.common.util.PortRange;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.permissions.ExtendedPermissions;
 import org.drftpd.master.permissions.PathPermission;
+import org.drftpd.master.permissions.PathPermissionIndex;
 import org.drftpd.master.permissions.Permission;
 import org.drftpd.master.permissions.PermissionDefinition;
 import org.drftpd.master.usermanager.User;
@@ -56,7 +57,7 @@ public class ConfigManager implements ConfigInterface {
     private static final File permsFile = ConfigLoader.loadConfigFile("perms.conf", false);
     private static final String masterConfigFile = "master.conf";
 
-    private static final Key<Hashtable<String, ArrayList<PathPermission>>> PATHPERMS = new Key<>(ConfigManager.class, "pathPerms");
+    private static final Key<Hashtable<String, PathPermissionIndex>> PATHPERMS = new Key<>(ConfigManager.class, "pathPerms");
     private static final Key<Hashtable<String, Permission>> PERMS = new Key<>(ConfigManager.class, "perms");
 
     private String hideInStats = "";
@@ -262,7 +263,7 @@ public class ConfigManager implements ConfigInterface {
         _keyedMap.setObject(PERMS, new Hashtable<>());
     }
 
-    private Hashtable<String, ArrayList<PathPermission>> getPathPermsMap() {
+    private Hashtable<String, PathPermissionIndex> getPathPermsMap() {
         return _keyedMap.getObject(PATHPERMS, null);
     }
 
@@ -377,15 +378,7 @@ public class ConfigManager implements ConfigInterface {
     }
 
     public void addPathPermission(String directive, PathPermission perm) {
-        ArrayList<PathPermission> list;
-        if (!getPathPermsMap().containsKey(directive)) {
-            list = new ArrayList<>();
-            getPathPermsMap().put(directive, list);
-        } else {
-            list = getPathPermsMap().get(directive);
-        }
-
-        list.add(perm);
+        getPathPermsMap().computeIfAbsent(directive, k -> new PathPermissionIndex()).add(perm);
     }
 
     public boolean checkPathPermission(String directive, User user, DirectoryHandle path) {
@@ -393,12 +386,11 @@ public class ConfigManager implements ConfigInterface {
     }
 
     public boolean checkPathPermission(String directive, User user, DirectoryHandle path, boolean defaults) {
-        ArrayList<PathPermission> perms = getPathPermsMap().get(directive);
-        if (perms != null && !perms.isEmpty()) {
-            for (PathPermission perm : perms) {
-                if (perm.checkPath(path)) {
-                    return perm.check(user);
-                }
+        PathPermissionIndex perms = getPathPermsMap().get(directive);
+        if (perms != null) {
+            PathPermission perm = perms.firstMatch(path);
+            if (perm != null) {
+                return perm.check(user);
             }
         }
 
@@ -17,92 +17,350 @@
  */
 package org.drftpd.master.event;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bushe.swing.event.ProxySubscriber;
 import org.bushe.swing.event.ThreadSafeEventService;
+import org.drftpd.common.util.PropertyHelper;
+import org.drftpd.master.vfs.event.*;
 
 import java.lang.reflect.Type;
+import java.util.*;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Event service that delivers asynchronously published events on a pool of dispatcher threads.
+ * <p>
+ * Every subscriber has a queue of its own, so a slow subscriber only delays itself. Each subscriber
+ * still receives its events in the order they were published, events for different subscribers are
+ * delivered in parallel.
+ * <p>
+ * When event.coalesce is enabled, VFS events that only carry the new state of an inode (size, last
+ * modified, slaves, ownership and refresh requests) drop an event of the same type for the same path
+ * that the subscriber has not received yet. The newer event is queued at the end as usual, so events
+ * are never delivered in a different order than they were published. Once a subscriber has too many
+ * events queued, publishers wait a moment for it to catch up.
+ *
  * @author djb61
  * @version $Id$
  */
 public final class AsyncThreadSafeEventService extends ThreadSafeEventService {
+    private static final Logger logger = LogManager.getLogger(AsyncThreadSafeEventService.class);
+
+    private static final int DEFAULT_THREADS = 4;
+
+    // events delivered to a subscriber before its dispatcher thread moves on to the next subscriber
+    private static final int BATCH_SIZE = 64;
+
+    private final Map<Object, SubscriberQueue> _queues = new WeakHashMap<>();
+
+    private final ThreadPoolExecutor _dispatcher;
 
-    private final LinkedBlockingQueue<QueuedAsyncEvent> _eventQueue = new LinkedBlockingQueue<>();
+    private volatile int _maxQueueSize = 100000;
+
+    private volatile long _queueWait = 1000L;
+
+    private volatile boolean _coalesce = false;
 
     public AsyncThreadSafeEventService() {
         super();
-        new Thread(new EventHandler()).start();
+        AtomicInteger threadCount = new AtomicInteger();
+        _dispatcher = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new DispatcherThread(r, "AsyncEventHandler-" + threadCount.incrementAndGet()));
+        _dispatcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Applies the event.* settings of the master configuration.
+     */
+    public void configure(Properties cfg) {
+        int threads = Integer.parseInt(PropertyHelper.getProperty(cfg, "event.threads",
+                String.valueOf(DEFAULT_THREADS)).trim());
+        threads = Math.max(1, threads);
+        if (threads > _dispatcher.getMaximumPoolSize()) {
+            _dispatcher.setMaximumPoolSize(threads);
+            _dispatcher.setCorePoolSize(threads);
+        } else {
+            _dispatcher.setCorePoolSize(threads);
+            _dispatcher.setMaximumPoolSize(threads);
+        }
+        _maxQueueSize = Integer.parseInt(PropertyHelper.getProperty(cfg, "event.queue.max", "100000").trim());
+        _queueWait = Long.parseLong(PropertyHelper.getProperty(cfg, "event.queue.wait", "1000").trim());
+        _coalesce = Boolean.parseBoolean(PropertyHelper.getProperty(cfg, "event.coalesce", "false").trim());
     }
 
     public void publishAsync(Object event) {
-        _eventQueue.add(new QueuedAsyncEvent(event));
+        if (event == null) {
+            throw new IllegalArgumentException("Cannot publish null event.");
+        }
+        enqueue(getSubscribers(event.getClass()), event, null, null);
     }
 
     public void publishAsync(Type genericType, Object event) {
-        _eventQueue.add(new QueuedAsyncEvent(genericType, event));
+        if (event == null) {
+            throw new IllegalArgumentException("Cannot publish null event.");
+        }
+        enqueue(getSubscribers(genericType), event, null, null);
     }
 
     public void publishAsync(String topicName, Object eventObj) {
-        _eventQueue.add(new QueuedAsyncEvent(topicName, eventObj));
+        enqueue(getSubscribers(topicName), null, topicName, eventObj);
     }
 
+    /**
+     * @return the number of events waiting to be delivered or being delivered right now, summed over all
+     * subscribers.
+     */
     public int getQueueSize() {
-        return _eventQueue.size();
+        int size = 0;
+        for (SubscriberQueue queue : getSubscriberQueues()) {
+            size += queue.size();
+        }
+        return size;
     }
 
-    private static class QueuedAsyncEvent {
+    /**
+     * Describes the queue of every subscriber, keyed by the subscriber's class name:
+     * queued events, how long the oldest one has been waiting, delivered and coalesced
+     * events, delivery throughput and the last and maximum time an event waited.
+     */
+    public Map<String, String> getSubscriberStatus() {
+        Map<String, String> status = new TreeMap<>();
+        for (SubscriberQueue queue : getSubscriberQueues()) {
+            String name = queue.getName();
+            while (status.containsKey(name)) {
+                name += "'";
+            }
+            status.put(name, queue.getStatus());
+        }
+        return status;
+    }
 
-        private final Object _event;
-        private String _topic;
-        private Type _genericType;
+    private List<SubscriberQueue> getSubscriberQueues() {
+        synchronized (_queues) {
+            return new ArrayList<>(_queues.values());
+        }
+    }
 
-        private QueuedAsyncEvent(Object event) {
-            _event = event;
+    private void enqueue(List<?> subscribers, Object event, String topic, Object topicData) {
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
         }
+        // the methods of one object share a queue so they see the events in publishing order
+        Map<SubscriberQueue, List<Object>> grouped = new LinkedHashMap<>();
+        synchronized (_queues) {
+            for (Object subscriber : subscribers) {
+                Object real = subscriber;
+                if (subscriber instanceof ProxySubscriber) {
+                    real = ((ProxySubscriber) subscriber).getProxiedSubscriber();
+                    if (real == null) {
+                        // garbage collected, cleaned up on delivery
+                        real = subscriber;
+                    }
+                }
+                SubscriberQueue queue = _queues.get(real);
+                if (queue == null) {
+                    queue = new SubscriberQueue(real.getClass().getName());
+                    _queues.put(real, queue);
+                }
+                grouped.computeIfAbsent(queue, k -> new ArrayList<>(1)).add(subscriber);
+            }
+        }
+        String coalesceKey = _coalesce ? getCoalesceKey(event) : null;
+        for (Map.Entry<SubscriberQueue, List<Object>> entry : grouped.entrySet()) {
+            entry.getKey().add(new QueuedAsyncEvent(event, topic, topicData, entry.getValue(), coalesceKey));
+        }
+    }
 
-        private QueuedAsyncEvent(String topic, Object event) {
-            _topic = topic;
-            _event = event;
+    /**
+     * @return a key shared by all events that only differ in the state they carry, null if the event
+     * must always be delivered.
+     */
+    private static String getCoalesceKey(Object event) {
+        if (event instanceof VirtualFileSystemSizeEvent
+                || event instanceof VirtualFileSystemLastModifiedEvent
+                || event instanceof VirtualFileSystemSlaveEvent
+                || event instanceof VirtualFileSystemOwnershipEvent
+                || event instanceof VirtualFileSystemInodeRefreshEvent) {
+            return event.getClass().getName() + ':' + ((VirtualFileSystemEvent) event).getImmutableInode().getPath();
         }
+        return null;
+    }
 
-        private QueuedAsyncEvent(Type genericType, Object event) {
-            _genericType = genericType;
+    private static boolean isDispatcherThread() {
+        return Thread.currentThread() instanceof DispatcherThread;
+    }
+
+    private static final class DispatcherThread extends Thread {
+        private DispatcherThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+
+    private static final class QueuedAsyncEvent {
+
+        private final Object _event;
+        private final String _topic;
+        private final Object _topicData;
+        private final List<Object> _subscribers;
+        private final String _coalesceKey;
+        private final long _queuedAt = System.nanoTime();
+
+        private QueuedAsyncEvent(Object event, String topic, Object topicData, List<Object> subscribers, String coalesceKey) {
             _event = event;
+            _topic = topic;
+            _topicData = topicData;
+            _subscribers = subscribers;
+            _coalesceKey = coalesceKey;
         }
+    }
+
+    /**
+     * The events waiting for one subscriber. At most one dispatcher thread delivers them at a time.
+     */
+    private final class SubscriberQueue implements Runnable {
+
+        private final String _name;
+
+        // insertion ordered, so coalesced events can be taken out of the middle cheaply
+        private final LinkedHashSet<QueuedAsyncEvent> _events = new LinkedHashSet<>();
+
+        // queued events that newer ones may still replace, by coalesce key
+        private final Map<String, QueuedAsyncEvent> _coalescable = new HashMap<>();
+
+        private final long _created = System.currentTimeMillis();
+
+        private boolean _scheduled = false;
 
-        private Object getEvent() {
-            return _event;
+        private int _delivering = 0;
+
+        private long _delivered = 0L;
+
+        private long _coalesced = 0L;
+
+        private long _lastLag = 0L;
+
+        private long _maxLag = 0L;
+
+        private SubscriberQueue(String name) {
+            _name = name;
         }
 
-        private String getTopic() {
-            return _topic;
+        private synchronized void add(QueuedAsyncEvent queued) {
+            if (!coalesce(queued) && _events.size() >= _maxQueueSize && !isDispatcherThread()) {
+                // a dispatcher thread never waits, it might be the one that has to make room
+                long deadline = System.currentTimeMillis() + _queueWait;
+                long remaining = _queueWait;
+                while (_events.size() >= _maxQueueSize && remaining > 0) {
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (_events.size() >= _maxQueueSize) {
+                    logger.warn("{} has {} events queued and is not keeping up", _name, _events.size());
+                }
+                coalesce(queued);
+            }
+            if (queued._coalesceKey != null) {
+                _coalescable.put(queued._coalesceKey, queued);
+            } else if (!_coalescable.isEmpty() && queued._event instanceof VirtualFileSystemEvent) {
+                // keep the state these paths had before this event, later state events queue up behind it
+                ImmutableInodeHandle inode = ((VirtualFileSystemEvent) queued._event).getImmutableInode();
+                stopCoalescing(inode.getPath(), inode.isDirectory());
+                if (queued._event instanceof VirtualFileSystemRenameEvent) {
+                    stopCoalescing(((VirtualFileSystemRenameEvent) queued._event).getSource().getPath(), inode.isDirectory());
+                }
+            }
+            _events.add(queued);
+            if (!_scheduled) {
+                _scheduled = true;
+                _dispatcher.execute(this);
+            }
         }
 
-        private Type getGenericType() {
-            return _genericType;
+        /**
+         * Drops the queued event the given one supersedes.
+         *
+         * @return true if an event was dropped.
+         */
+        private boolean coalesce(QueuedAsyncEvent queued) {
+            if (queued._coalesceKey == null) {
+                return false;
+            }
+            QueuedAsyncEvent pending = _coalescable.remove(queued._coalesceKey);
+            if (pending == null) {
+                return false;
+            }
+            _events.remove(pending);
+            _coalesced++;
+            return true;
         }
-    }
 
-    private class EventHandler implements Runnable {
+        private void stopCoalescing(String path, boolean subtree) {
+            String childPrefix = path + "/";
+            _coalescable.keySet().removeIf(key -> {
+                String keyPath = key.substring(key.indexOf(':') + 1);
+                return keyPath.equals(path) || (subtree && keyPath.startsWith(childPrefix));
+            });
+        }
 
         public void run() {
-            Thread.currentThread().setName("AsyncEventHandler");
-            //noinspection InfiniteLoopStatement
-            while (true) {
-                try {
-                    QueuedAsyncEvent queuedEvent = _eventQueue.take();
-                    if (queuedEvent.getTopic() != null) {
-                        publish(queuedEvent.getTopic(), queuedEvent.getEvent());
-                    } else if (queuedEvent.getGenericType() != null) {
-                        publish(queuedEvent.getGenericType(), queuedEvent.getEvent());
-                    } else {
-                        publish(queuedEvent.getEvent());
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                QueuedAsyncEvent queued;
+                synchronized (this) {
+                    Iterator<QueuedAsyncEvent> iter = _events.iterator();
+                    if (!iter.hasNext()) {
+                        _scheduled = false;
+                        return;
+                    }
+                    queued = iter.next();
+                    iter.remove();
+                    if (queued._coalesceKey != null) {
+                        _coalescable.remove(queued._coalesceKey, queued);
                     }
-                } catch (InterruptedException e) {
-                    // Do nothing just loop and try again
+                    _delivering++;
+                    notifyAll();
+                }
+                long lag = (System.nanoTime() - queued._queuedAt) / 1000000L;
+                try {
+                    publish(queued._event, queued._topic, queued._topicData, queued._subscribers,
+                            Collections.emptyList(), null);
+                } catch (RuntimeException e) {
+                    logger.error("Exception delivering an event to {}", _name, e);
+                }
+                synchronized (this) {
+                    _delivering--;
+                    _delivered++;
+                    _lastLag = lag;
+                    _maxLag = Math.max(_maxLag, lag);
                 }
             }
+            // give the other subscribers a turn
+            _dispatcher.execute(this);
+        }
+
+        private String getName() {
+            return _name;
+        }
+
+        private synchronized int size() {
+            return _events.size() + _delivering;
+        }
+
+        private synchronized String getStatus() {
+            QueuedAsyncEvent oldest = _events.isEmpty() ? null : _events.iterator().next();
+            long waiting = oldest == null ? 0L : (System.nanoTime() - oldest._queuedAt) / 1000000L;
+            long seconds = Math.max(1L, (System.currentTimeMillis() - _created) / 1000L);
+            return _events.size() + " queued (oldest " + waiting + "ms), " + _delivered + " delivered ("
+                    + (_delivered / seconds) + "/s), " + _coalesced + " coalesced, lag " + _lastLag + "ms last, "
+                    + _maxLag + "ms max";
         }
     }
 }
@@ -47,6 +47,7 @@ public class AdvancedSearchParams {
     private String _sortField;
     private Boolean _sortOrder = false;
     private Integer _limit;
+    private boolean _current = false;
     private final KeyedMap<Key<?>, Object> _extensionMap;
 
     public AdvancedSearchParams() {
@@ -193,6 +194,19 @@ public class AdvancedSearchParams {
         _limit = limit;
     }
 
+    public boolean isCurrent() {
+        return _current;
+    }
+
+    /**
+     * @param current Also return inodes changed so recently the index does not show them yet, meant for checks
+     *                like dupe checks that must see recent uploads. Only the start directory, the inode type
+     *                and the exact name are checked for these.
+     */
+    public void setCurrent(boolean current) {
+        _current = current;
+    }
+
     public <T> T getExtensionData(Key<T> key) throws KeyNotFoundException {
         return _extensionMap.getObject(key);
     }
@@ -0,0 +1,464 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.master.vfs.VirtualFileSystem;
+import org.drftpd.master.vfs.event.ImmutableInodeHandle;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Sits between the VFS events and the {@link IndexEngineInterface} so indexing is kept off the event thread.
+ * <p>
+ * Operations are applied in the order they were queued, in batches, by this thread.
+ * Adds and updates of a path that is still waiting in the queue are coalesced: an
+ * {@link ImmutableInodeHandle} reads the live inode, so a single document update picks up all of them.
+ * Deletes cancel what is still pending for the path, renames end coalescing for everything queued before them.
+ * <p>
+ * An operation waits up to the configured delay so bursts of events (an upload changes the size,
+ * slaves and last modified time of the file and of every parent directory) end up in the same batch.
+ * When the queue is full, whoever queues an operation blocks until the engine caught up.
+ * <p>
+ * Applied operations are kept for the retention time, so a lookup can add what its searcher does not show yet
+ * through {@link #applyPending(Map, Predicate, long)} instead of waiting for the queue.
+ *
+ * @version $Id$
+ */
+public class IndexUpdateQueue extends Thread {
+    private static final Logger logger = LogManager.getLogger(IndexUpdateQueue.class);
+
+    private static final String EXCEPTION_OCCURED_WHILE_INDEXING = "An exception occured while indexing, check stack trace";
+
+    private final IndexEngineInterface _engine;
+
+    private final ArrayDeque<Operation> _queue = new ArrayDeque<>();
+
+    private final HashMap<String, Operation> _pendingUpdates = new HashMap<>();
+
+    // the batch being applied and the operations applied within the retention time, oldest first
+    private List<Operation> _batch = Collections.emptyList();
+
+    private final ArrayDeque<Operation> _recent = new ArrayDeque<>();
+
+    private long _retention = 1000L;
+
+    private long _delay = 1000L;
+
+    private int _batchSize = 1000;
+
+    private int _maxSize = 100000;
+
+    private boolean _stop;
+
+    private boolean _applying;
+
+    private int _flushRequests;
+
+    private long _received;
+
+    private long _coalesced;
+
+    private long _applied;
+
+    private long _lastLag;
+
+    private long _lastBatchTime;
+
+    public IndexUpdateQueue(IndexEngineInterface engine) {
+        setName("IndexUpdateQueue");
+        setDaemon(true);
+        _engine = engine;
+    }
+
+    public synchronized void addInode(ImmutableInodeHandle inode) {
+        Operation op = new Operation(OperationType.ADD, null, inode);
+        _pendingUpdates.put(inode.getPath(), op);
+        enqueue(op);
+    }
+
+    public synchronized void updateInode(ImmutableInodeHandle inode) {
+        Operation pending = _pendingUpdates.get(inode.getPath());
+        if (pending != null) {
+            pending._inode = inode;
+            _received++;
+            _coalesced++;
+            return;
+        }
+        Operation op = new Operation(OperationType.UPDATE, null, inode);
+        _pendingUpdates.put(inode.getPath(), op);
+        enqueue(op);
+    }
+
+    public synchronized void deleteInode(ImmutableInodeHandle inode) {
+        Operation pending = _pendingUpdates.remove(inode.getPath());
+        if (pending != null) {
+            pending._cancelled = true;
+            _coalesced++;
+        }
+        enqueue(new Operation(OperationType.DELETE, null, inode));
+    }
+
+    public synchronized void renameInode(ImmutableInodeHandle fromInode, ImmutableInodeHandle toInode) {
+        // Anything queued for the old paths has to be applied before the rename moves the documents
+        _pendingUpdates.clear();
+        enqueue(new Operation(OperationType.RENAME, fromInode, toInode));
+    }
+
+    private void enqueue(Operation op) {
+        try {
+            while (_queue.size() >= _maxSize && !_stop && isAlive()) {
+                wait(1000L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _received++;
+        boolean wasEmpty = _queue.isEmpty();
+        _queue.add(op);
+        if (wasEmpty || _queue.size() >= _batchSize) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until everything queued before this call has been applied to the engine.
+     */
+    public void flush() {
+        if (!isAlive()) {
+            // Not started or already stopped, apply in the caller's thread
+            List<Operation> batch;
+            synchronized (this) {
+                batch = takeBatch(Integer.MAX_VALUE);
+                _batch = batch;
+            }
+            apply(batch);
+            synchronized (this) {
+                applied(batch);
+            }
+            return;
+        }
+        synchronized (this) {
+            _flushRequests++;
+            notifyAll();
+            try {
+                while (!_queue.isEmpty() || _applying) {
+                    wait(1000L);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                _flushRequests--;
+            }
+        }
+    }
+
+    /**
+     * Applies what is still queued and stops the thread.
+     */
+    public void stopQueue() {
+        synchronized (this) {
+            _stop = true;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() {
+        while (true) {
+            List<Operation> batch;
+            synchronized (this) {
+                try {
+                    while (true) {
+                        if (_queue.isEmpty()) {
+                            if (_stop) {
+                                return;
+                            }
+                            wait();
+                            continue;
+                        }
+                        if (_stop || _flushRequests > 0 || _queue.size() >= _batchSize) {
+                            break;
+                        }
+                        long due = _queue.peek()._queued + _delay - System.currentTimeMillis();
+                        if (due <= 0) {
+                            break;
+                        }
+                        wait(due);
+                    }
+                } catch (InterruptedException e) {
+                    logger.warn("{} was interrupted, applying what is left and stopping", getName());
+                    _stop = true;
+                }
+                batch = takeBatch(_batchSize);
+                _batch = batch;
+                _applying = true;
+                // wake up anyone waiting for room in the queue
+                notifyAll();
+            }
+            long start = System.currentTimeMillis();
+            try {
+                apply(batch);
+            } finally {
+                synchronized (this) {
+                    applied(batch);
+                    _applying = false;
+                    _lastBatchTime = System.currentTimeMillis() - start;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private List<Operation> takeBatch(int max) {
+        List<Operation> batch = new ArrayList<>(Math.min(max, _queue.size()));
+        long now = System.currentTimeMillis();
+        while (!_queue.isEmpty() && batch.size() < max) {
+            Operation op = _queue.poll();
+            if (op._cancelled) {
+                continue;
+            }
+            if (op._type == OperationType.ADD || op._type == OperationType.UPDATE) {
+                _pendingUpdates.remove(op._inode.getPath(), op);
+            }
+            _lastLag = now - op._queued;
+            batch.add(op);
+        }
+        return batch;
+    }
+
+    private void applied(List<Operation> batch) {
+        long now = System.currentTimeMillis();
+        for (Operation op : batch) {
+            op._appliedAt = now;
+            _recent.add(op);
+        }
+        _batch = Collections.emptyList();
+        while (!_recent.isEmpty() && now - _recent.peek()._appliedAt > _retention) {
+            _recent.poll();
+        }
+    }
+
+    /**
+     * Brings the results of a search up to date with what the searcher did not see yet: operations applied
+     * after it was opened, the batch being applied and everything still queued, in that order.
+     * <p>
+     * Adds and updates of inodes accepted by the filter are put in the results, others are taken out.
+     * A delete takes the path and everything below it out, a rename moves what was found below the old path
+     * along with it.
+     *
+     * @param results Paths found by the search mapped to their type, "d" or "f"
+     * @param filter  Tells whether a changed inode matches the search
+     * @param since   When the searcher was opened, operations applied before are already part of the results
+     */
+    public synchronized void applyPending(Map<String, String> results, Predicate<ImmutableInodeHandle> filter,
+                                          long since) {
+        for (Operation op : _recent) {
+            if (op._appliedAt >= since) {
+                applyPending(op, results, filter);
+            }
+        }
+        for (Operation op : _batch) {
+            applyPending(op, results, filter);
+        }
+        for (Operation op : _queue) {
+            if (!op._cancelled) {
+                applyPending(op, results, filter);
+            }
+        }
+    }
+
+    private static void applyPending(Operation op, Map<String, String> results,
+                                     Predicate<ImmutableInodeHandle> filter) {
+        String path = op._inode.getPath();
+        switch (op._type) {
+            case ADD:
+            case UPDATE:
+                if (filter.test(op._inode)) {
+                    results.put(path, op._inode.isDirectory() ? "d" : "f");
+                } else {
+                    results.remove(path);
+                }
+                break;
+            case DELETE:
+                removeTree(results, path);
+                break;
+            case RENAME:
+                String from = op._from.getPath();
+                for (Map.Entry<String, String> moved : removeTree(results, from).entrySet()) {
+                    if (!moved.getKey().equals(from)) {
+                        results.put(path + moved.getKey().substring(from.length()), moved.getValue());
+                    }
+                }
+                if (filter.test(op._inode)) {
+                    results.put(path, op._inode.isDirectory() ? "d" : "f");
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the removed entries
+     */
+    private static Map<String, String> removeTree(Map<String, String> results, String path) {
+        Map<String, String> removed = new HashMap<>();
+        String below = path + VirtualFileSystem.separator;
+        for (Iterator<Map.Entry<String, String>> iter = results.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<String, String> entry = iter.next();
+            if (entry.getKey().equals(path) || entry.getKey().startsWith(below)) {
+                removed.put(entry.getKey(), entry.getValue());
+                iter.remove();
+            }
+        }
+        return removed;
+    }
+
+    private void apply(List<Operation> batch) {
+        for (Operation op : batch) {
+            ImmutableInodeHandle inode;
+            synchronized (this) {
+                inode = op._inode;
+            }
+            try {
+                switch (op._type) {
+                    case ADD:
+                        _engine.addInode(inode);
+                        break;
+                    case UPDATE:
+                        _engine.updateInode(inode);
+                        break;
+                    case DELETE:
+                        _engine.deleteInode(inode);
+                        break;
+                    case RENAME:
+                        _engine.renameInode(op._from, inode);
+                        break;
+                }
+            } catch (IndexException e) {
+                logger.error(EXCEPTION_OCCURED_WHILE_INDEXING, e);
+            } catch (RuntimeException e) {
+                logger.error(EXCEPTION_OCCURED_WHILE_INDEXING, e);
+            }
+        }
+        synchronized (this) {
+            _applied += batch.size();
+        }
+    }
+
+    /**
+     * @param delay How long an operation may wait for more events on the same path, in milliseconds
+     */
+    public synchronized void setDelay(long delay) {
+        _delay = Math.max(0L, delay);
+        notifyAll();
+    }
+
+    /**
+     * @param retention How long applied operations are kept for {@link #applyPending(Map, Predicate, long)},
+     *                  in milliseconds. Has to cover the time a searcher may be used before it is reopened.
+     */
+    public synchronized void setRetention(long retention) {
+        _retention = Math.max(0L, retention);
+    }
+
+    /**
+     * @param batchSize Maximum number of operations applied in one go
+     */
+    public synchronized void setBatchSize(int batchSize) {
+        _batchSize = Math.max(1, batchSize);
+        notifyAll();
+    }
+
+    /**
+     * @param maxSize Number of queued operations at which queueing blocks
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        _maxSize = Math.max(1, maxSize);
+        notifyAll();
+    }
+
+    /**
+     * @return the number of operations waiting to be applied
+     */
+    public synchronized int getQueueSize() {
+        return _queue.size();
+    }
+
+    /**
+     * @return how long the oldest queued operation has been waiting, in milliseconds
+     */
+    public synchronized long getLag() {
+        Operation oldest = _queue.peek();
+        return oldest == null ? 0L : System.currentTimeMillis() - oldest._queued;
+    }
+
+    /**
+     * @return how long the last applied operation had been waiting, in milliseconds
+     */
+    public synchronized long getLastLag() {
+        return _lastLag;
+    }
+
+    /**
+     * @return how long applying the last batch took, in milliseconds
+     */
+    public synchronized long getLastBatchTime() {
+        return _lastBatchTime;
+    }
+
+    public synchronized long getReceivedCount() {
+        return _received;
+    }
+
+    /**
+     * @return the number of events that were merged into an operation already queued
+     */
+    public synchronized long getCoalescedCount() {
+        return _coalesced;
+    }
+
+    public synchronized long getAppliedCount() {
+        return _applied;
+    }
+
+    private enum OperationType {
+        ADD, UPDATE, DELETE, RENAME
+    }
+
+    private static class Operation {
+        private final OperationType _type;
+        private final ImmutableInodeHandle _from;
+        private ImmutableInodeHandle _inode;
+        private final long _queued;
+        private long _appliedAt;
+        private boolean _cancelled;
+
+        private Operation(OperationType type, ImmutableInodeHandle from, ImmutableInodeHandle inode) {
+            _type = type;
+            _from = from;
+            _inode = inode;
+            _queued = System.currentTimeMillis();
+        }
+    }
+}
@@ -17,32 +17,27 @@
  */
 package org.drftpd.master.indexation;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.bushe.swing.event.annotation.AnnotationProcessor;
 import org.bushe.swing.event.annotation.EventSubscriber;
-import org.drftpd.master.GlobalContext;
 import org.drftpd.master.vfs.event.*;
 
 /**
  * This VFS listener is responsible to notify the {@link IndexEngineInterface} that some
  * modification happened to the file system. It's implementation agnostic, so it can be used by
  * any implementation of indexes.
+ * <p>
+ * Modifications are handed to an {@link IndexUpdateQueue} which applies them to the engine
+ * off the event thread.
  *
  * @author fr0w
  * @version $Id: IndexVirtualFileSIndexVirtualFileSystemListener
  */
 public class IndexingVirtualFileSystemListener {
 
-    private static final Logger logger = LogManager.getLogger(IndexingVirtualFileSystemListener.class);
+    private final IndexUpdateQueue _queue;
 
-    private static final String EXCEPTION_OCCURED_WHILE_INDEXING = "An exception occured while indexing, check stack trace";
-
-    /**
-     * Shortcut to access the {@link IndexEngineInterface}
-     */
-    private static IndexEngineInterface getIndexEngine() {
-        return GlobalContext.getGlobalContext().getIndexEngine();
+    public IndexingVirtualFileSystemListener(IndexUpdateQueue queue) {
+        _queue = queue;
     }
 
     /**
@@ -121,11 +116,7 @@ public class IndexingVirtualFileSystemListener {
      * @param inode
      */
     protected void inodeUpdated(ImmutableInodeHandle inode) {
-        try {
-            getIndexEngine().updateInode(inode);
-        } catch (IndexException e) {
-            logger.error(EXCEPTION_OCCURED_WHILE_INDEXING, e);
-        }
+        _queue.updateInode(inode);
     }
 
     /**
@@ -137,11 +128,7 @@ public class IndexingVirtualFileSystemListener {
     public void inodeRenamed(VirtualFileSystemRenameEvent event) {
         if (bypassEvent(event))
             return;
-        try {
-            getIndexEngine().renameInode(event.getSource(), event.getImmutableInode());
-        } catch (IndexException e) {
-            logger.error(EXCEPTION_OCCURED_WHILE_INDEXING, e);
-        }
+        _queue.renameInode(event.getSource(), event.getImmutableInode());
     }
 
     /**
@@ -155,11 +142,7 @@ public class IndexingVirtualFileSystemListener {
         if (bypassEvent(event))
             return;
 
-        try {
-            getIndexEngine().addInode(event.getImmutableInode());
-        } catch (IndexException e) {
-            logger.error(EXCEPTION_OCCURED_WHILE_INDEXING, e);
-        }
+        _queue.addInode(event.getImmutableInode());
     }
 
     /**
@@ -172,11 +155,7 @@ public class IndexingVirtualFileSystemListener {
         if (bypassEvent(event))
             return;
 
-        try {
-            getIndexEngine().deleteInode(event.getImmutableInode());
-        } catch (IndexException e) {
-            logger.error(EXCEPTION_OCCURED_WHILE_INDEXING, e);
-        }
+        _queue.deleteInode(event.getImmutableInode());
     }
 
     /**
@@ -75,7 +75,8 @@ public class LuceneBackupThread extends Thread {
                 }
             }
 
-            if (_doBackups) {
+            // the index directory is replaced at the end of a rebuild
+            if (_doBackups && !_engine.isRebuilding()) {
                 // locking the writer object so that noone can use it.
                 // this might be useful.
                 synchronized (_engine.getWriter()) {
@@ -23,6 +23,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.BooleanClause.Occur;
@@ -48,9 +49,16 @@ import org.reflections.Reflections;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.SecureRandom;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Implementation of an Index engine based on <a href="http://lucene.apache.org">Apache Lucene</a>
@@ -65,6 +73,7 @@ import java.util.*;
 public class LuceneEngine implements IndexEngineInterface {
     protected static final Analyzer ANALYZER = new AlphanumericalAnalyzer();
     protected static final String INDEX_DIR = "userdata/index";
+    protected static final String REBUILD_DIR = "userdata/index.rebuild";
     private static final Logger logger = LogManager.getLogger(LuceneEngine.class);
     private static final String EXCEPTION_OCCURED_WHILE_SEARCHING = "An exception occured while indexing, check stack trace";
     private static final Document INDEX_DOCUMENT = new Document();
@@ -112,7 +121,23 @@ public class LuceneEngine implements IndexEngineInterface {
 
     private Directory _storage;
     private IndexWriter _iWriter;
-    private final Sort SORT = new Sort();
+    private SearcherManager _searcherManager;
+
+    // bumped for every searcher SearcherManager opens, cached query results are only valid for one generation
+    private final AtomicLong _searcherGeneration = new AtomicLong();
+    private final Object _refreshLock = new Object();
+    private volatile boolean _searcherStale = false;
+    private volatile long _lastSearcherRefresh = 0L;
+    private long _searcherRefreshInterval;
+
+    private LuceneQueryCache<Map<String, String>> _advancedFindCache;
+    private LuceneQueryCache<Set<String>> _findInodeCache;
+
+    private final LongAdder _searches = new LongAdder();
+    private final LongAdder _searchNanos = new LongAdder();
+    private final AtomicLong _maxSearchNanos = new AtomicLong();
+    private volatile long _lastSearchNanos = 0L;
+    private final LongAdder _searcherRefreshes = new LongAdder();
 
     private int _maxHitsNumber;
     private int _maxDocsBuffer;
@@ -122,9 +147,15 @@ public class LuceneEngine implements IndexEngineInterface {
 
     private LuceneMaintenanceThread _maintenanceThread;
     private LuceneBackupThread _backupThread;
+    private IndexUpdateQueue _updateQueue;
 
     private IndexingVirtualFileSystemListener _listener;
-    private boolean _rebuilding;
+
+    // writes and searches hold the read lock, swapping in a rebuilt index the write lock
+    private final ReentrantReadWriteLock _indexLock = new ReentrantReadWriteLock();
+    private volatile LuceneIndexRebuilder _rebuilder;
+    private int _rebuildThreads;
+    private int _rebuildMaxRate;
 
     private final List<IndexDataExtensionInterface> _dataExtensions = new ArrayList<>();
     private final List<QueryTermExtensionInterface> _queryExtensions = new ArrayList<>();
@@ -181,14 +212,16 @@ public class LuceneEngine implements IndexEngineInterface {
         if (_backupThread._maxNumberBackup > 0) {
             _backupThread.start();
         }
+        _updateQueue.start();
 
-        _listener = new IndexingVirtualFileSystemListener();
+        _listener = new IndexingVirtualFileSystemListener(_updateQueue);
         _listener.init();
     }
 
     private void createThreads() {
         _maintenanceThread = new LuceneMaintenanceThread();
         _backupThread = new LuceneBackupThread();
+        _updateQueue = new IndexUpdateQueue(this);
     }
 
     /**
@@ -204,11 +237,8 @@ public class LuceneEngine implements IndexEngineInterface {
                 _storage = FSDirectory.open(new File(INDEX_DIR));
             }
 
-            IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_36, ANALYZER);
-            conf.setMaxBufferedDocs(_maxDocsBuffer);
-            conf.setRAMBufferSizeMB(_maxRAMBufferSize);
-
-            _iWriter = new IndexWriter(_storage, conf);
+            _iWriter = new IndexWriter(_storage, makeWriterConfig());
+            _searcherManager = new SearcherManager(_iWriter, true, new GenerationSearcherFactory());
         } catch (IOException e) {
             closeAll();
 
@@ -216,6 +246,13 @@ public class LuceneEngine implements IndexEngineInterface {
         }
     }
 
+    private IndexWriterConfig makeWriterConfig() {
+        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_36, ANALYZER);
+        conf.setMaxBufferedDocs(_maxDocsBuffer);
+        conf.setRAMBufferSizeMB(_maxRAMBufferSize);
+        return conf;
+    }
+
     /**
      * Reads all tweak settings from <i>config/indexation.conf</i> if found,
      * otherwise use default values.
@@ -238,6 +275,26 @@ public class LuceneEngine implements IndexEngineInterface {
         _backupThread.setDoBackups(doBackups);
         _backupThread.setBackupInterval(interval);
         _backupThread.setMaximumNumberBackup(maxNumber);
+
+        _updateQueue.setDelay(Long.parseLong(cfg.getProperty("queue_delay", "1000")));
+        _updateQueue.setBatchSize(Integer.parseInt(cfg.getProperty("queue_batch_size", "1000")));
+        _updateQueue.setMaxSize(Integer.parseInt(cfg.getProperty("queue_max_size", "100000")));
+
+        _searcherRefreshInterval = Long.parseLong(cfg.getProperty("search_refresh_interval", "1000"));
+        // a searcher is used until it is an interval old, the margin covers the searches running on it
+        _updateQueue.setRetention(_searcherRefreshInterval * 2);
+        int cacheSize = Integer.parseInt(cfg.getProperty("search_cache_size", "500"));
+        if (cacheSize > 0) {
+            _advancedFindCache = new LuceneQueryCache<>(cacheSize);
+            _findInodeCache = new LuceneQueryCache<>(cacheSize);
+        } else {
+            _advancedFindCache = null;
+            _findInodeCache = null;
+        }
+
+        _rebuildThreads = Integer.parseInt(cfg.getProperty("rebuild_threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        _rebuildMaxRate = Integer.parseInt(cfg.getProperty("rebuild_max_rate", "0"));
     }
 
     /**
@@ -245,6 +302,8 @@ public class LuceneEngine implements IndexEngineInterface {
      */
     private void closeAll() {
         try {
+            if (_searcherManager != null)
+                _searcherManager.close();
             if (_iWriter != null)
                 _iWriter.close();
             if (_storage != null)
@@ -253,6 +312,7 @@ public class LuceneEngine implements IndexEngineInterface {
             logger.error(e, e);
         }
 
+        _searcherManager = null;
         _iWriter = null;
         _storage = null;
     }
@@ -319,6 +379,40 @@ public class LuceneEngine implements IndexEngineInterface {
         return INDEX_DOCUMENT;
     }
 
+    /**
+     * Like {@link #makeDocumentFromInode(ImmutableInodeHandle)} but returns a Document of its own,
+     * which can be added to an index while other documents are made.
+     */
+    protected Document makeDocumentCopy(ImmutableInodeHandle inode) throws FileNotFoundException {
+        Document copy = new Document();
+        synchronized (INDEX_DOCUMENT) {
+            for (Fieldable field : makeDocumentFromInode(inode).getFields()) {
+                Field.Store store = field.isStored() ? Field.Store.YES : Field.Store.NO;
+                if (field instanceof NumericField) {
+                    NumericField numeric = (NumericField) field;
+                    NumericField numericCopy = new NumericField(field.name(), numeric.getPrecisionStep(), store, field.isIndexed());
+                    Number value = numeric.getNumericValue();
+                    if (value instanceof Integer) {
+                        numericCopy.setIntValue(value.intValue());
+                    } else if (value instanceof Float) {
+                        numericCopy.setFloatValue(value.floatValue());
+                    } else if (value instanceof Double) {
+                        numericCopy.setDoubleValue(value.doubleValue());
+                    } else if (value != null) {
+                        numericCopy.setLongValue(value.longValue());
+                    } else {
+                        continue;
+                    }
+                    copy.add(numericCopy);
+                } else {
+                    copy.add(new Field(field.name(), field.stringValue(), store,
+                            Field.Index.toIndex(field.isIndexed(), field.isTokenized(), field.getOmitNorms())));
+                }
+            }
+        }
+        return copy;
+    }
+
     private Term makeFullPathTermFromInode(ImmutableInodeHandle inode) {
         if (inode.isDirectory()) {
             return TERM_FULL.createTerm(inode.getPath() + VirtualFileSystem.separator);
@@ -360,17 +454,17 @@ public class LuceneEngine implements IndexEngineInterface {
         return new TermQuery(TERM_GROUP.createTerm(group));
     }
 
-    private void setSortField(boolean order) {
-        SORT.setSort(new SortField("fullPath", SortField.STRING, order));
+    private Sort makeSort(boolean order) {
+        return new Sort(new SortField("fullPath", SortField.STRING, order));
     }
 
-    private void setSortField(String field, int type, boolean order) {
-        SORT.setSort(new SortField(field, type, order),
+    private Sort makeSort(String field, int type, boolean order) {
+        return new Sort(new SortField(field, type, order),
                 new SortField("fullPath", SortField.STRING, order));
     }
 
-    private void setSortFieldRandom() {
-        SORT.setSort(new SortField(
+    private Sort makeRandomSort() {
+        return new Sort(new SortField(
                 "",
                 new FieldComparatorSource() {
                     @Override
@@ -381,13 +475,76 @@ public class LuceneEngine implements IndexEngineInterface {
         ));
     }
 
+    /**
+     * Acquires the shared searcher, which has to be given back with {@link #releaseSearcher(IndexSearcher)}.
+     * <p>
+     * The searcher is reopened first if the index changed and it wasn't refreshed in the last
+     * <i>search_refresh_interval</i> milliseconds.
+     *
+     * @param current Reopen the searcher if the index changed at all, regardless of the interval
+     */
+    private IndexSearcher acquireSearcher(boolean current) throws IOException {
+        _indexLock.readLock().lock();
+        try {
+            if (_searcherStale && (current
+                    || System.currentTimeMillis() - _lastSearcherRefresh >= _searcherRefreshInterval)) {
+                synchronized (_refreshLock) {
+                    // checked again, another thread may have refreshed while we waited
+                    if (_searcherStale) {
+                        _searcherStale = false;
+                        _lastSearcherRefresh = System.currentTimeMillis();
+                        if (_searcherManager.maybeRefresh()) {
+                            _searcherRefreshes.increment();
+                        }
+                    }
+                }
+            }
+            return _searcherManager.acquire();
+        } finally {
+            _indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tells a running rebuild that the inode at the path changed.
+     */
+    private void rebuildChanged(String path, boolean subtree) {
+        LuceneIndexRebuilder rebuilder = _rebuilder;
+        if (rebuilder != null) {
+            rebuilder.changed(path, subtree);
+        }
+    }
+
+    private void releaseSearcher(IndexSearcher iSearcher) {
+        try {
+            _searcherManager.release(iSearcher);
+        } catch (IOException e) {
+            logger.error("IOException releasing IndexSearcher", e);
+        }
+    }
+
+    private static long getGeneration(IndexSearcher iSearcher) {
+        return ((GenerationIndexSearcher) iSearcher).getGeneration();
+    }
+
+    private void searchCompleted(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        _searches.increment();
+        _searchNanos.add(nanos);
+        _lastSearchNanos = nanos;
+        _maxSearchNanos.accumulateAndGet(nanos, Math::max);
+    }
+
     /* {@inheritDoc} */
     public void addInode(ImmutableInodeHandle inode) throws IndexException {
+        _indexLock.readLock().lock();
         try {
+            rebuildChanged(inode.getPath(), false);
             synchronized (INDEX_DOCUMENT) {
                 Document doc = makeDocumentFromInode(inode);
                 _iWriter.addDocument(doc);
             }
+            _searcherStale = true;
         } catch (FileNotFoundException e) {
             logger.error("Unable to add {} to the index", inode.getPath(), e);
         } catch (CorruptIndexException e) {
@@ -396,28 +553,38 @@ public class LuceneEngine implements IndexEngineInterface {
             throw new IndexException("Unable to add " + inode.getPath() + " to the index", e);
         } catch (RuntimeException e) {
             throw new IndexException("Unable to add " + inode.getPath() + " to the index", e);
+        } finally {
+            _indexLock.readLock().unlock();
         }
     }
 
     /* {@inheritDoc} */
     public void deleteInode(ImmutableInodeHandle inode) throws IndexException {
+        _indexLock.readLock().lock();
         try {
+            rebuildChanged(inode.getPath(), true);
             _iWriter.deleteDocuments(makeFullPathTermFromInode(inode));
+            _searcherStale = true;
         } catch (CorruptIndexException e) {
             throw new IndexException("Unable to delete " + inode.getPath() + " from the index", e);
         } catch (IOException e) {
             throw new IndexException("Unable to delete " + inode.getPath() + " from the index", e);
         } catch (RuntimeException e) {
             throw new IndexException("Unable to delete " + inode.getPath() + " from the index", e);
+        } finally {
+            _indexLock.readLock().unlock();
         }
     }
 
     /* {@inheritDoc} */
     public void updateInode(ImmutableInodeHandle inode) throws IndexException {
+        _indexLock.readLock().lock();
         try {
+            rebuildChanged(inode.getPath(), false);
             synchronized (INDEX_DOCUMENT) {
                 _iWriter.updateDocument(makeFullPathTermFromInode(inode), makeDocumentFromInode(inode));
             }
+            _searcherStale = true;
         } catch (FileNotFoundException e) {
             logger.error("The inode was here but now it isn't!", e);
         } catch (CorruptIndexException e) {
@@ -426,25 +593,30 @@ public class LuceneEngine implements IndexEngineInterface {
             throw new IndexException("Unable to update " + inode.getPath() + " in the index", e);
         } catch (RuntimeException e) {
             throw new IndexException("Unable to update " + inode.getPath() + " in the index", e);
+        } finally {
+            _indexLock.readLock().unlock();
         }
     }
 
     /* {@inheritDoc} */
     public void renameInode(ImmutableInodeHandle fromInode, ImmutableInodeHandle toInode) throws IndexException {
         IndexSearcher iSearcher = null;
-        IndexReader iReader = null;
+        _indexLock.readLock().lock();
         try {
+            rebuildChanged(fromInode.getPath(), true);
+            rebuildChanged(toInode.getPath(), true);
             Term fromInodeTerm = makeFullPathTermFromInode(fromInode);
             synchronized (INDEX_DOCUMENT) {
                 _iWriter.updateDocument(fromInodeTerm, makeDocumentFromInode(toInode));
             }
+            _searcherStale = true;
             if (toInode.isDirectory()) {
                 PrefixQuery prefixQuery = new PrefixQuery(fromInodeTerm);
 
-                iReader = IndexReader.open(_iWriter, true);
-                iSearcher = new IndexSearcher(iReader);
+                // every child has to be found, including the ones added a moment ago
+                iSearcher = acquireSearcher(true);
 
-                final BitSet bits = new BitSet(iReader.maxDoc());
+                final BitSet bits = new BitSet(iSearcher.maxDoc());
                 iSearcher.search(prefixQuery, new Collector() {
                     private int docBase;
 
@@ -486,6 +658,7 @@ public class LuceneEngine implements IndexEngineInterface {
                         _iWriter.updateDocument(makeFullPathTermFromString(oldPath), doc);
                     }
                 }
+                _searcherStale = true;
             }
         } catch (CorruptIndexException e) {
             throw new IndexException("Unable to rename " + fromInode.getPath() + " to " +
@@ -498,19 +671,9 @@ public class LuceneEngine implements IndexEngineInterface {
                     toInode.getPath() + " in the index", e);
         } finally {
             if (iSearcher != null) {
-                try {
-                    iSearcher.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexSearcher", e);
-                }
-            }
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
-                }
+                releaseSearcher(iSearcher);
             }
+            _indexLock.readLock().unlock();
         }
     }
 
@@ -519,6 +682,7 @@ public class LuceneEngine implements IndexEngineInterface {
      * Forces the Index to be saved. Simply calls {@link IndexWriter}.commit();
      */
     public void commit() throws IndexException {
+        _indexLock.readLock().lock();
         try {
             _iWriter.commit();
         } catch (CorruptIndexException e) {
@@ -527,74 +691,87 @@ public class LuceneEngine implements IndexEngineInterface {
             throw new IndexException("Unable to commit the index", e);
         } catch (RuntimeException e) {
             throw new IndexException("Unable to commit the index", e);
+        } finally {
+            _indexLock.readLock().unlock();
         }
     }
 
-    /* {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The new index is built in {@link #REBUILD_DIR} by {@link LuceneIndexRebuilder}, the current
+     * index keeps serving searches until the new one is swapped in.
+     */
     public void rebuildIndex() throws IndexException, FileNotFoundException {
-        if (_rebuilding) {
-            throw new IndexException("A previous rebuildindex command is already in progress.");
+        LuceneIndexRebuilder rebuilder;
+        synchronized (this) {
+            if (_rebuilder != null) {
+                throw new IndexException("A previous rebuildindex command is already in progress.");
+            }
+            rebuilder = new LuceneIndexRebuilder(this, REBUILD_DIR, _rebuildThreads, _rebuildMaxRate);
+            _rebuilder = rebuilder;
         }
-        _rebuilding = true;
-
-        closeAll();
-
-        PhysicalFile f = new PhysicalFile(INDEX_DIR);
-        f.deleteRecursive();
-
-        openStreams();
 
+        boolean swapped = false;
         try {
-            DirectoryHandle root = GlobalContext.getGlobalContext().getRoot();
-            root.requestRefresh(true); // Start by adding root inode
-            recurseAndBuild(root); // Recursively traverse the VFS and add all inodes
-            commit(); // commit the writer so that the searcher can see the new stuff.
-        } catch (IndexException e) {
-            logger.error("Exception whilst rebuilding lucene index", e);
-            throw e;
+            rebuilder.open(makeWriterConfig());
+            rebuilder.build();
+            // most of what changed during the walk is applied while the current index is still in use
+            rebuilder.applyChanges();
+
+            _indexLock.writeLock().lock();
+            try {
+                rebuilder.applyChanges();
+                rebuilder.commit();
+                closeAll();
+                try {
+                    swapIndexDirectories();
+                    swapped = true;
+                } finally {
+                    openStreams();
+                    _searcherStale = true;
+                }
+            } finally {
+                _indexLock.writeLock().unlock();
+            }
+            logger.info("Index rebuilt with {} inodes in {}ms", rebuilder.getIndexed(), rebuilder.getElapsed());
         } catch (FileNotFoundException e) {
             logger.error("Root directory not found whilst rebuilding lucene index", e);
             throw e;
+        } catch (IOException e) {
+            logger.error("Exception whilst rebuilding lucene index", e);
+            throw new IndexException("Unable to rebuild the index", e);
         } finally {
-            _rebuilding = false;
+            if (!swapped) {
+                rebuilder.abort();
+            }
+            _rebuilder = null;
         }
     }
 
     /**
-     * Inner function called by rebuildIndex().
-     *
-     * @param dir
-     * @throws IndexException
+     * Moves the rebuilt index in place of the current one, must only be called while the streams are closed.
      */
-    private void recurseAndBuild(DirectoryHandle dir) throws IndexException {
+    private void swapIndexDirectories() throws IOException {
+        Path current = Paths.get(INDEX_DIR);
+        Path rebuilt = Paths.get(REBUILD_DIR);
+        Path old = Paths.get(INDEX_DIR + ".old");
+        new PhysicalFile(old.toString()).deleteRecursive();
+        Files.move(current, old, StandardCopyOption.ATOMIC_MOVE);
         try {
-            for (InodeHandle inode : dir.getInodeHandlesUnchecked()) {
-                if (inode.isDirectory()) {
-                    try {
-                        inode.requestRefresh(true);
-                        recurseAndBuild((DirectoryHandle) inode);
-                    } catch (FileNotFoundException e) {
-                        // Directory no longer present, silently skip
-                    }
-
-                } else if (inode.isFile()) {
-                    try {
-                        inode.requestRefresh(true);
-                    } catch (FileNotFoundException e) {
-                        // File no longer present, silently skip
-                    }
-                }
-            }
-        } catch (FileNotFoundException e) {
-            // Directory no longer present, silently skip
+            Files.move(rebuilt, current, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(old, current, StandardCopyOption.ATOMIC_MOVE);
+            throw e;
         }
+        new PhysicalFile(old.toString()).deleteRecursive();
     }
 
     /*
      * Method to check if an index rebuild is in process or not.
      */
     public boolean isRebuilding() {
-        return _rebuilding;
+        return _rebuilder != null;
     }
 
     /**
@@ -603,8 +780,8 @@ public class LuceneEngine implements IndexEngineInterface {
      */
     public Map<String, String> advancedFind(DirectoryHandle startNode, AdvancedSearchParams params, String caller)
             throws IndexException, IllegalArgumentException {
+        long start = System.nanoTime();
         IndexSearcher iSearcher = null;
-        IndexReader iReader = null;
         try {
             Map<String, String> inodes = new LinkedHashMap<>();
 
@@ -683,24 +860,25 @@ public class LuceneEngine implements IndexEngineInterface {
                 query.add(makeFullNameReversePrefixQueryFromString(params.getEndsWith()), Occur.MUST);
             }
 
+            Sort sort;
             if (params.getSortField() != null && params.getSortOrder() != null) {
                 if (params.getSortField().equalsIgnoreCase("lastModified") ||
                         params.getSortField().equalsIgnoreCase("size")) {
-                    setSortField(params.getSortField(), SortField.LONG, params.getSortOrder());
+                    sort = makeSort(params.getSortField(), SortField.LONG, params.getSortOrder());
                 } else if (params.getSortField().equalsIgnoreCase("nbrOfSlaves")) {
-                    setSortField(params.getSortField(), SortField.INT, params.getSortOrder());
+                    sort = makeSort(params.getSortField(), SortField.INT, params.getSortOrder());
                 } else if (params.getSortField().equalsIgnoreCase("parentPath") ||
                         params.getSortField().equalsIgnoreCase("owner") ||
                         params.getSortField().equalsIgnoreCase("group") ||
                         params.getSortField().equalsIgnoreCase("type")) {
-                    setSortField(params.getSortField(), SortField.STRING, params.getSortOrder());
+                    sort = makeSort(params.getSortField(), SortField.STRING, params.getSortOrder());
                 } else {
-                    setSortField(params.getSortOrder());
+                    sort = makeSort(params.getSortOrder());
                 }
             } else if (params.getSortOrder() == null) {
-                setSortFieldRandom();
+                sort = makeRandomSort();
             } else {
-                setSortField(params.getSortOrder());
+                sort = makeSort(params.getSortOrder());
             }
 
             int limit = _maxHitsNumber;
@@ -716,18 +894,31 @@ public class LuceneEngine implements IndexEngineInterface {
 
             logger.debug("{} query: {}", caller, query);
 
-            iReader = IndexReader.open(_iWriter, true);
-            iSearcher = new IndexSearcher(iReader);
+            iSearcher = acquireSearcher(false);
+
+            // the query is the normalized form of the params, extensions included, random results are never cached
+            String cacheKey = null;
+            if (_advancedFindCache != null && params.getSortOrder() != null) {
+                cacheKey = query + "|" + sort + "|" + limit;
+                Map<String, String> cached = _advancedFindCache.get(cacheKey, getGeneration(iSearcher));
+                if (cached != null) {
+                    return withPending(startNode, params, new LinkedHashMap<>(cached), iSearcher);
+                }
+            }
+
             if (limit == 0) {
                 TotalHitCountCollector totalHitCountCollector = new TotalHitCountCollector();
                 iSearcher.search(query, totalHitCountCollector);
                 limit = totalHitCountCollector.getTotalHits();
                 if (limit == 0) {
-                    return inodes;
+                    if (cacheKey != null) {
+                        _advancedFindCache.put(cacheKey, getGeneration(iSearcher), Collections.emptyMap());
+                    }
+                    return withPending(startNode, params, inodes, iSearcher);
                 }
                 logger.debug("Found {} inode match(es) in the index, using this as limit.", limit);
             }
-            TopFieldCollector topFieldCollector = TopFieldCollector.create(SORT, limit, true, false, false, false);
+            TopFieldCollector topFieldCollector = TopFieldCollector.create(sort, limit, true, false, false, false);
             iSearcher.search(query, topFieldCollector);
 
             for (ScoreDoc scoreDoc : topFieldCollector.topDocs().scoreDocs) {
@@ -735,7 +926,10 @@ public class LuceneEngine implements IndexEngineInterface {
                 inodes.put(doc.getFieldable("fullPath").stringValue(), doc.getFieldable("type").stringValue());
             }
 
-            return inodes;
+            if (cacheKey != null) {
+                _advancedFindCache.put(cacheKey, getGeneration(iSearcher), new LinkedHashMap<>(inodes));
+            }
+            return withPending(startNode, params, inodes, iSearcher);
         } catch (CorruptIndexException e) {
             logger.error(EXCEPTION_OCCURED_WHILE_SEARCHING, e);
             throw new IndexException("Unable to search the index", e);
@@ -747,20 +941,41 @@ public class LuceneEngine implements IndexEngineInterface {
             throw new IndexException("Unable to search the index", e);
         } finally {
             if (iSearcher != null) {
-                try {
-                    iSearcher.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexSearcher", e);
-                }
-            }
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
-                }
+                releaseSearcher(iSearcher);
             }
+            searchCompleted(start);
+        }
+    }
+
+    /**
+     * Adds the changes the searcher does not show yet to the results of a search with
+     * {@link AdvancedSearchParams#isCurrent()} set.
+     */
+    private Map<String, String> withPending(DirectoryHandle startNode, AdvancedSearchParams params,
+                                            Map<String, String> inodes, IndexSearcher iSearcher) {
+        if (params.isCurrent()) {
+            _updateQueue.applyPending(inodes, inode -> matchesPending(startNode, params, inode),
+                    ((GenerationIndexSearcher) iSearcher).getOpenedAt());
+        }
+        return inodes;
+    }
+
+    /**
+     * Checks a changed inode against the start directory, the type and the exact name of a search.
+     */
+    private static boolean matchesPending(DirectoryHandle startNode, AdvancedSearchParams params,
+                                          ImmutableInodeHandle inode) {
+        String path = inode.getPath();
+        if (!startNode.getPath().equals(VirtualFileSystem.separator)
+                && !path.startsWith(startNode.getPath() + VirtualFileSystem.separator)) {
+            return false;
+        }
+        if (params.getInodeType() == InodeType.DIRECTORY && !inode.isDirectory()
+                || params.getInodeType() == InodeType.FILE && inode.isDirectory()) {
+            return false;
         }
+        return params.getExact() == null
+                || LuceneUtils.matchesWildcard(params.getExact(), VirtualFileSystem.getLast(path));
     }
 
     /**
@@ -769,8 +984,8 @@ public class LuceneEngine implements IndexEngineInterface {
      * @param inodeType If you are searching for a File, Dir or both.
      */
     public Set<String> findInode(DirectoryHandle startNode, String text, InodeType inodeType) throws IndexException {
+        long start = System.nanoTime();
         IndexSearcher iSearcher = null;
-        IndexReader iReader = null;
         try {
             Set<String> inodes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
 
@@ -798,8 +1013,19 @@ public class LuceneEngine implements IndexEngineInterface {
                 query.add(QUERY_FILE, Occur.MUST);
             }
 
-            iReader = IndexReader.open(_iWriter, true);
-            iSearcher = new IndexSearcher(iReader);
+            iSearcher = acquireSearcher(false);
+
+            String cacheKey = null;
+            if (_findInodeCache != null) {
+                cacheKey = query.toString();
+                Set<String> cached = _findInodeCache.get(cacheKey, getGeneration(iSearcher));
+                if (cached != null) {
+                    Set<String> copy = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                    copy.addAll(cached);
+                    return copy;
+                }
+            }
+
             TopScoreDocCollector topScoreDocsCollector = TopScoreDocCollector.create(_maxHitsNumber, false);
             iSearcher.search(query, topScoreDocsCollector);
             logger.debug("Query: {}", query);
@@ -809,6 +1035,11 @@ public class LuceneEngine implements IndexEngineInterface {
                 inodes.add(doc.getFieldable("fullPath").stringValue());
             }
 
+            if (cacheKey != null) {
+                Set<String> copy = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                copy.addAll(inodes);
+                _findInodeCache.put(cacheKey, getGeneration(iSearcher), copy);
+            }
             return inodes;
         } catch (CorruptIndexException e) {
             logger.error(EXCEPTION_OCCURED_WHILE_SEARCHING, e);
@@ -821,19 +1052,9 @@ public class LuceneEngine implements IndexEngineInterface {
             throw new IndexException("Unable to search the index", e);
         } finally {
             if (iSearcher != null) {
-                try {
-                    iSearcher.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexSearcher", e);
-                }
-            }
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
-                }
+                releaseSearcher(iSearcher);
             }
+            searchCompleted(start);
         }
     }
 
@@ -850,6 +1071,15 @@ public class LuceneEngine implements IndexEngineInterface {
      * <li>Amount of cached documents (key => "cached inodes")</li>
      * <li>Amount of used memory (key => "ram usage")</li>
      * <li>The size in disk of the index (key => "disk usage")</li>
+     * <li>Updates waiting in the update queue (key => "queued updates")</li>
+     * <li>How far the index is behind the VFS (key => "queue lag")</li>
+     * <li>Events merged into an already queued update (key => "coalesced updates")</li>
+     * <li>How long applying the last batch of updates took (key => "last queue batch")</li>
+     * <li>Number of searches (key => "searches")</li>
+     * <li>Average, maximum and last search time (key => "search latency")</li>
+     * <li>How often the shared searcher was reopened (key => "searcher refreshes")</li>
+     * <li>Hits of the query result cache (key => "search cache")</li>
+     * <li>Inodes indexed by a running rebuild (key => "rebuild progress")</li>
      * </ul>
      */
     public Map<String, String> getStatus() {
@@ -860,52 +1090,81 @@ public class LuceneEngine implements IndexEngineInterface {
         String lastBackup = df.format(new Date(_backupThread.getLastBackup()));
         status.put("backend", "Apache Lucene (http://lucene.apache.org)");
 
+        // the streams are replaced when a rebuilt index is swapped in
+        _indexLock.readLock().lock();
         try {
-            status.put("inodes", String.valueOf(_iWriter.numDocs()));
-        } catch (IOException e) {
-            logger.error("IOException getting IndexWriter", e);
-        }
+            try {
+                status.put("inodes", String.valueOf(_iWriter.numDocs()));
+            } catch (IOException e) {
+                logger.error("IOException getting IndexWriter", e);
+            }
 
-        IndexReader iReader = null;
-        try {
-            iReader = IndexReader.open(_iWriter, true);
-            status.put("deleted inodes", String.valueOf(iReader.numDeletedDocs()));
-        } catch (CorruptIndexException e) {
-            logger.error(EXCEPTION_OCCURED_WHILE_SEARCHING, e);
-        } catch (IOException e) {
-            logger.error(EXCEPTION_OCCURED_WHILE_SEARCHING, e);
-        } finally {
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
+            IndexSearcher iSearcher = null;
+            try {
+                iSearcher = acquireSearcher(false);
+                status.put("deleted inodes", String.valueOf(iSearcher.getIndexReader().numDeletedDocs()));
+            } catch (IOException e) {
+                logger.error(EXCEPTION_OCCURED_WHILE_SEARCHING, e);
+            } finally {
+                if (iSearcher != null) {
+                    releaseSearcher(iSearcher);
                 }
             }
-        }
 
-        status.put("cached inodes", String.valueOf(_iWriter.numRamDocs()));
-        status.put("max hits", String.valueOf(_maxHitsNumber));
-        status.put("last optimization", lastOp);
-        status.put("last backup", lastBackup);
-        status.put("ram usage", Bytes.formatBytes(_iWriter.ramSizeInBytes()));
+            status.put("cached inodes", String.valueOf(_iWriter.numRamDocs()));
+            status.put("max hits", String.valueOf(_maxHitsNumber));
+            status.put("last optimization", lastOp);
+            status.put("last backup", lastBackup);
+            status.put("ram usage", Bytes.formatBytes(_iWriter.ramSizeInBytes()));
+
+            long size = 0L;
+            String[] paths;
+            try {
+                paths = _storage.listAll();
+                for (String path : paths) {
+                    size += new PhysicalFile(INDEX_DIR + "/" + path).length();
+                }
 
-        long size = 0L;
-        String[] paths;
-        try {
-            paths = _storage.listAll();
-            for (String path : paths) {
-                size += new PhysicalFile(INDEX_DIR + "/" + path).length();
+                status.put("size", Bytes.formatBytes(size));
+            } catch (IOException e) {
+                logger.error("IOException getting size of index dir", e);
             }
+        } finally {
+            _indexLock.readLock().unlock();
+        }
 
-            status.put("size", Bytes.formatBytes(size));
-        } catch (IOException e) {
-            logger.error("IOException getting size of index dir", e);
+        status.put("queued updates", String.valueOf(_updateQueue.getQueueSize()));
+        status.put("queue lag", _updateQueue.getLag() + "ms (last applied: " + _updateQueue.getLastLag() + "ms)");
+        status.put("coalesced updates", _updateQueue.getCoalescedCount() + " of " + _updateQueue.getReceivedCount());
+        status.put("last queue batch", _updateQueue.getLastBatchTime() + "ms");
+
+        LuceneIndexRebuilder rebuilder = _rebuilder;
+        if (rebuilder != null) {
+            long elapsed = rebuilder.getElapsed();
+            status.put("rebuild progress", rebuilder.getIndexed() + " inodes in " + elapsed / 1000 + "s, "
+                    + rebuilder.getIndexed() * 1000 / Math.max(1, elapsed) + " inodes/s");
+        }
+
+        long searches = _searches.sum();
+        long averageNanos = searches == 0 ? 0L : _searchNanos.sum() / searches;
+        status.put("searches", String.valueOf(searches));
+        status.put("search latency", formatMillis(averageNanos) + " avg, " + formatMillis(_maxSearchNanos.get())
+                + " max, " + formatMillis(_lastSearchNanos) + " last");
+        status.put("searcher refreshes", String.valueOf(_searcherRefreshes.sum()));
+        if (_advancedFindCache != null) {
+            long hits = _advancedFindCache.getHits() + _findInodeCache.getHits();
+            long lookups = hits + _advancedFindCache.getMisses() + _findInodeCache.getMisses();
+            status.put("search cache", hits + " hits of " + lookups + " lookups, "
+                    + (_advancedFindCache.size() + _findInodeCache.size()) + " cached queries");
         }
 
         return status;
     }
 
+    private static String formatMillis(long nanos) {
+        return String.format("%.2fms", nanos / 1000000.0);
+    }
+
     protected Directory getStorage() {
         return _storage;
     }
@@ -914,6 +1173,37 @@ public class LuceneEngine implements IndexEngineInterface {
         return _iWriter;
     }
 
+    /**
+     * Tags every searcher with the generation it was opened as and the time it was opened.
+     */
+    private final class GenerationSearcherFactory extends SearcherFactory {
+        @Override
+        public IndexSearcher newSearcher(IndexReader reader) {
+            return new GenerationIndexSearcher(reader, _searcherGeneration.incrementAndGet(), _lastSearcherRefresh);
+        }
+    }
+
+    private static final class GenerationIndexSearcher extends IndexSearcher {
+        private final long _generation;
+
+        // when the refresh that opened the searcher started, changes applied before are part of it
+        private final long _openedAt;
+
+        private GenerationIndexSearcher(IndexReader reader, long generation, long openedAt) {
+            super(reader);
+            _generation = generation;
+            _openedAt = openedAt;
+        }
+
+        private long getGeneration() {
+            return _generation;
+        }
+
+        private long getOpenedAt() {
+            return _openedAt;
+        }
+    }
+
     /**
      * Custom FieldComparator to get a random result from index
      */
@@ -968,6 +1258,8 @@ public class LuceneEngine implements IndexEngineInterface {
                 _backupThread.notify();
             }
 
+            logger.debug("Applying queued index updates...");
+            _updateQueue.stopQueue();
             while (_maintenanceThread.isAlive() || _backupThread.isAlive()) {
                 try {
                     logger.debug("Waiting for the index maintenance threads to die...");
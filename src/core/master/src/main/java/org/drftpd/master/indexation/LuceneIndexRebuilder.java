@@ -0,0 +1,319 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.drftpd.common.io.PhysicalFile;
+import org.drftpd.master.GlobalContext;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.InodeHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds a new index in a side directory while the current index keeps serving searches and updates.
+ * <p>
+ * The VFS is walked by a fork-join pool, each worker adds the documents of the inodes it visits to
+ * the new index. VFS changes applied to the current index meanwhile are remembered by path and read
+ * again from the VFS once the walk is done, so the new index doesn't miss what changed behind the
+ * walk. {@link LuceneEngine} then swaps the new index in.
+ *
+ * @version $Id$
+ */
+public class LuceneIndexRebuilder {
+    private static final Logger logger = LogManager.getLogger(LuceneIndexRebuilder.class);
+
+    private static final long PROGRESS_INTERVAL = 10000L;
+
+    private final LuceneEngine _engine;
+
+    private final String _indexDir;
+
+    private final int _threads;
+
+    private final int _maxRate;
+
+    private final AtomicLong _indexed = new AtomicLong();
+
+    // path -> whether everything below the path has to be indexed again as well
+    private final ConcurrentHashMap<String, Boolean> _changed = new ConcurrentHashMap<>();
+
+    private Directory _storage;
+
+    private IndexWriter _iWriter;
+
+    private ForkJoinPool _pool;
+
+    private long _start;
+
+    /**
+     * @param engine   The engine the documents are made by
+     * @param indexDir Where the new index is built
+     * @param threads  Number of indexing threads
+     * @param maxRate  Maximum number of inodes indexed per second, 0 for no limit
+     */
+    public LuceneIndexRebuilder(LuceneEngine engine, String indexDir, int threads, int maxRate) {
+        _engine = engine;
+        _indexDir = indexDir;
+        _threads = threads;
+        _maxRate = maxRate;
+    }
+
+    /**
+     * Creates an empty index in the side directory, removing leftovers of an earlier rebuild.
+     */
+    public void open(IndexWriterConfig conf) throws IOException {
+        new PhysicalFile(_indexDir).deleteRecursive();
+        _storage = FSDirectory.open(new File(_indexDir));
+        _iWriter = new IndexWriter(_storage, conf);
+        AtomicInteger threadCount = new AtomicInteger();
+        _pool = new ForkJoinPool(_threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("IndexRebuild-" + threadCount.incrementAndGet());
+            return thread;
+        }, null, false);
+        _start = System.currentTimeMillis();
+    }
+
+    /**
+     * Indexes the whole VFS, returns once every inode was visited.
+     *
+     * @throws FileNotFoundException if the root directory is not found
+     */
+    public void build() throws IOException {
+        logger.info("Rebuilding the index with {} threads", _threads);
+        DirectoryHandle root = GlobalContext.getGlobalContext().getRoot();
+        index(root, false);
+        run(new IndexTask(root, false));
+        logger.info("Index rebuild visited {} inodes in {}ms, {} paths changed meanwhile", _indexed.get(),
+                System.currentTimeMillis() - _start, _changed.size());
+    }
+
+    /**
+     * Remembers a path that changed in the VFS while the new index is built.
+     *
+     * @param subtree Whether the inodes below the path have to be indexed again too
+     */
+    public void changed(String path, boolean subtree) {
+        _changed.merge(path, subtree, Boolean::logicalOr);
+    }
+
+    /**
+     * Indexes the paths that changed since the last call again, as they are in the VFS now.
+     */
+    public void applyChanges() throws IOException {
+        List<Map.Entry<String, Boolean>> changes = new ArrayList<>(_changed.size());
+        for (String path : _changed.keySet()) {
+            changes.add(Map.entry(path, _changed.remove(path)));
+        }
+        for (Map.Entry<String, Boolean> change : changes) {
+            String path = change.getKey();
+            // documents of directories are stored with a trailing separator
+            _iWriter.deleteDocuments(new Term("fullPath", path), new Term("fullPath", path + VirtualFileSystem.separator));
+            if (change.getValue()) {
+                _iWriter.deleteDocuments(new PrefixQuery(new Term("fullPath", path + VirtualFileSystem.separator)));
+            }
+            InodeHandle inode;
+            try {
+                inode = lookup(path);
+                index(inode, true);
+            } catch (FileNotFoundException e) {
+                // deleted or renamed, the documents are gone now
+                continue;
+            }
+            if (change.getValue() && inode.isDirectory()) {
+                run(new IndexTask((DirectoryHandle) inode, true));
+            }
+        }
+        logger.debug("Applied {} VFS changes to the rebuilt index", changes.size());
+    }
+
+    /**
+     * Commits and closes the new index, it can be moved in place afterwards.
+     */
+    public void commit() throws IOException {
+        try {
+            _iWriter.commit();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Throws the new index away.
+     */
+    public void abort() {
+        if (_iWriter != null) {
+            try {
+                _iWriter.rollback();
+            } catch (IOException e) {
+                logger.error("IOException rolling back the rebuilt index", e);
+            }
+        }
+        close();
+        new PhysicalFile(_indexDir).deleteRecursive();
+    }
+
+    /**
+     * @return the number of inodes indexed so far.
+     */
+    public long getIndexed() {
+        return _indexed.get();
+    }
+
+    /**
+     * @return how long the rebuild has been running in milliseconds.
+     */
+    public long getElapsed() {
+        return System.currentTimeMillis() - _start;
+    }
+
+    private void close() {
+        if (_pool != null) {
+            _pool.shutdownNow();
+        }
+        try {
+            if (_iWriter != null) {
+                _iWriter.close();
+            }
+            if (_storage != null) {
+                _storage.close();
+            }
+        } catch (IOException e) {
+            logger.error("IOException closing the rebuilt index", e);
+        }
+        _iWriter = null;
+        _storage = null;
+    }
+
+    private void run(IndexTask task) throws IOException {
+        ForkJoinTask<Void> submitted = _pool.submit(task);
+        while (true) {
+            try {
+                submitted.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                long elapsed = getElapsed();
+                logger.info("Index rebuild indexed {} inodes in {}s, {} inodes/s", _indexed.get(), elapsed / 1000,
+                        _indexed.get() * 1000 / Math.max(1, elapsed));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                submitted.cancel(true);
+                throw new IOException("Interrupted whilst rebuilding the index");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException("Unable to rebuild the index", e.getCause());
+            }
+        }
+    }
+
+    private InodeHandle lookup(String path) throws FileNotFoundException {
+        if (path.equals(VirtualFileSystem.separator)) {
+            return GlobalContext.getGlobalContext().getRoot();
+        }
+        return new DirectoryHandle(VirtualFileSystem.stripLast(path)).getInodeHandleUnchecked(VirtualFileSystem.getLast(path));
+    }
+
+    /**
+     * @param update Replace an existing document for the same path instead of adding one
+     */
+    private void index(InodeHandle inode, boolean update) throws IOException {
+        if (inode.isLink()) {
+            return;
+        }
+        throttle();
+        Document doc = _engine.makeDocumentCopy(inode.getImmutableInode());
+        if (update) {
+            _iWriter.updateDocument(new Term("fullPath", doc.get("fullPath")), doc);
+        } else {
+            _iWriter.addDocument(doc);
+        }
+    }
+
+    private void throttle() {
+        long indexed = _indexed.incrementAndGet();
+        if (_maxRate <= 0) {
+            return;
+        }
+        long ahead = indexed * 1000 / _maxRate - getElapsed();
+        if (ahead > 0) {
+            try {
+                Thread.sleep(ahead);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class IndexTask extends RecursiveAction {
+
+        private final DirectoryHandle _dir;
+
+        private final boolean _update;
+
+        private IndexTask(DirectoryHandle dir, boolean update) {
+            _dir = dir;
+            _update = update;
+        }
+
+        @Override
+        protected void compute() {
+            List<IndexTask> children = new ArrayList<>();
+            try {
+                for (InodeHandle inode : _dir.getInodeHandlesUnchecked()) {
+                    try {
+                        index(inode, _update);
+                    } catch (FileNotFoundException e) {
+                        // removed meanwhile, the change is applied afterwards
+                        continue;
+                    }
+                    if (inode.isDirectory()) {
+                        children.add(new IndexTask((DirectoryHandle) inode, _update));
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                // Directory no longer present, silently skip
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(children);
+        }
+    }
+}
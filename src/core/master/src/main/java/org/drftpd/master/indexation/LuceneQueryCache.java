@@ -0,0 +1,110 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of recent searches, so repeated SITE SEARCH/FIND queries and dupe checks
+ * for the same release don't have to search the index again.
+ *
+ * Entries are keyed on the normalized query, the sort and the limit, and are only valid for the
+ * searcher generation they were found with. Once the searcher is refreshed after the index changed
+ * all entries are stale. The cache is bounded and evicts the least recently used entry.
+ *
+ * @version $Id$
+ */
+public class LuceneQueryCache<V> {
+
+    private final LinkedHashMap<String, CachedResult<V>> _results;
+
+    private long _hits = 0L;
+
+    private long _misses = 0L;
+
+    public LuceneQueryCache(final int maxEntries) {
+        _results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key        The normalized query
+     * @param generation The generation of the searcher the query would run on
+     * @return The cached result or null if not known or found with an older searcher
+     */
+    public synchronized V get(String key, long generation) {
+        CachedResult<V> cached = _results.get(key);
+        if (cached == null || cached.getGeneration() != generation) {
+            if (cached != null) {
+                _results.remove(key);
+            }
+            _misses++;
+            return null;
+        }
+        _hits++;
+        return cached.getResult();
+    }
+
+    /**
+     * @param key        The normalized query
+     * @param generation The generation of the searcher the result was found with
+     * @param result     The result, it must not be modified afterwards
+     */
+    public synchronized void put(String key, long generation, V result) {
+        _results.put(key, new CachedResult<>(generation, result));
+    }
+
+    public synchronized void clear() {
+        _results.clear();
+    }
+
+    public synchronized int size() {
+        return _results.size();
+    }
+
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    private static class CachedResult<V> {
+        private final long _generation;
+        private final V _result;
+
+        private CachedResult(long generation, V result) {
+            _generation = generation;
+            _result = result;
+        }
+
+        private long getGeneration() {
+            return _generation;
+        }
+
+        private V getResult() {
+            return _result;
+        }
+    }
+}
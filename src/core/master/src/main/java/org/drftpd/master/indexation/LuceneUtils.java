@@ -88,4 +88,38 @@ public class LuceneUtils {
         int wc2 = text.indexOf("?");
         return !((wc1 > 0 && wc1 <= 3) || (wc2 > 0 && wc2 <= 3));
     }
+
+    /**
+     * Matches the text the way a {@link WildcardQuery} on a not analyzed field does, '*' stands for any
+     * number of chars and '?' for exactly one.
+     *
+     * @param pattern
+     * @param text
+     * @return boolean
+     */
+    public static boolean matchesWildcard(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        int star = -1;
+        int starText = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                starText = t;
+            } else if (star != -1) {
+                // let the last '*' take one more char
+                p = star + 1;
+                t = ++starText;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
 }
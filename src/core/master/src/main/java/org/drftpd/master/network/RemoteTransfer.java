@@ -156,10 +156,19 @@ public class RemoteTransfer {
 
     public void receiveFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed)
             throws IOException, SlaveUnavailableException {
+        receiveFile(path, type, position, inetAddress, minSpeed, maxSpeed, null, null);
+    }
+
+    /**
+     * @param user the user the slave applies its per user bandwidth limit to, null for none
+     * @param shapingClass the bandwidth class on the slave, the section of the file, null for none
+     */
+    public void receiveFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed,
+                            String user, String shapingClass) throws IOException, SlaveUnavailableException {
         _path = path;
 
         String index = SlaveManager.getBasicIssuer().issueReceiveToSlave(
-                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed);
+                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed, user, shapingClass);
 
         _transferDirection = Transfer.TRANSFER_RECEIVING_UPLOAD;
         try {
@@ -172,9 +181,18 @@ public class RemoteTransfer {
 
     public void sendFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed)
             throws IOException, SlaveUnavailableException {
+        sendFile(path, type, position, inetAddress, minSpeed, maxSpeed, null, null);
+    }
+
+    /**
+     * @param user the user the slave applies its per user bandwidth limit to, null for none
+     * @param shapingClass the bandwidth class on the slave, the section of the file, null for none
+     */
+    public void sendFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed,
+                         String user, String shapingClass) throws IOException, SlaveUnavailableException {
         _path = path;
         String index = SlaveManager.getBasicIssuer().issueSendToSlave(
-                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed);
+                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed, user, shapingClass);
         _transferDirection = Transfer.TRANSFER_SENDING_DOWNLOAD;
         try {
             _rslave.fetchResponse(index);
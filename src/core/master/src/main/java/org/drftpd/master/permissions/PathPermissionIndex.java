@@ -0,0 +1,258 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.permissions;
+
+import org.drftpd.master.vfs.InodeHandle;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Ordered list of the {@link PathPermission}s of one directive, finds the first one matching a path.
+ *
+ * Instead of running every pattern against the path, the rules are indexed in a trie on the literal
+ * prefix of their path, glob "/incoming/*" is only tried for paths starting with "/incoming/".
+ * Rules without a usable prefix (regexes, globs starting with a wildcard) are always tried.
+ * The candidates are still checked in configuration order, so the first matching rule is the same one
+ * a linear scan would find.
+ *
+ * When the path alone decides which rule matches, which is true for the glob, string and regex rules
+ * shipped with DrFTPD, recent lookups are cached. Only the matching rule is cached, not whether the user
+ * is allowed, so group changes don't affect the cache. A reload of perms.conf builds new indexes.
+ *
+ * @version $Id$
+ */
+public class PathPermissionIndex {
+
+    private static final int CACHE_SIZE = 1024;
+
+    private static final Set<Class<?>> PATH_ONLY = Set.of(GlobPathPermission.class,
+            StringPathPermission.class, RegexPathPermission.class);
+
+    private final ArrayList<PathPermission> _perms = new ArrayList<>();
+
+    private volatile Compiled _compiled = null;
+
+    public synchronized void add(PathPermission perm) {
+        _perms.add(perm);
+        _compiled = null;
+    }
+
+    /**
+     * @return The rules in configuration order
+     */
+    public synchronized List<PathPermission> getPermissions() {
+        return new ArrayList<>(_perms);
+    }
+
+    /**
+     * @param inode The path to check
+     * @return The first rule matching the path or null if none does
+     */
+    public PathPermission firstMatch(InodeHandle inode) {
+        Compiled compiled = _compiled;
+        if (compiled == null) {
+            compiled = compile();
+        }
+        return compiled.firstMatch(inode);
+    }
+
+    private synchronized Compiled compile() {
+        if (_compiled == null) {
+            _compiled = new Compiled(_perms.toArray(new PathPermission[0]));
+        }
+        return _compiled;
+    }
+
+    /**
+     * @return The part every path matching this rule starts with, "" if it can't be determined
+     */
+    static String getPrefix(PathPermission perm) {
+        Class<?> checker = getChecker(perm);
+        if (checker == StringPathPermission.class) {
+            return ((StringPathPermission) perm).getPath();
+        } else if (checker == GlobPathPermission.class) {
+            return getLiteralPrefix(((GlobPathPermission) perm).getPattern());
+        }
+        return "";
+    }
+
+    /**
+     * @return The literal text a string matching the whole pattern has to start with
+     */
+    static String getLiteralPrefix(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return "";
+        }
+        String regex = pattern.pattern();
+        if (hasAlternation(regex)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            char literal;
+            int next;
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    // character classes, back references and quoting
+                    break;
+                }
+                literal = regex.charAt(i + 1);
+                next = i + 2;
+            } else if ("[](){}.*+?^$|".indexOf(c) != -1) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+            if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) != -1) {
+                // the character is optional
+                break;
+            }
+            prefix.append(literal);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasAlternation(String regex) {
+        int inClass = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                inClass++;
+            } else if (c == ']' && inClass > 0) {
+                inClass--;
+            } else if (c == '|' && inClass == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The class implementing checkPath for this rule
+     */
+    private static Class<?> getChecker(PathPermission perm) {
+        try {
+            return perm.getClass().getMethod("checkPath", InodeHandle.class).getDeclaringClass();
+        } catch (NoSuchMethodException e) {
+            // can't happen, checkPath is public
+            return perm.getClass();
+        }
+    }
+
+    public synchronized String toString() {
+        return _perms.toString();
+    }
+
+    private static class Compiled {
+        private final PathPermission[] _rules;
+
+        private final Node _root = new Node();
+
+        private final LinkedHashMap<String, Integer> _cache;
+
+        private Compiled(PathPermission[] rules) {
+            _rules = rules;
+            boolean pathOnly = true;
+            for (int i = 0; i < rules.length; i++) {
+                _root.add(getPrefix(rules[i]), i);
+                pathOnly &= PATH_ONLY.contains(getChecker(rules[i]));
+            }
+            if (pathOnly) {
+                _cache = new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                        return size() > CACHE_SIZE;
+                    }
+                };
+            } else {
+                _cache = null;
+            }
+        }
+
+        private PathPermission firstMatch(InodeHandle inode) {
+            if (_rules.length == 0) {
+                return null;
+            }
+            String path = inode.getPath();
+            // globs match directories with a trailing slash, this also keeps files and directories apart
+            if (inode.isDirectory() && !path.endsWith("/")) {
+                path = path + "/";
+            }
+            if (_cache != null) {
+                Integer cached;
+                synchronized (_cache) {
+                    cached = _cache.get(path);
+                }
+                if (cached != null) {
+                    return cached == -1 ? null : _rules[cached];
+                }
+            }
+            int match = -1;
+            BitSet candidates = _root.getCandidates(path, _rules.length);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (_rules[i].checkPath(inode)) {
+                    match = i;
+                    break;
+                }
+            }
+            if (_cache != null) {
+                synchronized (_cache) {
+                    _cache.put(path, match);
+                }
+            }
+            return match == -1 ? null : _rules[match];
+        }
+    }
+
+    private static class Node {
+        private final HashMap<Character, Node> _children = new HashMap<>();
+
+        private final ArrayList<Integer> _rules = new ArrayList<>();
+
+        private void add(String prefix, int rule) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node._children.computeIfAbsent(prefix.charAt(i), k -> new Node());
+            }
+            node._rules.add(rule);
+        }
+
+        /**
+         * @return The rules whose prefix the path starts with
+         */
+        private BitSet getCandidates(String path, int size) {
+            BitSet candidates = new BitSet(size);
+            Node node = this;
+            int i = 0;
+            while (node != null) {
+                for (int rule : node._rules) {
+                    candidates.set(rule);
+                }
+                node = i < path.length() ? node._children.get(path.charAt(i++)) : null;
+            }
+            return candidates;
+        }
+    }
+}
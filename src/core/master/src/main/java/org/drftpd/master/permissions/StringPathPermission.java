@@ -37,4 +37,8 @@ public class StringPathPermission extends PathPermission {
     public boolean checkPath(InodeHandle inode) {
         return inode.getPath().startsWith(_path);
     }
+
+    public String getPath() {
+        return _path;
+    }
 }
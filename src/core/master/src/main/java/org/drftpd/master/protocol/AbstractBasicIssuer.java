@@ -23,6 +23,8 @@ import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.master.exceptions.SlaveUnavailableException;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 
+import java.util.Properties;
+
 /**
  * In order to Master be able to scope the BasicIssuer, this abstract class was need so
  * we could instead of referecing everything to the BasicIssuer, which is out of master's scope,
@@ -47,7 +49,8 @@ public abstract class AbstractBasicIssuer extends AbstractIssuer {
     public abstract String issuePingToSlave(RemoteSlave rslave) throws SlaveUnavailableException;
 
     public abstract String issueReceiveToSlave(RemoteSlave rslave, String name, char c, long position,
-                                               String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException;
+                                               String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                               String user, String shapingClass) throws SlaveUnavailableException;
 
     public abstract String issueRenameToSlave(RemoteSlave rslave, String from, String toDirPath,
                                               String toName) throws SlaveUnavailableException;
@@ -59,10 +62,20 @@ public abstract class AbstractBasicIssuer extends AbstractIssuer {
 
 
     public abstract String issueSendToSlave(RemoteSlave rslave, String name, char c, long position,
-                                            String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException;
+                                            String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                            String user, String shapingClass) throws SlaveUnavailableException;
+
+    public abstract String issueShapingToSlave(RemoteSlave rslave, Properties shaping) throws SlaveUnavailableException;
 
+    /**
+     * @param remergeHash The root hash of the last remerge the slave acknowledged, "" if there is none
+     *                    or null if the slave should not keep track of remerge hashes
+     */
     public abstract String issueRemergeToSlave(RemoteSlave rslave, String path, boolean partialRemerge,
-                                               long skipAgeCutoff, long masterTime, boolean instantOnline) throws SlaveUnavailableException;
+                                               long skipAgeCutoff, long masterTime, boolean instantOnline,
+                                               String remergeHash) throws SlaveUnavailableException;
+
+    public abstract String issueRemergeAckToSlave(RemoteSlave rslave, long rootHash) throws SlaveUnavailableException;
 
     public abstract void issueRemergePauseToSlave(RemoteSlave rslave) throws SlaveUnavailableException;
 
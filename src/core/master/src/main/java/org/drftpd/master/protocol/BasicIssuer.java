@@ -25,6 +25,11 @@ import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.master.exceptions.SlaveUnavailableException;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
 
 /**
  * @author fr0w
@@ -102,11 +107,13 @@ public class BasicIssuer extends AbstractBasicIssuer {
     }
 
     public String issueReceiveToSlave(RemoteSlave rslave, String name, char c, long position,
-                                      String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException {
+                                      String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                      String user, String shapingClass) throws SlaveUnavailableException {
         String index = rslave.fetchIndex();
         rslave.sendCommand(new AsyncCommandArgument(index, "receive",
                 new String[]{String.valueOf(c), String.valueOf(position),
-                        tindex.toString(), inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed)}));
+                        tindex.toString(), inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed),
+                        user == null ? "" : user, shapingClass == null ? "" : shapingClass}));
 
         return index;
     }
@@ -142,20 +149,45 @@ public class BasicIssuer extends AbstractBasicIssuer {
 
 
     public String issueSendToSlave(RemoteSlave rslave, String name, char c, long position,
-                                   String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException {
+                                   String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                   String user, String shapingClass) throws SlaveUnavailableException {
         String index = rslave.fetchIndex();
         rslave.sendCommand(new AsyncCommandArgument(index, "send",
                 new String[]{String.valueOf(c), String.valueOf(position), tindex.toString(),
-                        inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed)}));
+                        inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed),
+                        user == null ? "" : user, shapingClass == null ? "" : shapingClass}));
 
         return index;
     }
 
-    public String issueRemergeToSlave(RemoteSlave rslave, String path, boolean partialRemerge, long skipAgeCutoff, long masterTime, boolean instantOnline)
-            throws SlaveUnavailableException {
+    public String issueShapingToSlave(RemoteSlave rslave, Properties shaping) throws SlaveUnavailableException {
+        String index = rslave.fetchIndex();
+        List<String> settings = new ArrayList<>();
+        for (String key : shaping.stringPropertyNames()) {
+            settings.add(key + "=" + shaping.getProperty(key));
+        }
+        rslave.sendCommand(new AsyncCommandArgument(index, "shaping", settings.toArray(new String[0])));
+
+        return index;
+    }
+
+    public String issueRemergeToSlave(RemoteSlave rslave, String path, boolean partialRemerge, long skipAgeCutoff, long masterTime, boolean instantOnline,
+                                      String remergeHash) throws SlaveUnavailableException {
+        String index = rslave.fetchIndex();
+        String[] args = new String[]{path, Boolean.toString(partialRemerge), Long.toString(skipAgeCutoff),
+                Long.toString(masterTime), Boolean.toString(instantOnline)};
+        if (remergeHash != null) {
+            // slaves that don't know about remerge hashes ignore the extra argument
+            args = Arrays.copyOf(args, args.length + 1);
+            args[args.length - 1] = remergeHash;
+        }
+        rslave.sendCommand(new AsyncCommandArgument(index, "remerge", args));
+        return index;
+    }
+
+    public String issueRemergeAckToSlave(RemoteSlave rslave, long rootHash) throws SlaveUnavailableException {
         String index = rslave.fetchIndex();
-        rslave.sendCommand(new AsyncCommandArgument(index, "remerge", new String[]{path,
-                Boolean.toString(partialRemerge), Long.toString(skipAgeCutoff), Long.toString(masterTime), Boolean.toString(instantOnline)}));
+        rslave.sendCommand(new AsyncCommandArgument(index, "remergeAck", Long.toString(rootHash)));
         return index;
     }
 
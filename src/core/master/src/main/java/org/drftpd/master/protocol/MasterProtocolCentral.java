@@ -19,9 +19,8 @@ package org.drftpd.master.protocol;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.drftpd.common.protocol.AbstractIssuer;
-import org.drftpd.common.protocol.HandshakeWrapper;
-import org.drftpd.common.protocol.ProtocolException;
+import org.drftpd.common.protocol.*;
+import org.drftpd.master.GlobalContext;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 import org.reflections.Reflections;
 
@@ -45,6 +44,7 @@ public class MasterProtocolCentral {
 
     private Map<Class<?>, AbstractIssuer> _issuersMap;
     private List<String> _protocols;
+    private MessageCodecRegistry _codecRegistry;
 
     /**
      * Unique constructor for MasterProtocolCentral object.
@@ -58,6 +58,8 @@ public class MasterProtocolCentral {
      * Iterate through all connected extensions, loading them.
      */
     private void loadProtocolExtensions() {
+        _codecRegistry = new MessageCodecRegistry(new Reflections("org.drftpd").getSubTypesOf(MessageCodec.class));
+
         HashMap<Class<?>, AbstractIssuer> issuersMap = new HashMap<>();
         ArrayList<String> protocols = new ArrayList<>();
 
@@ -111,6 +113,15 @@ public class MasterProtocolCentral {
         return _issuersMap.get(clazz);
     }
 
+    public MessageCodecRegistry getCodecRegistry() {
+        return _codecRegistry;
+    }
+
+    private boolean useFramedProtocol() {
+        return GlobalContext.getConfig().getMainProperties()
+                .getProperty("slave.protocol.framed", "true").equalsIgnoreCase("true");
+    }
+
     /**
      * Whenever a slave connects, before it even start remerging, a "handshake" is started
      * to check if the slave is capable of handling all operations that *might* be requested.
@@ -137,6 +148,21 @@ public class MasterProtocolCentral {
                 logger.debug("There was an error during the handshake, check logs.", hw.getException());
                 throw hw.getException();
             }
+            if (hw.getWireFormats() != null) {
+                // The slave waits for us to pick the wire format used from here on
+                String wireFormat = ObjectMessageStream.NAME;
+                if (useFramedProtocol() && hw.getWireFormats().contains(FramedMessageStream.NAME)) {
+                    wireFormat = FramedMessageStream.NAME;
+                }
+                out.writeObject(wireFormat);
+                out.flush();
+                out.reset();
+                if (wireFormat.equals(FramedMessageStream.NAME)) {
+                    rslave.setMessageStream(new FramedMessageStream(rslave.getRawInputStream(),
+                            rslave.getRawOutputStream(), _codecRegistry));
+                }
+                logger.debug("Using wire format {} for slave {}", wireFormat, rslave.getName());
+            }
             logger.debug("Handshake successful");
         } catch (Exception e) {
             throw new ProtocolException(e);
@@ -0,0 +1,238 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.util.PropertyHelper;
+import org.drftpd.master.GlobalContext;
+import org.drftpd.master.vfs.DirectoryHandle;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges the directory listings a slave sends during a remerge into the VFS.
+ *
+ * Listings are split by top level directory into lanes, lanes of all slaves share one pool of
+ * remerge threads. Listings of the same top level directory are merged one after the other in the
+ * order the slave sent them, different top level directories are merged in parallel.
+ *
+ * The listing of the root contains the top level directories, which are created by the listings of
+ * their own lanes. It is only merged while no other lane has listings waiting, so it never comes
+ * before the directories it lists.
+ *
+ * The message that ends a remerge is handled once every listing received before it is merged.
+ *
+ * @version $Id$
+ */
+public class RemergeApplier {
+    private static final Logger logger = LogManager.getLogger(RemergeApplier.class);
+
+    // listings merged before a lane gives other lanes a turn
+    private static final int BATCH_SIZE = 16;
+
+    private static ThreadPoolExecutor _sharedPool = null;
+
+    private final RemoteSlave _rslave;
+
+    private final Executor _executor;
+
+    private final Map<String, Lane> _lanes = new HashMap<>();
+
+    private int _pending = 0;
+
+    private RemergeMessage _completion = null;
+
+    public RemergeApplier(RemoteSlave rslave) {
+        this(rslave, null);
+    }
+
+    /**
+     * @param executor Runs the lanes, null to use the shared pool
+     */
+    RemergeApplier(RemoteSlave rslave, Executor executor) {
+        _rslave = rslave;
+        _executor = executor;
+    }
+
+    private Executor getExecutor() {
+        return _executor == null ? getSharedPool() : _executor;
+    }
+
+    private static synchronized Executor getSharedPool() {
+        if (_sharedPool == null) {
+            int threads = Integer.parseInt(PropertyHelper.getProperty(GlobalContext.getConfig().getMainProperties(),
+                    "remerge.threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+            AtomicInteger count = new AtomicInteger();
+            _sharedPool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "RemergeWorker-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            _sharedPool.allowCoreThreadTimeOut(true);
+        }
+        return _sharedPool;
+    }
+
+    /**
+     * Queues a listing, or the end of the remerge. Never blocks, the slave is paused when too many
+     * listings are waiting.
+     */
+    public void add(RemergeMessage message) {
+        synchronized (this) {
+            if (!message.isCompleted()) {
+                _pending++;
+                String key = getLaneKey(message.getDirectory());
+                Lane lane = _lanes.computeIfAbsent(key, Lane::new);
+                lane._messages.add(message);
+                if (!lane._scheduled && (!key.isEmpty() || _lanes.size() == 1)) {
+                    lane._scheduled = true;
+                    getExecutor().execute(lane);
+                }
+                return;
+            }
+            _completion = message;
+        }
+        checkCompleted();
+    }
+
+    /**
+     * @return The number of listings waiting to be merged or being merged
+     */
+    public synchronized int size() {
+        return _pending;
+    }
+
+    /**
+     * @return The number of top level directories with listings waiting to be merged
+     */
+    public synchronized int getLanes() {
+        return _lanes.size();
+    }
+
+    /**
+     * Drops all listings that were not merged yet, the remerge is not completed.
+     */
+    public synchronized void clear() {
+        for (Lane lane : _lanes.values()) {
+            _pending -= lane._messages.size();
+            lane._messages.clear();
+        }
+        // scheduled lanes remove themselves
+        _lanes.values().removeIf(lane -> !lane._scheduled);
+        _completion = null;
+    }
+
+    /**
+     * Merges a listing into the VFS.
+     */
+    protected void apply(RemergeMessage message) throws IOException {
+        new DirectoryHandle(message.getDirectory()).remerge(message.getFiles(), message.getRslave(), message.getLastModified());
+    }
+
+    /**
+     * Called once all listings received before the end of the remerge are merged, on a thread of its own
+     * as it waits for the checksums and the slave.
+     */
+    protected void complete(RemergeMessage message) {
+        new Thread(() -> message.getRslave().finishRemerge(), "RemergeComplete - " + _rslave.getName()).start();
+    }
+
+    /**
+     * Starts the root lane once it is the only lane left
+     */
+    private void scheduleRoot() {
+        Lane root = _lanes.get("");
+        if (root != null && !root._scheduled && _lanes.size() == 1) {
+            root._scheduled = true;
+            getExecutor().execute(root);
+        }
+    }
+
+    private void checkCompleted() {
+        RemergeMessage completion;
+        synchronized (this) {
+            if (_pending > 0 || _completion == null) {
+                return;
+            }
+            completion = _completion;
+            _completion = null;
+        }
+        logger.info("REMERGE: queue finished for {}", _rslave.getName());
+        complete(completion);
+    }
+
+    static String getLaneKey(String path) {
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        int end = path.indexOf('/', start);
+        return end == -1 ? path.substring(start) : path.substring(start, end);
+    }
+
+    private final class Lane implements Runnable {
+        private final String _key;
+
+        private final ArrayDeque<RemergeMessage> _messages = new ArrayDeque<>();
+
+        private boolean _scheduled = false;
+
+        private Lane(String key) {
+            _key = key;
+        }
+
+        public void run() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                RemergeMessage message;
+                synchronized (RemergeApplier.this) {
+                    message = _messages.poll();
+                    if (message == null) {
+                        _scheduled = false;
+                        _lanes.remove(_key);
+                        scheduleRoot();
+                        return;
+                    }
+                }
+                try {
+                    apply(message);
+                } catch (IOException e) {
+                    logger.error("IOException during remerge", e);
+                    message.getRslave().setOffline("IOException during remerge");
+                } catch (RuntimeException e) {
+                    logger.error("Error merging {} from {}", message.getDirectory(), _rslave.getName(), e);
+                } finally {
+                    synchronized (RemergeApplier.this) {
+                        _pending--;
+                    }
+                }
+                checkCompleted();
+            }
+            // give the other lanes a turn
+            getExecutor().execute(this);
+        }
+    }
+}
@@ -29,9 +29,12 @@ import org.drftpd.common.exceptions.RemoteIOException;
 import org.drftpd.common.network.AsyncCommand;
 import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.protocol.MessageStream;
+import org.drftpd.common.protocol.ObjectMessageStream;
 import org.drftpd.common.protocol.ProtocolException;
 import org.drftpd.common.slave.ConnectInfo;
 import org.drftpd.common.slave.DiskStatus;
+import org.drftpd.common.slave.HandlerPoolStatus;
 import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.common.slave.TransferStatus;
 import org.drftpd.common.util.HostMaskCollection;
@@ -46,6 +49,7 @@ import org.drftpd.master.vfs.CommitManager;
 import org.drftpd.master.vfs.Commitable;
 import org.drftpd.master.vfs.DirectoryHandle;
 import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
 import org.drftpd.slave.network.*;
 import org.drftpd.slave.protocol.QueuedOperation;
 
@@ -53,12 +57,16 @@ import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.PatternSyntaxException;
 
 import static org.drftpd.master.util.SerializerUtils.getMapper;
@@ -72,6 +80,15 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
 
     public static final Key<Boolean> SSL = new Key<>(RemoteSlave.class, "ssl");
     private static final Logger logger = LogManager.getLogger(RemoteSlave.class);
+
+    private static final String SHAPING_PREFIX = "shaping.";
+
+    // root hash of the remerge hashes the slave kept after its last remerge
+    private static final String REMERGE_HASH = "remergeHash";
+
+    // changes whenever a slave becomes available or unavailable, files turn offline or online with it
+    private static final AtomicLong _availabilityVersion = new AtomicLong();
+
     @JsonIgnore
     public transient AtomicBoolean _remergePaused;
     @JsonIgnore
@@ -85,6 +102,10 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     @JsonIgnore
     private transient boolean _remergeChecksums;
     @JsonIgnore
+    private final transient AtomicBoolean _remergePermit;
+    @JsonIgnore
+    private transient volatile Long _remergeHash;
+    @JsonIgnore
     private transient int _prevSocketTimeout;
     @JsonIgnore
     private transient long _lastDownloadSending = 0;
@@ -97,6 +118,8 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     private String _name;
     @JsonIgnore
     private transient DiskStatus _status;
+    @JsonIgnore
+    private transient List<HandlerPoolStatus> _handlerPools;
     private HostMaskCollection _ipMasks;
     private Properties _keysAndValues;
     @JsonIgnore
@@ -105,7 +128,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     @JsonIgnore
     private transient LinkedBlockingDeque<String> _indexPool;
     @JsonIgnore
-    private transient ConcurrentHashMap<String, AsyncResponse> _indexWithCommands;
+    private transient ConcurrentHashMap<String, CompletableFuture<AsyncResponse>> _indexWithCommands;
     @JsonIgnore
     private transient ObjectInputStream _sin;
     @JsonIgnore
@@ -113,17 +136,21 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     @JsonIgnore
     private transient ObjectOutputStream _sout;
     @JsonIgnore
+    private transient InputStream _rawIn;
+    @JsonIgnore
+    private transient OutputStream _rawOut;
+    @JsonIgnore
+    private transient volatile MessageStream _messageStream;
+    @JsonIgnore
     private transient ConcurrentHashMap<TransferIndex, RemoteTransfer> _transfers;
     @JsonIgnore
     private transient boolean _initRemergeCompleted;
     @JsonIgnore
-    private final transient Object _commandMonitor;
-    @JsonIgnore
-    private final transient LinkedBlockingQueue<RemergeMessage> _remergeQueue;
+    private final transient RemergeApplier _remergeApplier;
     @JsonIgnore
     private final transient LinkedBlockingQueue<FileHandle> _crcQueue;
     @JsonIgnore
-    private transient RemergeThread _remergeThread;
+    private final transient AtomicInteger _crcInFlight;
     @JsonIgnore
     private transient CrcThread _crcThread;
 
@@ -133,9 +160,10 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         _ipMasks = new HostMaskCollection();
         _renameQueue = new ConcurrentLinkedDeque<>();
         _remergePaused = new AtomicBoolean();
-        _remergeQueue = new LinkedBlockingQueue<>();
+        _remergePermit = new AtomicBoolean();
+        _remergeApplier = new RemergeApplier(this);
         _crcQueue = new LinkedBlockingQueue<>();
-        _commandMonitor = new Object();
+        _crcInFlight = new AtomicInteger();
     }
 
     public RemoteSlave(String name) {
@@ -207,6 +235,9 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     public void setProperty(String name, String value) {
         _keysAndValues.setProperty(name, value);
         commit();
+        if (name.startsWith(SHAPING_PREFIX)) {
+            sendShaping();
+        }
     }
 
     public String getProperty(String name, String def) {
@@ -291,6 +322,13 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         return _name;
     }
 
+    /**
+     * @return The last reported state of the worker pools on the slave, null if the slave did not report them yet
+     */
+    public List<HandlerPoolStatus> getHandlerPools() {
+        return _handlerPools;
+    }
+
     /**
      * Returns the RemoteSlave's saved SlaveStatus, can return a status before
      * remerge() is completed
@@ -375,6 +413,8 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         String checkSSLIndex = SlaveManager.getBasicIssuer().issueCheckSSL(this);
         getTransientKeyedMap().setObject(SSL, fetchCheckSSLFromIndex(checkSSLIndex));
 
+        sendShaping();
+
         long skipAgeCutoff = 0L;
 
         String remergeMode = GlobalContext.getConfig().getMainProperties().getProperty("partial.remerge.mode");
@@ -408,17 +448,34 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 GlobalContext.getEventService().publishAsync(new SlaveEvent("ADDSLAVE", this));
             }
         }
+        if (GlobalContext.getGlobalContext().getSlaveManager().acquireRemergePermit(this)) {
+            _remergePermit.set(true);
+        }
+
+        // the slave only sends directories that changed since the remerge it last kept the hashes of
+        String remergeHash = null;
+        if (GlobalContext.getConfig().getMainProperties().getProperty("remerge.hashes", "true").equalsIgnoreCase("true")) {
+            remergeHash = getProperty(REMERGE_HASH, "");
+        }
+        _remergeHash = null;
+
         String remergeIndex;
         if (partialRemerge) {
-            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", true, skipAgeCutoff, System.currentTimeMillis(), false);
+            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", true, skipAgeCutoff, System.currentTimeMillis(), false, remergeHash);
         } else if (instantOnline) {
-            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, true);
+            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, true, remergeHash);
         } else {
-            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, false);
+            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, false, remergeHash);
         }
 
         try {
-            fetchResponse(remergeIndex, 0);
+            AsyncResponse response = fetchResponse(remergeIndex, 0);
+            if (response instanceof AsyncResponseRemergeHash) {
+                AsyncResponseRemergeHash hashResponse = (AsyncResponseRemergeHash) response;
+                logger.info("Slave {} sent {} remerge, root hash {}", getName(),
+                        hashResponse.isIncremental() ? "an incremental" : "a full", hashResponse.getRootHash());
+                _remergeHash = hashResponse.getRootHash();
+            }
         } catch (RemoteIOException e) {
             throw new IOException(e.getMessage());
         }
@@ -444,9 +501,19 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     }
 
     public void setAvailable(boolean available) {
+        if (_isAvailable != available) {
+            _availabilityVersion.incrementAndGet();
+        }
         _isAvailable = available;
     }
 
+    /**
+     * @return A number that changes whenever any slave becomes available or unavailable
+     */
+    public static long getAvailabilityVersion() {
+        return _availabilityVersion.get();
+    }
+
     public boolean isAvailablePing() {
         if (!isAvailable()) {
             return false;
@@ -531,6 +598,8 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
 
     protected void makeAvailableAfterRemerge() {
         _initRemergeCompleted = true;
+        releaseRemergePermit();
+        acknowledgeRemergeHash();
         setProperty("lastConnect", Long.toString(System.currentTimeMillis()));
         if (GlobalContext.getConfig().getMainProperties().getProperty("partial.remerge.mode").equalsIgnoreCase("instant")) {
             setRemerging(false);
@@ -605,11 +674,18 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         return moreInfo();
     }
 
-    public synchronized void connect(Socket socket, ObjectInputStream in,
-                                     ObjectOutputStream out) {
+    /**
+     * @param rawIn The buffered stream underneath {@code in}, used if the handshake switches wire format
+     * @param rawOut The buffered stream underneath {@code out}, used if the handshake switches wire format
+     */
+    public synchronized void connect(Socket socket, ObjectInputStream in, ObjectOutputStream out,
+                                     InputStream rawIn, OutputStream rawOut) {
         _socket = socket;
         _sout = out;
         _sin = in;
+        _rawIn = rawIn;
+        _rawOut = rawOut;
+        _messageStream = new ObjectMessageStream(in, out);
         if (_indexPool == null) {
             _indexPool = new LinkedBlockingDeque<>(256);
         } else {
@@ -674,6 +750,13 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         return ((AsyncResponseChecksum) fetchResponse(index)).getChecksum();
     }
 
+    /**
+     * @see #fetchResponseAsync(String)
+     */
+    public CompletableFuture<Long> fetchChecksumFromIndexAsync(String index) {
+        return fetchResponseAsync(index).thenApply(ar -> ((AsyncResponseChecksum) ar).getChecksum());
+    }
+
     public String fetchIndex() throws SlaveUnavailableException {
         String index;
         while (isOnline()) {
@@ -682,6 +765,8 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 if (index == null) {
                     logger.error("Too many commands sent, need to wait for the slave to process commands");
                 } else {
+                    // The slot has to exist before the command is sent, the response can arrive at any time after that
+                    _indexWithCommands.put(index, new CompletableFuture<>());
                     return index;
                 }
                 if (getActualTimeout() < (System.currentTimeMillis() - _lastResponseReceived)) {
@@ -724,30 +809,102 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
      */
     public AsyncResponse fetchResponse(String index, int wait)
             throws SlaveUnavailableException, RemoteIOException {
-        long total = System.currentTimeMillis();
+        CompletableFuture<AsyncResponse> slot = getResponseSlot(index, wait);
+        AsyncResponse rar;
+        try {
+            while (true) {
+                try {
+                    rar = slot.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // keep waiting, the slot is completed on response, timeout or when the slave goes offline
+                }
+            }
+        } catch (ExecutionException e) {
+            releaseIndex(index, slot);
+            throw unwrapResponseException(index, e.getCause());
+        }
+        releaseIndex(index, slot);
+        return checkResponse(rar);
+    }
 
-        while (isOnline() && !_indexWithCommands.containsKey(index)) {
+    /**
+     * Non blocking variant of {@link #fetchResponse(String)}, for hooks and plugins that want to compose
+     * slave calls without keeping a thread waiting for each of them.
+     *
+     * @param index The index returned by the issuer that sent the command
+     * @return A future that completes with the response, or exceptionally with a {@link RemoteIOException}
+     * or {@link SlaveUnavailableException}. Dependent stages run on a shared response executor.
+     */
+    public CompletableFuture<AsyncResponse> fetchResponseAsync(String index) {
+        return fetchResponseAsync(index, getActualTimeout());
+    }
+
+    /**
+     * @param wait The maximum time to wait for the response in milliseconds, 0 waits as long as the slave is online
+     * @see #fetchResponseAsync(String)
+     */
+    public CompletableFuture<AsyncResponse> fetchResponseAsync(String index, int wait) {
+        CompletableFuture<AsyncResponse> slot;
+        try {
+            slot = getResponseSlot(index, wait);
+        } catch (SlaveUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return slot.handleAsync((rar, t) -> {
+            releaseIndex(index, slot);
             try {
-                synchronized (_commandMonitor) {
-                    _commandMonitor.wait(1000);
+                if (t != null) {
+                    throw unwrapResponseException(index, t);
                 }
-
-                // will wait a maximum of 1000 milliseconds before waking up
-            } catch (InterruptedException e) {
+                return checkResponse(rar);
+            } catch (RemoteIOException | SlaveUnavailableException e) {
+                throw new CompletionException(e);
             }
+        }, getGlobalContext().getSlaveManager().getResponseExecutor());
+    }
 
-            if ((wait != 0) && ((System.currentTimeMillis() - total) >= wait)) {
-                setOffline("Slave has taken too long while waiting for reply " + index);
-            }
+    private CompletableFuture<AsyncResponse> getResponseSlot(String index, int wait) throws SlaveUnavailableException {
+        ConcurrentHashMap<String, CompletableFuture<AsyncResponse>> slots = _indexWithCommands;
+        CompletableFuture<AsyncResponse> slot = slots == null ? null : slots.get(index);
+        if (slot == null || !isOnline()) {
+            throw new SlaveUnavailableException("Slave went offline while processing command");
+        }
+        if (wait != 0) {
+            // The timeout is handled by the shared CompletableFuture scheduler, no thread has to poll for it
+            slot.orTimeout(wait, TimeUnit.MILLISECONDS);
         }
+        return slot;
+    }
 
-        if (!isOnline()) {
-            throw new SlaveUnavailableException("Slave went offline while processing command");
+    /**
+     * Forgets the slot and hands the index back to the pool, unless the slave went offline in the meantime
+     */
+    private void releaseIndex(String index, CompletableFuture<AsyncResponse> slot) {
+        ConcurrentHashMap<String, CompletableFuture<AsyncResponse>> slots = _indexWithCommands;
+        if (slots != null && slot != null && slots.remove(index, slot)) {
+            _indexPool.push(index);
         }
+    }
 
-        AsyncResponse rar = _indexWithCommands.remove(index);
-        _indexPool.push(index);
+    private SlaveUnavailableException unwrapResponseException(String index, Throwable t) throws RemoteIOException {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof TimeoutException) {
+            setOffline("Slave has taken too long while waiting for reply " + index);
+            return new SlaveUnavailableException("Slave has taken too long while waiting for reply " + index);
+        }
+        if (t instanceof RemoteIOException) {
+            throw (RemoteIOException) t;
+        }
+        if (t instanceof SlaveUnavailableException) {
+            return (SlaveUnavailableException) t;
+        }
+        return new SlaveUnavailableException("Slave went offline while processing command", t);
+    }
 
+    private AsyncResponse checkResponse(AsyncResponse rar) throws SlaveUnavailableException, RemoteIOException {
         if (rar instanceof AsyncResponseException) {
             Throwable t = ((AsyncResponseException) rar).getThrowable();
 
@@ -820,7 +977,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                         .currentTimeMillis() - _lastCommandSent)))) {
                     if (pingIndex != null) {
                         logger.error("Ping lost, no response from slave, sending new ping to slave");
-                        _indexPool.push(pingIndex);
+                        releaseIndex(pingIndex, _indexWithCommands.get(pingIndex));
                     }
                     pingIndex = SlaveManager.getBasicIssuer().issuePingToSlave(this);
                 } else if (getActualTimeout() < (System.currentTimeMillis() - _lastResponseReceived)) {
@@ -833,21 +990,21 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 if (isOnline() && !_initRemergeCompleted) {
                     if (_remergePaused.get()) {
                         // Do we need to resume?
-                        if (_remergeQueue.size() <= Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.resume.threshold", "50"))) {
+                        if (_remergeApplier.size() <= Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.resume.threshold", "50"))) {
                             _socket.setSoTimeout(_prevSocketTimeout); // Restore old time out
                             SlaveManager.getBasicIssuer().issueRemergeResumeToSlave(this);
                             _remergePaused.set(false);
-                            logger.debug("Issued remerge resume to slave, current remerge queue is {}", _remergeQueue.size());
+                            logger.debug("Issued remerge resume to slave, current remerge queue is {}", _remergeApplier.size());
                         }
                     } else {
                         // Do we need to pause?
-                        if (_remergeQueue.size() > Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.pause.threshold", "250"))) {
+                        if (_remergeApplier.size() > Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.pause.threshold", "250"))) {
                             SlaveManager.getBasicIssuer().issueRemergePauseToSlave(this);
                             _prevSocketTimeout = _socket.getSoTimeout();
                             // Set lower timeout so it reacts faster when queueSize goes back down
                             _socket.setSoTimeout(100);
                             _remergePaused.set(true);
-                            logger.debug("Issued remerge pause to slave, current remerge queue is {}", _remergeQueue.size());
+                            logger.debug("Issued remerge pause to slave, current remerge queue is {}", _remergeApplier.size());
                         }
                     }
                 }
@@ -871,6 +1028,12 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                     case "Remerge":
                         putRemergeQueue(new RemergeMessage((AsyncResponseRemerge) ar, this));
                         break;
+                    case "ChangeFeed":
+                        // directories changed on the slave outside of drftpd, merged like remerge listings
+                        for (AsyncResponseRemerge listing : ((AsyncResponseChangeFeed) ar).getListings()) {
+                            putRemergeQueue(new RemergeMessage(listing, this));
+                        }
+                        break;
                     case "DiskStatus":
                         _status = ((AsyncResponseDiskStatus) ar)
                                 .getDiskStatus();
@@ -895,19 +1058,25 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                             removeTransfer(ats.getTransferIndex());
                         }
                         break;
+                    case "HandlerStats":
+                        _handlerPools = ((AsyncResponseHandlerStats) ar).getPools();
+                        break;
+                    case "SiteBotMessage":
+                        String message = ((AsyncResponseSiteBotMessage) ar).getMessage();
+                        GlobalContext.getEventService().publishAsync(new SlaveEvent("MSGSLAVE", message, this));
+                        break;
                     default:
-                        _indexWithCommands.put(ar.getIndex(), ar);
+                        CompletableFuture<AsyncResponse> slot = _indexWithCommands.get(ar.getIndex());
+                        if (slot == null) {
+                            logger.warn("Received response for index {} nobody is waiting for: {}", ar.getIndex(), ar);
+                            break;
+                        }
+                        // Only the caller waiting on this index is woken up
+                        slot.complete(ar);
                         if (pingIndex != null
                                 && pingIndex.equals(ar.getIndex())) {
                             fetchResponse(pingIndex);
                             pingIndex = null;
-                        } else if (ar.getIndex().equals("SiteBotMessage")) {
-                            String message = ((AsyncResponseSiteBotMessage) ar).getMessage();
-                            GlobalContext.getEventService().publishAsync(new SlaveEvent("MSGSLAVE", message, this));
-                        } else {
-                            synchronized (_commandMonitor) {
-                                _commandMonitor.notifyAll();
-                            }
                         }
                         break;
                 }
@@ -946,6 +1115,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     }
 
     private void setOfflineReal(String reason) {
+        releaseRemergePermit();
         // If remerging and remerge is paused, wake it
         if (_isRemerging) {
             if (_remergePaused.get()) {
@@ -960,7 +1130,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         }
         // If the slave is still processing the remerge queue clear all
         // outstanding entries
-        _remergeQueue.clear();
+        _remergeApplier.clear();
         _crcQueue.clear();
         if (_sin != null) {
             try {
@@ -977,6 +1147,9 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
             }
             _sout = null;
         }
+        _rawIn = null;
+        _rawOut = null;
+        _messageStream = null;
         if (_socket != null) {
             setProperty("lastOnline", Long.toString(System.currentTimeMillis()));
             try {
@@ -985,11 +1158,17 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
             }
             _socket = null;
         }
-        if (_indexWithCommands != null)
+        if (_indexWithCommands != null) {
+            List<CompletableFuture<AsyncResponse>> slots = new ArrayList<>(_indexWithCommands.values());
             _indexWithCommands.clear();
+            for (CompletableFuture<AsyncResponse> slot : slots) {
+                slot.completeExceptionally(new SlaveUnavailableException("Slave went offline while processing command"));
+            }
+        }
         if (_transfers != null)
             _transfers.clear();
         _status = null;
+        _handlerPools = null;
 
         if (_isAvailable) {
             GlobalContext.getEventService().publishAsync(
@@ -1001,6 +1180,44 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         setAvailable(false);
     }
 
+    /**
+     * All directories the slave sent are merged into the VFS, the slave keeps the hashes of this remerge
+     * and the next one only sends what changed since.
+     */
+    private void acknowledgeRemergeHash() {
+        Long rootHash = _remergeHash;
+        _remergeHash = null;
+        if (rootHash == null) {
+            return;
+        }
+        // The slave only sends what changed since the acknowledged hash, so the merged inodes have to be on disk
+        if (!CommitManager.getCommitManager().flushAll()) {
+            logger.warn("Not all inodes of the remerge of slave {} could be written, the next remerge is compared with the previous hashes", getName());
+            return;
+        }
+        try {
+            VirtualFileSystem.getVirtualFileSystem().sync();
+        } catch (IOException e) {
+            logger.warn("Unable to sync the remerge of slave {}, the next remerge is compared with the previous hashes", getName(), e);
+            return;
+        }
+        try {
+            fetchResponse(SlaveManager.getBasicIssuer().issueRemergeAckToSlave(this, rootHash));
+            setProperty(REMERGE_HASH, Long.toString(rootHash));
+        } catch (SlaveUnavailableException | RemoteIOException e) {
+            logger.warn("Slave {} did not keep the hashes of this remerge, the next remerge is compared with the previous ones", getName(), e);
+        }
+    }
+
+    /**
+     * Lets the next slave waiting for a concurrent remerge slot start, if this slave holds one.
+     */
+    private void releaseRemergePermit() {
+        if (_remergePermit.compareAndSet(true, false)) {
+            GlobalContext.getGlobalContext().getSlaveManager().releaseRemergePermit();
+        }
+    }
+
     public void setOffline(Throwable t) {
         logger.info("setOffline()", t);
 
@@ -1021,13 +1238,13 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     private AsyncResponse readAsyncResponse() throws SlaveUnavailableException,
             SocketTimeoutException {
         Object obj;
-        ObjectInputStream in = _sin;
+        MessageStream in = _messageStream;
         if (!isOnline()) {
             throw new SlaveUnavailableException("Slave is unavailable");
         }
         while (true) {
             try {
-                obj = in.readObject();
+                obj = in.readMessage();
             } catch (ClassNotFoundException e) {
                 logger.error("ClassNotFound reading AsyncResponse", e);
                 setOffline("ClassNotFound reading AsyncResponse");
@@ -1068,15 +1285,13 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
             throw new NullPointerException();
         }
 
-        ObjectOutputStream out = _sout;
+        MessageStream out = _messageStream;
         if (!isOnline()) {
             throw new SlaveUnavailableException();
         }
 
         try {
-            out.writeObject(rac);
-            out.flush();
-            out.reset();
+            out.writeMessage(rac);
         } catch (IOException e) {
             logger.error("error in sendCommand()", e);
             throw new SlaveUnavailableException("error sending command (exception already handled)", e);
@@ -1153,8 +1368,18 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         }
     }
 
-    public LinkedBlockingQueue<RemergeMessage> getRemergeQueue() {
-        return _remergeQueue;
+    /**
+     * @return The number of directory listings received from the slave that are not merged yet
+     */
+    public int getRemergeQueueSize() {
+        return _remergeApplier.size();
+    }
+
+    /**
+     * @return The number of files waiting for their checksum from the slave, requested ones included
+     */
+    public int getCRCQueueSize() {
+        return _crcQueue.size() + _crcInFlight.get();
     }
 
     public LinkedBlockingQueue<FileHandle> getCRCQueue() {
@@ -1190,10 +1415,33 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 throw new KeyNotFoundException();
             String value = (String) _keysAndValues.remove(key);
             commit();
+            if (key.startsWith(SHAPING_PREFIX)) {
+                sendShaping();
+            }
             return value;
         }
     }
 
+    /**
+     * Sends the bandwidth limits, the slave properties starting with "shaping.", to the slave if it is online.
+     */
+    public void sendShaping() {
+        if (!isOnline()) {
+            return;
+        }
+        Properties shaping = new Properties();
+        for (String key : getProperties().stringPropertyNames()) {
+            if (key.startsWith(SHAPING_PREFIX)) {
+                shaping.setProperty(key, getProperty(key));
+            }
+        }
+        try {
+            fetchResponse(SlaveManager.getBasicIssuer().issueShapingToSlave(this, shaping));
+        } catch (SlaveUnavailableException | RemoteIOException e) {
+            logger.warn("Unable to send the bandwidth limits to {}", getName(), e);
+        }
+    }
+
     public String descriptiveName() {
         return getName();
     }
@@ -1218,17 +1466,31 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         return _sin;
     }
 
+    public InputStream getRawInputStream() {
+        return _rawIn;
+    }
+
+    public OutputStream getRawOutputStream() {
+        return _rawOut;
+    }
+
+    /**
+     * @return The wire format currently used to talk to this slave
+     */
+    public MessageStream getMessageStream() {
+        return _messageStream;
+    }
+
+    /**
+     * Switches the wire format, only to be used during the handshake before any commands are sent
+     */
+    public void setMessageStream(MessageStream messageStream) {
+        _messageStream = messageStream;
+    }
+
     public void putRemergeQueue(RemergeMessage message) {
         logger.debug("REMERGE: putting message into queue");
-        try {
-            _remergeQueue.put(message);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-        if (_remergeThread == null || !_remergeThread.isAlive()) {
-            _remergeThread = new RemergeThread(getName());
-            _remergeThread.start();
-        }
+        _remergeApplier.add(message);
     }
 
     public void putCRCQueue(FileHandle file) {
@@ -1244,59 +1506,39 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         }
     }
 
-    private class RemergeThread extends Thread {
-
-        public RemergeThread(String slaveName) {
-            super("RemergeThread - " + slaveName);
-        }
-
-        public void run() {
-            while (true) {
-                RemergeMessage msg;
-                try {
-                    logger.info("REMERGE SIZE: {}", _remergeQueue.size());
-                    msg = _remergeQueue.take();
-                } catch (InterruptedException e) {
-                    logger.debug("REMERGE QUE: fault in node from queue with exception {}", e.getMessage());
-                    continue;
-                }
-
-                if (msg.isCompleted()) {
-                    logger.info("REMERGE: queue finished");
-                    // Wait for crc queue to finish
-                    while (!_crcQueue.isEmpty()) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                            logger.debug("REMERGE QUE: thread interrupted waiting for crc queue to drain with exception {}", e.getMessage());
-                        }
-                    }
-                    if (!_initRemergeCompleted) {
-                        // First remerge after slave connect
-                        msg.getRslave().makeAvailableAfterRemerge();
-                    }
-                    break;
-                }
-
-                DirectoryHandle dir = new DirectoryHandle(msg.getDirectory());
-
-                try {
-                    dir.remerge(msg.getFiles(), msg.getRslave(), msg.getLastModified());
-                } catch (IOException e) {
-                    logger.error("IOException during remerge", e);
-                    msg.getRslave().setOffline("IOException during remerge");
-                    break;
-                }
+    /**
+     * Called by the {@link RemergeApplier} once all directories the slave sent are merged.
+     */
+    void finishRemerge() {
+        // Wait for crc queue to finish
+        while (getCRCQueueSize() > 0 && isOnline()) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                logger.debug("REMERGE QUE: thread interrupted waiting for crc queue to drain with exception {}", e.getMessage());
             }
         }
+        if (!_initRemergeCompleted && isOnline()) {
+            // First remerge after slave connect
+            makeAvailableAfterRemerge();
+        }
     }
 
+    /**
+     * Fetches the checksums of remerged files that have none in the VFS. Up to remerge.crc.parallel
+     * requests are sent to the slave before waiting for the first answer, so the slave can work on
+     * several files, on different roots for example, at once.
+     */
     private class CrcThread extends Thread {
 
-        private boolean _finished = false;
+        private volatile boolean _finished = false;
+
+        private final Semaphore _slots;
 
         CrcThread(String slaveName) {
             super("crcThread - " + slaveName);
+            _slots = new Semaphore(Math.max(1, Integer.parseInt(GlobalContext.getConfig().getMainProperties()
+                    .getProperty("remerge.crc.parallel", "4"))));
         }
 
         public void run() {
@@ -1316,21 +1558,33 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 if (file == null) {
                     continue;
                 }
-                long checksum;
+                _slots.acquireUninterruptibly();
+                _crcInFlight.incrementAndGet();
+                String index;
                 try {
-                    checksum = getCheckSumForPath(file.getPath());
-                } catch (IOException e) {
-                    logger.error("IOException on remerge getting CRC from slave [{}, {}]", getName(), file.getPath());
-                    continue;
+                    index = SlaveManager.getBasicIssuer().issueChecksumToSlave(RemoteSlave.this, file.getPath());
                 } catch (SlaveUnavailableException e) {
+                    _crcInFlight.decrementAndGet();
+                    _slots.release();
                     logger.warn("Slave went offline while processing remerge crc queue.");
                     break;
                 }
-                try {
-                    file.setCheckSum(checksum);
-                } catch (FileNotFoundException e) {
-                    logger.debug("File deleted while getting crc from slave {}", file.getPath());
-                }
+                fetchChecksumFromIndexAsync(index).whenComplete((checksum, t) -> {
+                    try {
+                        if (t == null) {
+                            file.setCheckSum(checksum);
+                        } else if (t.getCause() instanceof SlaveUnavailableException) {
+                            logger.warn("Slave went offline while processing remerge crc queue.");
+                        } else {
+                            logger.error("IOException on remerge getting CRC from slave [{}, {}]", RemoteSlave.this.getName(), file.getPath());
+                        }
+                    } catch (FileNotFoundException e) {
+                        logger.debug("File deleted while getting crc from slave {}", file.getPath());
+                    } finally {
+                        _crcInFlight.decrementAndGet();
+                        _slots.release();
+                    }
+                });
             }
         }
 
@@ -0,0 +1,124 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.drftpd.master.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latencies of the slave connections accepted by the {@link SlaveManager}.
+ *
+ * @version $Id$
+ */
+public class SlaveConnectStats {
+
+    private final AtomicLong _accepted = new AtomicLong();
+
+    private final AtomicLong _rejected = new AtomicLong();
+
+    private final AtomicLong _timedOut = new AtomicLong();
+
+    private final AtomicLong _failed = new AtomicLong();
+
+    private final AtomicLong _connected = new AtomicLong();
+
+    private final LatencyHistogram _tlsHandshake = new LatencyHistogram();
+
+    private final LatencyHistogram _identify = new LatencyHistogram();
+
+    private final LatencyHistogram _connect = new LatencyHistogram();
+
+    void accepted() {
+        _accepted.incrementAndGet();
+    }
+
+    void rejected() {
+        _rejected.incrementAndGet();
+    }
+
+    void timedOut() {
+        _timedOut.incrementAndGet();
+    }
+
+    void failed() {
+        _failed.incrementAndGet();
+    }
+
+    void connected(long acceptedAt) {
+        _connected.incrementAndGet();
+        _connect.record(System.nanoTime() - acceptedAt);
+    }
+
+    /**
+     * @return Connections accepted on the slave port
+     */
+    public long getAccepted() {
+        return _accepted.get();
+    }
+
+    /**
+     * @return Connections closed right away as too many were already waiting for their handshake
+     */
+    public long getRejected() {
+        return _rejected.get();
+    }
+
+    /**
+     * @return Connections that did not complete a handshake stage in time
+     */
+    public long getTimedOut() {
+        return _timedOut.get();
+    }
+
+    /**
+     * @return Connections that failed for any other reason, unknown or already connected slaves included
+     */
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    /**
+     * @return Connections that ended with a connected slave
+     */
+    public long getConnected() {
+        return _connected.get();
+    }
+
+    /**
+     * @return Duration of the TLS handshake
+     */
+    public LatencyHistogram getTLSHandshakeLatency() {
+        return _tlsHandshake;
+    }
+
+    /**
+     * @return Duration of the exchange in which the slave sends its name
+     */
+    public LatencyHistogram getIdentifyLatency() {
+        return _identify;
+    }
+
+    /**
+     * @return Time from accepting the connection until the slave is connected, time spent waiting
+     * for a handshake thread included
+     */
+    public LatencyHistogram getConnectLatency() {
+        return _connect;
+    }
+}
@@ -28,6 +28,7 @@ import org.drftpd.common.util.PropertyHelper;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.Master;
 import org.drftpd.master.cron.TimeEventInterface;
+import org.drftpd.master.event.SlaveEvent;
 import org.drftpd.master.exceptions.FatalException;
 import org.drftpd.master.exceptions.NoAvailableSlaveException;
 import org.drftpd.master.exceptions.SlaveFileException;
@@ -35,6 +36,7 @@ import org.drftpd.master.exceptions.SlaveUnavailableException;
 import org.drftpd.master.network.RemoteTransfer;
 import org.drftpd.master.protocol.AbstractBasicIssuer;
 import org.drftpd.master.protocol.MasterProtocolCentral;
+import org.drftpd.master.util.LatencyHistogram;
 import org.drftpd.master.vfs.DirectoryHandle;
 import org.drftpd.slave.exceptions.ObjectNotFoundException;
 import org.elasticsearch.common.ssl.SslConfiguration;
@@ -44,10 +46,24 @@ import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLSocket;
 import java.beans.XMLDecoder;
 import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.drftpd.master.util.SerializerUtils.getMapper;
 
@@ -72,6 +88,14 @@ public class SlaveManager extends SslConfigurationLoader implements Runnable, Ti
     protected MasterProtocolCentral _central;
     private int _port;
     private boolean _listForSlaves = true;
+    private final SlaveConnectStats _connectStats = new SlaveConnectStats();
+    private ThreadPoolExecutor _handshakePool;
+    private ScheduledThreadPoolExecutor _handshakeWatchdog;
+    private ThreadPoolExecutor _responsePool;
+    private int _tlsTimeout;
+    private int _identifyTimeout;
+    private Semaphore _remergePermits;
+    private int _remergeLimit;
 
     public SlaveManager() throws SlaveFileException {
         super(SETTING_PREFIX);
@@ -83,6 +107,7 @@ public class SlaveManager extends SslConfigurationLoader implements Runnable, Ti
         }
 
         _port = Integer.parseInt(PropertyHelper.getProperty(GlobalContext.getConfig().getMainProperties(), "master.bindport"));
+        configureConnections(GlobalContext.getConfig().getMainProperties());
         _central = new MasterProtocolCentral();
         loadSlaves();
     }
@@ -95,6 +120,65 @@ public class SlaveManager extends SslConfigurationLoader implements Runnable, Ti
     protected SlaveManager(String reason) {
         super(SETTING_PREFIX);
         logger.warn("Initialized a SlaveManager using a indirect route - {}", reason);
+        _responsePool = createResponsePool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Sets up the handshake pool and the remerge limit, only called once as both are in use
+     * while slaves are connected.
+     */
+    void configureConnections(Properties cfg) {
+        int threads = Integer.parseInt(PropertyHelper.getProperty(cfg, "slavemanager.handshake.threads", "8"));
+        int queue = Integer.parseInt(PropertyHelper.getProperty(cfg, "slavemanager.handshake.queue", "256"));
+        _tlsTimeout = Integer.parseInt(PropertyHelper.getProperty(cfg, "slavemanager.handshake.tls.timeout",
+                Integer.toString(socketTimeout)));
+        _identifyTimeout = Integer.parseInt(PropertyHelper.getProperty(cfg, "slavemanager.handshake.name.timeout",
+                Integer.toString(socketTimeout)));
+        _handshakePool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queue)), new HandshakeThreadFactory());
+        _handshakePool.allowCoreThreadTimeOut(true);
+        _handshakeWatchdog = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "SlaveHandshakeWatchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        _handshakeWatchdog.setRemoveOnCancelPolicy(true);
+        _responsePool = createResponsePool(Integer.parseInt(PropertyHelper.getProperty(cfg,
+                "slavemanager.response.threads", Integer.toString(Runtime.getRuntime().availableProcessors()))));
+
+        _remergeLimit = Integer.parseInt(PropertyHelper.getProperty(cfg, "remerge.concurrent",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        _remergePermits = _remergeLimit > 0 ? new Semaphore(_remergeLimit, true) : null;
+    }
+
+    private static ThreadPoolExecutor createResponsePool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "RemoteSlaveResponse-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return the pool running the continuations of {@link RemoteSlave#fetchResponseAsync(String)}, shared by
+     * all slaves so composed stages never run on a RemoteSlave reader thread
+     */
+    public Executor getResponseExecutor() {
+        return _responsePool;
+    }
+
+    private static class HandshakeThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SlaveHandshake-" + _count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
     }
 
     public static AbstractBasicIssuer getBasicIssuer() {
@@ -205,6 +289,7 @@ public class SlaveManager extends SslConfigurationLoader implements Runnable, Ti
             for (RemoteSlave rSlave : _rSlaves.values()) {
                 rSlave.shutdown();
             }
+            _responsePool.shutdown();
         }));
     }
 
@@ -391,77 +476,242 @@ public class SlaveManager extends SslConfigurationLoader implements Runnable, Ti
             throw new RuntimeException("Something went wrong connecting to master", e);
         }
 
-        SSLSocket socket = null;
-
         while (_listForSlaves) {
-            RemoteSlave rSlave;
-            ObjectInputStream in;
-            ObjectOutputStream out;
-
+            SSLSocket socket;
             try {
                 socket = (SSLSocket) _serverSocket.accept();
-                logger.debug("[{}] Accepted new connection", socket.getRemoteSocketAddress());
-                socket.setSoTimeout(socketTimeout);
-                logger.debug("[{}] Enabled ciphers for this new connection are as follows: '{}'",
-                        socket.getRemoteSocketAddress(), Arrays.toString(socket.getEnabledCipherSuites()));
-                logger.debug("[{}] Enabled protocols for this new connection are as follows: '{}'",
-                        socket.getRemoteSocketAddress(), Arrays.toString(socket.getEnabledProtocols()));
-                socket.setUseClientMode(false);
-                socket.startHandshake();
+            } catch (Exception e) {
+                logger.error("", e);
+                continue;
+            }
 
-                out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
-                out.flush();
-                in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            _connectStats.accepted();
+            logger.debug("[{}] Accepted new connection", socket.getRemoteSocketAddress());
+            long acceptedAt = System.nanoTime();
+            try {
+                _handshakePool.execute(() -> handshake(socket, acceptedAt));
+            } catch (RejectedExecutionException e) {
+                _connectStats.rejected();
+                logger.warn("[{}] Too many slave connections waiting for their handshake, closing connection",
+                        socket.getRemoteSocketAddress());
+                closeQuietly(socket);
+            }
+        }
+        _handshakePool.shutdown();
+    }
 
-                String slaveName = RemoteSlave.getSlaveNameFromObjectInput(in);
+    /**
+     * Performs the TLS handshake and reads the slave name for a newly accepted connection, runs on the
+     * handshake pool so a slow peer does not hold up other slaves.
+     */
+    private void handshake(SSLSocket socket, long acceptedAt) {
+        RemoteSlave rSlave;
+        ObjectInputStream in;
+        ObjectOutputStream out;
+        BufferedInputStream rawIn;
+        BufferedOutputStream rawOut;
+        HandshakeDeadline deadline = null;
 
-                try {
-                    rSlave = getRemoteSlave(slaveName);
-                } catch (ObjectNotFoundException e) {
-                    out.writeObject(new AsyncCommandArgument("error", "error", slaveName + " does not exist, use \"site addslave\""));
-                    logger.error("Slave {} does not exist, use \"site addslave\"", slaveName);
-                    socket.close();
-                    continue;
-                }
+        try {
+            logger.debug("[{}] Enabled ciphers for this new connection are as follows: '{}'",
+                    socket.getRemoteSocketAddress(), Arrays.toString(socket.getEnabledCipherSuites()));
+            logger.debug("[{}] Enabled protocols for this new connection are as follows: '{}'",
+                    socket.getRemoteSocketAddress(), Arrays.toString(socket.getEnabledProtocols()));
+            socket.setUseClientMode(false);
+
+            deadline = new HandshakeDeadline(socket, "TLS handshake", _tlsTimeout);
+            socket.startHandshake();
+            deadline.done(_connectStats.getTLSHandshakeLatency());
+
+            deadline = new HandshakeDeadline(socket, "name exchange", _identifyTimeout);
+            rawOut = new BufferedOutputStream(socket.getOutputStream());
+            out = new ObjectOutputStream(rawOut);
+            out.flush();
+            rawIn = new BufferedInputStream(socket.getInputStream());
+            in = new ObjectInputStream(rawIn);
+
+            String slaveName = RemoteSlave.getSlaveNameFromObjectInput(in);
+            deadline.done(_connectStats.getIdentifyLatency());
+            socket.setSoTimeout(socketTimeout);
 
-                if (rSlave.isOnline()) {
+            try {
+                rSlave = getRemoteSlave(slaveName);
+            } catch (ObjectNotFoundException e) {
+                out.writeObject(new AsyncCommandArgument("error", "error", slaveName + " does not exist, use \"site addslave\""));
+                logger.error("Slave {} does not exist, use \"site addslave\"", slaveName);
+                _connectStats.failed();
+                socket.close();
+                return;
+            }
+        } catch (Exception e) {
+            closeQuietly(socket);
+            if (deadline != null && (deadline.isExpired() || e instanceof SocketTimeoutException)) {
+                _connectStats.timedOut();
+                logger.warn("[{}] Slave did not complete the {} within {}ms, closing connection",
+                        socket.getRemoteSocketAddress(), deadline.getStage(), deadline.getTimeout());
+            } else {
+                _connectStats.failed();
+                logger.error("", e);
+            }
+            return;
+        }
+
+        // connections from the same slave are handshaking in parallel, only one of them may connect
+        synchronized (rSlave) {
+            if (rSlave.isOnline()) {
+                _connectStats.failed();
+                logger.error("", new IOException("Already online: " + rSlave.getName()));
+                try {
                     out.writeObject(new AsyncCommandArgument("", "error", "Already online"));
                     out.flush();
-                    socket.close();
-                    throw new IOException("Already online: " + slaveName);
-                }
-            } catch (Exception e) {
-                if (socket != null) {
-                    try {
-                        socket.close();
-                    } catch (IOException ignored) {
-                    }
+                } catch (IOException ignored) {
+                } finally {
+                    closeQuietly(socket);
                 }
-
-                logger.error("", e);
-
-                continue;
+                return;
             }
 
             try {
                 if (!rSlave.checkConnect(socket)) {
+                    _connectStats.failed();
                     out.writeObject(new AsyncCommandArgument("", "error", socket.getInetAddress() + " is not a valid mask for " + rSlave.getName()));
                     logger.error("{} is not a valid ip for {}", socket.getInetAddress(), rSlave.getName());
                     socket.close();
 
-                    continue;
+                    return;
                 }
 
-                rSlave.connect(socket, in, out);
+                rSlave.connect(socket, in, out, rawIn, rawOut);
+                _connectStats.connected(acceptedAt);
             } catch (Exception e) {
+                _connectStats.failed();
                 rSlave.setOffline(e);
                 logger.error(e);
             } catch (Throwable t) {
-                logger.fatal("Throwable in SlaveManager loop", t);
+                logger.fatal("Throwable in SlaveManager handshake", t);
             }
         }
     }
 
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Limits a handshake stage to the given time. The socket timeout covers a peer that stops sending,
+     * closing the socket when the time is up also covers one that keeps sending a byte at a time.
+     */
+    private class HandshakeDeadline implements Runnable {
+        private final Socket _socket;
+
+        private final String _stage;
+
+        private final int _timeout;
+
+        private final long _start = System.nanoTime();
+
+        private final ScheduledFuture<?> _future;
+
+        private volatile boolean _expired = false;
+
+        private HandshakeDeadline(Socket socket, String stage, int timeout) throws SocketException {
+            _socket = socket;
+            _stage = stage;
+            _timeout = timeout;
+            socket.setSoTimeout(timeout);
+            _future = _handshakeWatchdog.schedule(this, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        public void run() {
+            _expired = true;
+            closeQuietly(_socket);
+        }
+
+        private void done(LatencyHistogram latency) {
+            _future.cancel(false);
+            latency.record(System.nanoTime() - _start);
+        }
+
+        private boolean isExpired() {
+            return _expired;
+        }
+
+        private String getStage() {
+            return _stage;
+        }
+
+        private int getTimeout() {
+            return _timeout;
+        }
+    }
+
+    /**
+     * @return Counters and latencies of the slave connections
+     */
+    public SlaveConnectStats getConnectStats() {
+        return _connectStats;
+    }
+
+    /**
+     * @return Number of accepted slave connections that are handshaking or waiting for a handshake thread
+     */
+    public int getPendingHandshakes() {
+        return _handshakePool == null ? 0 : _handshakePool.getActiveCount() + _handshakePool.getQueue().size();
+    }
+
+    /**
+     * Waits until the slave may start its remerge, if the number of concurrent remerges is limited.
+     * Every successful call has to be followed by a call to {@link #releaseRemergePermit()}.
+     *
+     * @return true if a permit was taken, false if remerges are not limited
+     * @throws SlaveUnavailableException if the slave goes offline while waiting
+     */
+    public boolean acquireRemergePermit(RemoteSlave rslave) throws SlaveUnavailableException {
+        Semaphore permits = _remergePermits;
+        if (permits == null) {
+            return false;
+        }
+        if (!permits.tryAcquire()) {
+            logger.info("Slave {} waits for one of the {} running remerges to finish", rslave.getName(), _remergeLimit);
+            GlobalContext.getEventService().publishAsync(new SlaveEvent("MSGSLAVE",
+                    "Waiting for other slaves to finish their remerge", rslave));
+            try {
+                while (!permits.tryAcquire(1, TimeUnit.SECONDS)) {
+                    if (!rslave.isOnline()) {
+                        throw new SlaveUnavailableException("Slave went offline while waiting to remerge");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SlaveUnavailableException("Interrupted while waiting to remerge", e);
+            }
+        }
+        return true;
+    }
+
+    public void releaseRemergePermit() {
+        if (_remergePermits != null) {
+            _remergePermits.release();
+        }
+    }
+
+    /**
+     * @return Number of remerges running that count towards the limit
+     */
+    public int getRunningRemerges() {
+        return _remergePermits == null ? 0 : _remergeLimit - _remergePermits.availablePermits();
+    }
+
+    /**
+     * @return Number of connected slaves waiting to start their remerge
+     */
+    public int getWaitingRemerges() {
+        return _remergePermits == null ? 0 : _remergePermits.getQueueLength();
+    }
+
     /**
      * Cancels all transfers in directory
      */
@@ -0,0 +1,224 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations into log-linear buckets, so recording is a few atomic increments and percentiles are
+ * accurate to about 6% regardless of the magnitude of the values.
+ * <p>
+ * Besides the totals since creation, the values of the last {@link #WINDOW_MINUTES} minutes are kept in
+ * one histogram per minute, which are only allocated once something is recorded in that minute.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogram {
+
+    public static final int WINDOW_MINUTES = 15;
+
+    // each power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    // values are in microseconds, everything above 2^36 (about 19 hours) ends up in the last bucket
+    private static final int MAX_EXPONENT = 36;
+
+    private static final int BUCKETS = 2 * SUB_COUNT + (MAX_EXPONENT - SUB_BITS) * SUB_COUNT;
+
+    private static final long MINUTE = 60000L;
+
+    private final Counts _total = new Counts();
+
+    private final Counts[] _minutes = new Counts[WINDOW_MINUTES + 1];
+
+    /**
+     * Records a duration, in nanoseconds.
+     */
+    public void record(long nanos) {
+        record(nanos, System.currentTimeMillis());
+    }
+
+    void record(long nanos, long now) {
+        long micros = Math.max(0L, nanos / 1000L);
+        int bucket = bucketOf(micros);
+        _total.add(bucket, micros);
+        getMinute(now / MINUTE).add(bucket, micros);
+    }
+
+    private Counts getMinute(long minute) {
+        int slot = (int) (minute % _minutes.length);
+        Counts counts = _minutes[slot];
+        if (counts == null || counts._minute != minute) {
+            synchronized (_minutes) {
+                counts = _minutes[slot];
+                if (counts == null || counts._minute != minute) {
+                    // an older minute that left the window, recordings still in progress on it are lost
+                    counts = new Counts();
+                    counts._minute = minute;
+                    _minutes[slot] = counts;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return all values recorded since this histogram was created
+     */
+    public Snapshot getSnapshot() {
+        return new Snapshot(_total);
+    }
+
+    /**
+     * @param minutes the size of the window, at most {@link #WINDOW_MINUTES}
+     * @return the values recorded in the current and the previous {@code minutes - 1} minutes
+     */
+    public Snapshot getSnapshot(int minutes) {
+        return getSnapshot(minutes, System.currentTimeMillis());
+    }
+
+    Snapshot getSnapshot(int minutes, long now) {
+        long current = now / MINUTE;
+        long first = current - Math.min(Math.max(minutes, 1), WINDOW_MINUTES) + 1;
+        Snapshot snapshot = new Snapshot();
+        for (Counts counts : _minutes) {
+            if (counts != null && counts._minute >= first && counts._minute <= current) {
+                snapshot.add(counts);
+            }
+        }
+        return snapshot;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < 2 * SUB_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return 2 * SUB_COUNT + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return the largest value that ends up in the bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int index = bucket - 2 * SUB_COUNT;
+        int shift = index / SUB_COUNT + 1;
+        long lowest = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static final class Counts {
+        private volatile long _minute;
+        private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder _sum = new LongAdder();
+        private final AtomicLong _max = new AtomicLong();
+
+        private void add(int bucket, long micros) {
+            _buckets.incrementAndGet(bucket);
+            _sum.add(micros);
+            if (micros > _max.get()) {
+                _max.accumulateAndGet(micros, Math::max);
+            }
+        }
+    }
+
+    /**
+     * A copy of the recorded values, all durations are in microseconds.
+     */
+    public static final class Snapshot {
+        private final long[] _buckets = new long[BUCKETS];
+        private long _count;
+        private long _sum;
+        private long _max;
+
+        public Snapshot() {
+        }
+
+        private Snapshot(Counts counts) {
+            add(counts);
+        }
+
+        private void add(Counts counts) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = counts._buckets.get(i);
+                _buckets[i] += count;
+                _count += count;
+            }
+            _sum += counts._sum.sum();
+            _max = Math.max(_max, counts._max.get());
+        }
+
+        /**
+         * Adds the values of another snapshot to this one.
+         */
+        public void add(Snapshot other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                _buckets[i] += other._buckets[i];
+            }
+            _count += other._count;
+            _sum += other._sum;
+            _max = Math.max(_max, other._max);
+        }
+
+        public long getCount() {
+            return _count;
+        }
+
+        public long getSum() {
+            return _sum;
+        }
+
+        public long getMax() {
+            return _max;
+        }
+
+        public long getMean() {
+            return _count == 0 ? 0L : _sum / _count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return a value at least as large as the given percentage of the values, never more than the maximum
+         */
+        public long getPercentile(double percentile) {
+            if (_count == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(_count * percentile / 100D));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += _buckets[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), _max);
+                }
+            }
+            return _max;
+        }
+    }
+}
@@ -24,15 +24,20 @@ import org.drftpd.common.util.PropertyHelper;
 import org.drftpd.master.GlobalContext;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Properties;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This classes handle all XML commits.
  * The main purpose of having this is to avoiding serializing the same object tons of times,
  * even if it data was not changed.
+ * <p>
+ * Queued objects are kept in a map keyed on object identity, so adding an object that is already
+ * queued costs O(1). A second queue keeps them in the order they were added, the commit thread only looks
+ * at its head to find out what is due. Due objects are grouped by {@link Commitable#getCommitGroup()}
+ * and each group is written by one of the writer threads.
  *
  * @author zubov
  * @version $Id$
@@ -43,18 +48,26 @@ public class CommitManager {
 
     private static CommitManager _instance;
 
-    private final ConcurrentLinkedQueue<CommitableWrapper> _commitQueue;
+    private final ConcurrentHashMap<IdentityKey, CommitableWrapper> _pending;
+    private final ConcurrentLinkedQueue<CommitableWrapper> _timeline;
+    private final ConcurrentHashMap<IdentityKey, CommitableWrapper> _inFlight;
     private boolean _isStarted;
-    private final AtomicInteger _queueSize;
     private volatile boolean _drainQueue;
     private Thread _commitThread;
+    private ExecutorService _writers;
+
+    private final AtomicLong _writes = new AtomicLong();
+    private final AtomicLong _failures = new AtomicLong();
+    private final AtomicLong _writeTime = new AtomicLong();
+    private final AtomicLong _maxWriteTime = new AtomicLong();
 
     /**
      * Private constructor in order to make this class a Singleton.
      */
     private CommitManager() {
-        _commitQueue = new ConcurrentLinkedQueue<>();
-        _queueSize = new AtomicInteger();
+        _pending = new ConcurrentHashMap<>();
+        _timeline = new ConcurrentLinkedQueue<>();
+        _inFlight = new ConcurrentHashMap<>();
     }
 
     /**
@@ -78,6 +91,9 @@ public class CommitManager {
         }
 
         _isStarted = true;
+        int threads = getWriterThreads();
+        _writers = Executors.newFixedThreadPool(threads, new CommitWriterThreadFactory());
+        logger.debug("Starting CommitManager with {} writer threads", threads);
         _commitThread = new Thread(new CommitHandler());
         _commitThread.start();
     }
@@ -89,30 +105,21 @@ public class CommitManager {
      * @param object
      */
     public void add(Commitable object) {
-        if (contains(object)) {
-            return;
-            // object already queued to write
+        CommitableWrapper cw = new CommitableWrapper(object);
+        if (_pending.putIfAbsent(cw.getKey(), cw) == null) {
+            _timeline.offer(cw);
         }
-        _commitQueue.offer(new CommitableWrapper(object));
-        _queueSize.incrementAndGet();
+        // object already queued to write otherwise
     }
 
-
     /**
      * @param object
      * @return true if the object was removed from the CommitQueue, false otherwise.
      */
     public boolean remove(Commitable object) {
         if (object == null) return false;
-        for (Iterator<CommitableWrapper> iter = _commitQueue.iterator(); iter.hasNext(); ) {
-            CommitableWrapper cw = iter.next();
-            if (cw != null && cw.equals(object)) {
-                iter.remove();
-                _queueSize.decrementAndGet();
-                return true;
-            }
-        }
-        return false;
+        // The entry in the timeline is skipped once it reaches the head
+        return _pending.remove(new IdentityKey(object)) != null;
     }
 
     /**
@@ -121,32 +128,93 @@ public class CommitManager {
      */
     public boolean contains(Commitable object) {
         if (object == null) return false;
-        for (CommitableWrapper cw : _commitQueue) {
-            if (cw != null && cw.equals(object)) {
-                return true;
-            }
-        }
-        return false;
+        return _pending.containsKey(new IdentityKey(object));
     }
 
     /**
-     * @return the number of outstanding objects to commit.
+     * @return the number of outstanding objects to commit, including the ones being written right now.
      */
     public int getQueueSize() {
-        return _queueSize.get();
+        return _pending.size() + _inFlight.size();
+    }
+
+    /**
+     * @return the time in milliseconds the oldest queued object has been waiting, 0 if the queue is empty.
+     */
+    public long getOldestAge() {
+        CommitableWrapper oldest = peekOldest();
+        return oldest == null ? 0L : System.currentTimeMillis() - oldest.getTime();
+    }
+
+    /**
+     * @return the number of objects written since startup.
+     */
+    public long getWriteCount() {
+        return _writes.get();
+    }
+
+    /**
+     * @return the number of failed writes since startup, failed objects are queued again.
+     */
+    public long getFailureCount() {
+        return _failures.get();
+    }
+
+    /**
+     * @return the average time in milliseconds it took to write an object.
+     */
+    public long getAverageWriteTime() {
+        long writes = _writes.get();
+        return writes == 0 ? 0L : TimeUnit.NANOSECONDS.toMillis(_writeTime.get() / writes);
+    }
+
+    /**
+     * @return the longest time in milliseconds it took to write an object.
+     */
+    public long getMaxWriteTime() {
+        return TimeUnit.NANOSECONDS.toMillis(_maxWriteTime.get());
     }
 
     /**
      * Forces the immediate write of a (@link Commitable) if present in the commit queue.
+     * If the object is being written by a writer thread, waits for that write to finish.
      *
      * @param object
      */
     public void flushImmediate(Commitable object) {
-        if (contains(object)) {
+        IdentityKey key = new IdentityKey(object);
+        CommitableWrapper cw = _pending.remove(key);
+        if (cw != null) {
             ClassLoader prevCL = Thread.currentThread().getContextClassLoader();
-            writeCommitable(object);
-            Thread.currentThread().setContextClassLoader(prevCL);
+            claim(cw);
+            try {
+                write(cw);
+            } finally {
+                _inFlight.remove(key, cw);
+                Thread.currentThread().setContextClassLoader(prevCL);
+            }
+            return;
+        }
+        cw = _inFlight.get(key);
+        if (cw != null) {
+            cw.awaitWritten();
+        }
+    }
+
+    /**
+     * Writes everything queued right now in the calling thread and waits for the writes already running.
+     *
+     * @return false if an object could not be written, it is queued again in that case.
+     */
+    public boolean flushAll() {
+        long failures = _failures.get();
+        for (CommitableWrapper cw : new ArrayList<>(_timeline)) {
+            flushImmediate(cw.getCommitable());
         }
+        for (CommitableWrapper cw : new ArrayList<>(_inFlight.values())) {
+            cw.awaitWritten();
+        }
+        return _failures.get() == failures;
     }
 
     /**
@@ -170,27 +238,138 @@ public class CommitManager {
         return 10000;
     }
 
+    private int getWriterThreads() {
+        Properties cfg = GlobalContext.getConfig().getMainProperties();
+        try {
+            return Math.max(1, Integer.parseInt(PropertyHelper.getProperty(cfg, "disk.commit.threads", "4")));
+        } catch (NumberFormatException e) {
+        }
+        return 4;
+    }
+
+    /**
+     * @return the oldest object still queued, dropping entries of objects that were removed or written meanwhile.
+     */
+    private CommitableWrapper peekOldest() {
+        while (true) {
+            CommitableWrapper cw = _timeline.peek();
+            if (cw == null || _pending.get(cw.getKey()) == cw) {
+                return cw;
+            }
+            _timeline.remove(cw);
+        }
+    }
+
     private void processAllLoop() {
         while (true) {
             long delay = getCommitDelay();
             long time = System.currentTimeMillis() - delay;
-            for (Iterator<CommitableWrapper> iter = _commitQueue.iterator(); iter.hasNext(); ) {
-                CommitableWrapper cw = iter.next();
-                if (cw.getTime() < time || _drainQueue) {
-                    if (writeCommitable(cw.getCommitable())) {
-                        iter.remove();
-                        _queueSize.decrementAndGet();
-                    }
+
+            // Collect everything that is due, grouped so each group is written by a single thread
+            Map<String, List<CommitableWrapper>> groups = new LinkedHashMap<>();
+            CommitableWrapper cw;
+            while ((cw = peekOldest()) != null && (cw.getTime() < time || _drainQueue)) {
+                _timeline.remove(cw);
+                if (!_pending.remove(cw.getKey(), cw)) {
+                    continue;
                 }
+                claim(cw);
+                groups.computeIfAbsent(getGroup(cw.getCommitable()), k -> new ArrayList<>()).add(cw);
             }
 
+            if (!groups.isEmpty()) {
+                writeGroups(groups.values());
+            }
+
+            // Sleep until the oldest object is due instead of a fixed delay
+            CommitableWrapper oldest = peekOldest();
+            if (oldest != null && _drainQueue) {
+                continue;
+            }
+            long sleep = oldest == null ? delay : oldest.getTime() + delay - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the object as being written. An object committed again while it is written is only written
+     * once the running write finished, otherwise the older write could land last.
+     */
+    private void claim(CommitableWrapper cw) {
+        boolean interrupted = false;
+        CommitableWrapper current;
+        while ((current = _inFlight.putIfAbsent(cw.getKey(), cw)) != null) {
             try {
-                Thread.sleep(delay);
+                current._written.await();
             } catch (InterruptedException e) {
+                interrupted = true;
+                continue;
+            }
+            _inFlight.remove(current.getKey(), current);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeGroups(Collection<List<CommitableWrapper>> groups) {
+        List<Future<?>> futures = new ArrayList<>(groups.size());
+        for (final List<CommitableWrapper> group : groups) {
+            futures.add(_writers.submit(() -> {
+                for (CommitableWrapper cw : group) {
+                    try {
+                        write(cw);
+                    } finally {
+                        _inFlight.remove(cw.getKey(), cw);
+                    }
+                }
+            }));
+        }
+        // Wait for the batch so an object is never written by two writers at once
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // Only happens when the queue drain is enabled, keep waiting for the writers
+                } catch (ExecutionException e) {
+                    logger.error("Commit writer failed", e.getCause());
+                    break;
+                }
             }
         }
     }
 
+    private static String getGroup(Commitable item) {
+        try {
+            return item.getCommitGroup();
+        } catch (Exception e) {
+            return item.descriptiveName();
+        }
+    }
+
+    private void write(CommitableWrapper cw) {
+        long start = System.nanoTime();
+        boolean success = writeCommitable(cw.getCommitable());
+        long elapsed = System.nanoTime() - start;
+        cw.setWritten();
+        if (success) {
+            _writes.incrementAndGet();
+            _writeTime.addAndGet(elapsed);
+            _maxWriteTime.accumulateAndGet(elapsed, Math::max);
+        } else {
+            _failures.incrementAndGet();
+            // try again later
+            add(cw.getCommitable());
+        }
+    }
+
     private boolean writeCommitable(Commitable item) {
         try {
             item.writeToDisk();
@@ -203,15 +382,40 @@ public class CommitManager {
         return false;
     }
 
+    /**
+     * Map key comparing the wrapped object by identity.
+     * Commitables like inodes define equals on mutable state, which can not be used as a hash key.
+     */
+    private static class IdentityKey {
+        private final Commitable _object;
+
+        private IdentityKey(Commitable object) {
+            _object = object;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityKey && ((IdentityKey) obj)._object == _object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(_object);
+        }
+    }
+
     /**
      * Creates a wrapping object for the Commitable object and current time.
      */
     private static class CommitableWrapper {
         private final Commitable _object;
+        private final IdentityKey _key;
         private final long _time;
+        private final CountDownLatch _written = new CountDownLatch(1);
 
         private CommitableWrapper(Commitable object) {
             _object = object;
+            _key = new IdentityKey(object);
             _time = System.currentTimeMillis();
         }
 
@@ -219,20 +423,24 @@ public class CommitManager {
             return _object;
         }
 
+        public IdentityKey getKey() {
+            return _key;
+        }
+
         public long getTime() {
             return _time;
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj == this) return true;
-            if (obj == null) return false;
-            return (obj instanceof Commitable) && _object.equals(obj);
+        private void setWritten() {
+            _written.countDown();
         }
 
-        @Override
-        public int hashCode() {
-            return _object.hashCode();
+        private void awaitWritten() {
+            try {
+                _written.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -246,4 +454,14 @@ public class CommitManager {
             processAllLoop();
         }
     }
+
+    private static class CommitWriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("CommitWriter-" + _count.incrementAndGet());
+            return t;
+        }
+    }
 }
@@ -49,4 +49,14 @@ public interface Commitable {
      * @return
      */
     String descriptiveName();
+
+    /**
+     * Objects with the same commit group are written one after another by the same writer thread,
+     * for example inodes stored in the same directory.
+     *
+     * @return the group this object is written in, by default every object is a group of its own
+     */
+    default String getCommitGroup() {
+        return descriptiveName();
+    }
 }
@@ -123,6 +123,14 @@ public class DirectoryHandle extends InodeHandle implements DirectoryHandleInter
         return inodes;
     }
 
+    /**
+     * @return a value that changes whenever this directory or one of its children is modified.
+     * @throws FileNotFoundException
+     */
+    public long getListingVersion() throws FileNotFoundException {
+        return getInode().getListingVersion();
+    }
+
     /**
      * @return all InodeHandles inside this dir.
      * @throws FileNotFoundException
@@ -0,0 +1,278 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.drftpd.common.dynamicdata.Key;
+import org.drftpd.common.dynamicdata.element.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.drftpd.master.util.SerializerUtils.getMapper;
+
+/**
+ * Compact binary encoding of a single inode, used by {@link LogVirtualFileSystemStore}.
+ * <br>
+ * The fields every inode has and the standard {@link ConfigElement} types are written as plain binary values.
+ * Metadata added by plugins uses its own element classes, those entries are stored as embedded JSON so they
+ * keep deserializing exactly as they do in the JSON store.
+ *
+ * @version $Id$
+ */
+public class InodeCodec {
+
+    // 1 kept checksum and xfertime of files in the metadata
+    private static final byte VERSION = 2;
+
+    private static final byte KIND_ROOT = 'R';
+    private static final byte KIND_DIRECTORY = 'D';
+    private static final byte KIND_FILE = 'F';
+    private static final byte KIND_LINK = 'L';
+
+    private static final byte TYPE_JSON = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_DATE = 6;
+
+    private static final TypeReference<ConfigElement<?>> ELEMENT_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper _mapper = getMapper();
+
+    public byte[] encode(VirtualFileSystemInode inode) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeByte(kindOf(inode));
+        writeString(out, inode._username);
+        writeString(out, inode._group);
+        out.writeLong(inode._lastModified);
+        out.writeLong(inode._creationTime);
+        writeElements(out, inode.configsIfPresent());
+        writeElements(out, inode.pluginsIfPresent());
+        if (inode instanceof VirtualFileSystemDirectory) {
+            VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) inode;
+            out.writeLong(dir.getSize());
+            out.writeBoolean(dir.getPlaceHolderLastModified());
+            Map<String, AtomicInteger> refCounts = dir.getSlaveRefCounts();
+            out.writeInt(refCounts.size());
+            for (Map.Entry<String, AtomicInteger> entry : refCounts.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().get());
+            }
+        } else if (inode instanceof VirtualFileSystemFile) {
+            VirtualFileSystemFile file = (VirtualFileSystemFile) inode;
+            out.writeLong(file.getSize());
+            out.writeLong(file.getChecksum());
+            out.writeLong(file.getXfertime());
+            Set<String> slaves = file.getSlaves();
+            out.writeInt(slaves.size());
+            for (String slave : slaves) {
+                out.writeUTF(slave);
+            }
+        } else {
+            writeString(out, ((VirtualFileSystemLink) inode).getLinkPath());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public VirtualFileSystemInode decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown inode encoding version " + version);
+        }
+        byte kind = in.readByte();
+        String username = readString(in);
+        String group = readString(in);
+        long lastModified = in.readLong();
+        long creationTime = in.readLong();
+        Map<Key<?>, ConfigElement<?>> configs = readElements(in);
+        Map<Key<?>, ConfigElement<?>> plugins = readElements(in);
+
+        VirtualFileSystemInode inode;
+        switch (kind) {
+            case KIND_ROOT:
+            case KIND_DIRECTORY: {
+                long size = in.readLong();
+                boolean placeHolder = in.readBoolean();
+                VirtualFileSystemDirectory dir = kind == KIND_ROOT
+                        ? new VirtualFileSystemRoot(username, group)
+                        : new VirtualFileSystemDirectory(username, group, placeHolder);
+                dir._size = size;
+                dir.setPlaceHolderLastModified(placeHolder);
+                int count = in.readInt();
+                Map<String, AtomicInteger> refCounts = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    refCounts.put(in.readUTF(), new AtomicInteger(in.readInt()));
+                }
+                dir.setSlaveRefCounts(refCounts);
+                inode = dir;
+                break;
+            }
+            case KIND_FILE: {
+                long size = in.readLong();
+                long checksum = version > 1 ? in.readLong() : 0L;
+                long xfertime = version > 1 ? in.readLong() : 0L;
+                int count = in.readInt();
+                Set<String> slaves = new HashSet<>(Math.max(4, count * 2));
+                for (int i = 0; i < count; i++) {
+                    slaves.add(in.readUTF());
+                }
+                VirtualFileSystemFile file = new VirtualFileSystemFile(username, group, size, slaves);
+                if (version > 1) {
+                    file.setChecksumRaw(checksum);
+                    file.setXfertimeRaw(xfertime);
+                }
+                inode = file;
+                break;
+            }
+            case KIND_LINK:
+                inode = new VirtualFileSystemLink(username, group, readString(in));
+                break;
+            default:
+                throw new IOException("Unknown inode kind " + kind);
+        }
+        inode._lastModified = lastModified;
+        inode._creationTime = creationTime;
+        inode.setConfigs(configs);
+        inode.setPlugins(plugins);
+        inode.compact();
+        return inode;
+    }
+
+    /**
+     * @return whether the encoded inode is a directory, without decoding the rest of it.
+     */
+    public static boolean isDirectory(byte[] data) {
+        return data.length > 1 && (data[1] == KIND_DIRECTORY || data[1] == KIND_ROOT);
+    }
+
+    private static byte kindOf(VirtualFileSystemInode inode) {
+        if (inode instanceof VirtualFileSystemRoot) {
+            return KIND_ROOT;
+        } else if (inode instanceof VirtualFileSystemDirectory) {
+            return KIND_DIRECTORY;
+        } else if (inode instanceof VirtualFileSystemFile) {
+            return KIND_FILE;
+        } else if (inode instanceof VirtualFileSystemLink) {
+            return KIND_LINK;
+        }
+        throw new IllegalArgumentException("Cannot encode inode of type " + inode.getClass().getName());
+    }
+
+    private void writeElements(DataOutputStream out, Map<Key<?>, ConfigElement<?>> elements) throws IOException {
+        if (elements == null) {
+            out.writeInt(-1);
+            return;
+        }
+        // copied as plugins may add metadata while the inode is written
+        List<Map.Entry<Key<?>, ConfigElement<?>>> entries;
+        synchronized (elements) {
+            entries = new ArrayList<>(elements.entrySet());
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<Key<?>, ConfigElement<?>> entry : entries) {
+            out.writeUTF(entry.getKey().getKey());
+            writeElement(out, entry.getValue());
+        }
+    }
+
+    private void writeElement(DataOutputStream out, ConfigElement<?> element) throws IOException {
+        Object value = element == null ? null : element.getValue();
+        Class<?> type = element == null ? null : element.getClass();
+        if (value != null && type == ConfigLong.class) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value != null && type == ConfigInteger.class) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value != null && type == ConfigString.class && ((String) value).length() < 16384) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else if (value != null && type == ConfigBoolean.class) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value != null && type == ConfigFloat.class) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value != null && type == ConfigDate.class) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            byte[] json = _mapper.writeValueAsBytes(element);
+            out.writeByte(TYPE_JSON);
+            out.writeInt(json.length);
+            out.write(json);
+        }
+    }
+
+    private Map<Key<?>, ConfigElement<?>> readElements(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        Map<Key<?>, ConfigElement<?>> elements = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            Key<?> key = new Key<>(in.readUTF());
+            elements.put(key, readElement(in));
+        }
+        return elements;
+    }
+
+    private ConfigElement<?> readElement(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_LONG:
+                return new ConfigLong(in.readLong());
+            case TYPE_INTEGER:
+                return new ConfigInteger(in.readInt());
+            case TYPE_STRING:
+                return new ConfigString(in.readUTF());
+            case TYPE_BOOLEAN:
+                return new ConfigBoolean(in.readBoolean());
+            case TYPE_FLOAT:
+                return new ConfigFloat(in.readFloat());
+            case TYPE_DATE:
+                return new ConfigDate(new Date(in.readLong()));
+            case TYPE_JSON:
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+                return _mapper.readValue(json, ELEMENT_TYPE);
+            default:
+                throw new IOException("Unknown metadata type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.drftpd.master.vfs;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.drftpd.common.dynamicdata.Key;
@@ -28,6 +29,7 @@ import org.drftpd.master.GlobalContext;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 import org.drftpd.master.slavemanagement.SlaveManager;
 import org.drftpd.master.usermanager.User;
+import org.drftpd.master.vfs.event.ImmutableInodeHandle;
 import org.drftpd.master.vfs.perms.VFSPermissions;
 import org.drftpd.slave.exceptions.FileExistsException;
 import org.drftpd.slave.exceptions.ObjectNotFoundException;
@@ -46,6 +48,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 public abstract class InodeHandle implements InodeHandleInterface, Comparable<InodeHandle> {
     protected static final Logger logger = LogManager.getLogger(InodeHandle.class.getName());
     protected String _path = null;
+    // Inode this handle resolved to, only trusted while it and its parents stay where they are
+    @JsonIgnore
+    private transient volatile VirtualFileSystem.CachedInode _cachedInode = null;
 
     /**
      * Creates an InodleHandle for the given path.
@@ -212,7 +217,20 @@ public abstract class InodeHandle implements InodeHandleInterface, Comparable<In
      * @throws FileNotFoundException if the inode does not exist.
      */
     protected VirtualFileSystemInode getInode() throws FileNotFoundException {
-        return VirtualFileSystem.getVirtualFileSystem().getInodeByPath(_path);
+        VirtualFileSystem vfs = VirtualFileSystem.getVirtualFileSystem();
+        long version = vfs.getStructureVersion();
+        VirtualFileSystem.CachedInode cached = _cachedInode;
+        if (cached != null) {
+            VirtualFileSystemInode inode = cached.getIfValid();
+            if (inode != null) {
+                return inode;
+            }
+        }
+        VirtualFileSystemInode inode = vfs.getInodeByPath(_path);
+        if (VirtualFileSystem.isCacheable(_path, inode)) {
+            _cachedInode = new VirtualFileSystem.CachedInode(inode, version);
+        }
+        return inode;
     }
 
     /**
@@ -496,4 +514,12 @@ public abstract class InodeHandle implements InodeHandleInterface, Comparable<In
     public void requestRefresh(boolean sync) throws FileNotFoundException {
         getInode().refresh(sync);
     }
+
+    /**
+     * @return a read only view of the inode, like the one handed to VFS event listeners.
+     * @throws FileNotFoundException if the inode does not exist.
+     */
+    public ImmutableInodeHandle getImmutableInode() throws FileNotFoundException {
+        return new ImmutableInodeHandle(getInode(), getPath());
+    }
 }
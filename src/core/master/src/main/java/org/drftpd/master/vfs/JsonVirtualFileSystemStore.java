@@ -0,0 +1,157 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+
+import static org.drftpd.master.util.SerializerUtils.getMapper;
+
+/**
+ * Stores every inode in its own JSON file below {@link VirtualFileSystem#fileSystemPath}, directories are
+ * real directories holding their own inode in a {@link VirtualFileSystem#dirName} file.
+ *
+ * @version $Id$
+ */
+public class JsonVirtualFileSystemStore implements VirtualFileSystemStore {
+
+    private static final Logger logger = LogManager.getLogger(JsonVirtualFileSystemStore.class);
+
+    private static final DirInodeFilenameFilter dirFilter = new DirInodeFilenameFilter();
+
+    private final String _basePath;
+
+    private final ObjectMapper _mapper = getMapper();
+
+    public JsonVirtualFileSystemStore(String basePath) {
+        _basePath = basePath;
+        new File(_basePath).mkdirs();
+    }
+
+    /**
+     * @return the real path of the file on the disk.<br>
+     * Ex: getRealPath('/PICS/me.jpg') would return 'userdata/vfs/PICS/me.jpg'
+     */
+    private String getRealPath(String path) {
+        return _basePath + path;
+    }
+
+    public VirtualFileSystemInode read(String path) throws IOException {
+        File jsonFile = new File(getRealPath(path));
+        boolean directory = jsonFile.isDirectory();
+        if (directory) {
+            jsonFile = new File(jsonFile, VirtualFileSystem.dirName);
+        }
+        if (!jsonFile.exists()) {
+            return null;
+        }
+        logger.debug("Loading inode - {}", jsonFile.getPath());
+        VirtualFileSystemInode inode;
+        try (FileReader fileReader = new FileReader(jsonFile)) {
+            inode = _mapper.readValue(fileReader, VirtualFileSystemInode.class);
+        }
+        if (inode.isDirectory() != directory) {
+            throw new IOException(jsonFile.getPath() + " does not match the type of the stored inode");
+        }
+        return inode;
+    }
+
+    public String[] list(String path) {
+        String[] files = new File(getRealPath(path)).list(dirFilter);
+        return files == null ? new String[0] : files;
+    }
+
+    public boolean isDirectory(String path) {
+        return new File(getRealPath(path)).isDirectory();
+    }
+
+    public void write(String path, VirtualFileSystemInode inode) throws IOException {
+        String fullPath = getRealPath(path);
+        if (inode instanceof VirtualFileSystemRoot) {
+            new File(_basePath).mkdirs();
+            fullPath = fullPath + VirtualFileSystem.dirName;
+        } else if (inode.isDirectory()) {
+            new File(fullPath).mkdirs();
+            fullPath = fullPath + VirtualFileSystem.separator + VirtualFileSystem.dirName;
+        } else {
+            new File(getRealPath(VirtualFileSystem.stripLast(path))).mkdirs();
+        }
+        logger.debug("Wrote fullPath {}", fullPath);
+        _mapper.writeValue(new File(fullPath), inode);
+    }
+
+    public void discard(String path) {
+        File file = new File(getRealPath(path));
+        if (file.isDirectory()) {
+            file = new File(file, VirtualFileSystem.dirName);
+        }
+        if (file.exists() && !file.delete()) {
+            logger.error("Could not delete local entry {}, check permissions", file.getAbsolutePath());
+        }
+    }
+
+    public void delete(String path) {
+        recursiveDelete(new File(getRealPath(path)));
+    }
+
+    /**
+     * If 'file' is a directory, it recurses through it and deletes, everything
+     * inside it.<br>
+     * If 'file' is an actual file, it simply deletes it.
+     *
+     * @param file
+     */
+    private void recursiveDelete(File file) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            for (File file1 : files) {
+                recursiveDelete(file1);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            logger.error("Could not delete local entry {}, check permissions", file.getAbsolutePath());
+        }
+    }
+
+    public boolean rename(String source, String destination) throws FileNotFoundException {
+        File file = new File(getRealPath(source));
+        if (!file.exists()) {
+            throw new FileNotFoundException(source + " cannot be found");
+        }
+        return file.renameTo(new File(getRealPath(destination)));
+    }
+
+    public void sync() {
+        // every inode is a file of its own, written completely before write() returns
+    }
+
+    public void close() {
+    }
+
+    static class DirInodeFilenameFilter implements FilenameFilter {
+
+        @Override
+        public boolean accept(File dir, String file) {
+            return !file.equals(VirtualFileSystem.dirName);
+        }
+
+    }
+}
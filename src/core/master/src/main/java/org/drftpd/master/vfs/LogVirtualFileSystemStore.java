@@ -0,0 +1,808 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Stores all inodes in a few append-only segment files instead of one file per inode.
+ * <br>
+ * Every change appends a record to the active segment, an in-memory tree maps each path to the location of
+ * its latest record, so reading an inode costs a single positional read. Records are:
+ * <pre>
+ * [int length][int crc32][byte type][long sequence][UTF path][payload]
+ * </pre>
+ * where length and crc32 cover everything after the crc32 and the payload is the {@link InodeCodec} encoding
+ * of the inode for PUT records and empty for DELETE (path and everything below) and DISCARD (only the path).
+ * <br>
+ * On startup all segments are replayed in sequence order, a torn record at the end of the last segment is cut
+ * off. A background thread syncs the active segment and rewrites segments where most records were replaced,
+ * copying the still live records into the active segment with their original sequence number.
+ *
+ * @version $Id$
+ */
+public class LogVirtualFileSystemStore implements VirtualFileSystemStore {
+
+    private static final Logger logger = LogManager.getLogger(LogVirtualFileSystemStore.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte DISCARD = 3;
+
+    private static final int HEADER_SIZE = 8;
+    // type + sequence + the length of the path
+    private static final int MIN_BODY_SIZE = 11;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // segments with less live data than this are rewritten
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    private static final long MAINTENANCE_INTERVAL = 10000L;
+
+    private final File _directory;
+
+    private final long _segmentSize;
+
+    private final InodeCodec _codec = new InodeCodec();
+
+    private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+    private final Node _root = new Node();
+
+    private final TreeMap<Integer, Segment> _segments = new TreeMap<>();
+
+    private Segment _active;
+
+    private long _sequence = 0;
+
+    private Thread _maintenance;
+
+    private volatile boolean _closed = false;
+
+    public LogVirtualFileSystemStore(String directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public LogVirtualFileSystemStore(String directory, long segmentSize) throws IOException {
+        _directory = new File(directory);
+        _segmentSize = segmentSize;
+        if (!_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new IOException("Unable to create " + _directory.getAbsolutePath());
+        }
+        recover();
+    }
+
+    /**
+     * Starts the thread syncing the active segment to disk and compacting old segments.
+     */
+    public void startMaintenance() {
+        _maintenance = new Thread(this::maintain, "VFSLogMaintenance");
+        _maintenance.setDaemon(true);
+        _maintenance.start();
+    }
+
+    public VirtualFileSystemInode read(String path) throws IOException {
+        byte[] payload;
+        _lock.readLock().lock();
+        try {
+            Node node = find(path);
+            if (node == null || node._location < 0) {
+                return null;
+            }
+            payload = readRecord(node._location, node._length)._payload;
+        } finally {
+            _lock.readLock().unlock();
+        }
+        return _codec.decode(payload);
+    }
+
+    public String[] list(String path) {
+        _lock.readLock().lock();
+        try {
+            Node node = find(path);
+            if (node == null || node._children == null) {
+                return new String[0];
+            }
+            return node._children.keySet().toArray(new String[0]);
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    public boolean isDirectory(String path) {
+        _lock.readLock().lock();
+        try {
+            Node node = find(path);
+            return node != null && (node._location < 0 || node._directory || node._children != null);
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    public void write(String path, VirtualFileSystemInode inode) throws IOException {
+        byte[] payload = _codec.encode(inode);
+        _lock.writeLock().lock();
+        try {
+            checkOpen();
+            long sequence = ++_sequence;
+            byte[] record = encodeRecord(PUT, sequence, path, payload);
+            long location = append(record);
+            Node node = create(path);
+            release(node);
+            node._location = location;
+            node._length = record.length;
+            node._directory = inode.isDirectory();
+            _active._liveBytes += record.length;
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    public void discard(String path) {
+        _lock.writeLock().lock();
+        try {
+            checkOpen();
+            Node node = find(path);
+            if (node == null || node._location < 0) {
+                return;
+            }
+            append(encodeRecord(DISCARD, ++_sequence, path, new byte[0]));
+            release(node);
+            node._location = -1;
+            prune(path);
+        } catch (IOException e) {
+            logger.error("Unable to discard {}", path, e);
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(String path) {
+        _lock.writeLock().lock();
+        try {
+            checkOpen();
+            Node node = find(path);
+            if (node == null) {
+                return;
+            }
+            append(encodeRecord(DELETE, ++_sequence, path, new byte[0]));
+            releaseAll(node);
+            if (node == _root) {
+                _root._location = -1;
+                _root._children = null;
+            } else {
+                find(VirtualFileSystem.stripLast(path))._children.remove(VirtualFileSystem.getLast(path));
+                prune(VirtualFileSystem.stripLast(path));
+            }
+        } catch (IOException e) {
+            logger.error("Unable to delete {}", path, e);
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    public boolean rename(String source, String destination) throws FileNotFoundException {
+        _lock.writeLock().lock();
+        try {
+            checkOpen();
+            Node node = find(source);
+            if (node == null || node == _root) {
+                throw new FileNotFoundException(source + " cannot be found");
+            }
+            Node existing = find(destination);
+            if (existing != null && (existing._location >= 0 || existing._children != null)) {
+                return false;
+            }
+            if (destination.startsWith(source + VirtualFileSystem.separator)) {
+                return false;
+            }
+            // Every record below the source is written again under its new path, then the old paths are
+            // dropped with a single DELETE record which has a higher sequence than all of the new records.
+            Map<Node, Long> moved = new IdentityHashMap<>();
+            Map<Node, Integer> movedLength = new IdentityHashMap<>();
+            rewrite(node, destination, moved, movedLength);
+            append(encodeRecord(DELETE, ++_sequence, source, new byte[0]));
+            releaseAll(node);
+            for (Map.Entry<Node, Long> entry : moved.entrySet()) {
+                Node moving = entry.getKey();
+                moving._location = entry.getValue();
+                moving._length = movedLength.get(moving);
+                segmentOf(moving._location)._liveBytes += moving._length;
+            }
+            find(VirtualFileSystem.stripLast(source))._children.remove(VirtualFileSystem.getLast(source));
+            prune(VirtualFileSystem.stripLast(source));
+            Node parent = create(VirtualFileSystem.stripLast(destination));
+            if (parent._children == null) {
+                parent._children = new HashMap<>();
+            }
+            parent._children.put(VirtualFileSystem.getLast(destination), node);
+            return true;
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            logger.error("Unable to rename {} to {}", source, destination, e);
+            return false;
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    private void rewrite(Node node, String path, Map<Node, Long> moved, Map<Node, Integer> movedLength)
+            throws IOException {
+        if (node._location >= 0) {
+            Record record = readRecord(node._location, node._length);
+            byte[] bytes = encodeRecord(PUT, ++_sequence, path, record._payload);
+            moved.put(node, append(bytes));
+            movedLength.put(node, bytes.length);
+        }
+        if (node._children != null) {
+            String prefix = path.equals(VirtualFileSystem.separator) ? path : path + VirtualFileSystem.separator;
+            for (Map.Entry<String, Node> child : node._children.entrySet()) {
+                rewrite(child.getValue(), prefix + child.getKey(), moved, movedLength);
+            }
+        }
+    }
+
+    public void sync() throws IOException {
+        // segments are forced before they are rolled, only the active one can hold unsynced records
+        _lock.readLock().lock();
+        try {
+            checkOpen();
+            _active._channel.force(false);
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    public void close() {
+        _closed = true;
+        if (_maintenance != null) {
+            _maintenance.interrupt();
+            try {
+                _maintenance.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        _lock.writeLock().lock();
+        try {
+            for (Segment segment : _segments.values()) {
+                try {
+                    if (segment == _active) {
+                        segment._channel.force(false);
+                    }
+                    segment._channel.close();
+                } catch (IOException e) {
+                    logger.error("Unable to close {}", segment._file, e);
+                }
+            }
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites every segment, other than the active one, where less than half of the data is still in use.
+     */
+    public void compact() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        _lock.readLock().lock();
+        try {
+            for (Segment segment : _segments.values()) {
+                if (segment != _active && segment._liveBytes < segment._size * COMPACTION_THRESHOLD) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            _lock.readLock().unlock();
+        }
+        for (Segment segment : candidates) {
+            if (_closed) {
+                return;
+            }
+            compact(segment);
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        long start = System.currentTimeMillis();
+        long copied = 0;
+        long offset = 0;
+        // the segment is not written to anymore and only removed by this thread, so it can be read without locking
+        while (offset < segment._size) {
+            Record record = readRecord(segment, offset);
+            if (record == null) {
+                break;
+            }
+            _lock.writeLock().lock();
+            try {
+                checkOpen();
+                long location = location(segment._id, offset);
+                if (record._type == PUT) {
+                    Node node = find(record._path);
+                    if (node != null && node._location == location) {
+                        node._location = append(record._bytes);
+                        segment._liveBytes -= record._bytes.length;
+                        _active._liveBytes += record._bytes.length;
+                        copied += record._bytes.length;
+                    }
+                } else if (_segments.firstKey() != segment._id) {
+                    // older segments may still hold records this one shadows
+                    append(record._bytes);
+                    copied += record._bytes.length;
+                }
+            } finally {
+                _lock.writeLock().unlock();
+            }
+            offset += record._bytes.length;
+        }
+        _lock.writeLock().lock();
+        try {
+            checkOpen();
+            _active._channel.force(false);
+            _segments.remove(segment._id);
+            segment._channel.close();
+            if (!segment._file.delete()) {
+                logger.error("Unable to delete compacted segment {}", segment._file);
+            }
+        } finally {
+            _lock.writeLock().unlock();
+        }
+        logger.info("Compacted {}, copied {} bytes in {}ms", segment._file.getName(), copied,
+                System.currentTimeMillis() - start);
+    }
+
+    private void maintain() {
+        while (!_closed) {
+            try {
+                Thread.sleep(MAINTENANCE_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                FileChannel channel;
+                _lock.readLock().lock();
+                try {
+                    channel = _active._channel;
+                } finally {
+                    _lock.readLock().unlock();
+                }
+                channel.force(false);
+                compact();
+            } catch (IOException e) {
+                if (!_closed) {
+                    logger.error("VFS log maintenance failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of segment files in use.
+     */
+    public int getSegmentCount() {
+        _lock.readLock().lock();
+        try {
+            return _segments.size();
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the size in bytes of all segments together.
+     */
+    public long getTotalBytes() {
+        _lock.readLock().lock();
+        try {
+            long total = 0;
+            for (Segment segment : _segments.values()) {
+                total += segment._size;
+            }
+            return total;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the size in bytes of the records still in use.
+     */
+    public long getLiveBytes() {
+        _lock.readLock().lock();
+        try {
+            long live = 0;
+            for (Segment segment : _segments.values()) {
+                live += segment._liveBytes;
+            }
+            return live;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = _directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String id = file.getName().substring(SEGMENT_PREFIX.length(),
+                        file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    Segment segment = new Segment(Integer.parseInt(id), file);
+                    _segments.put(segment._id, segment);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unknown file {} in {}", file.getName(), _directory);
+                }
+            }
+        }
+        // Compaction moves records into newer segments, so replay has to follow the sequence numbers
+        // and not the order of the files.
+        List<RecordInfo> records = new ArrayList<>();
+        for (Segment segment : _segments.values()) {
+            long offset = 0;
+            long length = segment._channel.size();
+            while (offset < length) {
+                Record record = readRecord(segment, offset);
+                if (record == null) {
+                    break;
+                }
+                records.add(new RecordInfo(record, location(segment._id, offset)));
+                offset += record._bytes.length;
+            }
+            if (offset < length) {
+                if (segment._id == _segments.lastKey()) {
+                    logger.warn("Truncating {} from {} to {} bytes, the last write was incomplete",
+                            segment._file, length, offset);
+                    segment._channel.truncate(offset);
+                } else {
+                    logger.error("Segment {} is corrupt after {} bytes, the rest of it is ignored",
+                            segment._file, offset);
+                }
+            }
+            segment._size = offset;
+        }
+        records.sort(Comparator.comparingLong(info -> info._sequence));
+        for (RecordInfo info : records) {
+            _sequence = Math.max(_sequence, info._sequence);
+            if (info._type == PUT) {
+                Node node = create(info._path);
+                node._location = info._location;
+                node._length = info._length;
+                node._directory = info._directory;
+            } else if (info._type == DISCARD) {
+                Node node = find(info._path);
+                if (node != null) {
+                    node._location = -1;
+                    prune(info._path);
+                }
+            } else {
+                Node node = find(info._path);
+                if (node == _root) {
+                    _root._location = -1;
+                    _root._children = null;
+                } else if (node != null) {
+                    find(VirtualFileSystem.stripLast(info._path))._children.remove(
+                            VirtualFileSystem.getLast(info._path));
+                    prune(VirtualFileSystem.stripLast(info._path));
+                }
+            }
+        }
+        accountLiveBytes(_root);
+        if (_segments.isEmpty()) {
+            roll();
+        } else {
+            _active = _segments.lastEntry().getValue();
+        }
+        logger.info("Loaded {} records from {} segments in {}", records.size(), _segments.size(), _directory);
+    }
+
+    private void accountLiveBytes(Node node) {
+        if (node._location >= 0) {
+            segmentOf(node._location)._liveBytes += node._length;
+        }
+        if (node._children != null) {
+            for (Node child : node._children.values()) {
+                accountLiveBytes(child);
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (_closed) {
+            throw new IOException("VFS log store is closed");
+        }
+    }
+
+    /**
+     * Appends the record to the active segment, starting a new segment when the active one is full.
+     *
+     * @return the location of the record.
+     */
+    private long append(byte[] record) throws IOException {
+        if (_active._size > 0 && _active._size + record.length > _segmentSize) {
+            _active._channel.force(false);
+            roll();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long position = _active._size;
+        while (buffer.hasRemaining()) {
+            position += _active._channel.write(buffer, position);
+        }
+        long location = location(_active._id, _active._size);
+        _active._size = position;
+        return location;
+    }
+
+    private void roll() throws IOException {
+        int id = _segments.isEmpty() ? 1 : _segments.lastKey() + 1;
+        Segment segment = new Segment(id, new File(_directory, String.format("%s%08d%s", SEGMENT_PREFIX, id,
+                SEGMENT_SUFFIX)));
+        _segments.put(id, segment);
+        _active = segment;
+    }
+
+    private static byte[] encodeRecord(byte type, long sequence, String path, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + MIN_BODY_SIZE + path.length()
+                + payload.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(type);
+        out.writeLong(sequence);
+        out.writeUTF(path);
+        out.write(payload);
+        out.flush();
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE);
+        ByteBuffer header = ByteBuffer.wrap(record, 0, HEADER_SIZE);
+        header.putInt(record.length - HEADER_SIZE);
+        header.putInt((int) crc.getValue());
+        return record;
+    }
+
+    private Record readRecord(long location, int length) throws IOException {
+        Segment segment = segmentOf(location);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset(location);
+        while (buffer.hasRemaining()) {
+            int read = segment._channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Record at " + position + " in " + segment._file + " is incomplete");
+            }
+        }
+        Record record = decodeRecord(buffer.array());
+        if (record == null) {
+            throw new IOException("Record at " + position + " in " + segment._file + " is corrupt");
+        }
+        return record;
+    }
+
+    /**
+     * @return the record at the given offset or null if there is no complete and valid record.
+     */
+    private static Record readRecord(Segment segment, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (!readFully(segment._channel, header, offset)) {
+            return null;
+        }
+        int length = header.getInt(0);
+        if (length < MIN_BODY_SIZE || length > MAX_RECORD_SIZE) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        if (!readFully(segment._channel, record, offset)) {
+            return null;
+        }
+        return decodeRecord(record.array());
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Record decodeRecord(byte[] bytes) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length != bytes.length - HEADER_SIZE) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, length);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, length));
+        byte type = in.readByte();
+        long sequence = in.readLong();
+        String path = in.readUTF();
+        byte[] payload = in.readAllBytes();
+        return new Record(bytes, type, sequence, path, payload);
+    }
+
+    private static long location(int segment, long offset) {
+        return ((long) segment << 40) | offset;
+    }
+
+    private static long offset(long location) {
+        return location & ((1L << 40) - 1);
+    }
+
+    private Segment segmentOf(long location) {
+        return _segments.get((int) (location >>> 40));
+    }
+
+    private void release(Node node) {
+        if (node._location >= 0) {
+            Segment segment = segmentOf(node._location);
+            if (segment != null) {
+                segment._liveBytes -= node._length;
+            }
+        }
+    }
+
+    private void releaseAll(Node node) {
+        release(node);
+        node._location = -1;
+        if (node._children != null) {
+            for (Node child : node._children.values()) {
+                releaseAll(child);
+            }
+        }
+    }
+
+    private Node find(String path) {
+        Node node = _root;
+        int start = 1;
+        while (node != null && start < path.length()) {
+            int end = path.indexOf(VirtualFileSystem.separator, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                node = node._children == null ? null : node._children.get(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private Node create(String path) {
+        Node node = _root;
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf(VirtualFileSystem.separator, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                if (node._children == null) {
+                    node._children = new HashMap<>();
+                }
+                node = node._children.computeIfAbsent(path.substring(start, end), name -> new Node());
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Removes the node at path and its parents as long as they have neither an inode nor children.
+     */
+    private void prune(String path) {
+        while (!path.equals(VirtualFileSystem.separator)) {
+            Node node = find(path);
+            if (node == null) {
+                return;
+            }
+            if (node._children != null && node._children.isEmpty()) {
+                node._children = null;
+            }
+            if (node._location >= 0 || node._children != null) {
+                return;
+            }
+            String parentPath = VirtualFileSystem.stripLast(path);
+            Node parent = find(parentPath);
+            parent._children.remove(VirtualFileSystem.getLast(path));
+            path = parentPath;
+        }
+        if (_root._children != null && _root._children.isEmpty()) {
+            _root._children = null;
+        }
+    }
+
+    private static class Node {
+        private HashMap<String, Node> _children;
+        private long _location = -1;
+        private int _length;
+        private boolean _directory;
+    }
+
+    private static class Segment {
+        private final int _id;
+        private final File _file;
+        private final FileChannel _channel;
+        private long _size;
+        private long _liveBytes = 0;
+
+        private Segment(int id, File file) throws IOException {
+            _id = id;
+            _file = file;
+            _channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            _size = _channel.size();
+        }
+    }
+
+    private static class Record {
+        private final byte[] _bytes;
+        private final byte _type;
+        private final long _sequence;
+        private final String _path;
+        private final byte[] _payload;
+
+        private Record(byte[] bytes, byte type, long sequence, String path, byte[] payload) {
+            _bytes = bytes;
+            _type = type;
+            _sequence = sequence;
+            _path = path;
+            _payload = payload;
+        }
+    }
+
+    /**
+     * What replay needs to know about a record, without keeping its payload in memory.
+     */
+    private static class RecordInfo {
+        private final byte _type;
+        private final long _sequence;
+        private final String _path;
+        private final long _location;
+        private final int _length;
+        private final boolean _directory;
+
+        private RecordInfo(Record record, long location) {
+            _type = record._type;
+            _sequence = record._sequence;
+            _path = record._path;
+            _location = location;
+            _length = record._bytes.length;
+            _directory = record._type == PUT && InodeCodec.isDirectory(record._payload);
+        }
+    }
+}
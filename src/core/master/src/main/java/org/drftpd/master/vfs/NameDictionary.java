@@ -0,0 +1,103 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.drftpd.common.dynamicdata.Key;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the names that are repeated across millions of inodes: users, groups, metadata keys and slaves.
+ * <br>
+ * Every distinct name is kept once and all inodes refer to that instance. Slaves additionally get a small
+ * numeric id, so inodes can store the slaves holding them as a bitset, see {@link SlaveBitSets}.
+ * Names are never removed, there are only as many as there are users, groups, plugins and slaves.
+ *
+ * @version $Id$
+ */
+public final class NameDictionary {
+
+    private static final ConcurrentHashMap<String, String> NAMES = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, Key<?>> KEYS = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, Integer> SLAVE_IDS = new ConcurrentHashMap<>();
+
+    private static volatile String[] SLAVE_NAMES = new String[0];
+
+    private NameDictionary() {
+    }
+
+    /**
+     * @return the shared instance of the name, null for null.
+     */
+    public static String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        String shared = NAMES.putIfAbsent(name, name);
+        return shared == null ? name : shared;
+    }
+
+    /**
+     * @return the shared instance of an equal key.
+     */
+    public static Key<?> intern(Key<?> key) {
+        Key<?> shared = KEYS.putIfAbsent(key.getKey(), key);
+        return shared == null ? key : shared;
+    }
+
+    /**
+     * @return the id of the slave, a new one if the slave was never seen before.
+     */
+    public static int slaveId(String slave) {
+        Integer id = SLAVE_IDS.get(slave);
+        if (id != null) {
+            return id;
+        }
+        synchronized (NameDictionary.class) {
+            id = SLAVE_IDS.get(slave);
+            if (id == null) {
+                String[] names = Arrays.copyOf(SLAVE_NAMES, SLAVE_NAMES.length + 1);
+                id = names.length - 1;
+                names[id] = intern(slave);
+                SLAVE_NAMES = names;
+                SLAVE_IDS.put(names[id], id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Looks the slave up without giving it an id, for checks that must not register every name they see.
+     *
+     * @return the id of the slave, -1 if the slave was never seen before.
+     */
+    public static int slaveIdIfPresent(String slave) {
+        Integer id = SLAVE_IDS.get(slave);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the name of the slave with the given id.
+     */
+    public static String slaveName(int id) {
+        return SLAVE_NAMES[id];
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sets of slaves stored as bits indexed by {@link NameDictionary#slaveId(String)}.
+ * <br>
+ * The arrays are never modified once created, every change returns a new array. Arrays of a single word,
+ * which covers the first 64 slaves, are shared between all inodes holding the same slaves.
+ *
+ * @version $Id$
+ */
+public final class SlaveBitSets {
+
+    public static final long[] EMPTY = new long[0];
+
+    private static final ConcurrentHashMap<Long, long[]> SHARED = new ConcurrentHashMap<>();
+
+    private SlaveBitSets() {
+    }
+
+    public static long[] of(Collection<String> slaves) {
+        long[] bits = EMPTY;
+        for (String slave : slaves) {
+            bits = add(bits, slave);
+        }
+        return bits;
+    }
+
+    public static boolean contains(long[] bits, String slave) {
+        int id = NameDictionary.slaveIdIfPresent(slave);
+        return id >= 0 && contains(bits, id);
+    }
+
+    /**
+     * @return whether the slave with the given {@link NameDictionary#slaveId(String)} is in the set.
+     */
+    public static boolean contains(long[] bits, int id) {
+        int word = id >>> 6;
+        return word < bits.length && (bits[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * @return bits with the slave added, the same array if it was already there.
+     */
+    public static long[] add(long[] bits, String slave) {
+        int id = NameDictionary.slaveId(slave);
+        int word = id >>> 6;
+        if (word < bits.length && (bits[word] & (1L << id)) != 0) {
+            return bits;
+        }
+        long[] added = Arrays.copyOf(bits, Math.max(bits.length, word + 1));
+        added[word] |= 1L << id;
+        return share(added);
+    }
+
+    /**
+     * @return bits without the slave, the same array if it was not there.
+     */
+    public static long[] remove(long[] bits, String slave) {
+        int id = NameDictionary.slaveIdIfPresent(slave);
+        if (id < 0 || !contains(bits, id)) {
+            return bits;
+        }
+        int word = id >>> 6;
+        long[] removed = bits.clone();
+        removed[word] &= ~(1L << id);
+        int length = removed.length;
+        while (length > 0 && removed[length - 1] == 0) {
+            length--;
+        }
+        return share(length == removed.length ? removed : Arrays.copyOf(removed, length));
+    }
+
+    public static boolean isEmpty(long[] bits) {
+        return bits.length == 0;
+    }
+
+    public static int size(long[] bits) {
+        int size = 0;
+        for (long word : bits) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * @return a new modifiable set with the names of the slaves.
+     */
+    public static Set<String> names(long[] bits) {
+        Set<String> names = new HashSet<>(Math.max(4, size(bits) * 2));
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                int bit = Long.numberOfTrailingZeros(remaining);
+                names.add(NameDictionary.slaveName((word << 6) + bit));
+                remaining &= remaining - 1;
+            }
+        }
+        return names;
+    }
+
+    private static long[] share(long[] bits) {
+        if (bits.length == 0) {
+            return EMPTY;
+        }
+        if (bits.length > 1) {
+            return bits;
+        }
+        long[] shared = SHARED.putIfAbsent(bits[0], bits);
+        return shared == null ? bits : shared;
+    }
+}
@@ -20,29 +20,37 @@ package org.drftpd.master.vfs;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.drftpd.common.io.PermissionDeniedException;
+import org.drftpd.common.util.PropertyHelper;
 import org.drftpd.master.GlobalContext;
+import org.drftpd.master.config.ConfigInterface;
 import org.drftpd.master.vfs.event.*;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FilenameFilter;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.Comparator;
+import java.util.Properties;
 import java.util.Set;
-
-import static org.drftpd.master.util.SerializerUtils.getMapper;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class VirtualFileSystem {
 
     public static final String dirName = ".dirProperties";
     public static final String fileSystemPath = "userdata/vfs";
+    public static final String logFileSystemPath = "userdata/vfs-log";
     public static final String separator = "/";
     protected static final InodeHandleCaseInsensitiveComparator INODE_HANDLE_CASE_INSENSITIVE_COMPARATOR =
             new InodeHandleCaseInsensitiveComparator();
     private static final Logger logger = LogManager.getLogger(VirtualFileSystem.class);
-    private static final DirInodeFilenameFilter dirFilter = new DirInodeFilenameFilter();
+    private static final int PATH_CACHE_SIZE = 100000;
     private static VirtualFileSystem _vfs = null;
     private VirtualFileSystemRoot _root = null;
+    private final VirtualFileSystemStore _store;
+
+    // Bumped whenever an inode is removed, moved or replaced, see CachedInode
+    private final AtomicLong _structureVersion = new AtomicLong();
+    private final ConcurrentHashMap<String, CachedInode> _pathCache = new ConcurrentHashMap<>();
 
     /**
      * Create a VirtualFileSystem object, creating or not a new directory tree.
@@ -53,7 +61,7 @@ public class VirtualFileSystem {
      * This constructor is private due to the Singleton architecture.
      */
     private VirtualFileSystem() {
-        new File(fileSystemPath).mkdirs();
+        _store = createStore();
         try {
             _root = (VirtualFileSystemRoot) loadInode(separator);
         } catch (FileNotFoundException e) {
@@ -118,14 +126,40 @@ public class VirtualFileSystem {
         return path;
     }
 
+    /**
+     * Opens the store configured by vfs.store, the JSON tree is used when nothing (else) is configured.
+     */
+    private static VirtualFileSystemStore createStore() {
+        ConfigInterface config = GlobalContext.getConfig();
+        Properties cfg = config == null ? new Properties() : config.getMainProperties();
+        String store = PropertyHelper.getProperty(cfg, "vfs.store", "json").trim();
+        if (store.equalsIgnoreCase("log")) {
+            long segmentSize = LogVirtualFileSystemStore.DEFAULT_SEGMENT_SIZE;
+            try {
+                segmentSize = Long.parseLong(PropertyHelper.getProperty(cfg, "vfs.log.segment.size",
+                        "64")) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid vfs.log.segment.size, using {} bytes", segmentSize);
+            }
+            try {
+                LogVirtualFileSystemStore logStore = new LogVirtualFileSystemStore(logFileSystemPath, segmentSize);
+                logStore.startMaintenance();
+                return logStore;
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to open the VFS log in " + logFileSystemPath, e);
+            }
+        } else if (!store.equalsIgnoreCase("json")) {
+            logger.warn("Unknown vfs.store {}, using json", store);
+        }
+        return new JsonVirtualFileSystemStore(fileSystemPath);
+    }
+
     private VirtualFileSystemRoot createRootDirectory() {
         logger.info("Creating new root filesystem");
         logger.info("If you have already created your filesystem, then stop removing or corrupting your "
                 + dirName + " file!");
-        new File(fileSystemPath).mkdirs();
         _root = new VirtualFileSystemRoot("drftpd", "drftpd");
-        File rootFile = new File(fileSystemPath);
-        _root.setFiles(rootFile.list(dirFilter));
+        _root.setFiles(_store.list(separator));
         _root.commit();
         _root.inodeLoadCompleted();
         return _root;
@@ -138,7 +172,49 @@ public class VirtualFileSystem {
      * @param path
      */
     protected void deleteInode(String path) {
-        recursiveDelete(new File(getRealPath(path)));
+        _store.delete(path);
+    }
+
+    /**
+     * @return the current structure version of the directory tree, to be taken before a lookup that is cached.
+     */
+    protected long getStructureVersion() {
+        return _structureVersion.get();
+    }
+
+    /**
+     * Invalidates the cached lookups of the inode and of everything below it. Has to be called for an inode
+     * that is removed from its directory, moved or replaced, the rest of the tree keeps its cached lookups.
+     */
+    protected void structureChanged(VirtualFileSystemInode inode) {
+        inode.setStructureVersion(_structureVersion.incrementAndGet());
+    }
+
+    /**
+     * @return whether a lookup of the path may be cached. Paths resolved through a link are not, changing
+     * the link or its target would have to invalidate them.
+     */
+    static boolean isCacheable(String path, VirtualFileSystemInode inode) {
+        return inode.getPath().equalsIgnoreCase(path);
+    }
+
+    /**
+     * @return the cached inode for the path, or null if not cached or no longer valid.
+     */
+    private VirtualFileSystemInode getCachedInode(String path) {
+        CachedInode cached = _pathCache.get(path);
+        return cached == null ? null : cached.getIfValid();
+    }
+
+    private void cacheInode(String path, VirtualFileSystemInode inode, long version) {
+        if (!isCacheable(path, inode)) {
+            return;
+        }
+        if (_pathCache.size() >= PATH_CACHE_SIZE) {
+            // Invalidated entries pile up, start over instead of tracking usage
+            _pathCache.clear();
+        }
+        _pathCache.put(path, new CachedInode(inode, version));
     }
 
     /**
@@ -158,6 +234,27 @@ public class VirtualFileSystem {
         if (path.equals(separator)) {
             return _root;
         }
+        long version = getStructureVersion();
+        VirtualFileSystemInode inode = getCachedInode(path);
+        if (inode != null) {
+            return inode;
+        }
+        int lastSeparator = path.lastIndexOf(separator);
+        if (lastSeparator > 0 && lastSeparator < path.length() - 1 && !path.contains("//")) {
+            // Resolve from the cached parent directory, saves walking the tree for the entries of a directory
+            VirtualFileSystemInode parent = getCachedInode(path.substring(0, lastSeparator));
+            if (parent != null && parent.isDirectory()) {
+                inode = ((VirtualFileSystemDirectory) parent).getInodeByName(path.substring(lastSeparator + 1));
+                cacheInode(path, inode, version);
+                return inode;
+            }
+        }
+        inode = walkInodeByPath(path);
+        cacheInode(path, inode, version);
+        return inode;
+    }
+
+    private VirtualFileSystemInode walkInodeByPath(String path) throws FileNotFoundException {
         path = path.substring(1);
         VirtualFileSystemDirectory walker = _root;
         VirtualFileSystemInode inode = null;
@@ -179,15 +276,6 @@ public class VirtualFileSystem {
         return inode;
     }
 
-    /**
-     * @param path
-     * @return the real path of the file on the disk.<br>
-     * Ex: getRealPath('PICS/me.jpg') would return 'files/PICS/me.jpg'
-     */
-    private String getRealPath(String path) {
-        return fileSystemPath + path;
-    }
-
     /**
      * @return the root directory.
      */
@@ -201,82 +289,55 @@ public class VirtualFileSystem {
      */
     protected VirtualFileSystemInode loadInode(String path)
             throws FileNotFoundException {
-        String fullPath = fileSystemPath + path;
-        logger.debug("Loading inode - {}", fullPath);
-        File jsonFile = new File(fullPath);
-        File realDirectory = null;
-        if (jsonFile.isDirectory()) {
-            realDirectory = jsonFile;
-            fullPath = fullPath + separator + dirName;
-            jsonFile = new File(fullPath);
-        }
+        logger.debug("Loading inode - {}", path);
+        VirtualFileSystemInode inode = null;
+        boolean corrupted = false;
         try {
-
-            FileReader fileReader = new FileReader(fullPath);
-            VirtualFileSystemInode inode = getMapper().readValue(fileReader, VirtualFileSystemInode.class);
-            inode.setName(getLast(path));
-            if (inode.isDirectory()) {
-                VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) inode;
-                dir.setFiles(realDirectory.list(dirFilter));
-            }
-            inode.inodeLoadCompleted();
-            return inode;
-        } catch (Exception e) {
-            boolean corruptedJsonFile = jsonFile.exists();
-            if (corruptedJsonFile) {
-                // parsing error! Let's get rid of the offending bugger
-                jsonFile.delete();
-            }
-            // if this object is the Root object, let's create it and get outta
-            // here
-            if (getLast(path).equals(separator)) {
-                return createRootDirectory();
-            }
-
-            VirtualFileSystemDirectory parentInode;
-            {
-                VirtualFileSystemInode inode = getInodeByPath(stripLast(path));
+            inode = _store.read(path);
+            if (inode != null) {
+                inode.setName(getLast(path));
                 if (inode.isDirectory()) {
-                    parentInode = (VirtualFileSystemDirectory) inode;
-                } else {
-                    // the parent is a Directory on the REAL filesystem and
-                    // a something else on our virtual one...
-                    throw new FileNotFoundException("You're filesystem is really messed up");
+                    VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) inode;
+                    dir.setFiles(_store.list(path));
                 }
+                inode.inodeLoadCompleted();
+                return inode;
             }
-            if (realDirectory != null && realDirectory.exists()) {
-                // let's create the .dirProperties file from what we know since
-                // it should be there
-                parentInode.createDirectoryRaw(getLast(path), "drftpd", "drftpd");
-                return parentInode.getInodeByName(getLast(path));
-            }
-            if (corruptedJsonFile) {
-                // we already deleted the file, but we need to tell the parent
-                // directory that it doesn't exist anymore
-                logger.debug("Error loading {}, deleting file", fullPath, e);
-                parentInode.removeMissingChild(getLast(path));
-            }
-            throw new FileNotFoundException();
+        } catch (Exception e) {
+            // parsing error! Let's get rid of the offending bugger
+            logger.debug("Error loading {}, deleting it", path, e);
+            corrupted = true;
+            _store.discard(path);
+        }
+        // if this object is the Root object, let's create it and get outta
+        // here
+        if (getLast(path).equals(separator)) {
+            return createRootDirectory();
         }
-    }
 
-    /**
-     * If 'file' is a directory, it recurses through it and deletes, everything
-     * inside it.<br>
-     * If 'file' is an actual file, it simply deletes it.
-     *
-     * @param file
-     */
-    private void recursiveDelete(File file) {
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            for (File file1 : files) {
-                recursiveDelete(file1);
+        VirtualFileSystemDirectory parentInode;
+        {
+            VirtualFileSystemInode parent = getInodeByPath(stripLast(path));
+            if (parent.isDirectory()) {
+                parentInode = (VirtualFileSystemDirectory) parent;
+            } else {
+                // the parent is a Directory in the store and
+                // a something else on our virtual one...
+                throw new FileNotFoundException("You're filesystem is really messed up");
             }
         }
-        if (file.exists() && !file.delete()) {
-            logger.error("Could not delete local entry {}, check permissions", file.getAbsolutePath());
+        if (_store.isDirectory(path)) {
+            // let's create the directory inode from what we know since
+            // it should be there
+            parentInode.createDirectoryRaw(getLast(path), "drftpd", "drftpd");
+            return parentInode.getInodeByName(getLast(path));
+        }
+        if (corrupted) {
+            // we already deleted the inode, but we need to tell the parent
+            // directory that it doesn't exist anymore
+            parentInode.removeMissingChild(getLast(path));
         }
+        throw new FileNotFoundException();
     }
 
     /**
@@ -289,11 +350,7 @@ public class VirtualFileSystem {
      */
     protected void renameInode(String source, String destination)
             throws FileNotFoundException, PermissionDeniedException {
-        File file = new File(getRealPath(source));
-        if (!file.exists()) {
-            throw new FileNotFoundException(source + " cannot be found");
-        }
-        boolean result = file.renameTo(new File(getRealPath(destination)));
+        boolean result = _store.rename(source, destination);
         if (!result) {
             throw new PermissionDeniedException("Cannot rename " + source
                     + " to " + destination);
@@ -305,25 +362,23 @@ public class VirtualFileSystem {
      *
      * @param inode
      */
-    protected void writeInode(VirtualFileSystemInode inode) {
-        String fullPath = getRealPath(inode.getPath());
-        if (inode instanceof VirtualFileSystemRoot) {
-            new File(fileSystemPath).mkdirs();
-            fullPath = fullPath + separator + dirName;
-        } else if (inode.isDirectory()) {
-            new File(fullPath).mkdirs();
-            fullPath = fullPath + separator + dirName;
-        } else {
-            new File(getRealPath(inode.getParent().getPath())).mkdirs();
-        }
+    protected void writeInode(VirtualFileSystemInode inode) throws IOException {
+        _store.write(inode.getPath(), inode);
+    }
 
-        try {
-            File node = new File(fullPath);
-            logger.debug("Wrote fullPath {}", fullPath);
-            getMapper().writeValue(node, inode);
-        } catch (Exception e) {
-            logger.error("Unable to write {} to disk", fullPath, e);
-        }
+    /**
+     * Forces every inode written so far to stable storage.
+     */
+    public void sync() throws IOException {
+        _store.sync();
+    }
+
+    /**
+     * Closes the store, nothing can be written afterwards.<br>
+     * Only called at shutdown, once the {@link CommitManager} has drained.
+     */
+    public void close() {
+        _store.close();
     }
 
     protected void notifyOwnershipChanged(VirtualFileSystemInode inode, String owner, String group) {
@@ -386,19 +441,40 @@ public class VirtualFileSystem {
         GlobalContext.getEventService().publish(event);
     }
 
-    static class InodeHandleCaseInsensitiveComparator implements Comparator<InodeHandle> {
+    /**
+     * Inode resolved for a path, valid as long as neither the inode nor one of its parents was removed,
+     * moved or replaced since the lookup started. Weakly referenced so caching a lookup never keeps an
+     * inode in memory.
+     */
+    static class CachedInode extends WeakReference<VirtualFileSystemInode> {
+        private final long _version;
+
+        /**
+         * @param version the structure version taken before the lookup started.
+         */
+        CachedInode(VirtualFileSystemInode inode, long version) {
+            super(inode);
+            _version = version;
+        }
 
-        public int compare(InodeHandle inode0, InodeHandle inode1) {
-            return String.CASE_INSENSITIVE_ORDER.compare(inode0.getName(), inode1.getName());
+        /**
+         * @return the inode if it is still valid, null otherwise.
+         */
+        VirtualFileSystemInode getIfValid() {
+            VirtualFileSystemInode inode = get();
+            for (VirtualFileSystemInode walker = inode; walker != null; walker = walker._parent) {
+                if (walker.getStructureVersion() > _version) {
+                    return null;
+                }
+            }
+            return inode;
         }
     }
 
-    static class DirInodeFilenameFilter implements FilenameFilter {
+    static class InodeHandleCaseInsensitiveComparator implements Comparator<InodeHandle> {
 
-        @Override
-        public boolean accept(File dir, String file) {
-            return !file.equals(dirName);
+        public int compare(InodeHandle inode0, InodeHandle inode1) {
+            return String.CASE_INSENSITIVE_ORDER.compare(inode0.getName(), inode1.getName());
         }
-
     }
 }
@@ -18,16 +18,15 @@
 package org.drftpd.master.vfs;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.drftpd.common.vfs.CaseInsensitiveTreeMap;
 import org.drftpd.slave.exceptions.FileExistsException;
 
 import java.io.FileNotFoundException;
 import java.lang.ref.SoftReference;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -39,12 +38,27 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
 
+    private static final AtomicLong LISTING_VERSIONS = new AtomicLong();
+
+    private static final int[] NO_REFS = new int[0];
+
     protected long _size = 0;
     @JsonIgnore
     private final transient TreeMap<String, SoftReference<VirtualFileSystemInode>> _files =
             new CaseInsensitiveTreeMap<String, SoftReference<VirtualFileSystemInode>>();
     private boolean _placeHolderLastModified;
-    private Map<String, AtomicInteger> _slaveRefCounts = new TreeMap<>();
+    // indexed by NameDictionary.slaveId(), stored as "_slaveRefCounts", see getSlaveRefCountsForJson()
+    @JsonIgnore
+    private transient int[] _slaveRefs = NO_REFS;
+    // the slaves that have a count, even if it dropped back to 0
+    @JsonIgnore
+    private transient long[] _slaveRefsKept = SlaveBitSets.EMPTY;
+    @JsonIgnore
+    private final transient Object _slaveRefsLock = new Object();
+    @JsonIgnore
+    private transient volatile long _listingVersion = LISTING_VERSIONS.incrementAndGet();
+    @JsonIgnore
+    private transient volatile boolean _pinned = false;
 
     @SuppressWarnings("unused")
     public VirtualFileSystemDirectory() {
@@ -62,8 +76,12 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
      * @param inode
      */
     protected synchronized void addChild(VirtualFileSystemInode inode, boolean updateLastModified) {
-        _files.put(inode.getName(), new SoftReference<>(
-                inode));
+        SoftReference<VirtualFileSystemInode> previous = _files.put(inode.getName(), reference(inode));
+        listingChanged();
+        VirtualFileSystemInode replaced = previous == null ? null : previous.get();
+        if (replaced != null && replaced != inode) {
+            getVFS().structureChanged(replaced);
+        }
         if (updateLastModified &&
                 (getLastModified() < inode.getLastModified() || _placeHolderLastModified)) {
             setLastModified(inode.getLastModified());
@@ -308,28 +326,88 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
         if (name.equals(".")) {
             return this;
         }
-        VirtualFileSystemInode inode = null;
+        return loadChild(name);
+    }
+
+    /**
+     * Returns the child, reading it from the store if it is not in memory. The store is read without
+     * holding the lock of this directory, so siblings can be loaded in parallel.
+     *
+     * @param name
+     * @return VirtualFileSystemInode object if 'name' exists on the dir.
+     * @throws FileNotFoundException
+     */
+    private VirtualFileSystemInode loadChild(String name) throws FileNotFoundException {
+        String storedName;
         synchronized (this) {
             if (!_files.containsKey(name)) {
                 throw new FileNotFoundException("FileNotFound: " + name + " does not exist");
             }
             SoftReference<VirtualFileSystemInode> sf = _files.get(name);
-            if (sf != null) {
-                inode = sf.get();
+            VirtualFileSystemInode inode = sf == null ? null : sf.get();
+            if (inode != null) {
+                return inode;
             }
-            if (inode == null) {
-                // The next line is so that we load the file from disk using the casing of the name
-                // stored against the parent directory not the casing passed by the caller
-                name = _files.ceilingKey(name);
-                inode = getVFS().loadInode(
-                        getPath() + VirtualFileSystem.separator + name);
-                inode.setParent(this);
-                // _files.remove(name);
-                // Map instance replaces what is previously there with put()
-                _files.put(name, new SoftReference<>(inode));
+            // The next line is so that we load the file from disk using the casing of the name
+            // stored against the parent directory not the casing passed by the caller
+            storedName = _files.ceilingKey(name);
+        }
+        VirtualFileSystemInode loaded = getVFS().loadInode(
+                getPath() + VirtualFileSystem.separator + storedName);
+        synchronized (this) {
+            if (!_files.containsKey(storedName)) {
+                throw new FileNotFoundException("FileNotFound: " + name + " does not exist");
             }
+            SoftReference<VirtualFileSystemInode> sf = _files.get(storedName);
+            VirtualFileSystemInode inode = sf == null ? null : sf.get();
+            if (inode != null) {
+                // loaded or created by someone else meanwhile
+                return inode;
+            }
+            loaded.setParent(this);
+            // Map instance replaces what is previously there with put()
+            _files.put(storedName, reference(loaded));
+            return loaded;
         }
-        return inode;
+    }
+
+    /**
+     * Keeps every child of this directory in memory from now on instead of letting the garbage collector
+     * drop the ones not in use. Directories loaded or created below a pinned directory are pinned as well.
+     */
+    protected synchronized void pin() {
+        _pinned = true;
+        for (Map.Entry<String, SoftReference<VirtualFileSystemInode>> entry : _files.entrySet()) {
+            VirtualFileSystemInode inode = entry.getValue() == null ? null : entry.getValue().get();
+            if (inode != null && !(entry.getValue() instanceof PinnedReference)) {
+                entry.setValue(reference(inode));
+            }
+        }
+    }
+
+    /**
+     * Keeps the given child in memory, without pinning anything else of this directory.
+     */
+    protected synchronized void pinChild(VirtualFileSystemInode child) {
+        SoftReference<VirtualFileSystemInode> sf = _files.get(child.getName());
+        if (sf != null && sf.get() == child && !(sf instanceof PinnedReference)) {
+            _files.put(child.getName(), new PinnedReference(child));
+        }
+    }
+
+    public boolean isPinned() {
+        return _pinned;
+    }
+
+    private SoftReference<VirtualFileSystemInode> reference(VirtualFileSystemInode inode) {
+        if (!_pinned) {
+            return new SoftReference<>(inode);
+        }
+        if (inode instanceof VirtualFileSystemDirectory) {
+            // Only the flag, pinning what the child already holds would lock parent before child
+            ((VirtualFileSystemDirectory) inode)._pinned = true;
+        }
+        return new PinnedReference(inode);
     }
 
     /**
@@ -354,6 +432,26 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
         }
     }
 
+    /**
+     * Versions are unique across all directories, so a directory that is evicted and loaded
+     * again never reports a version seen for its previous instance.
+     *
+     * @return a value that changes whenever this directory or one of its children is committed.
+     */
+    protected long getListingVersion() {
+        return _listingVersion;
+    }
+
+    protected void listingChanged() {
+        _listingVersion = LISTING_VERSIONS.incrementAndGet();
+    }
+
+    @Override
+    public void commit() {
+        listingChanged();
+        super.commit();
+    }
+
     @Override
     public String toString() {
         return "Directory" + super.toString();
@@ -384,7 +482,12 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
     }
 
     public synchronized void removeMissingChild(String name) {
-        if (_files.remove(name) != null) {
+        SoftReference<VirtualFileSystemInode> removed = _files.remove(name);
+        if (removed != null) {
+            VirtualFileSystemInode inode = removed.get();
+            if (inode != null) {
+                getVFS().structureChanged(inode);
+            }
             setLastModified(System.currentTimeMillis());
             commit();
         }
@@ -405,27 +508,55 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
     }
 
     public Map<String, AtomicInteger> getSlaveRefCounts() {
-        synchronized (_slaveRefCounts) {
-            return new TreeMap<>(_slaveRefCounts);
+        Map<String, AtomicInteger> refCounts = new TreeMap<>();
+        synchronized (_slaveRefsLock) {
+            for (int id = 0; id < _slaveRefs.length; id++) {
+                if (SlaveBitSets.contains(_slaveRefsKept, id)) {
+                    refCounts.put(NameDictionary.slaveName(id), new AtomicInteger(_slaveRefs[id]));
+                }
+            }
         }
+        return refCounts;
     }
 
     public void setSlaveRefCounts(Map<String, AtomicInteger> slaveRefCounts) {
-        _slaveRefCounts = slaveRefCounts;
+        synchronized (_slaveRefsLock) {
+            _slaveRefs = NO_REFS;
+            _slaveRefsKept = SlaveBitSets.EMPTY;
+            for (Map.Entry<String, AtomicInteger> entry : slaveRefCounts.entrySet()) {
+                addSlaveRefs(entry.getKey(), entry.getValue().get());
+            }
+        }
+    }
+
+    @JsonProperty("_slaveRefCounts")
+    private Map<String, AtomicInteger> getSlaveRefCountsForJson() {
+        return getSlaveRefCounts();
+    }
+
+    @JsonProperty("_slaveRefCounts")
+    private void setSlaveRefCountsFromJson(Map<String, AtomicInteger> slaveRefCounts) {
+        setSlaveRefCounts(slaveRefCounts == null ? Collections.emptyMap() : slaveRefCounts);
+    }
+
+    /**
+     * Must be called holding _slaveRefsLock
+     */
+    private void addSlaveRefs(String slave, int count) {
+        int id = NameDictionary.slaveId(slave);
+        if (id >= _slaveRefs.length) {
+            _slaveRefs = Arrays.copyOf(_slaveRefs, id + 1);
+        }
+        _slaveRefs[id] += count;
+        _slaveRefsKept = SlaveBitSets.add(_slaveRefsKept, slave);
     }
 
     protected void addChildSlaveRefCounts(VirtualFileSystemInode childInode, Map<String, AtomicInteger> childRefCounts) {
         if (!childRefCounts.isEmpty()) {
-            for (Map.Entry<String, AtomicInteger> refEntry : childRefCounts.entrySet()) {
-                AtomicInteger currentCount;
-                synchronized (_slaveRefCounts) {
-                    currentCount = _slaveRefCounts.get(refEntry.getKey());
-                    if (currentCount == null) {
-                        currentCount = new AtomicInteger(0);
-                        _slaveRefCounts.put(refEntry.getKey(), currentCount);
-                    }
+            synchronized (_slaveRefsLock) {
+                for (Map.Entry<String, AtomicInteger> refEntry : childRefCounts.entrySet()) {
+                    addSlaveRefs(refEntry.getKey(), refEntry.getValue().intValue());
                 }
-                currentCount.addAndGet(refEntry.getValue().intValue());
             }
             if (!isRoot()) {
                 getParent().addChildSlaveRefCounts(childInode, childRefCounts);
@@ -436,16 +567,16 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
 
     protected void removeChildSlaveRefCounts(VirtualFileSystemInode childInode, Map<String, AtomicInteger> childRefCounts) {
         if (!childRefCounts.isEmpty()) {
-            for (Map.Entry<String, AtomicInteger> refEntry : childRefCounts.entrySet()) {
-                AtomicInteger currentCount;
-                currentCount = _slaveRefCounts.get(refEntry.getKey());
-                if (currentCount == null) {
-                    // Shouldn't happen since we're removing a child, therefore we should have
-                    // counts for the slaves referenced by the child
-                    logger.error("Removing child {} from {} child contained a count of {} for slave {} but the slave has no count against this directory", childInode.getPath(), getPath(), refEntry.getValue().intValue(), refEntry.getKey());
-                    continue;
+            synchronized (_slaveRefsLock) {
+                for (Map.Entry<String, AtomicInteger> refEntry : childRefCounts.entrySet()) {
+                    if (!SlaveBitSets.contains(_slaveRefsKept, refEntry.getKey())) {
+                        // Shouldn't happen since we're removing a child, therefore we should have
+                        // counts for the slaves referenced by the child
+                        logger.error("Removing child {} from {} child contained a count of {} for slave {} but the slave has no count against this directory", childInode.getPath(), getPath(), refEntry.getValue().intValue(), refEntry.getKey());
+                        continue;
+                    }
+                    addSlaveRefs(refEntry.getKey(), -refEntry.getValue().intValue());
                 }
-                currentCount.addAndGet(-refEntry.getValue().intValue());
             }
             if (!isRoot()) {
                 getParent().removeChildSlaveRefCounts(childInode, childRefCounts);
@@ -455,15 +586,9 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
     }
 
     protected void incrementSlaveRefCount(String slave) {
-        AtomicInteger currentCount;
-        synchronized (_slaveRefCounts) {
-            currentCount = _slaveRefCounts.get(slave);
-            if (currentCount == null) {
-                currentCount = new AtomicInteger(0);
-                _slaveRefCounts.put(slave, currentCount);
-            }
+        synchronized (_slaveRefsLock) {
+            addSlaveRefs(slave, 1);
         }
-        currentCount.incrementAndGet();
         if (!isRoot()) {
             getParent().incrementSlaveRefCount(slave);
         }
@@ -471,15 +596,9 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
     }
 
     protected void decrementSlaveRefCount(String slave) {
-        AtomicInteger currentCount;
-        synchronized (_slaveRefCounts) {
-            currentCount = _slaveRefCounts.get(slave);
-            if (currentCount == null) {
-                currentCount = new AtomicInteger(0);
-                _slaveRefCounts.put(slave, currentCount);
-            }
+        synchronized (_slaveRefsLock) {
+            addSlaveRefs(slave, -1);
         }
-        currentCount.decrementAndGet();
         if (!isRoot()) {
             getParent().decrementSlaveRefCount(slave);
         }
@@ -491,11 +610,10 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
     }
 
     protected int getRefCountForSlave(String slave) {
-        AtomicInteger slaveCount = _slaveRefCounts.get(slave);
-        if (slaveCount == null) {
-            return 0;
+        int id = NameDictionary.slaveIdIfPresent(slave);
+        synchronized (_slaveRefsLock) {
+            return id >= 0 && id < _slaveRefs.length ? _slaveRefs[id] : 0;
         }
-        return slaveCount.get();
     }
 
     protected void recalcSlaveRefCounts() {
@@ -524,10 +642,20 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
                 // Inode has been deleted, skip it
             }
         }
-        synchronized (_slaveRefCounts) {
-            _slaveRefCounts.clear();
-            _slaveRefCounts.putAll(updCounts);
-        }
+        setSlaveRefCounts(updCounts);
         commit();
     }
+
+    /**
+     * Never cleared by the garbage collector as it also holds the inode strongly.
+     */
+    private static class PinnedReference extends SoftReference<VirtualFileSystemInode> {
+        @SuppressWarnings({"unused", "FieldCanBeLocal"})
+        private final VirtualFileSystemInode _inode;
+
+        private PinnedReference(VirtualFileSystemInode inode) {
+            super(inode);
+            _inode = inode;
+        }
+    }
 }
@@ -18,7 +18,10 @@
 package org.drftpd.master.vfs;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.drftpd.common.dynamicdata.Key;
+import org.drftpd.common.dynamicdata.element.ConfigElement;
+import org.drftpd.common.dynamicdata.element.ConfigLong;
 import org.drftpd.common.exceptions.TransferFailedException;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.network.RemoteTransfer;
@@ -38,14 +41,24 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     public static final Key<Long> XFERTIME = new Key<>(VirtualFileSystemFile.class, "xfertime");
     public static final Key<Integer> DOWNLOADEDTIMES = new Key<>(VirtualFileSystemFile.class, "dltimes");
     public static final Key<Long> DOWNLOADDURATION = new Key<>(VirtualFileSystemFile.class, "dlduration");
-    protected Set<String> _slaves;
+    private static final Queue<RemoteTransfer> NO_TRANSFERS = new ConcurrentLinkedQueue<>();
 
+    // stored as "_slaves", see getSlavesForJson()
     @JsonIgnore
-    private final transient Queue<RemoteTransfer> _uploads = new ConcurrentLinkedQueue<>();
+    private transient volatile long[] _slaveBits = SlaveBitSets.EMPTY;
+
+    // only created once there is a transfer, most files never have one while in memory
+    @JsonIgnore
+    private transient volatile Queue<RemoteTransfer> _uploads;
     @JsonIgnore
-    private final transient Queue<RemoteTransfer> _downloads = new ConcurrentLinkedQueue<>();
+    private transient volatile Queue<RemoteTransfer> _downloads;
 
     private long _size;
+    // stored in "_configs" like older versions did, see getConfigsForJson()
+    @JsonIgnore
+    private long _checksum;
+    @JsonIgnore
+    private long _xfertime;
 
     @SuppressWarnings("unused")
     public VirtualFileSystemFile() {
@@ -60,20 +73,55 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
                                  Set<String> slaves) {
         super(username, group);
         setSize(size);
-        _slaves = slaves;
+        _slaveBits = SlaveBitSets.of(slaves);
     }
 
     /**
      * @return a set of which slaves have this file.
      */
     public Set<String> getSlaves() {
-        synchronized (_slaves) {
-            return new HashSet<>(_slaves);
-        }
+        return SlaveBitSets.names(_slaveBits);
     }
 
     public void setSlaves(Set<String> slaves) {
-        _slaves = slaves;
+        _slaveBits = SlaveBitSets.of(slaves);
+    }
+
+    /**
+     * @return whether the slave has this file.
+     */
+    public boolean hasSlave(String slave) {
+        return SlaveBitSets.contains(_slaveBits, slave);
+    }
+
+    @JsonProperty("_slaves")
+    private Set<String> getSlavesForJson() {
+        return getSlaves();
+    }
+
+    @JsonProperty("_slaves")
+    private void setSlavesFromJson(Set<String> slaves) {
+        setSlaves(slaves == null ? Collections.emptySet() : slaves);
+    }
+
+    /**
+     * Writes the checksum and xfertime as metadata, so older versions can still read the file.
+     * They are moved back into their fields by {@link #compact()}.
+     */
+    @Override
+    protected Map<Key<?>, ConfigElement<?>> getConfigsForJson() {
+        Map<Key<?>, ConfigElement<?>> configs = super.getConfigsForJson();
+        if (_checksum == 0L && _xfertime == 0L) {
+            return configs;
+        }
+        Map<Key<?>, ConfigElement<?>> stored = configs == null ? new HashMap<>() : new HashMap<>(configs);
+        if (_checksum != 0L) {
+            stored.put(CRC, new ConfigLong(_checksum));
+        }
+        if (_xfertime != 0L) {
+            stored.put(XFERTIME, new ConfigLong(_xfertime));
+        }
+        return stored;
     }
 
     @Override
@@ -95,14 +143,16 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
      */
     public void addSlave(String rslave) {
         boolean added;
-        synchronized (_slaves) {
-            added = _slaves.add(rslave);
+        synchronized (this) {
+            long[] bits = _slaveBits;
+            _slaveBits = SlaveBitSets.add(bits, rslave);
+            added = _slaveBits != bits;
         }
         if (added) {
             getParent().incrementSlaveRefCount(rslave);
             commit();
 
-            getVFS().notifySlavesChanged(this, _slaves);
+            getVFS().notifySlavesChanged(this, getSlaves());
         }
     }
 
@@ -110,7 +160,7 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
      * @return the CRC32 of the file.
      */
     public long getChecksum() {
-        return configsHelper().get(CRC, 0L);
+        return _checksum;
     }
 
     /**
@@ -119,15 +169,29 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
      * @param checksum
      */
     public void setChecksum(long checksum) {
-        configsHelper().setLong(CRC, checksum);
+        _checksum = checksum;
         commit();
     }
 
+    /**
+     * Sets the checksum without committing, for inodes that are being read.
+     */
+    protected void setChecksumRaw(long checksum) {
+        _checksum = checksum;
+    }
+
+    /**
+     * Sets the xfertime without committing, for inodes that are being read.
+     */
+    protected void setXfertimeRaw(long xfertime) {
+        _xfertime = xfertime;
+    }
+
     /**
      * @return the xfertime of the file.
      */
     public long getXfertime() {
-        return configsHelper().get(XFERTIME, 0L);
+        return _xfertime;
     }
 
     /**
@@ -136,7 +200,7 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
      * @param xfertime
      */
     public void setXfertime(long xfertime) {
-        configsHelper().setLong(XFERTIME, xfertime);
+        _xfertime = xfertime;
         commit();
     }
 
@@ -148,9 +212,11 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     public void removeSlave(String rslave) {
         boolean isEmpty;
         boolean removed;
-        synchronized (_slaves) {
-            removed = _slaves.remove(rslave);
-            isEmpty = _slaves.isEmpty();
+        synchronized (this) {
+            long[] bits = _slaveBits;
+            _slaveBits = SlaveBitSets.remove(bits, rslave);
+            removed = _slaveBits != bits;
+            isEmpty = SlaveBitSets.isEmpty(_slaveBits);
         }
         if (removed) {
             getParent().decrementSlaveRefCount(rslave);
@@ -160,12 +226,12 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
         } else if (removed) {
             commit();
 
-            getVFS().notifySlavesChanged(this, _slaves);
+            getVFS().notifySlavesChanged(this, getSlaves());
         }
     }
 
     public boolean isUploading() {
-        return isTransferring(_uploads);
+        return isTransferring(transfers(true, false));
     }
 
     public boolean isTransferring() {
@@ -173,19 +239,45 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     }
 
     public void addUpload(RemoteTransfer transfer) {
-        _uploads.add(transfer);
+        transfers(true, true).add(transfer);
     }
 
     public void addDownload(RemoteTransfer transfer) {
-        _downloads.add(transfer);
+        transfers(false, true).add(transfer);
     }
 
     public void removeUpload(RemoteTransfer transfer) {
-        _uploads.remove(transfer);
+        transfers(true, false).remove(transfer);
     }
 
     public void removeDownload(RemoteTransfer transfer) {
-        _downloads.remove(transfer);
+        transfers(false, false).remove(transfer);
+    }
+
+    /**
+     * @param create whether to create the queue if there never was a transfer of this kind.
+     * @return the uploads or downloads of this file, an empty queue that must not be modified if there are none.
+     */
+    private Queue<RemoteTransfer> transfers(boolean uploads, boolean create) {
+        Queue<RemoteTransfer> transfers = uploads ? _uploads : _downloads;
+        if (transfers != null) {
+            return transfers;
+        }
+        if (!create) {
+            return NO_TRANSFERS;
+        }
+        synchronized (this) {
+            if (uploads) {
+                if (_uploads == null) {
+                    _uploads = new ConcurrentLinkedQueue<>();
+                }
+                return _uploads;
+            }
+            if (_downloads == null) {
+                _downloads = new ConcurrentLinkedQueue<>();
+            }
+            return _downloads;
+        }
     }
 
     protected void abortTransfers(String reason) {
@@ -194,11 +286,11 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     }
 
     protected void abortUploads(String reason) {
-        abortTransfers(_uploads, reason);
+        abortTransfers(transfers(true, false), reason);
     }
 
     protected void abortDownloads(String reason) {
-        abortTransfers(_downloads, reason);
+        abortTransfers(transfers(false, false), reason);
     }
 
     private void abortTransfers(Queue<RemoteTransfer> transfers, String reason) {
@@ -223,32 +315,30 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     }
 
     public boolean isDownloading() {
-        return isTransferring(_downloads);
+        return isTransferring(transfers(false, false));
     }
 
     public boolean isAvailable() {
-        synchronized (_slaves) {
-            for (String slave : _slaves) {
-                try {
-                    if (GlobalContext.getGlobalContext().getSlaveManager().getRemoteSlave(slave).isAvailable()) {
-                        return true;
-                    }
-                } catch (ObjectNotFoundException e) {
-                    removeSlave(slave);
+        for (String slave : getSlaves()) {
+            try {
+                if (GlobalContext.getGlobalContext().getSlaveManager().getRemoteSlave(slave).isAvailable()) {
+                    return true;
                 }
+            } catch (ObjectNotFoundException e) {
+                removeSlave(slave);
             }
         }
         return false;
     }
 
     public long getDownloadedBytes() {
-        return configsHelper().get(DOWNLOADEDTIMES, 0) * getSize();
+        return configsReader().get(DOWNLOADEDTIMES, 0) * getSize();
     }
 
     public void setDownloadedBytes(long bytes) {}
 
     public int getDownloadedFiles() {
-        return configsHelper().get(DOWNLOADEDTIMES, 0);
+        return configsReader().get(DOWNLOADEDTIMES, 0);
     }
 
     public void setDownloadedFiles(int files) {
@@ -257,7 +347,7 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     }
 
     public long getDownloadedTime() {
-        return configsHelper().get(DOWNLOADDURATION, 0L);
+        return configsReader().get(DOWNLOADDURATION, 0L);
     }
 
     public void setDownloadedTime(long millis) {
@@ -345,11 +435,28 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
 
     protected Map<String, AtomicInteger> getSlaveRefCounts() {
         Map<String, AtomicInteger> slaveRefCounts = new TreeMap<>();
-        synchronized (_slaves) {
-            for (String slave : _slaves) {
-                slaveRefCounts.put(slave, new AtomicInteger(1));
-            }
+        for (String slave : getSlaves()) {
+            slaveRefCounts.put(slave, new AtomicInteger(1));
         }
         return slaveRefCounts;
     }
+
+    /**
+     * Checksum and xfertime used to be kept as metadata, moves them into their own fields.
+     */
+    @Override
+    protected void compact() {
+        Map<Key<?>, ConfigElement<?>> configs = configsIfPresent();
+        if (configs != null) {
+            ConfigElement<?> checksum = configs.remove(CRC);
+            if (checksum != null && checksum.getValue() != null) {
+                _checksum = (Long) checksum.getValue();
+            }
+            ConfigElement<?> xfertime = configs.remove(XFERTIME);
+            if (xfertime != null && xfertime.getValue() != null) {
+                _xfertime = (Long) xfertime.getValue();
+            }
+        }
+        super.compact();
+    }
 }
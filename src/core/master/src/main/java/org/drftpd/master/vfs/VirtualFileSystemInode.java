@@ -18,6 +18,8 @@
 package org.drftpd.master.vfs;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -30,6 +32,7 @@ import org.drftpd.slave.exceptions.FileExistsException;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -51,12 +54,18 @@ public abstract class VirtualFileSystemInode implements Commitable {
     protected transient VirtualFileSystemDirectory _parent;
     protected String _username;
     protected String _group;
-    private Map<Key<?>, ConfigElement<?>> _configs = new HashMap<>();
-    private Map<Key<?>, ConfigElement<?>> _plugins = new HashMap<>();
+    // created on first use, most inodes never have any metadata, stored as "_configs", see getConfigsForJson()
+    @JsonIgnore
+    private Map<Key<?>, ConfigElement<?>> _configs;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<Key<?>, ConfigElement<?>> _plugins;
     protected long _lastModified;
     protected long _creationTime;
     @JsonIgnore
     private transient boolean _inodeLoaded;
+    // when this inode was last removed, moved or replaced, see VirtualFileSystem.CachedInode
+    @JsonIgnore
+    private transient volatile long _structureVersion;
 
     public VirtualFileSystemInode() {
         _lastModified = System.currentTimeMillis();
@@ -65,8 +74,8 @@ public abstract class VirtualFileSystemInode implements Commitable {
 
     public VirtualFileSystemInode(String user, String group) {
         this();
-        _username = user;
-        _group = group;
+        _username = NameDictionary.intern(user);
+        _group = NameDictionary.intern(group);
     }
 
     /**
@@ -84,6 +93,14 @@ public abstract class VirtualFileSystemInode implements Commitable {
         VirtualFileSystem.getVirtualFileSystem().writeInode(this);
     }
 
+    /**
+     * Inodes are grouped by the directory they are stored in
+     */
+    @Override
+    public String getCommitGroup() {
+        return _parent == null ? getPath() : _parent.getPath();
+    }
+
     /**
      * Need to ensure that this is called after each (non-transient) change to
      * the Inode.<br>
@@ -91,6 +108,9 @@ public abstract class VirtualFileSystemInode implements Commitable {
      */
     public void commit() {
         //logger.debug("Committing " + getPath());
+        if (_parent != null) {
+            _parent.listingChanged();
+        }
         CommitManager.getCommitManager().add(this);
     }
 
@@ -120,14 +140,17 @@ public abstract class VirtualFileSystemInode implements Commitable {
      * @param group Sets the group which owns the Inode.
      */
     public void setGroup(String group) {
-        _group = group;
+        _group = NameDictionary.intern(group);
         if (isInodeLoaded()) {
             commit();
             getVFS().notifyOwnershipChanged(this, getUsername(), _group);
         }
     }
 
-    public Map<Key<?>, ConfigElement<?>> getConfigs() {
+    public synchronized Map<Key<?>, ConfigElement<?>> getConfigs() {
+        if (_configs == null) {
+            _configs = new HashMap<>();
+        }
         return _configs;
     }
 
@@ -135,7 +158,38 @@ public abstract class VirtualFileSystemInode implements Commitable {
         this._configs = _configs;
     }
 
-    public Map<Key<?>, ConfigElement<?>> getPlugins() {
+    public synchronized Map<Key<?>, ConfigElement<?>> getPlugins() {
+        if (_plugins == null) {
+            _plugins = new HashMap<>();
+        }
+        return _plugins;
+    }
+
+    /**
+     * @return the metadata of the inode or null if it never had any, without creating the map.
+     */
+    protected Map<Key<?>, ConfigElement<?>> configsIfPresent() {
+        return _configs;
+    }
+
+    /**
+     * @return the metadata as it is stored, subclasses add what they keep in fields of their own.
+     */
+    @JsonProperty("_configs")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected Map<Key<?>, ConfigElement<?>> getConfigsForJson() {
+        return _configs;
+    }
+
+    @JsonProperty("_configs")
+    private void setConfigsFromJson(Map<Key<?>, ConfigElement<?>> configs) {
+        _configs = configs;
+    }
+
+    /**
+     * @return the plugin metadata of the inode or null if it never had any, without creating the map.
+     */
+    protected Map<Key<?>, ConfigElement<?>> pluginsIfPresent() {
         return _plugins;
     }
 
@@ -144,11 +198,19 @@ public abstract class VirtualFileSystemInode implements Commitable {
     }
 
     public DynamicConfigHelper pluginsHelper() {
-        return configHelper(_plugins);
+        return configHelper(getPlugins());
     }
 
     public DynamicConfigHelper configsHelper() {
-        return configHelper(_configs);
+        return configHelper(getConfigs());
+    }
+
+    /**
+     * @return a helper to read the metadata, unlike configsHelper() it does not create the map.
+     */
+    protected DynamicConfigHelper configsReader() {
+        Map<Key<?>, ConfigElement<?>> configs = _configs;
+        return configHelper(configs == null ? Collections.emptyMap() : configs);
     }
 
     /**
@@ -215,6 +277,14 @@ public abstract class VirtualFileSystemInode implements Commitable {
         _parent = directory;
     }
 
+    long getStructureVersion() {
+        return _structureVersion;
+    }
+
+    void setStructureVersion(long version) {
+        _structureVersion = version;
+    }
+
     /**
      * @return Returns the full path.
      */
@@ -242,9 +312,31 @@ public abstract class VirtualFileSystemInode implements Commitable {
      * Sets that the inode has been fully loaded from disk
      */
     public void inodeLoadCompleted() {
+        compact();
         _inodeLoaded = true;
     }
 
+    /**
+     * Shares the names with all other inodes and drops empty metadata maps, called once an inode was read.
+     */
+    protected void compact() {
+        _username = NameDictionary.intern(_username);
+        _group = NameDictionary.intern(_group);
+        _configs = compact(_configs);
+        _plugins = compact(_plugins);
+    }
+
+    private static Map<Key<?>, ConfigElement<?>> compact(Map<Key<?>, ConfigElement<?>> elements) {
+        if (elements == null || elements.isEmpty()) {
+            return null;
+        }
+        Map<Key<?>, ConfigElement<?>> compacted = new HashMap<>(elements.size() * 2);
+        for (Map.Entry<Key<?>, ConfigElement<?>> entry : elements.entrySet()) {
+            compacted.put(NameDictionary.intern(entry.getKey()), entry.getValue());
+        }
+        return compacted;
+    }
+
     /**
      * Returns whether the inode has been fully loaded from disk
      */
@@ -263,7 +355,7 @@ public abstract class VirtualFileSystemInode implements Commitable {
      * @param user The user to set.
      */
     public void setUsername(String user) {
-        _username = user;
+        _username = NameDictionary.intern(user);
         if (isInodeLoaded()) {
             commit();
             getVFS().notifyOwnershipChanged(this, _username, getGroup());
@@ -347,7 +439,8 @@ public abstract class VirtualFileSystemInode implements Commitable {
     }
 
     public <T> T getPluginMetaData(Key<T> key) throws KeyNotFoundException {
-        return pluginsHelper().get(key);
+        Map<Key<?>, ConfigElement<?>> plugins = _plugins;
+        return configHelper(plugins == null ? Collections.emptyMap() : plugins).get(key);
     }
 
     /*
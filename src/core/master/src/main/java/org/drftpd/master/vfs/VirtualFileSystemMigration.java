@@ -0,0 +1,106 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Copies the JSON tree in {@link VirtualFileSystem#fileSystemPath} into the log store in
+ * {@link VirtualFileSystem#logFileSystemPath}.<br>
+ * Run it from the master directory while the master is stopped, the JSON tree is left untouched:
+ * <pre>
+ * java -classpath "lib/*:build/*" org.drftpd.master.vfs.VirtualFileSystemMigration
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class VirtualFileSystemMigration {
+
+    private static final Logger logger = LogManager.getLogger(VirtualFileSystemMigration.class);
+
+    private final VirtualFileSystemStore _source;
+
+    private final VirtualFileSystemStore _destination;
+
+    private long _copied = 0;
+
+    private long _failed = 0;
+
+    public VirtualFileSystemMigration(VirtualFileSystemStore source, VirtualFileSystemStore destination) {
+        _source = source;
+        _destination = destination;
+    }
+
+    public static void main(String[] args) throws IOException {
+        LogVirtualFileSystemStore destination = new LogVirtualFileSystemStore(VirtualFileSystem.logFileSystemPath);
+        try {
+            if (destination.getTotalBytes() > 0) {
+                System.err.println(VirtualFileSystem.logFileSystemPath
+                        + " already contains data, remove it first to migrate again");
+                System.exit(1);
+            }
+            long start = System.currentTimeMillis();
+            VirtualFileSystemMigration migration = new VirtualFileSystemMigration(
+                    new JsonVirtualFileSystemStore(VirtualFileSystem.fileSystemPath), destination);
+            migration.migrate();
+            System.out.println("Copied " + migration.getCopied() + " inodes in "
+                    + (System.currentTimeMillis() - start) + "ms, " + migration.getFailed() + " could not be read");
+            System.out.println("Set vfs.store=log in master.conf to use the migrated file system");
+        } finally {
+            destination.close();
+        }
+    }
+
+    /**
+     * Copies everything from the root directory down.
+     */
+    public void migrate() throws IOException {
+        migrate(VirtualFileSystem.separator);
+    }
+
+    private void migrate(String path) throws IOException {
+        VirtualFileSystemInode inode = null;
+        try {
+            inode = _source.read(path);
+        } catch (IOException e) {
+            logger.warn("Skipping {}, it could not be read", path, e);
+            _failed++;
+        }
+        if (inode != null) {
+            _destination.write(path, inode);
+            _copied++;
+        }
+        if (_source.isDirectory(path)) {
+            String prefix = path.equals(VirtualFileSystem.separator) ? path : path + VirtualFileSystem.separator;
+            for (String child : _source.list(path)) {
+                migrate(prefix + child);
+            }
+        }
+    }
+
+    public long getCopied() {
+        return _copied;
+    }
+
+    public long getFailed() {
+        return _failed;
+    }
+}
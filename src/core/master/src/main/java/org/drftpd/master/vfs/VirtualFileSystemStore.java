@@ -0,0 +1,84 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Persistent storage of the inodes of the {@link VirtualFileSystem}.
+ * <br>
+ * Paths always start with "/", the root directory is "/". Directories exist as soon as they have a stored inode
+ * or something stored below them.
+ *
+ * @version $Id$
+ * @see JsonVirtualFileSystemStore
+ * @see LogVirtualFileSystemStore
+ */
+public interface VirtualFileSystemStore {
+
+    /**
+     * @return the stored inode or null if nothing is stored for this path.
+     * @throws IOException if the stored data cannot be read back.
+     */
+    VirtualFileSystemInode read(String path) throws IOException;
+
+    /**
+     * @return the names of everything stored directly below the given directory, never null.
+     */
+    String[] list(String path);
+
+    /**
+     * @return whether the path is a directory in this store, even if its own inode is missing.
+     */
+    boolean isDirectory(String path);
+
+    /**
+     * Stores the inode under the given path, replacing what was stored before.
+     */
+    void write(String path, VirtualFileSystemInode inode) throws IOException;
+
+    /**
+     * Forgets the inode stored for this path but keeps everything below it.<br>
+     * Used to get rid of data that could not be read.
+     */
+    void discard(String path);
+
+    /**
+     * Deletes the path and everything below it.
+     */
+    void delete(String path);
+
+    /**
+     * Moves the path and everything below it.
+     *
+     * @return false if the store refused to move it.
+     * @throws FileNotFoundException if there's nothing stored for the source.
+     */
+    boolean rename(String source, String destination) throws FileNotFoundException;
+
+    /**
+     * Forces everything written so far to stable storage.
+     */
+    void sync() throws IOException;
+
+    /**
+     * Writes out anything pending and releases the resources of this store.
+     */
+    void close();
+}
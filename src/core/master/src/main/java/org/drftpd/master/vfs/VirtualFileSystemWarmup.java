@@ -0,0 +1,259 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.util.PropertyHelper;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the whole directory tree at startup, so the first LIST, search or remerge does not have to read
+ * inodes from disk on the request thread.
+ * <br>
+ * Every inode is a task of a fork-join pool, so siblings and whole subtrees are parsed in parallel.
+ * Configured subtrees are pinned, they stay in memory instead of being dropped by the garbage collector
+ * once they are not used for a while. Until the walk finished the file system is not warm, logins can
+ * optionally be refused until then.
+ *
+ * @version $Id$
+ */
+public class VirtualFileSystemWarmup {
+
+    private static final Logger logger = LogManager.getLogger(VirtualFileSystemWarmup.class);
+
+    private static final long PROGRESS_INTERVAL = 10000L;
+
+    private final boolean _enabled;
+
+    private final boolean _gateLogins;
+
+    private final int _threads;
+
+    private final List<String> _pinnedPaths;
+
+    private final AtomicLong _loaded = new AtomicLong();
+
+    private final AtomicLong _failed = new AtomicLong();
+
+    private final CountDownLatch _warm = new CountDownLatch(1);
+
+    private volatile long _warmupTime = 0L;
+
+    public VirtualFileSystemWarmup(Properties cfg) {
+        _enabled = Boolean.parseBoolean(PropertyHelper.getProperty(cfg, "vfs.warmup", "false").trim());
+        _gateLogins = Boolean.parseBoolean(PropertyHelper.getProperty(cfg, "vfs.warmup.gate.logins", "false").trim());
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            threads = Integer.parseInt(PropertyHelper.getProperty(cfg, "vfs.warmup.threads",
+                    String.valueOf(threads)).trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid vfs.warmup.threads, using {}", threads);
+        }
+        _threads = Math.max(1, threads);
+        List<String> pinned = new ArrayList<>();
+        for (int i = 1; ; i++) {
+            String path = cfg.getProperty("vfs.warmup.pin." + i);
+            if (path == null) {
+                break;
+            }
+            pinned.add(VirtualFileSystem.fixPath(path.trim()));
+        }
+        _pinnedPaths = Collections.unmodifiableList(pinned);
+        if (!_enabled) {
+            _warm.countDown();
+        }
+    }
+
+    /**
+     * Starts the warm-up in the background, does nothing if it is disabled.
+     */
+    public void start() {
+        if (!_enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "VFSWarmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Walks the tree and returns once every inode is loaded.
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(_threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("VFSWarmup-" + threadCount.incrementAndGet());
+            return thread;
+        }, null, false);
+        logger.info("Warming up the VFS with {} threads", _threads);
+        try {
+            VirtualFileSystem vfs = VirtualFileSystem.getVirtualFileSystem();
+            // pinned first, so the walk loads them straight into pinned references
+            for (String path : _pinnedPaths) {
+                pin(vfs.getRoot(), path);
+            }
+            ForkJoinTask<Void> task = pool.submit(new LoadTask(vfs.getRoot(), null));
+            while (true) {
+                try {
+                    task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    long elapsed = System.currentTimeMillis() - start;
+                    logger.info("VFS warm-up loaded {} inodes in {}s, {} inodes/s", _loaded.get(), elapsed / 1000,
+                            _loaded.get() * 1000 / Math.max(1, elapsed));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("VFS warm-up was interrupted after {} inodes", _loaded.get());
+        } catch (ExecutionException e) {
+            logger.error("VFS warm-up failed after {} inodes", _loaded.get(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+            _warmupTime = System.currentTimeMillis() - start;
+            _warm.countDown();
+        }
+        logger.info("VFS warm-up finished, loaded {} inodes in {}ms, {} could not be loaded", _loaded.get(),
+                _warmupTime, _failed.get());
+    }
+
+    private void pin(VirtualFileSystemDirectory root, String path) {
+        VirtualFileSystemDirectory dir = root;
+        try {
+            for (String name : path.split(VirtualFileSystem.separator)) {
+                if (name.isEmpty()) {
+                    continue;
+                }
+                VirtualFileSystemInode child = dir.getInodeByName(name);
+                if (!child.isDirectory()) {
+                    logger.warn("Not pinning {}, it is not a directory", path);
+                    return;
+                }
+                dir.pinChild(child);
+                dir = (VirtualFileSystemDirectory) child;
+            }
+            dir.pin();
+            logger.info("Pinned {} in memory", path);
+        } catch (FileNotFoundException e) {
+            logger.warn("Not pinning {}, it does not exist", path);
+        }
+    }
+
+    /**
+     * @return whether the warm-up finished, always true when it is disabled.
+     */
+    public boolean isWarm() {
+        return _warm.getCount() == 0;
+    }
+
+    /**
+     * Waits for the warm-up to finish.
+     *
+     * @return whether the file system is warm.
+     */
+    public boolean awaitWarm(long timeout, TimeUnit unit) throws InterruptedException {
+        return _warm.await(timeout, unit);
+    }
+
+    /**
+     * @return false while logins are refused because the warm-up did not finish yet.
+     */
+    public boolean isLoginAllowed() {
+        return !_gateLogins || isWarm();
+    }
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    public List<String> getPinnedPaths() {
+        return _pinnedPaths;
+    }
+
+    /**
+     * @return the number of inodes loaded by the warm-up so far.
+     */
+    public long getLoadedInodes() {
+        return _loaded.get();
+    }
+
+    /**
+     * @return how long the warm-up took in milliseconds, 0 while it is running.
+     */
+    public long getWarmupTime() {
+        return _warmupTime;
+    }
+
+    private class LoadTask extends RecursiveAction {
+
+        private final VirtualFileSystemDirectory _dir;
+
+        private final String _name;
+
+        /**
+         * @param name the child of dir to load, null to walk dir itself.
+         */
+        private LoadTask(VirtualFileSystemDirectory dir, String name) {
+            _dir = dir;
+            _name = name;
+        }
+
+        @Override
+        protected void compute() {
+            VirtualFileSystemInode inode;
+            if (_name == null) {
+                inode = _dir;
+            } else {
+                try {
+                    inode = _dir.getInodeByName(_name);
+                } catch (FileNotFoundException e) {
+                    // removed meanwhile
+                    return;
+                } catch (RuntimeException e) {
+                    logger.warn("Unable to load {} during VFS warm-up", _dir.getPath() + "/" + _name, e);
+                    _failed.incrementAndGet();
+                    return;
+                }
+            }
+            _loaded.incrementAndGet();
+            if (!inode.isDirectory()) {
+                return;
+            }
+            VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) inode;
+            if (dir.isPinned()) {
+                dir.pin();
+            }
+            List<LoadTask> children = new ArrayList<>();
+            for (String name : dir.getInodeNames()) {
+                children.add(new LoadTask(dir, name));
+            }
+            invokeAll(children);
+        }
+    }
+}
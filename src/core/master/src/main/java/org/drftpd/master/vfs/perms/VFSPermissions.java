@@ -21,6 +21,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.drftpd.master.permissions.GlobPathPermission;
 import org.drftpd.master.permissions.PathPermission;
+import org.drftpd.master.permissions.PathPermissionIndex;
 import org.drftpd.master.usermanager.User;
 import org.drftpd.master.vfs.InodeHandle;
 import org.reflections.Reflections;
@@ -42,8 +43,8 @@ public class VFSPermissions {
 
     private HashMap<String, PermissionWrapper> _handlersMap;
 
-    // HashMap<Type, HashMap<Directive, List<PathPermission>>>
-    private final HashMap<String, HashMap<String, LinkedList<PathPermission>>> _pathPerms;
+    // HashMap<Type, HashMap<Directive, PathPermissionIndex>>
+    private final HashMap<String, HashMap<String, PathPermissionIndex>> _pathPerms;
     private HashMap<String, String> _directiveToType;
     private HashMap<String, TreeMap<Integer, String>> _priorities;
 
@@ -119,17 +120,9 @@ public class VFSPermissions {
     protected void addPermissionToMap(String directive, PathPermission pathPerm) {
         String type = _directiveToType.get(directive);
 
-        HashMap<String, LinkedList<PathPermission>> map = _pathPerms.computeIfAbsent(type, k -> new HashMap<>());
+        HashMap<String, PathPermissionIndex> map = _pathPerms.computeIfAbsent(type, k -> new HashMap<>());
 
-        LinkedList<PathPermission> list;
-        if (!map.containsKey(directive)) {
-            list = new LinkedList<>();
-            map.put(directive, list);
-        } else {
-            list = map.get(directive);
-        }
-
-        list.add(pathPerm);
+        map.computeIfAbsent(directive, k -> new PathPermissionIndex()).add(pathPerm);
     }
 
     public boolean checkPathPermission(String type, User user, InodeHandle inode) {
@@ -146,7 +139,7 @@ public class VFSPermissions {
             throw new IllegalArgumentException("Invalid VFS perm type.");
         }
 
-        HashMap<String, LinkedList<PathPermission>> map = _pathPerms.get(type);
+        HashMap<String, PathPermissionIndex> map = _pathPerms.get(type);
         TreeMap<Integer, String> order = _priorities.get(type);
 
         if (map == null) {
@@ -162,22 +155,19 @@ public class VFSPermissions {
         for (Entry<Integer, String> entry : order.entrySet()) {
             String directive = entry.getValue();
 
-            LinkedList<PathPermission> perms = map.get(directive);
+            PathPermissionIndex perms = map.get(directive);
 
             if (perms == null) {
                 // 'directive' was not found in perms.conf
                 continue;
             }
 
-            if (!perms.isEmpty()) {
-                for (PathPermission perm : perms) {
-                    if (perm.checkPath(inode)) {
-                        if (invertUserSemantic) {
-                            return !perm.check(user);
-                        }
-                        return perm.check(user);
-                    }
+            PathPermission perm = perms.firstMatch(inode);
+            if (perm != null) {
+                if (invertUserSemantic) {
+                    return !perm.check(user);
                 }
+                return perm.check(user);
             }
         }
 
@@ -191,13 +181,13 @@ public class VFSPermissions {
     public String getPrivPathRegex(User user) {
         StringBuilder sb = new StringBuilder();
 
-        HashMap<String, LinkedList<PathPermission>> map = _pathPerms.get("privpath");
+        HashMap<String, PathPermissionIndex> map = _pathPerms.get("privpath");
         if (map == null) {
             // No privpath rules found, return null
             return null;
         }
 
-        LinkedList<PathPermission> perms = map.get("privpath");
+        List<PathPermission> perms = map.get("privpath").getPermissions();
 
         sb.append('(');
 
@@ -224,9 +214,9 @@ public class VFSPermissions {
 
     // if you want to debug this class, call this method.
     public void dumpMap() {
-        for (Entry<String, HashMap<String, LinkedList<PathPermission>>> e1 : _pathPerms.entrySet()) {
+        for (Entry<String, HashMap<String, PathPermissionIndex>> e1 : _pathPerms.entrySet()) {
             String type = e1.getKey();
-            HashMap<String, LinkedList<PathPermission>> map = e1.getValue();
+            HashMap<String, PathPermissionIndex> map = e1.getValue();
 
             logger.debug("{} is handling:", type);
             TreeMap<Integer, String> order = _priorities.get(type);
@@ -0,0 +1,75 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.commands;
+
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HookContainerTest {
+
+    @Test
+    public void testPreHook() throws Throwable {
+        Hooks hooks = new Hooks();
+        HookContainer hook = new HookContainer(Hooks.class.getMethod("pre", CommandRequest.class), hooks);
+        CommandRequest request = new CommandRequest("arg", "doTEST", new DirectoryHandle("/"), "user");
+
+        assertSame(request, hook.invokePreHook(request));
+        assertEquals(List.of("pre"), hooks._calls);
+        assertEquals(1, hook.getLatency().getSnapshot().getCount());
+        assertEquals("Hooks.pre", hook.getName());
+    }
+
+    @Test
+    public void testPostHooksInOrder() throws Throwable {
+        Hooks hooks = new Hooks();
+        List<HookContainer> containers = List.of(
+                new HookContainer(Hooks.class.getMethod("post", CommandRequest.class, CommandResponse.class), hooks, true),
+                new HookContainer(Hooks.class.getMethod("failing", CommandRequest.class, CommandResponse.class), hooks),
+                new HookContainer(Hooks.class.getMethod("post", CommandRequest.class, CommandResponse.class), hooks));
+        CommandRequest request = new CommandRequest("arg", "doTEST", new DirectoryHandle("/"), "user");
+
+        // a failing hook doesn't stop the ones after it
+        PostHookExecutor.runHooks(containers, request, new CommandResponse(200));
+        assertEquals(List.of("post 200", "failing", "post 200"), hooks._calls);
+        assertTrue(containers.get(0).isAsync());
+        assertEquals(1, containers.get(1).getLatency().getSnapshot().getCount());
+    }
+
+    public static class Hooks {
+        private final List<String> _calls = new ArrayList<>();
+
+        public CommandRequest pre(CommandRequest request) {
+            _calls.add("pre");
+            return request;
+        }
+
+        public void post(CommandRequest request, CommandResponse response) {
+            _calls.add("post " + response.getCode());
+        }
+
+        public void failing(CommandRequest request, CommandResponse response) {
+            _calls.add("failing");
+            throw new IllegalStateException("hook failed");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.event;
+
+import org.bushe.swing.event.EventSubscriber;
+import org.drftpd.master.vfs.VirtualFileSystemFile;
+import org.drftpd.master.vfs.event.VirtualFileSystemInodeCreatedEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemInodeDeletedEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemSizeEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncThreadSafeEventServiceTest {
+
+    @Test
+    public void testOrderPerSubscriber() throws InterruptedException {
+        AsyncThreadSafeEventService service = new AsyncThreadSafeEventService();
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1000);
+        EventSubscriber<Integer> subscriber = event -> {
+            received.add(event);
+            done.countDown();
+        };
+        service.subscribeStrongly(Integer.class, subscriber);
+
+        for (int i = 0; i < 1000; i++) {
+            service.publishAsync(i);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, received.get(i));
+        }
+        // the last event counts until its delivery returned
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (service.getQueueSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, service.getQueueSize());
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotBlockOthers() throws InterruptedException {
+        AsyncThreadSafeEventService service = new AsyncThreadSafeEventService();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fast = new CountDownLatch(10);
+        EventSubscriber<String> slowSubscriber = event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        EventSubscriber<String> fastSubscriber = event -> fast.countDown();
+        service.subscribeStrongly(String.class, slowSubscriber);
+        service.subscribeStrongly(String.class, fastSubscriber);
+
+        for (int i = 0; i < 10; i++) {
+            service.publishAsync("event" + i);
+        }
+        try {
+            assertTrue(fast.await(10, TimeUnit.SECONDS));
+            assertEquals(2, service.getSubscriberStatus().size());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testQueueSizeCountsDelivering() throws InterruptedException {
+        AsyncThreadSafeEventService service = new AsyncThreadSafeEventService();
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EventSubscriber<String> subscriber = event -> {
+            delivering.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        service.subscribeStrongly(String.class, subscriber);
+
+        service.publishAsync("event");
+        try {
+            assertTrue(delivering.await(10, TimeUnit.SECONDS));
+            assertEquals(1, service.getQueueSize());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testCoalescing() throws InterruptedException {
+        AsyncThreadSafeEventService service = createCoalescingService();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+        EventSubscriber<Object> subscriber = event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(event);
+            done.countDown();
+        };
+        service.subscribeStrongly(VirtualFileSystemSizeEvent.class, subscriber);
+        service.subscribeStrongly(VirtualFileSystemInodeDeletedEvent.class, subscriber);
+        VirtualFileSystemFile file = createDetachedFile();
+
+        // keeps the dispatcher busy so the following events stay queued
+        service.publishAsync(new VirtualFileSystemSizeEvent(file, "/dir/other", 1L));
+        for (long size = 1; size <= 10; size++) {
+            service.publishAsync(new VirtualFileSystemSizeEvent(file, "/dir/file", size));
+        }
+        service.publishAsync(new VirtualFileSystemInodeDeletedEvent(file, "/dir/file"));
+        // not merged into the one before the deletion
+        service.publishAsync(new VirtualFileSystemSizeEvent(file, "/dir/file", 20L));
+        service.publishAsync(new VirtualFileSystemSizeEvent(file, "/dir/file", 30L));
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(4, received.size());
+        assertEquals("/dir/other", ((VirtualFileSystemSizeEvent) received.get(0)).getImmutableInode().getPath());
+        assertEquals(10L, ((VirtualFileSystemSizeEvent) received.get(1)).getSize());
+        assertTrue(received.get(2) instanceof VirtualFileSystemInodeDeletedEvent);
+        assertEquals(30L, ((VirtualFileSystemSizeEvent) received.get(3)).getSize());
+    }
+
+    @Test
+    public void testCoalescedEventKeepsPublishingOrder() throws InterruptedException {
+        AsyncThreadSafeEventService service = createCoalescingService();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        EventSubscriber<Object> subscriber = event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(event);
+            done.countDown();
+        };
+        service.subscribeStrongly(VirtualFileSystemSizeEvent.class, subscriber);
+        service.subscribeStrongly(VirtualFileSystemInodeCreatedEvent.class, subscriber);
+        VirtualFileSystemFile file = createDetachedFile();
+
+        // keeps the dispatcher busy so the following events stay queued
+        service.publishAsync(new VirtualFileSystemSizeEvent(file, "/other", 1L));
+        service.publishAsync(new VirtualFileSystemSizeEvent(file, "/dir", 1L));
+        service.publishAsync(new VirtualFileSystemInodeCreatedEvent(file, "/dir/file"));
+        // the new size of the parent must not overtake the creation of its child
+        service.publishAsync(new VirtualFileSystemSizeEvent(file, "/dir", 2L));
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        assertEquals("/other", ((VirtualFileSystemSizeEvent) received.get(0)).getImmutableInode().getPath());
+        assertTrue(received.get(1) instanceof VirtualFileSystemInodeCreatedEvent);
+        assertEquals(2L, ((VirtualFileSystemSizeEvent) received.get(2)).getSize());
+    }
+
+    private static VirtualFileSystemFile createDetachedFile() {
+        return new VirtualFileSystemFile("user", "group", 0L, new HashSet<>()) {
+            {
+                setName("file");
+            }
+
+            @Override
+            protected String getPath() {
+                // not attached to a directory
+                return "/dir/file";
+            }
+        };
+    }
+
+    private static AsyncThreadSafeEventService createCoalescingService() {
+        AsyncThreadSafeEventService service = new AsyncThreadSafeEventService();
+        Properties cfg = new Properties();
+        cfg.setProperty("event.coalesce", "true");
+        service.configure(cfg);
+        return service;
+    }
+}
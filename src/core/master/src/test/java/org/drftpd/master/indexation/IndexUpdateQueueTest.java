@@ -0,0 +1,179 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.drftpd.master.indexation.AdvancedSearchParams.InodeType;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.VirtualFileSystemFile;
+import org.drftpd.master.vfs.event.ImmutableInodeHandle;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexUpdateQueueTest {
+
+    @Test
+    public void testCoalescing() {
+        RecordingEngine engine = new RecordingEngine();
+        IndexUpdateQueue queue = new IndexUpdateQueue(engine);
+
+        queue.addInode(handle("/dir/file"));
+        queue.updateInode(handle("/dir/file"));
+        queue.updateInode(handle("/dir"));
+        queue.updateInode(handle("/dir/file"));
+        queue.updateInode(handle("/dir"));
+        assertEquals(2, queue.getQueueSize());
+        assertEquals(3, queue.getCoalescedCount());
+
+        queue.flush();
+        assertEquals(Arrays.asList("add /dir/file", "update /dir"), engine.getOperations());
+        assertEquals(0, queue.getQueueSize());
+
+        // nothing pending anymore, so this is a new update
+        queue.updateInode(handle("/dir/file"));
+        queue.flush();
+        assertEquals("update /dir/file", engine.getOperations().get(2));
+    }
+
+    @Test
+    public void testOrdering() {
+        RecordingEngine engine = new RecordingEngine();
+        IndexUpdateQueue queue = new IndexUpdateQueue(engine);
+
+        queue.updateInode(handle("/dir/file"));
+        queue.deleteInode(handle("/dir/file"));
+        queue.updateInode(handle("/dir"));
+        queue.renameInode(handle("/dir"), handle("/moved"));
+        queue.updateInode(handle("/dir"));
+        queue.flush();
+
+        // the update before the delete is dropped, the one after the rename is not merged into the first
+        assertEquals(Arrays.asList("delete /dir/file", "update /dir", "rename /dir /moved", "update /dir"),
+                engine.getOperations());
+    }
+
+    @Test
+    public void testBatchingThread() {
+        RecordingEngine engine = new RecordingEngine();
+        IndexUpdateQueue queue = new IndexUpdateQueue(engine);
+        queue.setDelay(60000L);
+        queue.start();
+        try {
+            for (int i = 0; i < 100; i++) {
+                queue.updateInode(handle("/dir/file" + (i % 10)));
+            }
+            // far from due, flush forces the batch out
+            queue.flush();
+            assertEquals(10, engine.getOperations().size());
+            assertEquals(10, queue.getAppliedCount());
+        } finally {
+            queue.stopQueue();
+        }
+        assertFalse(queue.isAlive());
+    }
+
+    @Test
+    public void testApplyPending() {
+        RecordingEngine engine = new RecordingEngine();
+        IndexUpdateQueue queue = new IndexUpdateQueue(engine);
+        Map<String, String> found = new HashMap<>();
+        found.put("/old/dir/file.rar", "f");
+        found.put("/gone/file.rar", "f");
+
+        queue.addInode(handle("/new/file.rar"));
+        queue.addInode(handle("/new/file.nfo"));
+        queue.deleteInode(handle("/gone"));
+        queue.renameInode(handle("/old"), handle("/moved"));
+        queue.applyPending(found, inode -> inode.getPath().endsWith(".rar"), 0L);
+
+        assertEquals(Set.of("/new/file.rar", "/moved/dir/file.rar"), found.keySet());
+        assertEquals(4, queue.getQueueSize());
+        assertTrue(engine.getOperations().isEmpty());
+    }
+
+    @Test
+    public void testApplyPendingSince() {
+        RecordingEngine engine = new RecordingEngine();
+        IndexUpdateQueue queue = new IndexUpdateQueue(engine);
+        queue.setRetention(60000L);
+        long opened = System.currentTimeMillis();
+        queue.addInode(handle("/dir/file"));
+        queue.flush();
+
+        // applied after the searcher was opened, so it may not show it yet
+        Map<String, String> found = new HashMap<>();
+        queue.applyPending(found, inode -> true, opened);
+        assertEquals(Set.of("/dir/file"), found.keySet());
+
+        // a searcher opened later already has it
+        found.clear();
+        queue.applyPending(found, inode -> true, System.currentTimeMillis() + 1);
+        assertTrue(found.isEmpty());
+    }
+
+    private static ImmutableInodeHandle handle(String path) {
+        return new ImmutableInodeHandle(new VirtualFileSystemFile("drftpd", "drftpd", 0L, "slave"), path);
+    }
+
+    private static class RecordingEngine implements IndexEngineInterface {
+        private final List<String> _operations = Collections.synchronizedList(new ArrayList<>());
+
+        private List<String> getOperations() {
+            return _operations;
+        }
+
+        public void init() {
+        }
+
+        public void addInode(ImmutableInodeHandle inode) {
+            _operations.add("add " + inode.getPath());
+        }
+
+        public void deleteInode(ImmutableInodeHandle inode) {
+            _operations.add("delete " + inode.getPath());
+        }
+
+        public void updateInode(ImmutableInodeHandle inode) {
+            _operations.add("update " + inode.getPath());
+        }
+
+        public void renameInode(ImmutableInodeHandle fromInode, ImmutableInodeHandle toInode) {
+            _operations.add("rename " + fromInode.getPath() + " " + toInode.getPath());
+        }
+
+        public void commit() {
+        }
+
+        public void rebuildIndex() {
+        }
+
+        public Map<String, String> getStatus() {
+            return Collections.emptyMap();
+        }
+
+        public Set<String> findInode(DirectoryHandle startNode, String text, InodeType inodeType) {
+            return Collections.emptySet();
+        }
+
+        public Map<String, String> advancedFind(DirectoryHandle startNode, AdvancedSearchParams params, String caller) {
+            return Collections.emptyMap();
+        }
+    }
+}
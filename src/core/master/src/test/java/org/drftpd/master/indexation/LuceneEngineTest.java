@@ -0,0 +1,75 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.NumericField;
+import org.drftpd.master.vfs.VirtualFileSystemFile;
+import org.drftpd.master.vfs.event.ImmutableInodeHandle;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LuceneEngineTest {
+
+    @Test
+    public void testDocumentCopy() throws Exception {
+        LuceneEngine engine = new LuceneEngine();
+        VirtualFileSystemFile file = new VirtualFileSystemFile("user", "group", 1234L,
+                new HashSet<>(List.of("slave1", "slave2"))) {
+            {
+                // normally set by the parent directory
+                setName("file");
+            }
+        };
+        Document first = engine.makeDocumentCopy(new ImmutableInodeHandle(file, "/dir/file"));
+        Document second = engine.makeDocumentCopy(new ImmutableInodeHandle(file, "/other/file"));
+
+        // copies don't share fields, the first one keeps its values
+        assertEquals("/dir/file", first.get("fullPath"));
+        assertEquals("/other/file", second.get("fullPath"));
+        assertEquals("/dir/", first.get("parentPath"));
+        assertEquals("f", first.get("type"));
+        assertEquals("user", first.get("owner"));
+        assertEquals("file", first.get("name"));
+
+        Fieldable name = first.getFieldable("name");
+        assertTrue(name.isIndexed());
+        assertTrue(name.isTokenized());
+        assertFalse(first.getFieldable("fullName").isTokenized());
+
+        NumericField size = (NumericField) first.getFieldable("size");
+        assertEquals(1234L, size.getNumericValue());
+        assertTrue(size.isStored());
+        assertEquals(2, ((NumericField) first.getFieldable("nbrOfSlaves")).getNumericValue());
+    }
+
+    @Test
+    public void testMatchesWildcard() {
+        assertTrue(LuceneUtils.matchesWildcard("Some.Release-GRP", "Some.Release-GRP"));
+        assertFalse(LuceneUtils.matchesWildcard("Some.Release-GRP", "some.release-grp"));
+        assertTrue(LuceneUtils.matchesWildcard("Some.*-GRP", "Some.Release.x-y-GRP"));
+        assertTrue(LuceneUtils.matchesWildcard("file?.r*", "file1.rar"));
+        assertFalse(LuceneUtils.matchesWildcard("file?.r*", "file12.rar"));
+        assertTrue(LuceneUtils.matchesWildcard("*", ""));
+    }
+}
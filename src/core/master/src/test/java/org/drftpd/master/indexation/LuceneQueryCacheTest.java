@@ -0,0 +1,56 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LuceneQueryCacheTest {
+
+    @Test
+    public void testGenerations() {
+        LuceneQueryCache<Set<String>> cache = new LuceneQueryCache<>(10);
+        cache.put("name:foo", 1L, Set.of("/foo"));
+
+        assertEquals(Set.of("/foo"), cache.get("name:foo", 1L));
+        assertNull(cache.get("name:bar", 1L));
+        // the searcher was reopened since
+        assertNull(cache.get("name:foo", 2L));
+        assertEquals(0, cache.size());
+        assertEquals(1L, cache.getHits());
+        assertEquals(2L, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        LuceneQueryCache<Set<String>> cache = new LuceneQueryCache<>(2);
+        cache.put("a", 1L, Set.of("/a"));
+        cache.put("b", 1L, Set.of("/b"));
+        // a is now more recently used than b
+        assertNotNull(cache.get("a", 1L));
+        cache.put("c", 1L, Set.of("/c"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a", 1L));
+        assertNull(cache.get("b", 1L));
+        assertNotNull(cache.get("c", 1L));
+    }
+}
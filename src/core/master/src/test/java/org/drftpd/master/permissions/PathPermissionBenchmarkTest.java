@@ -0,0 +1,133 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.permissions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.InodeHandle;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how the cost of finding the first matching rule grows with the size of perms.conf, comparing the
+ * linear scan over the rules of a directive with {@link PathPermissionIndex}. Each section adds the four
+ * rules a typical site has for it; every checked path is an entry of a release listing.
+ */
+public class PathPermissionBenchmarkTest {
+
+    private static final Logger logger = LogManager.getLogger(PathPermissionBenchmarkTest.class);
+
+    private static final int[] SECTION_COUNTS = {10, 40, 160};
+
+    private static final int LISTING_SIZE = 500;
+
+    private static final int DIRECTORIES = 200;
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkRuleCount() {
+        for (int sections : SECTION_COUNTS) {
+            List<PathPermission> rules = rules(sections);
+            PathPermissionIndex index = new PathPermissionIndex();
+            for (PathPermission rule : rules) {
+                index.add(rule);
+            }
+            // the first pass only warms up, each pass lists directories not seen before
+            for (int pass = 0; pass < 2; pass++) {
+                List<InodeHandle> entries = new ArrayList<>(DIRECTORIES * LISTING_SIZE);
+                for (int d = 0; d < DIRECTORIES; d++) {
+                    entries.addAll(listing(sections, pass * DIRECTORIES + d));
+                }
+                long scan = nanosPerCheck(entries, inode -> linearScan(rules, inode));
+                long uncached = nanosPerCheck(entries, index::firstMatch);
+                // one directory listed over and over is served from the cache
+                List<InodeHandle> same = new ArrayList<>(entries.size());
+                List<InodeHandle> listing = entries.subList(0, LISTING_SIZE);
+                for (int d = 0; d < DIRECTORIES; d++) {
+                    same.addAll(listing);
+                }
+                long cached = nanosPerCheck(same, index::firstMatch);
+                if (pass > 0) {
+                    logger.info("{} rules: linear scan {}ns per check, index {}ns, index on a repeated listing {}ns",
+                            rules.size(), scan, uncached, cached);
+                }
+            }
+        }
+    }
+
+    private static List<PathPermission> rules(int sections) {
+        List<PathPermission> rules = new ArrayList<>();
+        for (int i = 0; i < sections; i++) {
+            rules.add(new GlobPathPermission("/section" + i + "/*/Sample/*", List.of("=siteop")));
+            rules.add(new GlobPathPermission("/section" + i + "/_PRE/*", List.of("=siteop", "=pre")));
+            rules.add(new StringPathPermission("/section" + i + "/_ARCHIVE", List.of("!*")));
+            rules.add(new GlobPathPermission("/section" + i + "/*", List.of("*")));
+        }
+        rules.add(new RegexPathPermission(Pattern.compile("(?i)/(nuked|incomplete)-"), List.of("!*")));
+        rules.add(new GlobPathPermission("*", List.of("=siteop")));
+        return rules;
+    }
+
+    private static List<InodeHandle> listing(int sections, int release) {
+        // releases of the last section have to get past the rules of every other section in a linear scan
+        String dir = "/section" + (sections - 1 - release % sections) + "/Some.Release." + release + "-GRP";
+        List<InodeHandle> listing = new ArrayList<>(LISTING_SIZE);
+        listing.add(new DirectoryHandle(dir + "/Sample"));
+        for (int i = 1; i < LISTING_SIZE; i++) {
+            listing.add(new FileHandle(dir + "/some.release.r" + i));
+        }
+        return listing;
+    }
+
+    private static PathPermission linearScan(List<PathPermission> rules, InodeHandle inode) {
+        for (PathPermission rule : rules) {
+            if (rule.checkPath(inode)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private interface FirstMatch {
+        PathPermission find(InodeHandle inode);
+    }
+
+    /**
+     * @return nanoseconds per checked entry
+     */
+    private static long nanosPerCheck(List<InodeHandle> entries, FirstMatch firstMatch) {
+        int matched = 0;
+        long start = System.nanoTime();
+        for (InodeHandle inode : entries) {
+            if (firstMatch.find(inode) != null) {
+                matched++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        assertEquals(entries.size(), matched);
+        return nanos / entries.size();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.permissions;
+
+import org.drftpd.common.util.GlobPattern;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.InodeHandle;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathPermissionIndexTest {
+
+    private static final List<String> USERS = List.of("*");
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("/incoming/", PathPermissionIndex.getLiteralPrefix(GlobPattern.compile("/incoming/*")));
+        assertEquals("", PathPermissionIndex.getLiteralPrefix(GlobPattern.compile("*")));
+        assertEquals("/a", PathPermissionIndex.getLiteralPrefix(GlobPattern.compile("/a?c/*")));
+        assertEquals("/a.b/", PathPermissionIndex.getLiteralPrefix(GlobPattern.compile("/a.b/*")));
+        assertEquals("/a", PathPermissionIndex.getLiteralPrefix(Pattern.compile("/ab?c")));
+        assertEquals("", PathPermissionIndex.getLiteralPrefix(Pattern.compile("/a.*|/b.*")));
+        assertEquals("", PathPermissionIndex.getLiteralPrefix(Pattern.compile("/a", Pattern.CASE_INSENSITIVE)));
+        assertEquals("/", PathPermissionIndex.getLiteralPrefix(Pattern.compile("/\\d+")));
+    }
+
+    @Test
+    public void testFirstMatch() {
+        PathPermissionIndex index = new PathPermissionIndex();
+        PathPermission requests = new GlobPathPermission("/requests/*", USERS);
+        PathPermission incoming = new StringPathPermission("/incoming/", USERS);
+        PathPermission samples = new RegexPathPermission(Pattern.compile("(?i)/sample$"), USERS);
+        PathPermission all = new GlobPathPermission("*", USERS);
+        index.add(requests);
+        index.add(incoming);
+        index.add(samples);
+        index.add(all);
+
+        assertSame(requests, index.firstMatch(new DirectoryHandle("/requests")));
+        assertSame(all, index.firstMatch(new FileHandle("/requests")));
+        assertSame(incoming, index.firstMatch(new DirectoryHandle("/incoming/Some.Release/Sample")));
+        assertSame(samples, index.firstMatch(new DirectoryHandle("/archive/Some.Release/Sample")));
+        assertSame(all, index.firstMatch(new FileHandle("/archive/file.nfo")));
+        // answered from the cache
+        assertSame(samples, index.firstMatch(new DirectoryHandle("/archive/Some.Release/Sample")));
+
+        PathPermissionIndex empty = new PathPermissionIndex();
+        assertNull(empty.firstMatch(new DirectoryHandle("/")));
+        empty.add(requests);
+        assertSame(requests, empty.firstMatch(new DirectoryHandle("/requests/a")));
+        assertNull(empty.firstMatch(new DirectoryHandle("/")));
+    }
+
+    @Test
+    public void testStatefulRule() {
+        ToggleRule toggle = new ToggleRule();
+        PathPermissionIndex index = new PathPermissionIndex();
+        index.add(toggle);
+        index.add(new GlobPathPermission("*", USERS));
+        DirectoryHandle dir = new DirectoryHandle("/incoming");
+
+        assertNotSame(toggle, index.firstMatch(dir));
+        // rules deciding on more than the path are never cached
+        toggle._matches = true;
+        assertSame(toggle, index.firstMatch(dir));
+    }
+
+    @Test
+    public void testAgainstLinearScan() {
+        Random random = new Random(25);
+        String[] parts = {"incoming", "requests", "archive", "mp3", "tv", "Sample", "Subs", "x"};
+        List<PathPermission> rules = new ArrayList<>();
+        PathPermissionIndex index = new PathPermissionIndex();
+        for (int i = 0; i < 60; i++) {
+            String path = randomPath(random, parts);
+            PathPermission rule;
+            switch (random.nextInt(4)) {
+                case 0:
+                    rule = new StringPathPermission(path, USERS);
+                    break;
+                case 1:
+                    rule = new RegexPathPermission(Pattern.compile(parts[random.nextInt(parts.length)] + "$"), USERS);
+                    break;
+                case 2:
+                    rule = new GlobPathPermission(path + "/*", USERS);
+                    break;
+                default:
+                    rule = new GlobPathPermission("*/" + parts[random.nextInt(parts.length)] + "*", USERS);
+                    break;
+            }
+            rules.add(rule);
+            index.add(rule);
+        }
+        for (int i = 0; i < 5000; i++) {
+            String path = randomPath(random, parts);
+            InodeHandle inode = random.nextBoolean() ? new DirectoryHandle(path) : new FileHandle(path);
+            PathPermission expected = null;
+            for (PathPermission rule : rules) {
+                if (rule.checkPath(inode)) {
+                    expected = rule;
+                    break;
+                }
+            }
+            assertSame(expected, index.firstMatch(inode), inode.getPath());
+        }
+    }
+
+    private static String randomPath(Random random, String[] parts) {
+        StringBuilder path = new StringBuilder();
+        int depth = 1 + random.nextInt(3);
+        for (int i = 0; i < depth; i++) {
+            path.append('/').append(parts[random.nextInt(parts.length)]);
+        }
+        return path.toString();
+    }
+
+    private static class ToggleRule extends PathPermission {
+        private boolean _matches = false;
+
+        private ToggleRule() {
+            super(USERS);
+        }
+
+        public boolean checkPath(InodeHandle inode) {
+            return _matches;
+        }
+    }
+}
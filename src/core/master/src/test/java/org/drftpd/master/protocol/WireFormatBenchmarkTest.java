@@ -0,0 +1,116 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.protocol;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.network.AsyncCommandArgument;
+import org.drftpd.common.protocol.*;
+import org.drftpd.common.slave.LightRemoteInode;
+import org.drftpd.common.slave.TransferIndex;
+import org.drftpd.common.slave.TransferStatus;
+import org.drftpd.slave.network.AsyncResponseRemerge;
+import org.drftpd.slave.network.AsyncResponseTransferStatus;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.reflections.Reflections;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Compares the java serialization wire format with the framed one for the most common master/slave messages.<br>
+ * Reports messages/sec and bytes/message for both, run it by hand when changing codecs.
+ *
+ * @version $Id$
+ */
+public class WireFormatBenchmarkTest {
+
+    private static final Logger logger = LogManager.getLogger(WireFormatBenchmarkTest.class);
+
+    private static final int MESSAGES = 50000;
+
+    private final MessageCodecRegistry _registry =
+            new MessageCodecRegistry(new Reflections("org.drftpd").getSubTypesOf(MessageCodec.class));
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkTransferStatus() throws Exception {
+        run("TransferStatus", i -> new AsyncResponseTransferStatus(
+                new TransferStatus(i * 1000L, i * 65536L, 0xCAFEBABEL, false, new TransferIndex(i % 512))));
+    }
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkCommand() throws Exception {
+        run("Command", i -> new AsyncCommandArgument(Integer.toHexString(i % 256), "checksum",
+                "/section/Some.Release.Name-GROUP/file" + i + ".rar"));
+    }
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkRemerge() throws Exception {
+        List<LightRemoteInode> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(new LightRemoteInode("some.release.r" + i, "drftpd", "drftpd", false, 1600000000000L + i, 50000000L));
+        }
+        run("Remerge", i -> new AsyncResponseRemerge("/section/Some.Release.Name-GROUP" + (i % 1000), files, 1600000000000L));
+    }
+
+    private void run(String name, IntFunction<Object> messages) throws Exception {
+        for (String format : new String[]{ObjectMessageStream.NAME, FramedMessageStream.NAME}) {
+            // Warm up, then measure
+            measure(format, messages, MESSAGES / 10);
+            long[] result = measure(format, messages, MESSAGES);
+            logger.info("{} {}: {} messages/sec, {} bytes/message", name, format,
+                    MESSAGES * 1000000000L / result[0], result[1] / MESSAGES);
+        }
+    }
+
+    /**
+     * @return The time in nanoseconds needed to write and read all messages and the amount of bytes on the wire
+     */
+    private long[] measure(String format, IntFunction<Object> messages, int count) throws Exception {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        MessageStream writer = create(format, null, wire);
+        for (int i = 0; i < count; i++) {
+            writer.writeMessage(messages.apply(i));
+        }
+        MessageStream reader = create(format, new ByteArrayInputStream(wire.toByteArray()), null);
+        for (int i = 0; i < count; i++) {
+            reader.readMessage();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new long[]{elapsed, wire.size()};
+    }
+
+    private MessageStream create(String format, InputStream in, OutputStream out) throws IOException {
+        if (format.equals(FramedMessageStream.NAME)) {
+            return new FramedMessageStream(in, out == null ? OutputStream.nullOutputStream() : new BufferedOutputStream(out), _registry);
+        }
+        if (in == null) {
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(out));
+            oos.flush();
+            return new ObjectMessageStream(null, oos);
+        }
+        return new ObjectMessageStream(new ObjectInputStream(new BufferedInputStream(in)), null);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.drftpd.slave.network.AsyncResponseRemerge;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemergeApplierTest {
+
+    private static final RemoteSlave SLAVE = new DummyRemoteSlave("slave");
+
+    private static RemergeMessage listing(String path) {
+        return new RemergeMessage(new AsyncResponseRemerge(path, new ArrayList<>(), 0L), SLAVE);
+    }
+
+    @Test
+    public void testLaneKey() {
+        assertEquals("", RemergeApplier.getLaneKey("/"));
+        assertEquals("mp3", RemergeApplier.getLaneKey("//mp3"));
+        assertEquals("mp3", RemergeApplier.getLaneKey("//mp3/release/cd1"));
+        assertEquals("mp3", RemergeApplier.getLaneKey("/mp3/release"));
+    }
+
+    @Test
+    public void testOrderAndCompletion() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Map<String, List<String>> applied = Collections.synchronizedMap(new HashMap<>());
+        AtomicInteger appliedCount = new AtomicInteger();
+        CountDownLatch parallel = new CountDownLatch(2);
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicInteger appliedAtCompletion = new AtomicInteger(-1);
+
+        RemergeApplier applier = new RemergeApplier(SLAVE, executor) {
+            @Override
+            protected void apply(RemergeMessage message) {
+                String lane = RemergeApplier.getLaneKey(message.getDirectory());
+                if (message.getDirectory().endsWith("/0") && !lane.equals("c")) {
+                    // the first listings of lane a and b have to be merged at the same time
+                    parallel.countDown();
+                    try {
+                        assertTrue(parallel.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                applied.computeIfAbsent(lane, k -> Collections.synchronizedList(new ArrayList<>())).add(message.getDirectory());
+                appliedCount.incrementAndGet();
+            }
+
+            @Override
+            protected void complete(RemergeMessage message) {
+                appliedAtCompletion.set(appliedCount.get());
+                completed.countDown();
+            }
+        };
+
+        for (int i = 0; i < 50; i++) {
+            for (String lane : new String[]{"a", "b", "c"}) {
+                applier.add(listing("//" + lane + "/" + i));
+            }
+        }
+        applier.add(new RemergeMessage(SLAVE));
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals(150, appliedAtCompletion.get());
+        assertEquals(0, applier.size());
+        for (String lane : new String[]{"a", "b", "c"}) {
+            List<String> paths = applied.get(lane);
+            assertEquals(50, paths.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals("//" + lane + "/" + i, paths.get(i));
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRootAfterTopLevel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch completed = new CountDownLatch(1);
+
+        RemergeApplier applier = new RemergeApplier(SLAVE, executor) {
+            @Override
+            protected void apply(RemergeMessage message) {
+                if (!message.getDirectory().equals("/")) {
+                    // creating the new directory takes a while
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                applied.add(message.getDirectory());
+            }
+
+            @Override
+            protected void complete(RemergeMessage message) {
+                completed.countDown();
+            }
+        };
+
+        applier.add(listing("//new/sub"));
+        applier.add(listing("//new"));
+        applier.add(listing("/"));
+        applier.add(listing("//other"));
+        applier.add(new RemergeMessage(SLAVE));
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals(4, applied.size());
+        assertEquals("/", applied.get(3));
+        assertTrue(applied.indexOf("//new/sub") < applied.indexOf("//new"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testClear() {
+        List<Runnable> scheduled = new ArrayList<>();
+        AtomicInteger completions = new AtomicInteger();
+        RemergeApplier applier = new RemergeApplier(SLAVE, scheduled::add) {
+            @Override
+            protected void complete(RemergeMessage message) {
+                completions.incrementAndGet();
+            }
+        };
+
+        applier.add(listing("//a/1"));
+        applier.add(listing("//a/2"));
+        applier.add(listing("//b/1"));
+        assertEquals(3, applier.size());
+        assertEquals(2, scheduled.size());
+
+        // the end of the remerge waits for the listings
+        applier.add(new RemergeMessage(SLAVE));
+        assertEquals(0, completions.get());
+
+        applier.clear();
+        assertEquals(0, applier.size());
+        scheduled.forEach(Runnable::run);
+        assertEquals(0, completions.get());
+        assertEquals(0, applier.getLanes());
+
+        applier.add(new RemergeMessage(SLAVE));
+        assertEquals(1, completions.get());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.drftpd.master.exceptions.SlaveUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlaveManagerTest {
+
+    private static SlaveManager newSlaveManager(String remergeLimit) {
+        SlaveManager slaveManager = new SlaveManager("SlaveManagerTest");
+        Properties cfg = new Properties();
+        cfg.setProperty("remerge.concurrent", remergeLimit);
+        slaveManager.configureConnections(cfg);
+        return slaveManager;
+    }
+
+    @Test
+    public void testRemergeLimit() throws Exception {
+        SlaveManager slaveManager = newSlaveManager("1");
+        RemoteSlave first = new DummyRemoteSlave("first");
+        RemoteSlave second = new DummyRemoteSlave("second");
+
+        assertTrue(slaveManager.acquireRemergePermit(first));
+        assertEquals(1, slaveManager.getRunningRemerges());
+
+        // an offline slave stops waiting
+        assertThrows(SlaveUnavailableException.class, () -> slaveManager.acquireRemergePermit(second));
+        assertEquals(0, slaveManager.getWaitingRemerges());
+
+        slaveManager.releaseRemergePermit();
+        assertEquals(0, slaveManager.getRunningRemerges());
+        assertTrue(slaveManager.acquireRemergePermit(second));
+        slaveManager.releaseRemergePermit();
+    }
+
+    @Test
+    public void testNoRemergeLimit() throws Exception {
+        SlaveManager slaveManager = newSlaveManager("0");
+        RemoteSlave slave = new DummyRemoteSlave("slave");
+
+        assertFalse(slaveManager.acquireRemergePermit(slave));
+        assertFalse(slaveManager.acquireRemergePermit(slave));
+        assertEquals(0, slaveManager.getRunningRemerges());
+        slaveManager.releaseRemergePermit();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (int bucket = 0; bucket < 500; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest > previous);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previous + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            // about 6% wide
+            assertTrue(highest - previous - 1 <= Math.max(1, highest / 16));
+            previous = highest;
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long now = 1_000_000_000L;
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000_000L, now);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000_000L, snapshot.getMax());
+        assertEquals(500_500L, snapshot.getMean());
+        assertEquals(500_000D, snapshot.getPercentile(50), 500_000D * 0.07);
+        assertEquals(990_000D, snapshot.getPercentile(99), 990_000D * 0.07);
+        assertEquals(1000_000L, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testWindow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long minute = 60000L;
+        long now = 1000 * minute;
+        histogram.record(1000L, now - 20 * minute);
+        histogram.record(2000L, now - 5 * minute);
+        histogram.record(3000L, now);
+
+        assertEquals(3, histogram.getSnapshot().getCount());
+        assertEquals(1, histogram.getSnapshot(1, now).getCount());
+        assertEquals(2, histogram.getSnapshot(6, now).getCount());
+        assertEquals(2, histogram.getSnapshot(LatencyHistogram.WINDOW_MINUTES, now).getCount());
+
+        // the minute 20 minutes ago used the same slot as the one 4 minutes ago
+        histogram.record(4000L, now - 4 * minute);
+        assertEquals(3, histogram.getSnapshot(LatencyHistogram.WINDOW_MINUTES, now).getCount());
+    }
+}
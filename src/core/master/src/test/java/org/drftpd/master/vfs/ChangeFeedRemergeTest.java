@@ -0,0 +1,126 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.drftpd.common.slave.LightRemoteInode;
+import org.drftpd.master.slavemanagement.DummyRemoteSlave;
+import org.drftpd.master.slavemanagement.RemoteSlave;
+import org.drftpd.slave.network.AsyncResponseRemerge;
+import org.drftpd.slave.vfs.RootWatcher;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Merges the listings the root watcher sends for directories created outside of drftpd into the VFS.
+ */
+public class ChangeFeedRemergeTest {
+
+    private static final RemoteSlave SLAVE = new DummyRemoteSlave("watched");
+
+    @TempDir
+    File _root;
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        FileUtils.deleteDirectory(new File("userdata"));
+    }
+
+    @Test
+    public void testNewNestedDirectory() throws Exception {
+        createFile("Feed.Release-GRP/CD1/feed.release.r00");
+        createFile("Feed.Release-GRP/feed.release.nfo");
+
+        // the events of a mkdir or mv onto the root
+        Map<String, Boolean> changed = new TreeMap<>();
+        changed.put("/", false);
+        changed.put("/Feed.Release-GRP", true);
+        remerge("/FeedTest", new DirectoryWatcher().getListings(changed));
+
+        assertTrue(new FileHandle("/FeedTest/Feed.Release-GRP/CD1/feed.release.r00").exists());
+        assertTrue(new FileHandle("/FeedTest/Feed.Release-GRP/feed.release.nfo").exists());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        createFile("Overflow.Release-GRP/Sample/overflow.release.mkv");
+        createFile("Overflow.Release-GRP/Subs/Deep/overflow.release.idx");
+
+        // lost events list all roots
+        Map<String, Boolean> changed = new TreeMap<>();
+        changed.put("/", true);
+        remerge("/OverflowTest", new DirectoryWatcher().getListings(changed));
+
+        assertTrue(new FileHandle("/OverflowTest/Overflow.Release-GRP/Sample/overflow.release.mkv").exists());
+        assertTrue(new FileHandle("/OverflowTest/Overflow.Release-GRP/Subs/Deep/overflow.release.idx").exists());
+    }
+
+    private void createFile(String path) throws Exception {
+        File file = new File(_root, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+    }
+
+    /**
+     * Merges the listings below base, so the root listing doesn't touch what other tests created
+     */
+    private static void remerge(String base, List<AsyncResponseRemerge> listings) throws Exception {
+        for (AsyncResponseRemerge listing : listings) {
+            String path = listing.getPath().equals("/") ? base : base + listing.getPath();
+            new DirectoryHandle(path).remerge(listing.getFiles(), SLAVE, listing.getLastModified());
+        }
+    }
+
+    /**
+     * Lists the temporary directory instead of the roots of a slave
+     */
+    private class DirectoryWatcher extends RootWatcher {
+        private DirectoryWatcher() {
+            super(null, null, 0, 100);
+        }
+
+        @Override
+        protected AsyncResponseRemerge list(String path) {
+            File dir = new File(_root, path);
+            List<LightRemoteInode> files = new ArrayList<>();
+            String[] names = dir.list();
+            if (names != null) {
+                Arrays.sort(names, String.CASE_INSENSITIVE_ORDER);
+                for (String name : names) {
+                    files.add(new LightRemoteInode(new File(dir, name)));
+                }
+            }
+            return new AsyncResponseRemerge(path, files, dir.lastModified());
+        }
+
+        @Override
+        protected boolean exists(String path) {
+            return new File(_root, path).isDirectory();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommitManagerTest {
+
+    @Test
+    public void testDeduplication() {
+        CommitManager cm = CommitManager.getCommitManager();
+        CountingCommitable first = new CountingCommitable("same");
+        CountingCommitable second = new CountingCommitable("same");
+        int size = cm.getQueueSize();
+
+        cm.add(first);
+        cm.add(first);
+        assertEquals(size + 1, cm.getQueueSize());
+        assertTrue(cm.contains(first));
+        // equal but not the same object
+        assertFalse(cm.contains(second));
+
+        assertTrue(cm.remove(first));
+        assertFalse(cm.remove(first));
+        assertFalse(cm.contains(first));
+        assertEquals(size, cm.getQueueSize());
+    }
+
+    @Test
+    public void testFlushImmediate() {
+        CommitManager cm = CommitManager.getCommitManager();
+        CountingCommitable commitable = new CountingCommitable("flush");
+
+        cm.flushImmediate(commitable);
+        assertEquals(0, commitable.getWrites());
+
+        cm.add(commitable);
+        cm.flushImmediate(commitable);
+        assertEquals(1, commitable.getWrites());
+        assertFalse(cm.contains(commitable));
+
+        // queued again after the write
+        cm.add(commitable);
+        assertTrue(cm.contains(commitable));
+        cm.remove(commitable);
+    }
+
+    @Test
+    public void testFlushAll() {
+        CommitManager cm = CommitManager.getCommitManager();
+        CountingCommitable first = new CountingCommitable("flushAll1");
+        CountingCommitable second = new CountingCommitable("flushAll2");
+        cm.add(first);
+        cm.add(second);
+
+        assertTrue(cm.flushAll());
+        assertEquals(1, first.getWrites());
+        assertEquals(1, second.getWrites());
+        assertFalse(cm.contains(first));
+        assertFalse(cm.contains(second));
+
+        Commitable failing = new Commitable() {
+            public void commit() {
+                CommitManager.getCommitManager().add(this);
+            }
+
+            public void writeToDisk() throws IOException {
+                throw new IOException("disk full");
+            }
+
+            public String descriptiveName() {
+                return "failing";
+            }
+        };
+        cm.add(failing);
+        assertFalse(cm.flushAll());
+        // queued again to be retried later
+        assertTrue(cm.contains(failing));
+        cm.remove(failing);
+    }
+
+    @Test
+    public void testNoConcurrentWrites() throws Exception {
+        CommitManager cm = CommitManager.getCommitManager();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger writes = new AtomicInteger();
+        Commitable blocking = new Commitable() {
+            public void commit() {
+                CommitManager.getCommitManager().add(this);
+            }
+
+            public void writeToDisk() {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                writing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                writes.incrementAndGet();
+                running.decrementAndGet();
+            }
+
+            public String descriptiveName() {
+                return "blocking";
+            }
+        };
+
+        cm.add(blocking);
+        Thread first = new Thread(() -> cm.flushImmediate(blocking));
+        first.start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        // committed again while the first write is running
+        cm.add(blocking);
+        Thread second = new Thread(() -> cm.flushImmediate(blocking));
+        second.start();
+        Thread.sleep(100);
+        assertEquals(0, writes.get());
+        release.countDown();
+        first.join(10000);
+        second.join(10000);
+
+        assertEquals(2, writes.get());
+        assertEquals(1, maxRunning.get());
+        assertFalse(cm.contains(blocking));
+    }
+
+    private static class CountingCommitable implements Commitable {
+        private final String _name;
+        private final AtomicInteger _writes = new AtomicInteger();
+
+        private CountingCommitable(String name) {
+            _name = name;
+        }
+
+        public void commit() {
+            CommitManager.getCommitManager().add(this);
+        }
+
+        public void writeToDisk() {
+            _writes.incrementAndGet();
+        }
+
+        public String descriptiveName() {
+            return _name;
+        }
+
+        private int getWrites() {
+            return _writes.get();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CountingCommitable && ((CountingCommitable) obj)._name.equals(_name);
+        }
+
+        @Override
+        public int hashCode() {
+            return _name.hashCode();
+        }
+    }
+}
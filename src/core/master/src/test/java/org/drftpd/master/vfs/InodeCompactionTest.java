@@ -0,0 +1,124 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.drftpd.common.dynamicdata.Key;
+import org.drftpd.common.dynamicdata.element.ConfigLong;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.drftpd.master.util.SerializerUtils.getMapper;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InodeCompactionTest {
+
+    @Test
+    public void testNameDictionary() {
+        String name = new String("compaction-user");
+        assertSame(NameDictionary.intern("compaction-user"), NameDictionary.intern(name));
+        assertSame(NameDictionary.intern(new Key<>(InodeCompactionTest.class, "key")),
+                NameDictionary.intern(new Key<>(InodeCompactionTest.class, "key")));
+
+        int id = NameDictionary.slaveId("compaction-slave");
+        assertEquals(id, NameDictionary.slaveId(new String("compaction-slave")));
+        assertEquals("compaction-slave", NameDictionary.slaveName(id));
+
+        // looking a slave up doesn't register it
+        assertEquals(-1, NameDictionary.slaveIdIfPresent("compaction-unknown"));
+        assertFalse(SlaveBitSets.contains(SlaveBitSets.EMPTY, "compaction-unknown"));
+        assertEquals(-1, NameDictionary.slaveIdIfPresent("compaction-unknown"));
+        assertEquals(id, NameDictionary.slaveIdIfPresent("compaction-slave"));
+    }
+
+    @Test
+    public void testSlaveBitSets() {
+        long[] bits = SlaveBitSets.of(List.of("bits1", "bits2"));
+        assertEquals(2, SlaveBitSets.size(bits));
+        assertTrue(SlaveBitSets.contains(bits, "bits1"));
+        assertFalse(SlaveBitSets.contains(bits, "bits3"));
+        // unchanged sets are returned as is
+        assertSame(bits, SlaveBitSets.add(bits, "bits2"));
+        assertSame(bits, SlaveBitSets.remove(bits, "bits3"));
+
+        long[] more = SlaveBitSets.add(bits, "bits3");
+        assertEquals(Set.of("bits1", "bits2", "bits3"), SlaveBitSets.names(more));
+        assertEquals(Set.of("bits1", "bits2"), SlaveBitSets.names(bits));
+        assertTrue(SlaveBitSets.isEmpty(SlaveBitSets.remove(SlaveBitSets.remove(bits, "bits1"), "bits2")));
+    }
+
+    @Test
+    public void testFileJsonRoundTrip() throws Exception {
+        ObjectMapper mapper = getMapper();
+        VirtualFileSystemFile file = new VirtualFileSystemFile("user", "group", 42L,
+                new HashSet<>(List.of("slave2", "slave3")));
+
+        String json = mapper.writeValueAsString(file);
+        assertTrue(json.contains("\"_slaves\""));
+        VirtualFileSystemFile read = (VirtualFileSystemFile) mapper.readValue(json, VirtualFileSystemInode.class);
+        assertEquals(Set.of("slave2", "slave3"), read.getSlaves());
+        assertTrue(read.hasSlave("slave3"));
+        assertEquals(42L, read.getSize());
+        // done by inodeLoadCompleted() when the inode is loaded from the store
+        read.compact();
+        assertSame(NameDictionary.intern("user"), read.getUsername());
+    }
+
+    @Test
+    public void testLegacyMetadataIsMoved() throws Exception {
+        ObjectMapper mapper = getMapper();
+        VirtualFileSystemFile file = new VirtualFileSystemFile("user", "group", 42L, "slave1");
+        // the way older versions stored the checksum and xfertime
+        file.getConfigs().put(VirtualFileSystemFile.CRC, new ConfigLong(0xCAFEBABEL));
+        file.getConfigs().put(VirtualFileSystemFile.XFERTIME, new ConfigLong(1500L));
+
+        VirtualFileSystemFile read = (VirtualFileSystemFile) mapper.readValue(
+                mapper.writeValueAsString(file), VirtualFileSystemInode.class);
+        read.compact();
+        assertEquals(0xCAFEBABEL, read.getChecksum());
+        assertEquals(1500L, read.getXfertime());
+        assertNull(read.configsIfPresent());
+
+        // still written the way older versions read them
+        String json = mapper.writeValueAsString(read);
+        assertFalse(json.contains("\"_checksum\""));
+        assertFalse(json.contains("\"_xfertime\""));
+        VirtualFileSystemFile reread = (VirtualFileSystemFile) mapper.readValue(json, VirtualFileSystemInode.class);
+        assertEquals(0xCAFEBABEL, reread.getConfigs().get(VirtualFileSystemFile.CRC).getValue());
+        assertEquals(1500L, reread.getConfigs().get(VirtualFileSystemFile.XFERTIME).getValue());
+    }
+
+    @Test
+    public void testDirectoryRefCountsJsonRoundTrip() throws Exception {
+        ObjectMapper mapper = getMapper();
+        VirtualFileSystemDirectory dir = new VirtualFileSystemDirectory("user", "group", false);
+        Map<String, AtomicInteger> counts = new TreeMap<>();
+        counts.put("slave1", new AtomicInteger(3));
+        counts.put("slave2", new AtomicInteger(0));
+        dir.setSlaveRefCounts(counts);
+
+        String json = mapper.writeValueAsString(dir);
+        assertTrue(json.contains("\"_slaveRefCounts\""));
+        VirtualFileSystemDirectory read = (VirtualFileSystemDirectory) mapper.readValue(json, VirtualFileSystemInode.class);
+        assertEquals(3, read.getSlaveRefCounts().get("slave1").get());
+        // counts of zero are kept
+        assertEquals(0, read.getSlaveRefCounts().get("slave2").get());
+    }
+}
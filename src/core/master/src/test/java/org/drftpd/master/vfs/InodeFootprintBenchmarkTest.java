@@ -0,0 +1,89 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures the retained heap of file and directory inodes as they are held by the master.
+ * The number of inodes defaults to one million and can be raised with -Dinodes=10000000,
+ * which needs a correspondingly large -Xmx.
+ */
+public class InodeFootprintBenchmarkTest {
+
+    private static final Logger logger = LogManager.getLogger(InodeFootprintBenchmarkTest.class);
+
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private static final String[] SLAVES = {"slave1", "slave2", "slave3", "slave4"};
+
+    private static final String[] USERS = {"alice", "bob", "carol", "dave", "eve"};
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkFootprint() {
+        int inodes = Integer.getInteger("inodes", 1_000_000);
+        long before = usedMemory();
+
+        List<VirtualFileSystemInode> held = new ArrayList<>(inodes);
+        for (int i = 0; i < inodes; i++) {
+            // new String instances, like the ones read from disk
+            String user = new String(USERS[i % USERS.length]);
+            VirtualFileSystemInode inode;
+            if (i % FILES_PER_DIRECTORY == 0) {
+                inode = new VirtualFileSystemDirectory(user, new String("drftpd"), false);
+            } else {
+                Set<String> slaves = new HashSet<>();
+                slaves.add(new String(SLAVES[i % SLAVES.length]));
+                if (i % 3 == 0) {
+                    slaves.add(new String(SLAVES[(i + 1) % SLAVES.length]));
+                }
+                VirtualFileSystemFile file = new VirtualFileSystemFile(user, new String("drftpd"), i, slaves);
+                file.setChecksumRaw(i * 31L);
+                file.setXfertimeRaw(i);
+                inode = file;
+            }
+            inode.compact();
+            held.add(inode);
+        }
+
+        long used = usedMemory() - before;
+        logger.info(String.format("%,d inodes use %,d bytes, %d bytes per inode", held.size(), used, used / held.size()));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
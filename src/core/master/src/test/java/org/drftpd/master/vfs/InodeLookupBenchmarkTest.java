@@ -0,0 +1,132 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.slave.exceptions.FileExistsException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures what resolving the entries of a directory listing costs depending on how deep the directory is,
+ * walking the tree from the root against the path cache and the handle cache.
+ */
+public class InodeLookupBenchmarkTest {
+
+    private static final Logger logger = LogManager.getLogger(InodeLookupBenchmarkTest.class);
+
+    private static final int[] DEPTHS = {2, 8, 16};
+
+    private static final int ENTRIES = 500;
+
+    private static final int LISTINGS = 100;
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        FileUtils.deleteDirectory(new File("userdata"));
+    }
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkListingByDepth() throws Exception {
+        VirtualFileSystem vfs = VirtualFileSystem.getVirtualFileSystem();
+        for (int depth : DEPTHS) {
+            List<FileHandle> listing = createListing(vfs, depth);
+            // the first pass only warms up
+            for (int pass = 0; pass < 2; pass++) {
+                // caches are invalidated before every lookup, so each one walks from the root
+                long walk = nanosPerEntry(vfs, listing, Lookup.WALK);
+                // a new handle for every lookup, only the path cache helps
+                long pathCache = nanosPerEntry(vfs, listing, Lookup.PATH_CACHE);
+                long handleCache = nanosPerEntry(vfs, listing, Lookup.HANDLE_CACHE);
+                if (pass > 0) {
+                    logger.info("depth {}: {}ns per listed entry walking, {}ns with the path cache, "
+                            + "{}ns with the handle cache", depth, walk, pathCache, handleCache);
+                }
+            }
+        }
+    }
+
+    private enum Lookup {
+        WALK, PATH_CACHE, HANDLE_CACHE
+    }
+
+    private static List<FileHandle> createListing(VirtualFileSystem vfs, int depth)
+            throws FileExistsException, FileNotFoundException {
+        VirtualFileSystemDirectory dir = vfs.getRoot();
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            String name = i == 0 ? "depth" + depth : "level" + i;
+            dir.createDirectory(name, "drftpd", "drftpd");
+            dir = (VirtualFileSystemDirectory) dir.getInodeByName(name);
+            path.append('/').append(name);
+        }
+        List<FileHandle> listing = new ArrayList<>(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            dir.createFile("file" + i, "drftpd", "drftpd", "testSlave");
+            listing.add(new FileHandle(path + "/file" + i));
+        }
+        return listing;
+    }
+
+    /**
+     * Resolves the attributes ListHandler reads for every entry: existence, size, owner, group and date.
+     *
+     * @return nanoseconds per listed entry
+     */
+    private static long nanosPerEntry(VirtualFileSystem vfs, List<FileHandle> listing, Lookup lookup)
+            throws FileNotFoundException {
+        long start = System.nanoTime();
+        for (int l = 0; l < LISTINGS; l++) {
+            for (FileHandle entry : listing) {
+                for (int attribute = 0; attribute < 5; attribute++) {
+                    if (lookup == Lookup.WALK) {
+                        vfs.structureChanged(vfs.getRoot());
+                    }
+                    FileHandle handle = lookup == Lookup.HANDLE_CACHE ? entry : new FileHandle(entry.getPath());
+                    switch (attribute) {
+                        case 0:
+                            handle.exists();
+                            break;
+                        case 1:
+                            handle.getSize();
+                            break;
+                        case 2:
+                            handle.getUsername();
+                            break;
+                        case 3:
+                            handle.getGroup();
+                            break;
+                        default:
+                            handle.lastModified();
+                            break;
+                    }
+                }
+            }
+        }
+        return (System.nanoTime() - start) / ((long) LISTINGS * ENTRIES);
+    }
+}
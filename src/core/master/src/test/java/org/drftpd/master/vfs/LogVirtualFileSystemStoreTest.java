@@ -0,0 +1,224 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.drftpd.common.dynamicdata.Key;
+import org.drftpd.common.dynamicdata.element.ConfigElement;
+import org.drftpd.common.dynamicdata.element.ConfigLong;
+import org.drftpd.common.dynamicdata.element.ConfigString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogVirtualFileSystemStoreTest {
+
+    private static final Key<String> PLUGIN_KEY = new Key<>(LogVirtualFileSystemStoreTest.class, "plugin");
+
+    @TempDir
+    Path _dir;
+
+    @Test
+    public void testCodecRoundTrip() throws Exception {
+        InodeCodec codec = new InodeCodec();
+        VirtualFileSystemFile file = file(1234L, "slave1", "slave2");
+        file.getConfigs().put(VirtualFileSystemFile.CRC, new ConfigLong(0xCAFEBABEL));
+        file.getPlugins().put(PLUGIN_KEY, new PluginElement("nuked"));
+        file.getPlugins().put(new Key<>("text"), new ConfigString("plain"));
+
+        VirtualFileSystemFile decoded = (VirtualFileSystemFile) codec.decode(codec.encode(file));
+        assertEquals("user", decoded.getUsername());
+        assertEquals("group", decoded.getGroup());
+        assertEquals(1234L, decoded.getSize());
+        assertEquals(Set.of("slave1", "slave2"), decoded.getSlaves());
+        assertEquals(file.getLastModified(), decoded.getLastModified());
+        assertEquals(file.getCreationTime(), decoded.getCreationTime());
+        assertEquals(0xCAFEBABEL, decoded.getChecksum());
+        ConfigElement<?> plugin = decoded.getPlugins().get(PLUGIN_KEY);
+        assertTrue(plugin instanceof PluginElement);
+        assertEquals("nuked", plugin.getValue());
+        assertEquals("plain", decoded.getPlugins().get(new Key<>("text")).getValue());
+
+        VirtualFileSystemDirectory dir = directory();
+        Map<String, AtomicInteger> refCounts = new TreeMap<>();
+        refCounts.put("slave1", new AtomicInteger(3));
+        dir.setSlaveRefCounts(refCounts);
+        dir._size = 99L;
+        VirtualFileSystemDirectory decodedDir = (VirtualFileSystemDirectory) codec.decode(codec.encode(dir));
+        assertEquals(99L, decodedDir.getSize());
+        assertEquals(3, decodedDir.getSlaveRefCounts().get("slave1").get());
+        assertTrue(InodeCodec.isDirectory(codec.encode(dir)));
+        assertFalse(InodeCodec.isDirectory(codec.encode(file)));
+
+        VirtualFileSystemLink link = new VirtualFileSystemLink("user", "group", "/target");
+        assertEquals("/target", ((VirtualFileSystemLink) codec.decode(codec.encode(link))).getLinkPath());
+        assertTrue(codec.decode(codec.encode(new VirtualFileSystemRoot("a", "b"))) instanceof VirtualFileSystemRoot);
+    }
+
+    @Test
+    public void testWriteReadAndReopen() throws Exception {
+        LogVirtualFileSystemStore store = new LogVirtualFileSystemStore(_dir.toString());
+        store.write("/", new VirtualFileSystemRoot("drftpd", "drftpd"));
+        store.write("/dir", directory());
+        store.write("/dir/file", file(10L, "slave1"));
+        store.write("/dir/file", file(20L, "slave1"));
+        // a directory without its own inode
+        store.write("/other/sub/file", file(30L, "slave2"));
+
+        assertEquals(20L, store.read("/dir/file").getSize());
+        // children of the root are loaded as //name by the directory inodes
+        assertEquals(20L, store.read("//dir/file").getSize());
+        assertNull(store.read("/missing"));
+        assertNull(store.read("/other"));
+        assertTrue(store.isDirectory("/other"));
+        assertTrue(store.isDirectory("/dir"));
+        assertFalse(store.isDirectory("/dir/file"));
+        assertEquals(Set.of("dir", "other"), new HashSet<>(Arrays.asList(store.list("/"))));
+        store.close();
+
+        store = new LogVirtualFileSystemStore(_dir.toString());
+        assertTrue(store.read("/") instanceof VirtualFileSystemRoot);
+        assertEquals(20L, store.read("/dir/file").getSize());
+        assertEquals(30L, store.read("/other/sub/file").getSize());
+        assertFalse(store.isDirectory("/dir/file"));
+        store.close();
+    }
+
+    @Test
+    public void testRenameDeleteDiscard() throws Exception {
+        LogVirtualFileSystemStore store = new LogVirtualFileSystemStore(_dir.toString());
+        store.write("/dir", directory());
+        store.write("/dir/a", file(1L, "slave1"));
+        store.write("/dir/sub", directory());
+        store.write("/dir/sub/b", file(2L, "slave1"));
+        store.write("/keep", file(3L, "slave1"));
+
+        assertThrows(java.io.FileNotFoundException.class, () -> store.rename("/nothere", "/x"));
+        assertFalse(store.rename("/dir", "/keep"));
+        assertTrue(store.rename("/dir", "/moved"));
+        assertNull(store.read("/dir/a"));
+        assertFalse(store.isDirectory("/dir"));
+        assertEquals(2L, store.read("/moved/sub/b").getSize());
+
+        store.write("/dir", directory());
+        store.delete("/moved/sub");
+        assertNull(store.read("/moved/sub/b"));
+        assertEquals(1, store.list("/moved").length);
+
+        store.discard("/keep");
+        assertNull(store.read("/keep"));
+        assertEquals(Set.of("dir", "moved"), new HashSet<>(Arrays.asList(store.list("/"))));
+        store.close();
+
+        LogVirtualFileSystemStore reopened = new LogVirtualFileSystemStore(_dir.toString());
+        assertEquals(1L, reopened.read("/moved/a").getSize());
+        assertNull(reopened.read("/moved/sub/b"));
+        assertNull(reopened.read("/dir/a"));
+        assertNotNull(reopened.read("/dir"));
+        assertNull(reopened.read("/keep"));
+        reopened.close();
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws Exception {
+        LogVirtualFileSystemStore store = new LogVirtualFileSystemStore(_dir.toString());
+        store.write("/file", file(1L, "slave1"));
+        long size = store.getTotalBytes();
+        store.close();
+
+        File[] segments = _dir.toFile().listFiles();
+        assertEquals(1, segments.length);
+        try (FileOutputStream out = new FileOutputStream(segments[0], true)) {
+            // the start of a record that was never completed
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        }
+
+        store = new LogVirtualFileSystemStore(_dir.toString());
+        assertEquals(size, store.getTotalBytes());
+        assertEquals(1L, store.read("/file").getSize());
+        store.write("/second", file(2L, "slave1"));
+        store.close();
+
+        store = new LogVirtualFileSystemStore(_dir.toString());
+        assertEquals(1L, store.read("/file").getSize());
+        assertEquals(2L, store.read("/second").getSize());
+        store.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        LogVirtualFileSystemStore store = new LogVirtualFileSystemStore(_dir.toString(), 1024);
+        store.write("/deleted", file(1L, "slave1"));
+        store.write("/renamed", file(2L, "slave1"));
+        for (int i = 0; i < 200; i++) {
+            store.write("/busy", file(i, "slave1"));
+            store.write("/file" + (i % 5), file(i, "slave1"));
+        }
+        store.delete("/deleted");
+        store.rename("/renamed", "/target");
+        int segments = store.getSegmentCount();
+        long total = store.getTotalBytes();
+        assertTrue(segments > 10);
+
+        store.compact();
+        assertTrue(store.getSegmentCount() < segments);
+        assertTrue(store.getTotalBytes() < total);
+        assertEquals(199L, store.read("/busy").getSize());
+        store.close();
+
+        store = new LogVirtualFileSystemStore(_dir.toString(), 1024);
+        assertEquals(199L, store.read("/busy").getSize());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(195L + i, store.read("/file" + i).getSize());
+        }
+        assertNull(store.read("/deleted"));
+        assertNull(store.read("/renamed"));
+        assertEquals(2L, store.read("/target").getSize());
+        assertTrue(store.getLiveBytes() <= store.getTotalBytes());
+        store.close();
+    }
+
+    private static VirtualFileSystemFile file(long size, String... slaves) {
+        return new VirtualFileSystemFile("user", "group", size, new HashSet<>(Arrays.asList(slaves)));
+    }
+
+    private static VirtualFileSystemDirectory directory() {
+        return new VirtualFileSystemDirectory("user", "group", false);
+    }
+
+    /**
+     * Stands in for the metadata plugins attach to inodes.
+     */
+    public static class PluginElement extends ConfigElement<String> {
+
+        @SuppressWarnings("unused")
+        public PluginElement() {
+            super();
+        }
+
+        public PluginElement(String value) {
+            super(value);
+        }
+    }
+}
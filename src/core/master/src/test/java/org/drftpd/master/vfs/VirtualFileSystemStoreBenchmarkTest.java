@@ -0,0 +1,126 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.dynamicdata.element.ConfigLong;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the JSON tree with the log store on a synthetic site of 200 directories with 100 files each:
+ * the time to commit every inode, the time to load them all back at startup and the space they take on disk.
+ */
+public class VirtualFileSystemStoreBenchmarkTest {
+
+    private static final Logger logger = LogManager.getLogger(VirtualFileSystemStoreBenchmarkTest.class);
+
+    private static final int DIRECTORIES = 200;
+
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private static final int INODES = 1 + DIRECTORIES + DIRECTORIES * FILES_PER_DIRECTORY;
+
+    private static final int ATTEMPTS = 3;
+
+    @TempDir
+    Path _dir;
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkJsonStore() throws Exception {
+        measure("json", JsonVirtualFileSystemStore::new);
+    }
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkLogStore() throws Exception {
+        measure("log", LogVirtualFileSystemStore::new);
+    }
+
+    /**
+     * Logs the best of {@link #ATTEMPTS} runs, each on a fresh directory.
+     */
+    private void measure(String name, StoreFactory factory) throws Exception {
+        long commitNanos = Long.MAX_VALUE;
+        long loadNanos = Long.MAX_VALUE;
+        long bytes = 0;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            String dir = _dir.resolve(name + attempt).toString();
+
+            long start = System.nanoTime();
+            VirtualFileSystemStore store = factory.open(dir);
+            commitSite(store);
+            store.close();
+            commitNanos = Math.min(commitNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            store = factory.open(dir);
+            long loaded = load(store, "/");
+            store.close();
+            loadNanos = Math.min(loadNanos, System.nanoTime() - start);
+            assertEquals(INODES, loaded);
+
+            bytes = FileUtils.sizeOfDirectory(new File(dir));
+        }
+        logger.info("{} store, {} inodes: commit {}ms, load {}ms, {} bytes on disk", name, INODES,
+                commitNanos / 1000000, loadNanos / 1000000, bytes);
+    }
+
+    private static void commitSite(VirtualFileSystemStore store) throws Exception {
+        store.write("/", new VirtualFileSystemRoot("drftpd", "drftpd"));
+        for (int d = 0; d < DIRECTORIES; d++) {
+            store.write("/dir" + d, new VirtualFileSystemDirectory("drftpd", "drftpd", false));
+            for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+                VirtualFileSystemFile file = new VirtualFileSystemFile("drftpd", "drftpd", f * 1024L,
+                        new HashSet<>(List.of("slave1", "slave2")));
+                file.getConfigs().put(VirtualFileSystemFile.CRC, new ConfigLong((long) f));
+                store.write("/dir" + d + "/file" + f, file);
+            }
+        }
+    }
+
+    /**
+     * Reads every inode below path the way the VFS does at startup.
+     */
+    private static long load(VirtualFileSystemStore store, String path) throws Exception {
+        long loaded = store.read(path) == null ? 0 : 1;
+        if (store.isDirectory(path)) {
+            String prefix = path.equals("/") ? path : path + "/";
+            for (String child : store.list(path)) {
+                loaded += load(store, prefix + child);
+            }
+        }
+        return loaded;
+    }
+
+    private interface StoreFactory {
+        VirtualFileSystemStore open(String dir) throws IOException;
+    }
+}
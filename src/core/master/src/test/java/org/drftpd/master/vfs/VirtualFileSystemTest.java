@@ -26,8 +26,7 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.FileNotFoundException;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class VirtualFileSystemTest {
 
@@ -107,6 +106,66 @@ public class VirtualFileSystemTest {
         assertNotNull(((VirtualFileSystemDirectory) inode).getInodeByName("testme"));
     }
 
+    @Test
+    public void testLookupCacheInvalidation() throws FileNotFoundException, FileExistsException {
+        vfs.getRoot().createDirectory("CacheTest", "drftpd", "drftpd");
+        VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) vfs.getInodeByPath("/CacheTest");
+        dir.createFile("cached", "drftpd", "drftpd", "testSlave");
+        FileHandle handle = new FileHandle("/CacheTest/cached");
+        VirtualFileSystemInode inode = handle.getInode();
+        assertSame(inode, handle.getInode());
+        assertSame(inode, vfs.getInodeByPath("/CacheTest/cached"));
+
+        dir.rename("/CacheTest2");
+        assertFalse(handle.exists());
+        assertSame(inode, new FileHandle("/CacheTest2/cached").getInode());
+
+        inode.delete();
+        assertFalse(new FileHandle("/CacheTest2/cached").exists());
+    }
+
+    @Test
+    public void testLookupCacheIsPerSubtree() throws FileNotFoundException, FileExistsException {
+        vfs.getRoot().createDirectory("CacheKept", "drftpd", "drftpd");
+        vfs.getRoot().createDirectory("CacheOther", "drftpd", "drftpd");
+        VirtualFileSystemDirectory kept = (VirtualFileSystemDirectory) vfs.getInodeByPath("/CacheKept");
+        VirtualFileSystemDirectory other = (VirtualFileSystemDirectory) vfs.getInodeByPath("/CacheOther");
+        kept.createFile("cached", "drftpd", "drftpd", "testSlave");
+        other.createFile("deleted", "drftpd", "drftpd", "testSlave");
+        VirtualFileSystemInode inode = vfs.getInodeByPath("/CacheKept/cached");
+        VirtualFileSystem.CachedInode cached = new VirtualFileSystem.CachedInode(inode, vfs.getStructureVersion());
+
+        // changes elsewhere in the tree keep the lookup
+        vfs.getInodeByPath("/CacheOther/deleted").delete();
+        other.rename("/CacheOther2");
+        assertSame(inode, cached.getIfValid());
+
+        // moving a parent does not
+        kept.rename("/CacheKept2");
+        assertNull(cached.getIfValid());
+        assertSame(inode, vfs.getInodeByPath("/CacheKept2/cached"));
+    }
+
+    @Test
+    public void testListingVersion() throws FileNotFoundException, FileExistsException {
+        vfs.getRoot().createDirectory("ListTest", "drftpd", "drftpd");
+        VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) vfs.getInodeByPath("/ListTest");
+        long version = dir.getListingVersion();
+
+        dir.createFile("listed", "drftpd", "drftpd", "testSlave");
+        assertNotEquals(version, dir.getListingVersion());
+
+        version = dir.getListingVersion();
+        VirtualFileSystemFile file = (VirtualFileSystemFile) vfs.getInodeByPath("/ListTest/listed");
+        file.setSize(1000L);
+        assertNotEquals(version, dir.getListingVersion());
+
+        version = dir.getListingVersion();
+        assertEquals(version, dir.getListingVersion());
+        file.delete();
+        assertNotEquals(version, dir.getListingVersion());
+    }
+
     @Test
     public void testStripLast() {
         assertEquals(VirtualFileSystem.stripLast("/full/path/to/file"), "/full/path/to");
@@ -0,0 +1,87 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualFileSystemWarmupTest {
+
+    private static VirtualFileSystem vfs = null;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        vfs = VirtualFileSystem.getVirtualFileSystem();
+        vfs.getRoot().createDirectory("Warm", "drftpd", "drftpd");
+        VirtualFileSystemDirectory warm = (VirtualFileSystemDirectory) vfs.getRoot().getInodeByName("Warm");
+        warm.createDirectory("Pinned", "drftpd", "drftpd");
+        warm.createDirectory("Other", "drftpd", "drftpd");
+        VirtualFileSystemDirectory pinned = (VirtualFileSystemDirectory) warm.getInodeByName("Pinned");
+        pinned.createDirectory("Sub", "drftpd", "drftpd");
+        for (int i = 0; i < 10; i++) {
+            pinned.createFile("file" + i, "drftpd", "drftpd", "testSlave");
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        vfs.getRoot().getInodeByName("Warm").delete();
+        FileUtils.deleteDirectory(new File("userdata"));
+    }
+
+    @Test
+    public void testDisabled() {
+        VirtualFileSystemWarmup warmup = new VirtualFileSystemWarmup(new Properties());
+        assertFalse(warmup.isEnabled());
+        assertTrue(warmup.isWarm());
+        assertTrue(warmup.isLoginAllowed());
+    }
+
+    @Test
+    public void testWarmupAndPinning() throws Exception {
+        Properties cfg = new Properties();
+        cfg.setProperty("vfs.warmup", "true");
+        cfg.setProperty("vfs.warmup.threads", "2");
+        cfg.setProperty("vfs.warmup.gate.logins", "true");
+        cfg.setProperty("vfs.warmup.pin.1", "/Warm/Pinned/");
+        cfg.setProperty("vfs.warmup.pin.2", "/Missing");
+        VirtualFileSystemWarmup warmup = new VirtualFileSystemWarmup(cfg);
+        assertEquals(List.of("/Warm/Pinned", "/Missing"), warmup.getPinnedPaths());
+        assertFalse(warmup.isWarm());
+        assertFalse(warmup.isLoginAllowed());
+
+        warmup.warmUp();
+        assertTrue(warmup.isWarm());
+        assertTrue(warmup.isLoginAllowed());
+        // root, Warm, Pinned, Other, Sub and the files
+        assertTrue(warmup.getLoadedInodes() >= 15);
+
+        assertFalse(((VirtualFileSystemDirectory) vfs.getInodeByPath("/Warm")).isPinned());
+        assertFalse(((VirtualFileSystemDirectory) vfs.getInodeByPath("/Warm/Other")).isPinned());
+        assertTrue(((VirtualFileSystemDirectory) vfs.getInodeByPath("/Warm/Pinned")).isPinned());
+        assertTrue(((VirtualFileSystemDirectory) vfs.getInodeByPath("/Warm/Pinned/Sub")).isPinned());
+    }
+}
@@ -31,6 +31,8 @@ import org.drftpd.common.io.PermissionDeniedException;
 import org.drftpd.common.io.PhysicalFile;
 import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.protocol.MessageStream;
+import org.drftpd.common.protocol.ObjectMessageStream;
 import org.drftpd.common.slave.DiskStatus;
 import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.common.util.ConfigLoader;
@@ -40,11 +42,14 @@ import org.drftpd.slave.diskselection.DiskSelectionInterface;
 import org.drftpd.slave.exceptions.FileExistsException;
 import org.drftpd.slave.network.AsyncResponseDiskStatus;
 import org.drftpd.slave.network.AsyncResponseTransferStatus;
+import org.drftpd.slave.network.BandwidthShaper;
 import org.drftpd.slave.network.Transfer;
 import org.drftpd.slave.protocol.QueuedOperation;
 import org.drftpd.slave.protocol.SlaveProtocolCentral;
+import org.drftpd.slave.vfs.ChecksumCache;
 import org.drftpd.slave.vfs.Root;
 import org.drftpd.slave.vfs.RootCollection;
+import org.drftpd.slave.vfs.RootWatcher;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLHandshakeException;
@@ -100,10 +105,28 @@ public class Slave extends SslConfigurationLoader {
 
     private ObjectOutputStream _sout;
 
+    private BufferedInputStream _rawIn;
+
+    private BufferedOutputStream _rawOut;
+
+    private volatile MessageStream _messageStream;
+
+    private boolean _framedProtocol;
+
+    private AsyncCommandArgument _pendingCommand;
+
     private Map<TransferIndex, Transfer> _transfers;
 
     private boolean _uploadChecksums;
 
+    private boolean _sendFile;
+
+    private int _checksumPipelineBuffers;
+
+    private ChecksumCache _checksumCache;
+
+    private final BandwidthShaper _bandwidthShaper = new BandwidthShaper();
+
     private PortRange _portRange;
 
     private int _timeout;
@@ -116,8 +139,14 @@ public class Slave extends SslConfigurationLoader {
 
     private boolean _threadedRemerge;
 
+    private File _remergeHashFile;
+
     private boolean _concurrentRootIteration;
 
+    private boolean _rootIndex;
+
+    private int _rootIndexSweepInterval;
+
     private InetAddress _bindIP;
 
     private boolean _online;
@@ -194,9 +223,13 @@ public class Slave extends SslConfigurationLoader {
             throw new SSLUnavailableException("Handshake failure, maybe master isn't SSL ready or SSL is disabled.", e);
         }
 
-        _sout = new ObjectOutputStream(new BufferedOutputStream(_socket.getOutputStream()));
+        _rawOut = new BufferedOutputStream(_socket.getOutputStream());
+        _sout = new ObjectOutputStream(_rawOut);
         _sout.flush();
-        _sin = new ObjectInputStream(new BufferedInputStream(_socket.getInputStream()));
+        _rawIn = new BufferedInputStream(_socket.getInputStream());
+        _sin = new ObjectInputStream(_rawIn);
+        _messageStream = new ObjectMessageStream(_sin, _sout);
+        _framedProtocol = p.getProperty("framed.protocol", "true").equalsIgnoreCase("true");
 
         _central = new SlaveProtocolCentral(this);
 
@@ -207,10 +240,21 @@ public class Slave extends SslConfigurationLoader {
         _uploadChecksums = p.getProperty("enableuploadchecksums", "true").equals("true");
         _downloadChecksums = p.getProperty("enabledownloadchecksums", "true").equals("true");
         _bufferSize = Integer.parseInt(p.getProperty("bufferSize", "0"));
+        _sendFile = p.getProperty("sendfile", "false").equalsIgnoreCase("true");
+        _checksumPipelineBuffers = Integer.parseInt(p.getProperty("checksum.pipeline.buffers", "4"));
+        _checksumCache = new ChecksumCache(Integer.parseInt(p.getProperty("checksum.cache.size", "100000")));
         _maxPathLength = Integer.parseInt(p.getProperty("maxPathLength", "4096"));
 
         _concurrentRootIteration = p.getProperty("concurrent.root.iteration", "false").equalsIgnoreCase("true");
+        _rootIndex = p.getProperty("rootindex", "false").equalsIgnoreCase("true");
+        _rootIndexSweepInterval = Integer.parseInt(p.getProperty("rootindex.sweep.interval", "0"));
         _roots = getDefaultRootBasket(p);
+        if (p.getProperty("watch.enabled", "false").equalsIgnoreCase("true")) {
+            RootWatcher watcher = new RootWatcher(this, _roots, Long.parseLong(p.getProperty("watch.delay", "1000")),
+                    Integer.parseInt(p.getProperty("watch.max.directories", "10000")));
+            _roots.setWatcher(watcher);
+            watcher.start();
+        }
         loadDiskSelection(p);
 
         _transfers = new ConcurrentHashMap<>();
@@ -225,6 +269,8 @@ public class Slave extends SslConfigurationLoader {
 
         _ignorePartialRemerge = p.getProperty("ignore.partialremerge", "false").equalsIgnoreCase("true");
         _threadedRemerge = p.getProperty("threadedremerge", "false").equalsIgnoreCase("true");
+        String remergeHashFile = p.getProperty("remerge.hashes.file", "remerge.hashes").trim();
+        _remergeHashFile = remergeHashFile.isEmpty() ? null : new File(remergeHashFile);
 
         parseCipherSuites();
         parseSSLProtocols();
@@ -293,6 +339,7 @@ public class Slave extends SslConfigurationLoader {
     }
 
     public void shutdown() {
+        _central.shutdown();
         if (_sin != null) {
             try {
                 _sin.close();
@@ -335,6 +382,11 @@ public class Slave extends SslConfigurationLoader {
     }
 
     public long checkSum(PhysicalFile file) throws IOException {
+        Long cached = _checksumCache.get(file);
+        if (cached != null) {
+            logger.debug("Checksum for {} served from cache", file.getPath());
+            return cached;
+        }
         logger.debug("Checksumming: {}", file.getPath());
 
         CRC32 crc32 = new CRC32();
@@ -345,11 +397,21 @@ public class Slave extends SslConfigurationLoader {
                     break;
                 }
             }
+            _checksumCache.put(file, crc32.getValue());
             return crc32.getValue();
         }
     }
 
     public void delete(String path) throws IOException {
+        _roots.beginChange(path);
+        try {
+            deleteFromRoots(path);
+        } finally {
+            _roots.endChange(path);
+        }
+    }
+
+    private void deleteFromRoots(String path) throws IOException {
         // now deletes files as well as directories, recursive!
         Collection<Root> files;
         try {
@@ -362,6 +424,7 @@ public class Slave extends SslConfigurationLoader {
         for (Iterator<Root> iter = files.iterator(); iter.hasNext(); ) {
             Root root = iter.next();
             PhysicalFile file = root.getFile(path);
+            _checksumCache.remove(file.getPath());
 
             if (!file.exists()) {
                 iter.remove();
@@ -373,6 +436,7 @@ public class Slave extends SslConfigurationLoader {
                 if (!file.deleteRecursive()) {
                     throw new PermissionDeniedException("delete failed on " + path);
                 }
+                _roots.removeLocation(path, root);
                 logger.info("DELETEDIR: {}", path);
             } else if (file.isFile()) {
                 File dir = new PhysicalFile(file.getParentFile());
@@ -381,6 +445,7 @@ public class Slave extends SslConfigurationLoader {
                 if (!file.delete()) {
                     throw new PermissionDeniedException("delete failed on " + path);
                 }
+                _roots.removeLocation(path, root);
 
                 String[] dirList = dir.list();
 
@@ -397,6 +462,7 @@ public class Slave extends SslConfigurationLoader {
 
                     try {
                         if (Files.deleteIfExists(dir.toPath())) {
+                            _roots.removeLocation(dir.getPath().substring(root.getPath().length()), root);
                             logger.info("Dir empty, rmdir: {}", dir.getPath());
                         } else {
                             logger.info("dir was empty, but doesn't exist anymore, that is fine {}", dir.getPath());
@@ -447,8 +513,26 @@ public class Slave extends SslConfigurationLoader {
         return _uploadChecksums;
     }
 
-    private AsyncResponse handleCommand(AsyncCommandArgument ac) {
-        return _central.handleCommand(ac);
+    /**
+     * @return true if plain (non SSL/TLS) transfers should use zero-copy file channel transfers when possible
+     */
+    public boolean getSendFile() {
+        return _sendFile;
+    }
+
+    /**
+     * @return The number of buffers used to pipeline upload checksums and disk writes, 0 if disabled
+     */
+    public int getChecksumPipelineBuffers() {
+        return _checksumPipelineBuffers;
+    }
+
+    public ChecksumCache getChecksumCache() {
+        return _checksumCache;
+    }
+
+    public BandwidthShaper getBandwidthShaper() {
+        return _bandwidthShaper;
     }
 
     private void listenForCommands() throws IOException {
@@ -457,7 +541,12 @@ public class Slave extends SslConfigurationLoader {
             AsyncCommandArgument ac;
 
             try {
-                ac = (AsyncCommandArgument) _sin.readObject();
+                if (_pendingCommand != null) {
+                    ac = _pendingCommand;
+                    _pendingCommand = null;
+                } else {
+                    ac = (AsyncCommandArgument) _messageStream.readMessage();
+                }
 
                 if (ac == null) {
                     continue;
@@ -480,25 +569,7 @@ public class Slave extends SslConfigurationLoader {
             }
 
             logger.debug("Slave fetched {}", ac);
-            class AsyncCommandHandler implements Runnable {
-                private final AsyncCommandArgument _command;
-
-                public AsyncCommandHandler(AsyncCommandArgument command) {
-                    _command = command;
-                }
-
-                public void run() {
-                    try {
-                        sendResponse(handleCommand(_command));
-                    } catch (Throwable e) {
-                        logger.warn("Catched a throwable, sending to master", e);
-                        sendResponse(new AsyncResponseException(_command.getIndex(), e));
-                    }
-                }
-            }
-            Thread t = new Thread(new AsyncCommandHandler(ac));
-            t.setName("AsyncCommandHandler - " + ac.getClass());
-            t.start();
+            _central.dispatchCommand(ac);
         }
     }
 
@@ -509,14 +580,35 @@ public class Slave extends SslConfigurationLoader {
     }
 
     public void rename(String from, String toDirPath, String toName) throws IOException {
-        for (Iterator<Root> iter = _roots.iterator(); iter.hasNext(); ) {
-            Root root = iter.next();
+        String to = toDirPath + File.separator + toName;
+        _roots.beginChange(from);
+        _roots.beginChange(to);
+        try {
+            renameOnRoots(from, toDirPath, toName);
+        } finally {
+            _roots.endChange(from);
+            _roots.endChange(to);
+        }
+    }
+
+    private void renameOnRoots(String from, String toDirPath, String toName) throws IOException {
+        Collection<Root> roots;
+        try {
+            roots = _roots.getMultipleRootsForFile(from);
+        } catch (FileNotFoundException e) {
+            // nothing to rename on this slave
+            return;
+        }
 
+        for (Root root : roots) {
             File fromfile = root.getFile(from);
 
             if (!fromfile.exists()) {
+                // the root index was out of date
+                _roots.removeLocation(from, root);
                 continue;
             }
+            _checksumCache.remove(fromfile.getPath());
 
             File toDir = root.getFile(toDirPath);
             File tofile = new File(toDir.getPath() + File.separator + toName);
@@ -534,6 +626,7 @@ public class Slave extends SslConfigurationLoader {
             if (!fromfile.renameTo(tofile)) {
                 throw new PermissionDeniedException("renameTo(" + fromfile + ", " + tofile + ") failed");
             }
+            _roots.moveLocation(from, toDirPath + File.separator + toName, root);
         }
     }
 
@@ -545,9 +638,7 @@ public class Slave extends SslConfigurationLoader {
         }
 
         try {
-            _sout.writeObject(response);
-            _sout.flush();
-            _sout.reset();
+            _messageStream.writeMessage(response);
             if (!(response instanceof AsyncResponseTransferStatus)) {
                 logger.debug("Slave wrote response - {}", response);
             }
@@ -611,6 +702,36 @@ public class Slave extends SslConfigurationLoader {
         return _sout;
     }
 
+    public InputStream getRawInputStream() {
+        return _rawIn;
+    }
+
+    public OutputStream getRawOutputStream() {
+        return _rawOut;
+    }
+
+    /**
+     * @return true if the framed wire format should be offered to the master during the handshake
+     */
+    public boolean offerFramedProtocol() {
+        return _framedProtocol;
+    }
+
+    /**
+     * Switches the wire format, only to be used during the handshake
+     */
+    public void setMessageStream(MessageStream messageStream) {
+        _messageStream = messageStream;
+    }
+
+    /**
+     * Masters that do not know about wire format negotiation start sending commands right after the handshake,
+     * the first one might be read while waiting for the negotiation and is handed over here.
+     */
+    public void setPendingCommand(AsyncCommandArgument ac) {
+        _pendingCommand = ac;
+    }
+
     public SlaveProtocolCentral getProtocolCentral() {
         return _central;
     }
@@ -623,10 +744,32 @@ public class Slave extends SslConfigurationLoader {
         return _threadedRemerge;
     }
 
+    /**
+     * @return The file holding the hash tree of the last remerge the master acknowledged,
+     * null if incremental remerges are disabled
+     */
+    public File getRemergeHashFile() {
+        return _remergeHashFile;
+    }
+
     public boolean concurrentRootIteration() {
         return _concurrentRootIteration;
     }
 
+    /**
+     * @return true if the roots holding a path are looked up in memory instead of probing every root
+     */
+    public boolean useRootIndex() {
+        return _rootIndex;
+    }
+
+    /**
+     * @return Minutes between rebuilds of the root index from disk, 0 if disabled
+     */
+    public int getRootIndexSweepInterval() {
+        return _rootIndexSweepInterval;
+    }
+
     protected String getSettingAsString(String key) throws Exception {
         logger.debug("Looking up key: {} as String", key);
         return getConfig().getProperty(key);
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 
 /**
@@ -47,11 +48,22 @@ public class ActiveConnection extends Connection {
 
     private final InetAddress _bindIP;
 
+    private final boolean _useChannel;
+
     public ActiveConnection(SSLContext ctx, InetSocketAddress addr, boolean useSSLClientHandshake, InetAddress bindIP) {
+        this(ctx, addr, useSSLClientHandshake, bindIP, false);
+    }
+
+    /**
+     * @param useChannel If true plain (ctx==null) connections are backed by a SocketChannel, needed for sendfile transfers
+     */
+    public ActiveConnection(SSLContext ctx, InetSocketAddress addr, boolean useSSLClientHandshake, InetAddress bindIP,
+                            boolean useChannel) {
         _addr = addr;
         _ctx = ctx;
         _bindIP = bindIP;
         _useSSLClientHandshake = useSSLClientHandshake;
+        _useChannel = useChannel;
     }
 
     public Socket connect(String[] cipherSuites, String[] sslProtocols, int bufferSize) throws IOException {
@@ -83,7 +95,7 @@ public class ActiveConnection extends Connection {
             sslSock.startHandshake();
             _sock = sslSock;
         } else {
-            _sock = SocketFactory.getDefault().createSocket();
+            _sock = _useChannel ? SocketChannel.open().socket() : SocketFactory.getDefault().createSocket();
             if (bufferSize > 0) {
                 _sock.setReceiveBufferSize(bufferSize);
             }
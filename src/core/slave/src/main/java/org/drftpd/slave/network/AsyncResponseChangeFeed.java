@@ -0,0 +1,46 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.network.AsyncResponse;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Listings of directories that changed on the slave outside of drftpd, sent without the master asking.
+ *
+ * @version $Id$
+ */
+@SuppressWarnings("serial")
+public class AsyncResponseChangeFeed extends AsyncResponse {
+    private final List<AsyncResponseRemerge> _listings;
+
+    public AsyncResponseChangeFeed(List<AsyncResponseRemerge> listings) {
+        super("ChangeFeed");
+        _listings = listings;
+    }
+
+    public List<AsyncResponseRemerge> getListings() {
+        return Collections.unmodifiableList(_listings);
+    }
+
+    public String toString() {
+        return getClass().getName() + "[listings=" + _listings.size() + "]";
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.protocol.MessageCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version $Id$
+ */
+public class AsyncResponseChangeFeedCodec extends MessageCodec<AsyncResponseChangeFeed> {
+
+    private final AsyncResponseRemergeCodec _remergeCodec = new AsyncResponseRemergeCodec();
+
+    public Class<AsyncResponseChangeFeed> getMessageClass() {
+        return AsyncResponseChangeFeed.class;
+    }
+
+    public void encode(AsyncResponseChangeFeed message, DataOutputStream out) throws IOException {
+        List<AsyncResponseRemerge> listings = message.getListings();
+        out.writeInt(listings.size());
+        for (AsyncResponseRemerge listing : listings) {
+            _remergeCodec.encode(listing, out);
+        }
+    }
+
+    public AsyncResponseChangeFeed decode(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<AsyncResponseRemerge> listings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            listings.add(_remergeCodec.decode(in));
+        }
+        return new AsyncResponseChangeFeed(listings);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.slave.HandlerPoolStatus;
+
+import java.util.List;
+
+/**
+ * Periodic report of the worker pools the slave executes commands in.
+ * Only sent to masters that took part in the wire format negotiation, older masters do not know this class.
+ *
+ * @version $Id$
+ */
+@SuppressWarnings("serial")
+public class AsyncResponseHandlerStats extends AsyncResponse {
+    private final List<HandlerPoolStatus> _pools;
+
+    public AsyncResponseHandlerStats(List<HandlerPoolStatus> pools) {
+        super("HandlerStats");
+        if (pools == null) {
+            throw new IllegalArgumentException("pools cannot be null");
+        }
+
+        _pools = pools;
+    }
+
+    public List<HandlerPoolStatus> getPools() {
+        return _pools;
+    }
+
+    public String toString() {
+        return getClass().getName() + "[pools=" + getPools() + "]";
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.protocol.MessageCodec;
+import org.drftpd.common.slave.HandlerPoolStatus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version $Id$
+ */
+public class AsyncResponseHandlerStatsCodec extends MessageCodec<AsyncResponseHandlerStats> {
+
+    public Class<AsyncResponseHandlerStats> getMessageClass() {
+        return AsyncResponseHandlerStats.class;
+    }
+
+    public void encode(AsyncResponseHandlerStats message, DataOutputStream out) throws IOException {
+        out.writeShort(message.getPools().size());
+        for (HandlerPoolStatus pool : message.getPools()) {
+            writeString(out, pool.getName());
+            out.writeInt(pool.getMaxThreads());
+            out.writeInt(pool.getActiveThreads());
+            out.writeInt(pool.getQueued());
+            out.writeLong(pool.getCompleted());
+            out.writeLong(pool.getRejected());
+            out.writeLong(pool.getAvgWait());
+            out.writeLong(pool.getMaxWait());
+            out.writeLong(pool.getAvgRun());
+            out.writeLong(pool.getMaxRun());
+        }
+    }
+
+    public AsyncResponseHandlerStats decode(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        List<HandlerPoolStatus> pools = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pools.add(new HandlerPoolStatus(readString(in), in.readInt(), in.readInt(), in.readInt(),
+                    in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+        }
+        return new AsyncResponseHandlerStats(pools);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.protocol.MessageCodec;
+import org.drftpd.common.slave.LightRemoteInode;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version $Id$
+ */
+public class AsyncResponseRemergeCodec extends MessageCodec<AsyncResponseRemerge> {
+
+    public Class<AsyncResponseRemerge> getMessageClass() {
+        return AsyncResponseRemerge.class;
+    }
+
+    public void encode(AsyncResponseRemerge message, DataOutputStream out) throws IOException {
+        writeString(out, message.getPath());
+        out.writeLong(message.getLastModified());
+        List<LightRemoteInode> files = message.getFiles();
+        out.writeInt(files.size());
+        for (LightRemoteInode inode : files) {
+            writeString(out, inode.getName());
+            writeString(out, inode.getUsername());
+            writeString(out, inode.getGroup());
+            out.writeBoolean(inode.isDirectory());
+            out.writeLong(inode.lastModified());
+            out.writeLong(inode.length());
+        }
+    }
+
+    public AsyncResponseRemerge decode(DataInputStream in) throws IOException {
+        String path = readString(in);
+        long lastModified = in.readLong();
+        int count = in.readInt();
+        List<LightRemoteInode> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            String username = readString(in);
+            String group = readString(in);
+            boolean isDirectory = in.readBoolean();
+            long inodeLastModified = in.readLong();
+            long length = in.readLong();
+            files.add(new LightRemoteInode(name, username, group, isDirectory, inodeLastModified, length));
+        }
+        return new AsyncResponseRemerge(path, files, lastModified);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.network.AsyncResponse;
+
+/**
+ * Ends a remerge for which the master asked for a hash tree, carries the root hash of the tree.
+ *
+ * @version $Id$
+ */
+@SuppressWarnings("serial")
+public class AsyncResponseRemergeHash extends AsyncResponse {
+    private final long _rootHash;
+
+    private final boolean _incremental;
+
+    /**
+     * @param incremental true if only listings that changed since the last acknowledged remerge were sent
+     */
+    public AsyncResponseRemergeHash(String index, long rootHash, boolean incremental) {
+        super(index);
+        _rootHash = rootHash;
+        _incremental = incremental;
+    }
+
+    public long getRootHash() {
+        return _rootHash;
+    }
+
+    public boolean isIncremental() {
+        return _incremental;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.protocol.MessageCodec;
+import org.drftpd.common.slave.ConnectInfo;
+import org.drftpd.common.slave.TransferIndex;
+import org.drftpd.common.slave.TransferStatus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * @version $Id$
+ */
+public class AsyncResponseTransferCodec extends MessageCodec<AsyncResponseTransfer> {
+
+    public Class<AsyncResponseTransfer> getMessageClass() {
+        return AsyncResponseTransfer.class;
+    }
+
+    public void encode(AsyncResponseTransfer message, DataOutputStream out) throws IOException {
+        writeString(out, message.getIndex());
+        ConnectInfo ci = message.getConnectInfo();
+        out.writeInt(ci.getPort());
+        out.writeInt(Integer.parseInt(ci.getTransferIndex().toString()));
+        out.writeBoolean(ci.getTransferStatus() != null);
+        if (ci.getTransferStatus() != null) {
+            AsyncResponseTransferStatusCodec.writeTransferStatus(out, ci.getTransferStatus());
+        }
+    }
+
+    public AsyncResponseTransfer decode(DataInputStream in) throws IOException {
+        String index = readString(in);
+        int port = in.readInt();
+        TransferIndex transferIndex = new TransferIndex(in.readInt());
+        TransferStatus ts = in.readBoolean() ? AsyncResponseTransferStatusCodec.readTransferStatus(in) : null;
+        return new AsyncResponseTransfer(index, new ConnectInfo(port, transferIndex, ts));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.protocol.MessageCodec;
+import org.drftpd.common.slave.TransferIndex;
+import org.drftpd.common.slave.TransferStatus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Sent every second for every running transfer, so this is the most frequent message on the wire.
+ *
+ * @version $Id$
+ */
+public class AsyncResponseTransferStatusCodec extends MessageCodec<AsyncResponseTransferStatus> {
+
+    public Class<AsyncResponseTransferStatus> getMessageClass() {
+        return AsyncResponseTransferStatus.class;
+    }
+
+    public void encode(AsyncResponseTransferStatus message, DataOutputStream out) throws IOException {
+        writeTransferStatus(out, message.getTransferStatus());
+    }
+
+    public AsyncResponseTransferStatus decode(DataInputStream in) throws IOException {
+        return new AsyncResponseTransferStatus(readTransferStatus(in));
+    }
+
+    static void writeTransferStatus(DataOutputStream out, TransferStatus ts) throws IOException {
+        // The string form of a TransferIndex is its number
+        out.writeInt(Integer.parseInt(ts.getTransferIndex().toString()));
+        out.writeLong(ts.getElapsed());
+        out.writeLong(ts.getTransfered());
+        out.writeLong(ts.getChecksum());
+        out.writeBoolean(ts.isFinished());
+        writeSerializable(out, ts.getThrowable());
+    }
+
+    static TransferStatus readTransferStatus(DataInputStream in) throws IOException {
+        TransferIndex transferIndex = new TransferIndex(in.readInt());
+        long elapsed = in.readLong();
+        long transfered = in.readLong();
+        long checksum = in.readLong();
+        boolean finished = in.readBoolean();
+        Throwable t = (Throwable) readSerializable(in);
+        if (t != null) {
+            return new TransferStatus(transferIndex, t);
+        }
+        return new TransferStatus(elapsed, transfered, checksum, finished, transferIndex);
+    }
+}
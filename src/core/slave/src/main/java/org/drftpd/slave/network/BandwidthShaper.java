@@ -0,0 +1,146 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.util.Bytes;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Slave wide bandwidth limits, shared by all transfers.
+ * <p>
+ * Every transfer draws from a chain of token buckets: the slave total, the total of its direction, the limit of
+ * its user and the limit of its class (the section on the master), and finally its own maximum speed. A transfer
+ * has to wait for the slowest bucket in its chain. The limits are set on the master with
+ * "site slave &lt;name&gt; set shaping.&lt;key&gt; &lt;bytes per second&gt;" and sent to the slave when it connects
+ * and whenever they change:
+ * <ul>
+ *     <li>shaping.global - all transfers</li>
+ *     <li>shaping.download - all transfers sent by the slave</li>
+ *     <li>shaping.upload - all transfers received by the slave</li>
+ *     <li>shaping.user - each user, over all of their transfers</li>
+ *     <li>shaping.class.&lt;section&gt; - all transfers in a section</li>
+ * </ul>
+ * A missing or 0 limit means no limit.
+ */
+public class BandwidthShaper {
+
+    private static final Logger logger = LogManager.getLogger(BandwidthShaper.class);
+
+    public static final String PREFIX = "shaping.";
+
+    private final TokenBucket _global = new TokenBucket("global", 0L);
+
+    private final TokenBucket _download = new TokenBucket("download", 0L);
+
+    private final TokenBucket _upload = new TokenBucket("upload", 0L);
+
+    private final Map<String, TokenBucket> _users = new ConcurrentHashMap<>();
+
+    private final Map<String, TokenBucket> _classes = new ConcurrentHashMap<>();
+
+    private volatile long _userRate = 0L;
+
+    private volatile Map<String, Long> _classRates = Collections.emptyMap();
+
+    /**
+     * Replaces all limits, keys not present are no longer limited.
+     *
+     * @param settings the shaping.* slave properties of the master
+     */
+    public void configure(Map<String, String> settings) {
+        Map<String, Long> classRates = new HashMap<>();
+        long global = 0L, download = 0L, upload = 0L, user = 0L;
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            String key = entry.getKey();
+            long rate;
+            try {
+                rate = Bytes.parseBytes(entry.getValue().trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid bandwidth limit {}={}", key, entry.getValue());
+                continue;
+            }
+            if (key.equals(PREFIX + "global")) {
+                global = rate;
+            } else if (key.equals(PREFIX + "download")) {
+                download = rate;
+            } else if (key.equals(PREFIX + "upload")) {
+                upload = rate;
+            } else if (key.equals(PREFIX + "user")) {
+                user = rate;
+            } else if (key.startsWith(PREFIX + "class.")) {
+                classRates.put(key.substring((PREFIX + "class.").length()).toLowerCase(), rate);
+            } else {
+                logger.warn("Ignoring unknown bandwidth limit {}", key);
+            }
+        }
+        _global.setRate(global);
+        _download.setRate(download);
+        _upload.setRate(upload);
+        _userRate = user;
+        for (TokenBucket bucket : _users.values()) {
+            bucket.setRate(user);
+        }
+        _classRates = classRates;
+        for (Map.Entry<String, TokenBucket> entry : _classes.entrySet()) {
+            entry.getValue().setRate(classRates.getOrDefault(entry.getKey(), 0L));
+        }
+        logger.info("Bandwidth limits: global={}, download={}, upload={}, user={}, classes={}",
+                global, download, upload, user, classRates);
+    }
+
+    /**
+     * @param sending true if the slave sends the data, a download for the user
+     * @param user the user of the transfer, null if unknown
+     * @param shapingClass the class of the transfer, null if unknown
+     * @param maxSpeed the maximum speed of this transfer alone, 0 for no limit
+     * @return the buckets the transfer has to draw from
+     */
+    public TokenBucket[] getBuckets(boolean sending, String user, String shapingClass, long maxSpeed) {
+        List<TokenBucket> buckets = new ArrayList<>(5);
+        buckets.add(_global);
+        buckets.add(sending ? _download : _upload);
+        if (user != null) {
+            buckets.add(_users.computeIfAbsent(user, k -> new TokenBucket("user " + k, _userRate)));
+        }
+        if (shapingClass != null) {
+            String name = shapingClass.toLowerCase();
+            buckets.add(_classes.computeIfAbsent(name,
+                    k -> new TokenBucket("class " + k, _classRates.getOrDefault(k, 0L))));
+        }
+        buckets.add(new TokenBucket("transfer", maxSpeed));
+        return buckets.toArray(new TokenBucket[0]);
+    }
+
+    /**
+     * Takes bytes out of all buckets.
+     *
+     * @return the time, in {@link System#nanoTime()}, before which the bytes may not be sent
+     */
+    public static long take(TokenBucket[] buckets, long bytes) {
+        long now = System.nanoTime();
+        long resumeAt = now;
+        for (TokenBucket bucket : buckets) {
+            resumeAt = Math.max(resumeAt, bucket.take(bytes, now));
+        }
+        return resumeAt;
+    }
+}
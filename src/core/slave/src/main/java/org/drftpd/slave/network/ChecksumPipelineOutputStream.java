@@ -0,0 +1,278 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Checksum;
+
+/**
+ * OutputStream that moves checksum calculation and disk writes off the transfer thread.
+ *
+ * Written data is copied into a bounded ring of reusable direct buffers. A dedicated writer thread
+ * updates the checksum and writes each filled buffer to the file, so socket reads, disk writes and
+ * the checksum calculation overlap. When all buffers are in use the transfer thread blocks until
+ * the writer catches up.
+ *
+ * {@link #flush()} only returns once all data written so far is on disk and included in the checksum.
+ * The stream is written by one thread at a time, but may be closed by any thread like
+ * {@link Transfer#abort(String)} does. A close while a write or flush is running aborts it instead of
+ * waiting for it, the data still in the ring is then not guaranteed to reach the file.
+ * Closing the stream more than once has no effect.
+ */
+public class ChecksumPipelineOutputStream extends OutputStream {
+
+    private static final Logger logger = LogManager.getLogger(ChecksumPipelineOutputStream.class);
+
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    // handed to a write waiting for a free buffer when the stream is closed under it
+    private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+    private final FileOutputStream _fileOut;
+
+    private final FileChannel _channel;
+
+    private final Checksum _checksum;
+
+    private final BlockingQueue<ByteBuffer> _free;
+
+    private final BlockingQueue<ByteBuffer> _filled;
+
+    private final Thread _writer;
+
+    private final ReentrantLock _writeLock = new ReentrantLock();
+
+    private final Object _drainMonitor = new Object();
+
+    private final AtomicBoolean _closed = new AtomicBoolean();
+
+    private volatile boolean _aborted = false;
+
+    private int _pending = 0;
+
+    private volatile IOException _failure = null;
+
+    private ByteBuffer _current = null;
+
+    /**
+     * @param fileOut The file to write to
+     * @param checksum The checksum to update, only touched by the writer thread
+     * @param buffers The number of buffers in the ring
+     * @param bufferSize The size of each buffer
+     * @param name Used to name the writer thread
+     */
+    public ChecksumPipelineOutputStream(FileOutputStream fileOut, Checksum checksum, int buffers, int bufferSize, String name) {
+        _fileOut = fileOut;
+        _channel = fileOut.getChannel();
+        _checksum = checksum;
+        // One extra slot in each queue so the closed and end of stream markers always fit
+        _free = new ArrayBlockingQueue<>(buffers + 1);
+        _filled = new ArrayBlockingQueue<>(buffers + 1);
+        for (int i = 0; i < buffers; i++) {
+            _free.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+        _writer = new Thread(this::drain, "ChecksumWriter - " + name);
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _writeLock.lock();
+        try {
+            current().put((byte) b);
+            if (!_current.hasRemaining()) {
+                submit();
+            }
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        _writeLock.lock();
+        try {
+            while (len > 0) {
+                ByteBuffer buf = current();
+                int count = Math.min(len, buf.remaining());
+                buf.put(b, off, count);
+                off += count;
+                len -= count;
+                if (!buf.hasRemaining()) {
+                    submit();
+                }
+            }
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        _writeLock.lock();
+        try {
+            checkOpen();
+            drainAll();
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!_closed.compareAndSet(false, true)) {
+            return;
+        }
+        boolean idle = _writeLock.tryLock();
+        try {
+            if (idle) {
+                drainAll();
+            } else {
+                // a write or flush is running on another thread, possibly waiting for the writer, abort it
+                _aborted = true;
+                _free.offer(CLOSED);
+                synchronized (_drainMonitor) {
+                    _drainMonitor.notifyAll();
+                }
+            }
+        } finally {
+            _filled.add(END_OF_STREAM);
+            if (idle) {
+                try {
+                    _writer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    _writeLock.unlock();
+                }
+            }
+            _fileOut.close();
+        }
+    }
+
+    private ByteBuffer current() throws IOException {
+        checkOpen();
+        if (_current == null) {
+            ByteBuffer buf;
+            try {
+                buf = _free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a free buffer");
+            }
+            if (buf == CLOSED) {
+                _free.offer(CLOSED);
+                throw new IOException("Stream closed");
+            }
+            _current = buf;
+        }
+        return _current;
+    }
+
+    private void submit() {
+        _current.flip();
+        synchronized (_drainMonitor) {
+            _pending++;
+        }
+        _filled.add(_current);
+        _current = null;
+    }
+
+    /**
+     * Hands the partly filled buffer to the writer and waits until the writer is done with all of them.
+     */
+    private void drainAll() throws IOException {
+        checkFailure();
+        if (_current != null && _current.position() > 0) {
+            submit();
+        }
+        synchronized (_drainMonitor) {
+            while (_pending > 0 && _failure == null && !_aborted) {
+                try {
+                    _drainMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the checksum writer");
+                }
+            }
+        }
+        if (_aborted) {
+            throw new IOException("Stream closed");
+        }
+        checkFailure();
+    }
+
+    private void checkOpen() throws IOException {
+        if (_closed.get()) {
+            throw new IOException("Stream closed");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            ByteBuffer buf;
+            try {
+                buf = _filled.take();
+            } catch (InterruptedException e) {
+                logger.warn("Checksum writer was interrupted, stopping");
+                return;
+            }
+            if (buf == END_OF_STREAM) {
+                return;
+            }
+            // nobody waits for the data of an aborted stream anymore, and the file is closed under us
+            if (_failure == null && !_aborted) {
+                try {
+                    _checksum.update(buf.duplicate());
+                    while (buf.hasRemaining()) {
+                        _channel.write(buf);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Writing to disk failed", e);
+                    _failure = e;
+                }
+            }
+            buf.clear();
+            _free.add(buf);
+            synchronized (_drainMonitor) {
+                _pending--;
+                _drainMonitor.notifyAll();
+            }
+        }
+    }
+}
@@ -22,32 +22,50 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * InputStream that keeps a transfer within the bandwidth limits it is subject to.
+ * <p>
+ * Every read takes the bytes it returned out of the transfer's token buckets, the next read waits until the
+ * slowest of those buckets allows the bytes to be sent.
+ */
 public class ThrottledInputStream extends InputStream {
 
     private static final Logger logger = LogManager.getLogger(ThrottledInputStream.class);
 
     private final InputStream _in;
 
+    private final TokenBucket[] _buckets;
     private final long _maxBytesPerSecond;
     private final long _startTime = System.nanoTime();
 
     private long _bytesRead = 0;
     private long _totalSleepTime = 0;
 
-    private static final Object _monitor = new Object();
-    private static final long SLEEP_DURATION_MS = 30;
+    // System.nanoTime() before which the bytes read so far may not be passed on
+    private long _resumeAt = _startTime;
+
+    private volatile Thread _waiting;
+    private volatile boolean _woken = false;
 
     public ThrottledInputStream(InputStream input) {
-        this(input, Long.MAX_VALUE);
+        this(input, 0L);
     }
 
     public ThrottledInputStream(InputStream input, long maximumBytesPerSecond) {
-        assert(maximumBytesPerSecond >= 0);
+        this(input, new TokenBucket[]{new TokenBucket("transfer", maximumBytesPerSecond)});
+    }
+
+    /**
+     * @param buckets the buckets to draw from, see {@link BandwidthShaper#getBuckets}
+     */
+    public ThrottledInputStream(InputStream input, TokenBucket[] buckets) {
         assert(input != null);
 
         this._in = input;
-        this._maxBytesPerSecond = maximumBytesPerSecond;
+        this._buckets = buckets;
+        this._maxBytesPerSecond = buckets[buckets.length - 1].getRate();
         logger.debug("Initialized with maximum Bytes/second as {}", _maxBytesPerSecond);
     }
 
@@ -63,7 +81,7 @@ public class ThrottledInputStream extends InputStream {
         throttle();
         int result = _in.read();
         if (result != -1) {
-            _bytesRead++;
+            addBytesTransferred(1);
         }
         return result;
     }
@@ -73,8 +91,8 @@ public class ThrottledInputStream extends InputStream {
     public int read(byte[] b) throws IOException {
         throttle();
         int result = _in.read(b);
-        if (result != -1) {
-            _bytesRead += result;
+        if (result > 0) {
+            addBytesTransferred(result);
         }
         return result;
     }
@@ -84,32 +102,57 @@ public class ThrottledInputStream extends InputStream {
     public int read(byte[] b, int off, int len) throws IOException {
         throttle();
         int result = _in.read(b, off, len);
-        if (result != -1) {
-            _bytesRead += result;
+        if (result > 0) {
+            addBytesTransferred(result);
         }
         return result;
     }
 
+    /**
+     * Ends a running {@link #throttle()} right away, used when the transfer is aborted.
+     */
     public void wake() {
-        synchronized (_monitor) {
-            _monitor.notify();
+        _woken = true;
+        Thread waiting = _waiting;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
         }
     }
 
-    private void throttle() {
-        if (_maxBytesPerSecond <= 0) {
+    /**
+     * Accounts for bytes that were transferred without being read through this stream,
+     * used by zero-copy transfers so they are still subject to the maximum speed.
+     *
+     * @param count The number of bytes transferred
+     */
+    public void addBytesTransferred(long count) {
+        _bytesRead += count;
+        _resumeAt = Math.max(_resumeAt, BandwidthShaper.take(_buckets, count));
+    }
+
+    /**
+     * Blocks until the bytes transferred so far are within the bandwidth limits
+     */
+    public void throttle() {
+        long start = System.nanoTime();
+        long remaining = _resumeAt - start;
+        if (remaining <= 0) {
             return;
         }
-        while (getBytesPerSec() > _maxBytesPerSecond) {
-            synchronized (_monitor) {
-                try {
-                    _monitor.wait(SLEEP_DURATION_MS);
-                    _totalSleepTime += SLEEP_DURATION_MS;
-                } catch (InterruptedException e) {
-                    logger.warn("Caught InterruptedException while throttling", e);
+        _waiting = Thread.currentThread();
+        try {
+            while (remaining > 0 && !_woken) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    logger.warn("Caught interrupt while throttling");
+                    Thread.currentThread().interrupt();
                     break;
                 }
+                remaining = _resumeAt - System.nanoTime();
             }
+        } finally {
+            _waiting = null;
+            _totalSleepTime += (System.nanoTime() - start) / 1000000L;
         }
     }
 
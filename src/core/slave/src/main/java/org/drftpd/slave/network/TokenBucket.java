@@ -0,0 +1,95 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+/**
+ * Token bucket that hands out reservations instead of blocking.
+ * <p>
+ * Taking more bytes than are available puts the bucket in debt, the caller is told how long to wait until that
+ * debt is paid off and the bytes it took may be sent. Later callers queue up behind it, which shares the rate
+ * evenly between the transfers drawing from the bucket. Up to {@link #BURST_NANOS} worth of unused rate is
+ * saved up for later.
+ */
+public class TokenBucket {
+
+    static final long BURST_NANOS = 100_000_000L;
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final String _name;
+
+    private volatile long _rate;
+
+    // the time at which all bytes handed out so far would have been sent at the configured rate
+    private long _theoreticalArrival;
+
+    private long _taken;
+
+    public TokenBucket(String name, long bytesPerSecond) {
+        _name = name;
+        _rate = bytesPerSecond;
+        _theoreticalArrival = System.nanoTime();
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * @return the rate in bytes per second, 0 for no limit
+     */
+    public long getRate() {
+        return _rate;
+    }
+
+    /**
+     * Changes the rate, transfers already drawing from this bucket follow the new rate right away.
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        _rate = bytesPerSecond;
+        _theoreticalArrival = Math.min(_theoreticalArrival, System.nanoTime());
+    }
+
+    /**
+     * Takes bytes out of the bucket.
+     *
+     * @return the time, in {@link System#nanoTime()}, before which the bytes may not be sent
+     */
+    public long take(long bytes) {
+        return take(bytes, System.nanoTime());
+    }
+
+    synchronized long take(long bytes, long now) {
+        _taken += bytes;
+        long rate = _rate;
+        if (rate <= 0) {
+            return now;
+        }
+        long start = Math.max(_theoreticalArrival, now);
+        // bytes * SECOND could overflow for chunks above 9GB, which are never read at once
+        _theoreticalArrival = start + bytes * SECOND / rate;
+        return _theoreticalArrival - BURST_NANOS;
+    }
+
+    /**
+     * @return the number of bytes taken out of this bucket since it was created
+     */
+    public synchronized long getTaken() {
+        return _taken;
+    }
+}
@@ -39,6 +39,11 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.regex.PatternSyntaxException;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
@@ -55,6 +60,7 @@ public class Transfer {
     private static final Logger logger = LogManager.getLogger(Transfer.class);
     private static final String separator = "/";
     private static final long _transferProgressAnnounce = 524288L; // Report every 512KB
+    private static final long _sendFileChunkSize = 1048576L; // Max bytes handed to the kernel per sendfile call
     private String _abortReason = null;
     private CRC32 _checksum = null;
     private Connection _conn;
@@ -62,6 +68,7 @@ public class Transfer {
     private long _finished = 0;
     private ThrottledInputStream _int;
     private InputStream _in;
+    private FileChannel _fileChannel;
     private final char _mode = 'I';
     private OutputStream _out;
     private final Slave _slave;
@@ -74,6 +81,16 @@ public class Transfer {
 
     private long _maxSpeed = 0L;
 
+    private String _user = null;
+
+    private String _shapingClass = null;
+
+    private long _lastStatusReport = 0L;
+
+    private long _lastMinSpeedCheck = 0L;
+
+    private boolean _firstMinSpeedCheck = true;
+
     /**
      * Start undefined transfer.
      */
@@ -218,6 +235,15 @@ public class Transfer {
         _maxSpeed = maxSpeed;
     }
 
+    /**
+     * @param user the user of the transfer, for per user bandwidth limits
+     * @param shapingClass the bandwidth class of the transfer, the section of the file on the master
+     */
+    public void setShaping(String user, String shapingClass) {
+        _user = user;
+        _shapingClass = shapingClass;
+    }
+
     public boolean isReceivingUploading() {
         return _direction == Transfer.TRANSFER_RECEIVING_UPLOAD;
     }
@@ -250,12 +276,23 @@ public class Transfer {
 
         String root = _slave.getRoots().getARootFileDir(dirname).getPath();
 
+        File file = new File(root + separator + filename);
+        _slave.getRoots().beginChange(_pathForUpload);
         try {
-            _out = new FileOutputStream(new File(root + separator + filename));
+            FileOutputStream fileOut = new FileOutputStream(file);
+            _slave.getRoots().addLocation(_pathForUpload, file);
+            _fileChannel = fileOut.getChannel();
+            _out = fileOut;
 
             if (_slave.getUploadChecksums()) {
                 _checksum = new CRC32();
-                _out = new CheckedOutputStream(_out, _checksum);
+                if (_slave.getChecksumPipelineBuffers() > 0) {
+                    // Checksum and disk writes are done by a separate stage so they overlap with the network reads
+                    _out = new ChecksumPipelineOutputStream(fileOut, _checksum, _slave.getChecksumPipelineBuffers(),
+                            Math.max(_slave.getBufferSize(), 32768), _pathForUpload);
+                } else {
+                    _out = new CheckedOutputStream(_out, _checksum);
+                }
             }
             accept(_slave.getCipherSuites(), _slave.getSSLProtocols(), _slave.getBufferSize());
 
@@ -270,6 +307,11 @@ public class Transfer {
 
             logger.info("UL: {}/{}{}", dirname, filename, getNegotiatedSSLString());
             transfer(null);
+            if (_checksum != null) {
+                // Make sure everything is on disk so the cached checksum matches the final size and modification time
+                _out.close();
+                _slave.getChecksumCache().put(file, _checksum.getValue());
+            }
             _slave.sendResponse(new AsyncResponseDiskStatus(_slave.getDiskStatus()));
             return getTransferStatus();
         } finally {
@@ -288,6 +330,7 @@ public class Transfer {
                     _in.close();
                 } catch (IOException ignored) {}
             }
+            _slave.getRoots().endChange(_pathForUpload);
         }
     }
 
@@ -307,8 +350,10 @@ public class Transfer {
     public TransferStatus sendFile(String path, char mode, long offset, String inetAddress)
             throws IOException, TransferDeniedException {
         try {
-
-            _in = new FileInputStream(new PhysicalFile(_slave.getRoots().getFile(path)));
+            PhysicalFile file = new PhysicalFile(_slave.getRoots().getFile(path));
+            FileInputStream fileIn = new FileInputStream(file);
+            _fileChannel = fileIn.getChannel();
+            _in = fileIn;
 
             if (_slave.getDownloadChecksums()) {
                 _checksum = new CRC32();
@@ -334,6 +379,10 @@ public class Transfer {
                 transfer(getUploadForPath(path));
             } catch (ObjectNotFoundException e) {
                 transfer(null);
+                if (_checksum != null && offset == 0 && getTransferred() == file.length()) {
+                    // The whole file went through the checksum, no need to read it again if the master asks
+                    _slave.getChecksumCache().put(file, _checksum.getValue());
+                }
             }
             return getTransferStatus();
         } finally {
@@ -355,6 +404,10 @@ public class Transfer {
         }
     }
 
+    private TokenBucket[] getBandwidthBuckets() {
+        return _slave.getBandwidthShaper().getBuckets(isSendingUploading(), _user, _shapingClass, getMaxSpeed());
+    }
+
     /**
      * Shows the SSL protocol and Cipher
      *
@@ -414,6 +467,13 @@ public class Transfer {
             // Register when we started this transfer
             _started = System.currentTimeMillis();
 
+            // Plain connections without ascii or checksum handling can let the kernel move the data
+            SocketChannel socketChannel = _sock.getChannel();
+            if (socketChannel != null && _mode != 'A' && _checksum == null && _fileChannel != null) {
+                transferSendFile(associatedUpload, socketChannel);
+                return;
+            }
+
             // TODO: Support for mode ASCII?
             if (_mode == 'A') {
                 _out = new AddAsciiOutputStream(_out);
@@ -424,14 +484,10 @@ public class Transfer {
             logger.debug("Buffer has been initialized with a size of [{}]", buff.length);
 
             int count;
-            long currentTime = System.currentTimeMillis();
-
-            // The ThrottledInputStream handles the max speed (traffic manager)
-            _int = new ThrottledInputStream(_in, getMaxSpeed());
+            _lastStatusReport = System.currentTimeMillis();
 
-            // Minimum speed check
-            boolean first = true;
-            long lastCheck = 0;
+            // The ThrottledInputStream handles the max speed (traffic manager) and the slave wide limits
+            _int = new ThrottledInputStream(_in, getBandwidthBuckets());
 
             long _showTransferProgress = 0L;
 
@@ -464,33 +520,10 @@ public class Transfer {
                     }
 
                     // Do some keepalive stuff
-                    if ((System.currentTimeMillis() - currentTime) >= 1000) {
-                        if (getTransferStatus().isFinished()) {
-                            throw new TransferFailedException("Transfer idle timeout reached", getTransferStatus());
-                        }
-                        // Report progress to the master
-                        _slave.sendResponse(new AsyncResponseTransferStatus(getTransferStatus()));
-                        currentTime = System.currentTimeMillis();
-                    }
+                    checkKeepAlive();
 
                     // Min Speed Check
-                    if (_minSpeed > 0) {
-                        if (lastCheck == 0) {
-                            lastCheck = System.currentTimeMillis();
-                        }
-                        long delay = System.currentTimeMillis() - lastCheck;
-
-                        // Check every 0.2 seconds, but take into account tcp slow start so first check is 0.5 seconds
-                        if (first ? delay >= 500 : delay >= 200) {
-                            logger.debug("In minspeed check, delay: {}, current speed: {}, min speed is set to: {}", delay, getTransferSpeed(), _minSpeed);
-                            first = false;
-                            if (getTransferSpeed() < _minSpeed) {
-                                throw new TransferSlowException("Transfer was aborted - '" + getTransferSpeed() + "' is < '" + _minSpeed + "'", getTransferStatus());
-                            }
-                            // Reset the last Check
-                            lastCheck = System.currentTimeMillis();
-                        }
-                    }
+                    checkMinSpeed();
 
                     // Only do these actions if we have read data
                     if (count > 0) {
@@ -519,6 +552,155 @@ public class Transfer {
         }
     }
 
+    /**
+     * Zero-copy variant of the transfer loop, the data is moved between the file and the socket using
+     * {@link FileChannel#transferTo} (download) or {@link FileChannel#transferFrom} (upload).
+     *
+     * The socket channel is put in non-blocking mode and polled with the same 0.1 second timeout used for
+     * the stream based transfers, so aborts, min speed checks and progress reporting behave the same.
+     *
+     * @param associatedUpload If we are doing an upload this needs to be set otherwise we expect 'null'
+     * @param socketChannel The channel backing our data socket
+     *
+     * @throws IOException If anything happens during the transfer on the socket
+     */
+    private void transferSendFile(Transfer associatedUpload, SocketChannel socketChannel) throws IOException {
+        logger.debug("Using sendfile for this transfer");
+        _lastStatusReport = System.currentTimeMillis();
+
+        // The ThrottledInputStream still handles the max speed, bytes are accounted for manually
+        _int = new ThrottledInputStream(_in, getBandwidthBuckets());
+
+        boolean sending = isSendingUploading();
+        long position = _fileChannel.position();
+        long _showTransferProgress = 0L;
+
+        try {
+            socketChannel.configureBlocking(false);
+            try (Selector selector = Selector.open()) {
+                socketChannel.register(selector, sending ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                while (true) {
+                    if ((getTransferred() - _showTransferProgress) >= _transferProgressAnnounce) {
+                        logger.debug(_int);
+                        _showTransferProgress = getTransferred();
+                    }
+                    if (_abortReason != null) {
+                        throw new TransferFailedException("Transfer was aborted - " + _abortReason, getTransferStatus());
+                    }
+                    long size = 0L;
+                    if (sending) {
+                        size = _fileChannel.size();
+                        if (position >= size) {
+                            if (associatedUpload == null) {
+                                logger.debug("Done transferring as associatedUpload == null");
+                                break; // done transferring
+                            }
+                            if (associatedUpload.getTransferStatus().isFinished()) {
+                                logger.debug("Done transferring as associatedUpload states it is finished");
+                                break; // done transferring
+                            }
+
+                            continue; // waiting for upload to catch up
+                        }
+                    }
+
+                    _int.throttle();
+
+                    long count = 0;
+                    if (selector.select(100) > 0) {
+                        selector.selectedKeys().clear();
+                        if (sending) {
+                            count = _fileChannel.transferTo(position, Math.min(_sendFileChunkSize, size - position), socketChannel);
+                        } else {
+                            count = _fileChannel.transferFrom(socketChannel, position, _sendFileChunkSize);
+                            if (count == 0) {
+                                // Readable but nothing transferred, either the peer closed the connection or a spurious wakeup
+                                ByteBuffer probe = ByteBuffer.allocate(1);
+                                int read = socketChannel.read(probe);
+                                if (read == -1) {
+                                    logger.debug("Done transferring as the peer closed the connection");
+                                    break; // done transferring
+                                }
+                                probe.flip();
+                                count = _fileChannel.write(probe, position);
+                            }
+                        }
+                    }
+
+                    // Do some keepalive stuff
+                    checkKeepAlive();
+
+                    // Min Speed Check
+                    checkMinSpeed();
+
+                    // Only do these actions if we have moved data
+                    if (count > 0) {
+                        position += count;
+                        _transferred += count;
+                        _int.addBytesTransferred(count);
+                    }
+                }
+            }
+
+            if (!sending) {
+                _fileChannel.force(false);
+            }
+        } catch (SocketException e) {
+            logger.warn("Caught SocketException, forwarding as TransferFailedException", e);
+            logger.debug(_int);
+            throw new TransferFailedException(e, getTransferStatus());
+        } catch (IOException e) {
+            logger.warn("Catched IOException, forwarding as TransferFailedException", e);
+            logger.debug(_int);
+            if (e instanceof TransferFailedException) {
+                throw e;
+            }
+            throw new TransferFailedException(e, getTransferStatus());
+        }
+    }
+
+    /**
+     * Reports progress to the master once every second and makes sure the transfer was not aborted in the meantime
+     *
+     * @throws TransferFailedException If the transfer is already finished
+     */
+    private void checkKeepAlive() throws TransferFailedException {
+        if ((System.currentTimeMillis() - _lastStatusReport) >= 1000) {
+            if (getTransferStatus().isFinished()) {
+                throw new TransferFailedException("Transfer idle timeout reached", getTransferStatus());
+            }
+            // Report progress to the master
+            _slave.sendResponse(new AsyncResponseTransferStatus(getTransferStatus()));
+            _lastStatusReport = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Aborts the transfer if the speed dropped below the configured minimum speed
+     *
+     * @throws TransferSlowException If the transfer speed is lower than the minimum speed
+     */
+    private void checkMinSpeed() throws TransferSlowException {
+        if (_minSpeed <= 0) {
+            return;
+        }
+        if (_lastMinSpeedCheck == 0) {
+            _lastMinSpeedCheck = System.currentTimeMillis();
+        }
+        long delay = System.currentTimeMillis() - _lastMinSpeedCheck;
+
+        // Check every 0.2 seconds, but take into account tcp slow start so first check is 0.5 seconds
+        if (_firstMinSpeedCheck ? delay >= 500 : delay >= 200) {
+            logger.debug("In minspeed check, delay: {}, current speed: {}, min speed is set to: {}", delay, getTransferSpeed(), _minSpeed);
+            _firstMinSpeedCheck = false;
+            if (getTransferSpeed() < _minSpeed) {
+                throw new TransferSlowException("Transfer was aborted - '" + getTransferSpeed() + "' is < '" + _minSpeed + "'", getTransferStatus());
+            }
+            // Reset the last Check
+            _lastMinSpeedCheck = System.currentTimeMillis();
+        }
+    }
+
     private boolean isNotExpectedHostmask(String maskString, InetAddress connectedAddress) {
         HostMask mask = new HostMask(maskString);
 
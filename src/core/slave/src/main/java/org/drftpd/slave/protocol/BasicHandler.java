@@ -32,6 +32,7 @@ import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.common.slave.TransferStatus;
 import org.drftpd.slave.Slave;
 import org.drftpd.slave.network.*;
+import org.drftpd.slave.vfs.RemergeHashTree;
 import org.drftpd.slave.vfs.RootCollection;
 import org.drftpd.slave.vfs.RootPathContents;
 
@@ -41,8 +42,12 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -83,6 +88,7 @@ public class BasicHandler extends AbstractHandler {
     }
 
     // TODO check this.
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleAbort(AsyncCommandArgument ac) {
         TransferIndex ti = new TransferIndex(Integer.parseInt(ac.getArgsArray()[0]));
 
@@ -97,6 +103,7 @@ public class BasicHandler extends AbstractHandler {
         return new AsyncResponse(ac.getIndex());
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleConnect(AsyncCommandArgument ac) {
         String[] data = ac.getArgsArray()[0].split(":");
         boolean encrypted = ac.getArgsArray()[1].equals("true");
@@ -111,7 +118,8 @@ public class BasicHandler extends AbstractHandler {
 
         int port = Integer.parseInt(data[1]);
         Transfer t = new Transfer(new ActiveConnection(encrypted ? getSlaveObject().getSSLContext() : null,
-                new InetSocketAddress(address, port), useSSLClientHandshake, getSlaveObject().getBindIP()),
+                new InetSocketAddress(address, port), useSSLClientHandshake, getSlaveObject().getBindIP(),
+                getSlaveObject().getSendFile()),
                 getSlaveObject(), new TransferIndex());
 
         getSlaveObject().addTransfer(t);
@@ -119,6 +127,7 @@ public class BasicHandler extends AbstractHandler {
         return new AsyncResponseTransfer(ac.getIndex(), new ConnectInfo(port, t.getTransferIndex(), t.getTransferStatus()));
     }
 
+    @HandlerExecution(HandlerPoolType.DISK)
     public AsyncResponse handleDelete(AsyncCommandArgument ac) {
         try {
             getSlaveObject().delete(ac.getArgs());
@@ -129,6 +138,7 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleListen(AsyncCommandArgument ac) {
         String[] data = ac.getArgs().split(":");
         boolean encrypted = data[0].equals("true");
@@ -137,7 +147,8 @@ public class BasicHandler extends AbstractHandler {
 
         try {
             c = new PassiveConnection(encrypted ? getSlaveObject().getSSLContext() : null,
-                    getSlaveObject().getPortRange(), useSSLClientMode, getSlaveObject().getBindIP());
+                    getSlaveObject().getPortRange(), useSSLClientMode, getSlaveObject().getBindIP(),
+                    getSlaveObject().getSendFile());
 
         } catch (IOException e) {
             return new AsyncResponseException(ac.getIndex(), e);
@@ -149,15 +160,18 @@ public class BasicHandler extends AbstractHandler {
         return new AsyncResponseTransfer(ac.getIndex(), new ConnectInfo(c.getLocalPort(), t.getTransferIndex(), t.getTransferStatus()));
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleMaxpath(AsyncCommandArgument ac) {
         int maxPathLength = getSlaveObject().getMaxPathLength();
         return new AsyncResponseMaxPath(ac.getIndex(), maxPathLength);
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handlePing(AsyncCommandArgument ac) {
         return new AsyncResponse(ac.getIndex());
     }
 
+    @HandlerExecution(HandlerPoolType.TRANSFER)
     public AsyncResponse handleReceive(AsyncCommandArgument ac) {
         char type = ac.getArgsArray()[0].charAt(0);
         long position = Long.parseLong(ac.getArgsArray()[1]);
@@ -171,6 +185,7 @@ public class BasicHandler extends AbstractHandler {
         Transfer t = getSlaveObject().getTransfer(transferIndex);
         t.setMinSpeed(minSpeed);
         t.setMaxSpeed(maxSpeed);
+        setShaping(t, ac.getArgsArray());
         getSlaveObject().sendResponse(new AsyncResponse(ac.getIndex())); // return calling thread on master
         try {
             return new AsyncResponseTransferStatus(t.receiveFile(dirName, type, fileName, position, inetAddress));
@@ -179,11 +194,13 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleRemergePause(AsyncCommandArgument ac) {
         remergePaused.set(true);
         return new AsyncResponse(ac.getIndex());
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleRemergeResume(AsyncCommandArgument ac) {
         remergePaused.set(false);
         synchronized (remergeWaitObj) {
@@ -192,6 +209,7 @@ public class BasicHandler extends AbstractHandler {
         return new AsyncResponse(ac.getIndex());
     }
 
+    @HandlerExecution(HandlerPoolType.DISK)
     public AsyncResponse handleRemerge(AsyncCommandArgument ac) {
         try {
             Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
@@ -216,13 +234,28 @@ public class BasicHandler extends AbstractHandler {
                 sendResponse(new AsyncResponseSiteBotMessage("Partial remerge disabled, performing full remerge"));
             }
 
+            // Masters that keep track of remerge hashes send the root hash they acknowledged last
+            RemergeHashTree hashes = null;
+            File hashFile = getSlaveObject().getRemergeHashFile();
+            if (argsArray.length > 5 && hashFile != null) {
+                RemergeHashTree baseline = null;
+                if (!argsArray[5].isEmpty()) {
+                    baseline = RemergeHashTree.read(hashFile, Long.parseLong(argsArray[5]));
+                }
+                hashes = new RemergeHashTree(baseline);
+                if (baseline != null) {
+                    logger.info("Hashes of the last remerge match the master, only sending changed directories");
+                    sendResponse(new AsyncResponseSiteBotMessage("Hashes of the last remerge match the master, only sending changed directories"));
+                }
+            }
+
             if (getSlaveObject().threadedRemerge()) {
                 if (threadMergeCount.get() == 0) {
                     // Create worker threads
                     logger.info("Starting to merge with threads");
                     mergeThreads = new HandleRemergeRecursiveThread[maxMergeThreads];
                     for (int i = 0; i < maxMergeThreads; i++) {
-                        mergeThreads[i] = new HandleRemergeRecursiveThread(getSlaveObject().getRoots(), partialRemerge, skipAgeCutoff, i + 1);
+                        mergeThreads[i] = new HandleRemergeRecursiveThread(getSlaveObject().getRoots(), partialRemerge, skipAgeCutoff, hashes, i + 1);
                         mergeThreads[i].start();
                     }
                     sendResponse(new AsyncResponseSiteBotMessage("Starting to merge with threads"));
@@ -234,11 +267,11 @@ public class BasicHandler extends AbstractHandler {
             } else if (getSlaveObject().concurrentRootIteration()) {
                 logger.info("Starting to merge with roots concurrently with handleRemergeRecursiveConcurrent");
                 sendResponse(new AsyncResponseSiteBotMessage("Starting to merge with roots concurrently"));
-                handleRemergeRecursiveConcurrent(getSlaveObject().getRoots(), argsArray[0], partialRemerge, skipAgeCutoff);
+                handleRemergeRecursiveConcurrent(getSlaveObject().getRoots(), argsArray[0], partialRemerge, skipAgeCutoff, hashes);
             } else {
                 logger.info("Starting to merge with handleRemergeRecursive2");
                 sendResponse(new AsyncResponseSiteBotMessage("Starting to merge"));
-                handleRemergeRecursive2(getSlaveObject().getRoots(), argsArray[0], partialRemerge, skipAgeCutoff);
+                handleRemergeRecursive2(getSlaveObject().getRoots(), argsArray[0], partialRemerge, skipAgeCutoff, hashes);
             }
 
             // Make sure we dont make the slave available online until the whole filesystem is sent
@@ -267,6 +300,24 @@ public class BasicHandler extends AbstractHandler {
                 }
             }
 
+            if (hashes != null) {
+                if (!getSlaveObject().isOnline()) {
+                    return null;
+                }
+                if (hashes.hasBaseline()) {
+                    sendResponse(new AsyncResponseSiteBotMessage("Sent " + hashes.getChanged() + " of "
+                            + hashes.size() + " directories, the others did not change since the last remerge"));
+                }
+                long rootHash = hashes.getRootHash(argsArray[0]);
+                try {
+                    // only replaces the current tree once the master acknowledged it
+                    hashes.write(getPendingHashFile(hashFile), rootHash);
+                    return new AsyncResponseRemergeHash(ac.getIndex(), rootHash, hashes.hasBaseline());
+                } catch (IOException e) {
+                    logger.warn("Unable to write remerge hashes to {}, the next remerge is compared with the previous ones", hashFile, e);
+                }
+            }
+
             return new AsyncResponse(ac.getIndex());
         } catch (Throwable e) {
             logger.error("Exception during merging", e);
@@ -276,6 +327,47 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    /**
+     * The master processed the remerge, the hash tree it sent becomes the one the next remerge is compared with.
+     */
+    @HandlerExecution(HandlerPoolType.CONTROL)
+    public AsyncResponse handleRemergeAck(AsyncCommandArgument ac) {
+        File hashFile = getSlaveObject().getRemergeHashFile();
+        if (hashFile == null) {
+            return new AsyncResponseException(ac.getIndex(), new IOException("Remerge hashes are disabled"));
+        }
+        File pending = getPendingHashFile(hashFile);
+        Long rootHash = RemergeHashTree.readRootHash(pending);
+        if (rootHash == null || rootHash != Long.parseLong(ac.getArgsArray()[0])) {
+            return new AsyncResponseException(ac.getIndex(),
+                    new IOException("No remerge hashes waiting for acknowledgement with root hash " + ac.getArgsArray()[0]));
+        }
+        try {
+            Files.move(pending.toPath(), hashFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            return new AsyncResponseException(ac.getIndex(), e);
+        }
+        return new AsyncResponse(ac.getIndex());
+    }
+
+    private static File getPendingHashFile(File hashFile) {
+        return new File(hashFile.getPath() + ".new");
+    }
+
+    /**
+     * Adds the listing to the hash tree, if there is one, and decides if it has to be sent to the master.
+     * With hashes of the last acknowledged remerge only changed listings are sent, the partial remerge
+     * cutoff does not matter then.
+     */
+    private static boolean isSendRequired(RemergeHashTree hashes, String path, List<LightRemoteInode> fileList,
+                                          long pathLastModified, boolean partialRemerge, boolean inodesModified) {
+        if (hashes == null) {
+            return !partialRemerge || inodesModified;
+        }
+        boolean changed = hashes.put(path, RemergeHashTree.hashListing(fileList, pathLastModified));
+        return hashes.hasBaseline() ? changed : !partialRemerge || inodesModified;
+    }
+
     private HandleRemergeRecursiveThread getRemergeThread() {
         synchronized (mergeThreads) {
             for (int i = 0; i < maxMergeThreads; i++) {
@@ -339,7 +431,8 @@ public class BasicHandler extends AbstractHandler {
     }
 
     private void handleRemergeRecursive2(RootCollection rootCollection,
-                                         String path, boolean partialRemerge, long skipAgeCutoff) {
+                                         String path, boolean partialRemerge, long skipAgeCutoff,
+                                         RemergeHashTree hashes) {
         remergeDepth++;
         if (!getSlaveObject().isOnline()) {
             // Slave has shut down, no need to continue with remerge
@@ -393,11 +486,11 @@ public class BasicHandler extends AbstractHandler {
                 inodesModified = true;
             }
             if (file.isDirectory()) {
-                handleRemergeRecursive2(rootCollection, fullPath, partialRemerge, skipAgeCutoff);
+                handleRemergeRecursive2(rootCollection, fullPath, partialRemerge, skipAgeCutoff, hashes);
             }
             fileList.add(new LightRemoteInode(file));
         }
-        if (!partialRemerge || inodesModified) {
+        if (isSendRequired(hashes, path, fileList, pathLastModified, partialRemerge, inodesModified)) {
             sendResponse(new AsyncResponseRemerge(path, fileList, pathLastModified));
             logger.debug("Sending {} to the master", path);
         } else {
@@ -410,7 +503,8 @@ public class BasicHandler extends AbstractHandler {
     }
 
     private void handleRemergeRecursiveConcurrent(RootCollection rootCollection,
-                                                  String path, boolean partialRemerge, long skipAgeCutoff) {
+                                                  String path, boolean partialRemerge, long skipAgeCutoff,
+                                                  RemergeHashTree hashes) {
         remergeConcurrentDepth++;
         if (!getSlaveObject().isOnline()) {
             // Slave has shut down, no need to continue with remerge
@@ -456,11 +550,11 @@ public class BasicHandler extends AbstractHandler {
                 inodesModified = true;
             }
             if (file.isDirectory()) {
-                handleRemergeRecursiveConcurrent(rootCollection, fullPath, partialRemerge, skipAgeCutoff);
+                handleRemergeRecursiveConcurrent(rootCollection, fullPath, partialRemerge, skipAgeCutoff, hashes);
             }
             fileList.add(new LightRemoteInode(file));
         }
-        if (!partialRemerge || inodesModified) {
+        if (isSendRequired(hashes, path, fileList, pathLastModified, partialRemerge, inodesModified)) {
             sendResponse(new AsyncResponseRemerge(path, fileList, pathLastModified));
             logger.debug("Sending {} to the master", path);
         } else {
@@ -472,6 +566,7 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    @HandlerExecution(HandlerPoolType.DISK)
     public AsyncResponse handleRename(AsyncCommandArgument ac) {
         String from = ac.getArgsArray()[0];
         String toDir = ac.getArgsArray()[1];
@@ -485,6 +580,7 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    @HandlerExecution(HandlerPoolType.TRANSFER)
     public AsyncResponse handleSend(AsyncCommandArgument ac) {
         char type = ac.getArgsArray()[0].charAt(0);
         long position = Long.parseLong(ac.getArgsArray()[1]);
@@ -496,6 +592,7 @@ public class BasicHandler extends AbstractHandler {
         Transfer t = getSlaveObject().getTransfer(transferIndex);
         t.setMinSpeed(minSpeed);
         t.setMaxSpeed(maxSpeed);
+        setShaping(t, ac.getArgsArray());
         sendResponse(new AsyncResponse(ac.getIndex()));
 
         // calling thread on master
@@ -508,6 +605,7 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    @HandlerExecution(HandlerPoolType.DISK)
     public AsyncResponse handleChecksum(AsyncCommandArgument ac) {
         try {
             return new AsyncResponseChecksum(ac.getIndex(), getSlaveObject().checkSum(ac.getArgs()));
@@ -516,6 +614,7 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleShutdown(AsyncCommandArgument ac) {
         logger.info("The master has requested that I shutdown");
         getSlaveObject().shutdown();
@@ -523,25 +622,51 @@ public class BasicHandler extends AbstractHandler {
         return null;
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
     public AsyncResponse handleCheckSSL(AsyncCommandArgument ac) {
         return new AsyncResponseSSLCheck(ac.getIndex(), getSlaveObject().getSSLContext() != null);
     }
 
+    @HandlerExecution(HandlerPoolType.CONTROL)
+    public AsyncResponse handleShaping(AsyncCommandArgument ac) {
+        Map<String, String> settings = new HashMap<>();
+        for (String setting : ac.getArgsArray()) {
+            int separator = setting.indexOf('=');
+            if (separator > 0) {
+                settings.put(setting.substring(0, separator), setting.substring(separator + 1));
+            }
+        }
+        getSlaveObject().getBandwidthShaper().configure(settings);
+        return new AsyncResponse(ac.getIndex());
+    }
+
+    /**
+     * Masters that know about bandwidth shaping send the user and the section of the transfer after the speeds.
+     */
+    private static void setShaping(Transfer t, String[] args) {
+        if (args.length > 8) {
+            t.setShaping(args[7].isEmpty() ? null : args[7], args[8].isEmpty() ? null : args[8]);
+        }
+    }
+
     private class HandleRemergeRecursiveThread extends Thread {
         private RootCollection rootCollection = null;
         private String path = null;
         private boolean partialRemerge = false;
         private boolean localRun = false;
         private long skipAgeCutoff = 0L;
+        private RemergeHashTree hashes = null;
         private volatile boolean available = true;
         private volatile boolean exit = false;
         private final Object localWaitObj = new Object();
 
-        public HandleRemergeRecursiveThread(RootCollection rootCollection, boolean partialRemerge, long skipAgeCutoff, int threadNumber) {
+        public HandleRemergeRecursiveThread(RootCollection rootCollection, boolean partialRemerge, long skipAgeCutoff,
+                                            RemergeHashTree hashes, int threadNumber) {
             super("RemergeThread-" + threadNumber);
             this.rootCollection = rootCollection;
             this.partialRemerge = partialRemerge;
             this.skipAgeCutoff = skipAgeCutoff;
+            this.hashes = hashes;
             this.setPriority(Thread.MIN_PRIORITY);
         }
 
@@ -681,7 +806,7 @@ public class BasicHandler extends AbstractHandler {
                     fileList.add(new LightRemoteInode(file));
                 }
 
-                if (!partialRemerge || inodesModified) {
+                if (isSendRequired(hashes, path, fileList, pathLastModified, partialRemerge, inodesModified)) {
                     for (String dir : dirList) {
                         waitForDepth(dir);
                     }
@@ -0,0 +1,146 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.protocol;
+
+import org.drftpd.common.slave.HandlerPoolStatus;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded worker pool for one {@link HandlerPoolType}, keeping track of queue wait and run times.
+ *
+ * @version $Id$
+ */
+public class HandlerPool {
+
+    private final HandlerPoolType _type;
+
+    private final ThreadPoolExecutor _executor;
+
+    private final AtomicLong _rejected = new AtomicLong();
+
+    private long _finished = 0;
+
+    private long _totalWait = 0;
+
+    private long _maxWait = 0;
+
+    private long _totalRun = 0;
+
+    private long _maxRun = 0;
+
+    /**
+     * @param type The type of the pool, used to name the threads
+     * @param threads Maximum number of threads, 0 for a new thread for every command
+     * @param queue Number of commands that may wait for a thread, 0 to run commands on a thread of their own
+     *              when all threads are busy
+     */
+    public HandlerPool(HandlerPoolType type, int threads, int queue) {
+        _type = type;
+        ThreadFactory factory = new HandlerThreadFactory(type);
+        if (threads <= 0) {
+            _executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), factory);
+        } else if (queue > 0) {
+            _executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queue), factory);
+            _executor.allowCoreThreadTimeOut(true);
+        } else {
+            _executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), factory, (r, executor) -> {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("The " + type.getConfigName() + " pool is shut down");
+                        }
+                        factory.newThread(r).start();
+                    });
+            _executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    public HandlerPoolType getType() {
+        return _type;
+    }
+
+    /**
+     * @throws RejectedExecutionException if all threads are busy and the queue is full
+     */
+    public void execute(final Runnable command) {
+        final long queued = System.nanoTime();
+        try {
+            _executor.execute(() -> {
+                long started = System.nanoTime();
+                try {
+                    command.run();
+                } finally {
+                    // handlers like remerge lower the priority of their thread
+                    Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
+                    finished(started - queued, System.nanoTime() - started);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            _rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private synchronized void finished(long wait, long run) {
+        _finished++;
+        _totalWait += wait;
+        _maxWait = Math.max(_maxWait, wait);
+        _totalRun += run;
+        _maxRun = Math.max(_maxRun, run);
+    }
+
+    /**
+     * Takes a snapshot of the pool, the latencies are reset afterwards.
+     */
+    public synchronized HandlerPoolStatus getStatus() {
+        long avgWait = _finished == 0 ? 0 : _totalWait / _finished;
+        long avgRun = _finished == 0 ? 0 : _totalRun / _finished;
+        HandlerPoolStatus status = new HandlerPoolStatus(_type.getConfigName(),
+                _executor.getMaximumPoolSize(), _executor.getActiveCount(), _executor.getQueue().size(),
+                _executor.getCompletedTaskCount(), _rejected.get(),
+                TimeUnit.NANOSECONDS.toMillis(avgWait), TimeUnit.NANOSECONDS.toMillis(_maxWait),
+                TimeUnit.NANOSECONDS.toMillis(avgRun), TimeUnit.NANOSECONDS.toMillis(_maxRun));
+        _finished = 0;
+        _totalWait = 0;
+        _maxWait = 0;
+        _totalRun = 0;
+        _maxRun = 0;
+        return status;
+    }
+
+    public void shutdown() {
+        _executor.shutdown();
+    }
+
+    private static class HandlerThreadFactory implements ThreadFactory {
+        private final HandlerPoolType _type;
+
+        private HandlerThreadFactory(HandlerPoolType type) {
+            _type = type;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("AsyncCommandHandler - " + _type.getConfigName() + " - " + t.getId());
+            return t;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.protocol;
+
+/**
+ * The worker pools commands from the master are executed in.
+ * Each pool is bounded on its own, so a burst of slow disk work can not starve pings or transfers.
+ *
+ * @version $Id$
+ */
+public enum HandlerPoolType {
+    /**
+     * Short commands the master is waiting on, pings, transfer setup and remerge control
+     */
+    CONTROL,
+    /**
+     * Data transfers, each keeps its thread for the duration of the transfer
+     */
+    TRANSFER,
+    /**
+     * Everything that reads through the filesystem, checksums, deletes, remerge and plugin handlers
+     */
+    DISK;
+
+    /**
+     * @return The name used for this pool in slave.conf
+     */
+    public String getConfigName() {
+        return name().toLowerCase();
+    }
+}
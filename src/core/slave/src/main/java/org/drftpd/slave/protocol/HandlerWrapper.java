@@ -28,10 +28,12 @@ import java.lang.reflect.Method;
 public class HandlerWrapper {
     private final AbstractHandler _ah;
     private final Method _method;
+    private final HandlerPoolType _poolType;
 
-    public HandlerWrapper(AbstractHandler ah, Method method) {
+    public HandlerWrapper(AbstractHandler ah, Method method, HandlerPoolType poolType) {
         _ah = ah;
         _method = method;
+        _poolType = poolType;
     }
 
     public Method getMethod() {
@@ -41,4 +43,8 @@ public class HandlerWrapper {
     public AbstractHandler getAsyncHandler() {
         return _ah;
     }
+
+    public HandlerPoolType getPoolType() {
+        return _poolType;
+    }
 }
@@ -22,16 +22,22 @@ import org.apache.logging.log4j.Logger;
 import org.drftpd.common.exceptions.AsyncResponseException;
 import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
-import org.drftpd.common.protocol.HandshakeWrapper;
-import org.drftpd.common.protocol.ProtocolException;
+import org.drftpd.common.protocol.*;
+import org.drftpd.common.slave.HandlerPoolStatus;
 import org.drftpd.slave.Slave;
+import org.drftpd.slave.network.AsyncResponseHandlerStats;
 import org.reflections.Reflections;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -49,6 +55,10 @@ public class SlaveProtocolCentral {
     public Map<String, HandlerWrapper> _handlersMap;
     public List<String> _protocols;
     private final Slave _slave;
+    private final MessageCodecRegistry _codecRegistry;
+    private final Map<HandlerPoolType, HandlerPool> _pools;
+    private final int _statsInterval;
+    private ScheduledExecutorService _statsReporter;
 
     /**
      * Instantiate the Central and load all connected handlers.
@@ -57,6 +67,9 @@ public class SlaveProtocolCentral {
      */
     public SlaveProtocolCentral(Slave slave) {
         _slave = slave;
+        _codecRegistry = new MessageCodecRegistry(new Reflections("org.drftpd").getSubTypesOf(MessageCodec.class));
+        _pools = loadPools(slave.getConfig());
+        _statsInterval = Integer.parseInt(slave.getConfig().getProperty("handler.stats.interval", "60"));
         loadHandlers();
     }
 
@@ -74,7 +87,8 @@ public class SlaveProtocolCentral {
     /**
      * Whenever the Slave connects to the master, it receives a List containing all ProtocolExtensions loaded by master.<br>
      * Slave will iterate through this List, checking if the requested extension is also loaded by the slave.<br>
-     * After the checking is done, Slave writes a {@link HandlerWrapper} to the socket and let master handles the rest.
+     * After the checking is done, Slave writes a {@link HandlerWrapper} to the socket and let master handles the rest.<br>
+     * If the slave offered other wire formats, it then waits for the master to pick the one used from here on.
      *
      * @see HandshakeWrapper
      */
@@ -111,13 +125,137 @@ public class SlaveProtocolCentral {
             hw.setPluginStatus(false);
         }
 
+        boolean negotiate = hw.pluginStatus() && getSlaveObject().offerFramedProtocol();
+        if (negotiate) {
+            hw.setWireFormats(Arrays.asList(FramedMessageStream.NAME, ObjectMessageStream.NAME));
+        }
+
         try {
             getSlaveObject().getOutputStream().writeObject(hw);
+            if (negotiate) {
+                getSlaveObject().getOutputStream().flush();
+                getSlaveObject().getOutputStream().reset();
+                negotiateWireFormat();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private void negotiateWireFormat() throws IOException {
+        Object o;
+        while (true) {
+            try {
+                o = getSlaveObject().getInputStream().readObject();
+                break;
+            } catch (SocketTimeoutException e) {
+                // master is still busy with the handshake
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        if (o instanceof AsyncCommandArgument) {
+            // The master does not support negotiation and already started sending commands
+            logger.info("Master does not support wire format negotiation, using java serialization");
+            getSlaveObject().setPendingCommand((AsyncCommandArgument) o);
+            return;
+        }
+
+        if (FramedMessageStream.NAME.equals(o)) {
+            getSlaveObject().setMessageStream(new FramedMessageStream(getSlaveObject().getRawInputStream(),
+                    getSlaveObject().getRawOutputStream(), _codecRegistry));
+        }
+        logger.info("Using wire format {} for the master connection", o);
+        // Masters that negotiate also know how to handle the pool statistics
+        startStatsReporter();
+    }
+
+    /**
+     * Creates the worker pools from slave.conf.<br>
+     * With handler.execution=thread every command gets a thread of its own, like before the pools existed.
+     */
+    private static Map<HandlerPoolType, HandlerPool> loadPools(Properties cfg) {
+        boolean threadPerCommand = cfg.getProperty("handler.execution", "pooled").equalsIgnoreCase("thread");
+        Map<HandlerPoolType, HandlerPool> pools = new EnumMap<>(HandlerPoolType.class);
+        for (HandlerPoolType type : HandlerPoolType.values()) {
+            String prefix = "handler.pool." + type.getConfigName();
+            int threads = threadPerCommand ? 0 : Integer.parseInt(cfg.getProperty(prefix + ".threads",
+                    String.valueOf(getDefaultThreads(type))));
+            int queue = Integer.parseInt(cfg.getProperty(prefix + ".queue", String.valueOf(getDefaultQueue(type))));
+            pools.put(type, new HandlerPool(type, threads, queue));
+            logger.debug("Handler pool {}: threads={}, queue={}", type.getConfigName(), threads, queue);
+        }
+        return Collections.unmodifiableMap(pools);
+    }
+
+    private static int getDefaultThreads(HandlerPoolType type) {
+        switch (type) {
+            case CONTROL:
+                return 8;
+            case TRANSFER:
+                return 500;
+            default:
+                return 16;
+        }
+    }
+
+    private static int getDefaultQueue(HandlerPoolType type) {
+        switch (type) {
+            case CONTROL:
+                return 1000;
+            case TRANSFER:
+                // a queued transfer would only time out on the client, it gets a thread of its own instead
+                return 0;
+            default:
+                return 10000;
+        }
+    }
+
+    private synchronized void startStatsReporter() {
+        if (_statsInterval <= 0 || _statsReporter != null) {
+            return;
+        }
+        _statsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("HandlerStats Reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        _statsReporter.scheduleWithFixedDelay(() -> {
+            try {
+                getSlaveObject().sendResponse(new AsyncResponseHandlerStats(getPoolStatus()));
+            } catch (Exception e) {
+                logger.warn("Unable to send handler statistics to the master", e);
+            }
+        }, _statsInterval, _statsInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return A snapshot of all worker pools, resets the latencies of the pools
+     */
+    public List<HandlerPoolStatus> getPoolStatus() {
+        List<HandlerPoolStatus> status = new ArrayList<>(_pools.size());
+        for (HandlerPool pool : _pools.values()) {
+            status.add(pool.getStatus());
+        }
+        return status;
+    }
+
+    public synchronized void shutdown() {
+        if (_statsReporter != null) {
+            _statsReporter.shutdownNow();
+            _statsReporter = null;
+        }
+        for (HandlerPool pool : _pools.values()) {
+            pool.shutdown();
+        }
+    }
+
+    public MessageCodecRegistry getCodecRegistry() {
+        return _codecRegistry;
+    }
+
     /**
      * Loads all connected Handlers and make them available for later usage.
      */
@@ -139,7 +277,9 @@ public class SlaveProtocolCentral {
                     if (!protocols.contains(protocolName)) {
                         protocols.add(protocolName);
                     }
-                    handlers.put(name, new HandlerWrapper(abstractHandler, handlerMethod));
+                    HandlerExecution execution = handlerMethod.getAnnotation(HandlerExecution.class);
+                    HandlerPoolType pool = execution == null ? HandlerPoolType.DISK : execution.value();
+                    handlers.put(name, new HandlerWrapper(abstractHandler, handlerMethod, pool));
                 }
             }
         } catch (Exception e) {
@@ -160,7 +300,8 @@ public class SlaveProtocolCentral {
     private void dumpHandlers() {
         for (Entry<String, HandlerWrapper> entry : _handlersMap.entrySet()) {
             HandlerWrapper hw = entry.getValue();
-            logger.debug("Handler for: {} -> {}.{}", entry.getKey(), hw.getAsyncHandler().getClass().getCanonicalName(), hw.getMethod().getName());
+            logger.debug("Handler for: {} -> {}.{} ({} pool)", entry.getKey(), hw.getAsyncHandler().getClass().getCanonicalName(),
+                    hw.getMethod().getName(), hw.getPoolType().getConfigName());
         }
     }
 
@@ -168,6 +309,31 @@ public class SlaveProtocolCentral {
         return _slave;
     }
 
+    /**
+     * Executes the command in the worker pool of its handler, the response is sent to the master from there.<br>
+     * If the pool is full the master gets an error right away instead of the command waiting indefinitely.
+     */
+    public void dispatchCommand(final AsyncCommandArgument ac) {
+        HandlerWrapper wrapper = _handlersMap.get(ac.getName());
+        // unknown commands are answered right away, no need to queue behind disk work
+        HandlerPoolType type = wrapper == null ? HandlerPoolType.CONTROL : wrapper.getPoolType();
+
+        try {
+            _pools.get(type).execute(() -> {
+                try {
+                    getSlaveObject().sendResponse(handleCommand(ac));
+                } catch (Throwable e) {
+                    logger.warn("Catched a throwable, sending to master", e);
+                    getSlaveObject().sendResponse(new AsyncResponseException(ac.getIndex(), e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("The {} handler pool is full, refusing {}", type.getConfigName(), ac);
+            getSlaveObject().sendResponse(new AsyncResponseException(ac.getIndex(),
+                    new IOException("Slave is busy, the " + type.getConfigName() + " handler pool is full")));
+        }
+    }
+
     public AsyncResponse handleCommand(AsyncCommandArgument ac) {
         HandlerWrapper wrapper = _handlersMap.get(ac.getName());
 
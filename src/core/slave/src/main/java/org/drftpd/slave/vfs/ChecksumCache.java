@@ -0,0 +1,126 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Remembers the CRC32 of files this slave has already checksummed, so the master can
+ * ask for a checksum (handleChecksum, remerge CRC fetches) without the file being read again.
+ *
+ * Entries are keyed on the physical path and are only valid as long as the size and last modified
+ * time of the file did not change. The cache is bounded and evicts the least recently used entry.
+ * The paths are also kept sorted, so a removed directory only touches the entries below it.
+ */
+public class ChecksumCache {
+
+    private final LinkedHashMap<String, CachedChecksum> _checksums;
+
+    private final TreeSet<String> _paths = new TreeSet<>();
+
+    public ChecksumCache(final int maxEntries) {
+        _checksums = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedChecksum> eldest) {
+                if (size() > maxEntries) {
+                    _paths.remove(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param file The file to get the checksum for
+     * @return The cached checksum or null if not known or the file changed since it was cached
+     */
+    public synchronized Long get(File file) {
+        CachedChecksum cached = _checksums.get(file.getPath());
+        if (cached == null) {
+            return null;
+        }
+        if (cached.getSize() != file.length() || cached.getLastModified() != file.lastModified()) {
+            _checksums.remove(file.getPath());
+            _paths.remove(file.getPath());
+            return null;
+        }
+        return cached.getChecksum();
+    }
+
+    /**
+     * Stores the checksum for the file as it currently is on disk
+     *
+     * @param file The file the checksum was calculated for
+     * @param checksum The calculated checksum
+     */
+    public synchronized void put(File file, long checksum) {
+        _paths.add(file.getPath());
+        _checksums.put(file.getPath(), new CachedChecksum(file.length(), file.lastModified(), checksum));
+    }
+
+    /**
+     * Forgets the checksum for the given path and, for directories, everything below it
+     *
+     * @param path The physical path that was removed or renamed
+     */
+    public synchronized void remove(String path) {
+        if (_paths.remove(path)) {
+            _checksums.remove(path);
+        }
+        // everything starting with path + separator sorts before path + (separator + 1)
+        NavigableSet<String> below = _paths.subSet(path + File.separatorChar, true,
+                path + (char) (File.separatorChar + 1), false);
+        for (String key : below) {
+            _checksums.remove(key);
+        }
+        below.clear();
+    }
+
+    public synchronized int size() {
+        return _checksums.size();
+    }
+
+    private static class CachedChecksum {
+        private final long _size;
+        private final long _lastModified;
+        private final long _checksum;
+
+        private CachedChecksum(long size, long lastModified, long checksum) {
+            _size = size;
+            _lastModified = lastModified;
+            _checksum = checksum;
+        }
+
+        private long getSize() {
+            return _size;
+        }
+
+        private long getLastModified() {
+            return _lastModified;
+        }
+
+        private long getChecksum() {
+            return _checksum;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.slave.LightRemoteInode;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes of the directory listings sent to the master during a remerge.
+ *
+ * Every directory is stored with the hash of its listing, the name, type, size and last modified
+ * time of each entry and the last modified time of the directory itself. The hashes of all
+ * directories combine into a single root hash, a directory's tree hash covers its listing and the
+ * tree hashes of its subdirectories.
+ *
+ * The tree of the last remerge the master acknowledged is kept on disk. When the master still
+ * knows its root hash on the next connect, listings that did not change since are not sent again.
+ *
+ * Safe for use by several remerge threads at once while it's being filled.
+ */
+public class RemergeHashTree {
+    private static final Logger logger = LogManager.getLogger(RemergeHashTree.class);
+
+    private static final int FILE_VERSION = 1;
+
+    private final Map<String, Long> _listings = new ConcurrentHashMap<>();
+
+    private final RemergeHashTree _baseline;
+
+    private final AtomicInteger _changed = new AtomicInteger();
+
+    /**
+     * @param baseline The tree of the last acknowledged remerge, or null if listings
+     *                 are to be compared with nothing
+     */
+    public RemergeHashTree(RemergeHashTree baseline) {
+        _baseline = baseline;
+    }
+
+    public boolean hasBaseline() {
+        return _baseline != null;
+    }
+
+    /**
+     * Stores the hash of a directory listing.
+     *
+     * @return true if the listing differs from the baseline or there is no baseline
+     */
+    public boolean put(String path, long listingHash) {
+        _listings.put(path, listingHash);
+        Long previous = _baseline == null ? null : _baseline._listings.get(path);
+        if (previous == null || previous != listingHash) {
+            _changed.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The listing hash of the directory, or null if it's not part of the tree
+     */
+    public Long get(String path) {
+        return _listings.get(path);
+    }
+
+    public int size() {
+        return _listings.size();
+    }
+
+    /**
+     * @return The number of directories added with a listing that differs from the baseline
+     */
+    public int getChanged() {
+        return _changed.get();
+    }
+
+    /**
+     * Hashes a directory listing, the order of the files does not matter.
+     */
+    public static long hashListing(Collection<LightRemoteInode> files, long lastModified) {
+        List<LightRemoteInode> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(LightRemoteInode::getName));
+        MessageDigest digest = newDigest();
+        update(digest, lastModified);
+        for (LightRemoteInode file : sorted) {
+            update(digest, file.getName());
+            digest.update((byte) (file.isDirectory() ? 1 : 0));
+            update(digest, file.length());
+            update(digest, file.lastModified());
+        }
+        return toLong(digest.digest());
+    }
+
+    /**
+     * @param root The path the remerge started at
+     * @return The tree hash of the root, directories with a parent that's not in the tree are not included
+     */
+    public long getRootHash(String root) {
+        Map<String, List<String>> children = new HashMap<>();
+        for (String path : _listings.keySet()) {
+            if (!path.equals(root)) {
+                children.computeIfAbsent(getParent(path), k -> new ArrayList<>()).add(path);
+            }
+        }
+        return getTreeHash(root, children);
+    }
+
+    private long getTreeHash(String path, Map<String, List<String>> children) {
+        MessageDigest digest = newDigest();
+        Long listing = _listings.get(path);
+        update(digest, listing == null ? 0L : listing);
+        List<String> subdirs = children.get(path);
+        if (subdirs != null) {
+            Collections.sort(subdirs);
+            for (String subdir : subdirs) {
+                update(digest, subdir);
+                update(digest, getTreeHash(subdir, children));
+            }
+        }
+        return toLong(digest.digest());
+    }
+
+    private static String getParent(String path) {
+        // remerge paths of the top level directories start with a double slash, "//dir"
+        return path.substring(0, Math.max(1, path.lastIndexOf('/')));
+    }
+
+    /**
+     * Writes the tree, prefixed with its root hash.
+     */
+    public void write(File file, long rootHash) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(rootHash);
+            out.writeInt(_listings.size());
+            for (Map.Entry<String, Long> entry : _listings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param rootHash The root hash the tree is expected to have
+     * @return The tree stored in the file, or null if there is none or it has a different root hash
+     */
+    public static RemergeHashTree read(File file, long rootHash) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION || in.readLong() != rootHash) {
+                return null;
+            }
+            RemergeHashTree tree = new RemergeHashTree(null);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                tree._listings.put(in.readUTF(), in.readLong());
+            }
+            return tree;
+        } catch (IOException e) {
+            logger.warn("Unable to read remerge hashes from {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The root hash stored in the file, or null if it can't be read
+     */
+    public static Long readRootHash(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == FILE_VERSION ? in.readLong() : null;
+        } catch (IOException e) {
+            logger.warn("Unable to read remerge hashes from {}", file, e);
+            return null;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        update(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void update(MessageDigest digest, long value) {
+        for (int i = 56; i >= 0; i -= 8) {
+            digest.update((byte) (value >>> i));
+        }
+    }
+
+    private static long toLong(byte[] hash) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -38,6 +38,8 @@ public class RootCollection {
     private ArrayList<Root> _roots;
     private Slave _slave;
     private ThreadPoolExecutor _pool;
+    private RootLocationIndex _index;
+    private RootWatcher _watcher;
 
     public RootCollection(Slave slave, Collection<Root> roots) throws IOException {
         /** sanity checks * */
@@ -51,6 +53,47 @@ public class RootCollection {
                     new ThreadPoolExecutor.CallerRunsPolicy());
             _pool.allowCoreThreadTimeOut(true);
         }
+        if (_slave.useRootIndex()) {
+            // roots are tracked as bits of a long
+            if (_roots.size() > Long.SIZE) {
+                logger.warn("Root index disabled, it supports at most {} roots", Long.SIZE);
+            } else {
+                _index = new RootLocationIndex();
+                startIndexSweep(_slave.getRootIndexSweepInterval());
+            }
+        }
+    }
+
+    private void startIndexSweep(int minutes) {
+        if (minutes <= 0) {
+            return;
+        }
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("Root Index Sweep");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::rebuildIndex, minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Replaces the root index with what is currently on disk, picks up changes made outside of the slave
+     */
+    public void rebuildIndex() {
+        if (_index == null) {
+            return;
+        }
+        ArrayList<File> rootFiles = new ArrayList<>(_roots.size());
+        for (Root root : _roots) {
+            rootFiles.add(root.getFile());
+        }
+        try {
+            _index.rebuild(rootFiles);
+        } catch (Exception e) {
+            logger.error("Root index sweep failed", e);
+        }
     }
 
     private static void validateRoots(Collection<Root> roots) throws IOException {
@@ -138,10 +181,21 @@ public class RootCollection {
      */
     public TreeSet<String> getLocalInodes(String path) {
         TreeSet<String> files = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
-        for (Root root : _roots) {
-            String[] fileArray = root.getFile(path).list();
+        long dirMask = 0L;
+        HashMap<String, Long> children = _index == null ? null : new HashMap<>();
+        for (int i = 0; i < _roots.size(); i++) {
+            String[] fileArray = _roots.get(i).getFile(path).list();
             if (fileArray == null) continue;
             files.addAll(Arrays.asList(fileArray));
+            if (children != null) {
+                dirMask |= 1L << i;
+                for (String name : fileArray) {
+                    children.merge(name, 1L << i, (a, b) -> a | b);
+                }
+            }
+        }
+        if (_index != null) {
+            _index.setListing(path, dirMask, children);
         }
         return files;
     }
@@ -170,6 +224,19 @@ public class RootCollection {
                 // Loop around and wait again
             }
         }
+        if (_index != null) {
+            long dirMask = 0L;
+            HashMap<String, Long> children = new HashMap<>();
+            for (int i = 0; i < _roots.size(); i++) {
+                if (rootFiles[i] != null) {
+                    dirMask |= 1L << i;
+                    for (File file : rootFiles[i]) {
+                        children.merge(file.getName(), 1L << i, (a, b) -> a | b);
+                    }
+                }
+            }
+            _index.setListing(path, dirMask, children);
+        }
         long lastModified = Long.MIN_VALUE;
         for (int i = 0; i < _roots.size(); i++) {
             if (rootFiles[i] != null) {
@@ -237,6 +304,7 @@ public class RootCollection {
 
         PhysicalFile file = bestRoot.getFile(dir);
         file.mkdirs2();
+        addLocation(dir, bestRoot);
 
         return file;
     }
@@ -260,16 +328,18 @@ public class RootCollection {
             throws FileNotFoundException {
         ArrayList<Root> roots = new ArrayList<>();
 
-
-        for (Root r : _roots) {
-            if (r.getFile(path).exists()) {
-                roots.add(r);
+        if (_index != null) {
+            long mask = getRootMask(path);
+            for (int i = 0; i < _roots.size(); i++) {
+                if ((mask & (1L << i)) != 0) {
+                    roots.add(_roots.get(i));
+                }
             }
-        }
-        for (Root root : _roots) {
-
-            if (root.getFile(path).exists()) {
-                roots.add(root);
+        } else {
+            for (Root root : _roots) {
+                if (root.getFile(path).exists()) {
+                    roots.add(root);
+                }
             }
         }
 
@@ -282,15 +352,108 @@ public class RootCollection {
     }
 
     public Root getRootForFile(String path) throws FileNotFoundException {
-        for (Root root : _roots) {
-            File file = new File(root.getPath() + PhysicalFile.separatorChar + path);
-            if (file.exists()) {
-                return root;
+        if (_index != null) {
+            long mask = getRootMask(path);
+            if (mask != 0) {
+                return _roots.get(Long.numberOfTrailingZeros(mask));
+            }
+        } else {
+            for (Root root : _roots) {
+                File file = new File(root.getPath() + PhysicalFile.separatorChar + path);
+                if (file.exists()) {
+                    return root;
+                }
             }
         }
         throw new FileNotFoundException(path + " wasn't found in any root");
     }
 
+    /**
+     * Looks the path up in the root index, paths the index does not know about are probed on all roots.
+     */
+    private long getRootMask(String path) {
+        long mask = _index.getRoots(path);
+        if (mask == RootLocationIndex.UNKNOWN) {
+            mask = 0L;
+            for (int i = 0; i < _roots.size(); i++) {
+                if (_roots.get(i).getFile(path).exists()) {
+                    mask |= 1L << i;
+                }
+            }
+            if (mask != 0) {
+                _index.add(path, mask);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Records that path was created on root
+     */
+    public void addLocation(String path, Root root) {
+        if (_index != null) {
+            _index.add(path, 1L << _roots.indexOf(root));
+        }
+    }
+
+    /**
+     * Records that the file, given by its physical location, was created
+     */
+    public void addLocation(String path, File file) {
+        if (_index == null) {
+            return;
+        }
+        for (Root root : _roots) {
+            if (file.getPath().startsWith(root.getPath() + File.separatorChar)) {
+                addLocation(path, root);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records that path and everything below it was removed from root
+     */
+    public void removeLocation(String path, Root root) {
+        if (_index != null) {
+            _index.remove(path, 1L << _roots.indexOf(root));
+        }
+    }
+
+    /**
+     * Records that from was renamed to to on root
+     */
+    public void moveLocation(String from, String to, Root root) {
+        if (_index != null) {
+            _index.move(from, to, 1L << _roots.indexOf(root));
+        }
+    }
+
+    /**
+     * Watches the roots for changes made outside of drftpd
+     */
+    public void setWatcher(RootWatcher watcher) {
+        _watcher = watcher;
+    }
+
+    /**
+     * Records that the slave starts changing path, the root watcher does not report it
+     */
+    public void beginChange(String path) {
+        if (_watcher != null) {
+            _watcher.beginChange(path);
+        }
+    }
+
+    /**
+     * Records that the slave is done changing path
+     */
+    public void endChange(String path) {
+        if (_watcher != null) {
+            _watcher.endChange(path);
+        }
+    }
+
     public long getTotalDiskSpaceAvailable() {
         long totalDiskSpaceAvailable = 0;
 
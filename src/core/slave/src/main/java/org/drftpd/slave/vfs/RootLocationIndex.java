@@ -0,0 +1,440 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of which roots hold a path, so lookups do not have to stat the path on every root.
+ *
+ * Roots are identified by their position in the {@link RootCollection}, a lookup returns a bitmask
+ * of those positions. Directories listed on all roots (during remerge or a sweep) are marked as listed,
+ * paths below a listed directory that are not in the index are known not to exist.
+ * Anything else is unknown and has to be probed on disk by the caller.
+ *
+ * Changes made outside of the slave are only picked up by the next remerge or {@link #rebuild(List)}.
+ */
+public class RootLocationIndex {
+    private static final Logger logger = LogManager.getLogger(RootLocationIndex.class);
+
+    /**
+     * Returned by {@link #getRoots(String)} for paths the index knows nothing about
+     */
+    public static final long UNKNOWN = -1L;
+
+    private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+    private Node _root = new Node();
+
+    // Changes made while a rebuild is running, replayed on the rebuilt tree
+    private List<Consumer<Node>> _journal = null;
+
+    /**
+     * @param path The path relative to the roots
+     * @return Bitmask of the roots holding the path, 0 if the path does not exist or {@link #UNKNOWN}
+     */
+    public long getRoots(String path) {
+        String[] parts = split(path);
+        if (parts == null) {
+            return UNKNOWN;
+        }
+        _lock.readLock().lock();
+        try {
+            Node node = _root;
+            for (String part : parts) {
+                Node child = node.getChild(part);
+                if (child == null) {
+                    return node._listed ? 0L : UNKNOWN;
+                }
+                node = child;
+            }
+            return node._mask != 0 ? node._mask : UNKNOWN;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the path, and so all its parent directories, exists on the given roots
+     */
+    public void add(String path, final long mask) {
+        final String[] parts = split(path);
+        if (parts == null) {
+            return;
+        }
+        mutate(root -> {
+            Node node = root;
+            node._mask |= mask;
+            for (String part : parts) {
+                node = node.getOrCreateChild(part);
+                node._mask |= mask;
+            }
+        });
+    }
+
+    /**
+     * Records that the path and everything below it is gone from the given roots
+     */
+    public void remove(String path, final long mask) {
+        final String[] parts = split(path);
+        if (parts == null) {
+            return;
+        }
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("Can not remove the root directory");
+        }
+        mutate(root -> retain(root, parts, ~mask));
+    }
+
+    /**
+     * Records the rename of a path on the given root, including everything below it
+     */
+    public void move(String from, String to, final long mask) {
+        final String[] fromParts = split(from);
+        final String[] toParts = split(to);
+        if (fromParts == null || toParts == null || fromParts.length == 0 || toParts.length == 0) {
+            return;
+        }
+        mutate(root -> {
+            Node source = find(root, fromParts);
+            Node moved = source == null ? null : source.copy(mask);
+            retain(root, fromParts, ~mask);
+            Node parent = root;
+            parent._mask |= mask;
+            for (int i = 0; i < toParts.length - 1; i++) {
+                parent = parent.getOrCreateChild(toParts[i]);
+                parent._mask |= mask;
+            }
+            String name = toParts[toParts.length - 1];
+            Node target = parent.getChild(name);
+            if (moved == null) {
+                // We never saw the source, so we know nothing about its contents
+                target = parent.getOrCreateChild(name);
+                target._mask |= mask;
+                target._listed = false;
+            } else if (target == null) {
+                if (!parent._listed) {
+                    moved._listed = false;
+                }
+                parent.putChild(name, moved);
+            } else {
+                target.merge(moved);
+            }
+        });
+    }
+
+    /**
+     * Records the contents of a directory as listed on all roots, replacing what was known about it before.
+     *
+     * @param path The directory that was listed
+     * @param dirMask The roots the directory exists on
+     * @param children The names found in the directory with the roots they exist on
+     */
+    public void setListing(String path, final long dirMask, final Map<String, Long> children) {
+        final String[] parts = split(path);
+        if (parts == null) {
+            return;
+        }
+        mutate(root -> {
+            if (dirMask == 0) {
+                if (parts.length > 0) {
+                    retain(root, parts, 0L);
+                }
+                return;
+            }
+            Node node = root;
+            node._mask |= dirMask;
+            for (String part : parts) {
+                node = node.getOrCreateChild(part, false);
+                node._mask |= dirMask;
+            }
+            node.retain(dirMask);
+            if (node._children != null) {
+                for (Iterator<Map.Entry<String, Node>> iter = node._children.entrySet().iterator(); iter.hasNext(); ) {
+                    Map.Entry<String, Node> entry = iter.next();
+                    Long mask = children.get(entry.getKey());
+                    if (mask == null) {
+                        iter.remove();
+                    } else {
+                        entry.getValue().retain(mask);
+                        if (entry.getValue()._mask == 0) {
+                            iter.remove();
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, Long> entry : children.entrySet()) {
+                // found by the listing, it may have been created outside of drftpd with contents
+                node.getOrCreateChild(entry.getKey(), false)._mask |= entry.getValue();
+            }
+            node._listed = true;
+        });
+    }
+
+    /**
+     * Walks all roots and replaces the index with what is on disk.
+     * Changes recorded while walking are applied on top of the result.
+     *
+     * @param roots The root directories, in the order used for the bitmasks
+     */
+    public void rebuild(List<File> roots) {
+        _lock.writeLock().lock();
+        try {
+            if (_journal != null) {
+                logger.warn("Root index rebuild already running");
+                return;
+            }
+            _journal = new ArrayList<>();
+        } finally {
+            _lock.writeLock().unlock();
+        }
+        Node fresh = new Node();
+        int count = 0;
+        try {
+            for (int i = 0; i < roots.size(); i++) {
+                count += walk(roots.get(i).toPath(), fresh, 1L << i);
+            }
+        } finally {
+            _lock.writeLock().lock();
+            try {
+                for (Consumer<Node> op : _journal) {
+                    op.accept(fresh);
+                }
+                _root = fresh;
+                _journal = null;
+            } finally {
+                _lock.writeLock().unlock();
+            }
+        }
+        logger.info("Root index rebuilt with {} paths", count);
+    }
+
+    private static int walk(Path rootPath, final Node fresh, final long mask) {
+        final Deque<Node> stack = new ArrayDeque<>();
+        final int[] count = {0};
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    Node node = stack.isEmpty() ? fresh : stack.peek().getOrCreateChild(dir.getFileName().toString());
+                    node._mask |= mask;
+                    node._listed = true;
+                    stack.push(node);
+                    count[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    Node node = stack.peek().getOrCreateChild(file.getFileName().toString());
+                    node._mask |= mask;
+                    node._listed = true;
+                    count[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Unable to index {}", file, e);
+                    if (!stack.isEmpty()) {
+                        stack.peek().getOrCreateChild(file.getFileName().toString())._mask |= mask;
+                        // Anything below it has to be probed
+                        stack.peek()._listed = false;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    Node node = stack.pop();
+                    if (e != null) {
+                        logger.warn("Unable to list {}", dir, e);
+                        node._listed = false;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Unable to walk root {}", rootPath, e);
+            fresh._listed = false;
+        }
+        return count[0];
+    }
+
+    private void mutate(Consumer<Node> op) {
+        _lock.writeLock().lock();
+        try {
+            op.accept(_root);
+            if (_journal != null) {
+                _journal.add(op);
+            }
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Limits the node at the given path to the roots in mask and drops it if no root is left
+     */
+    private static void retain(Node root, String[] parts, long mask) {
+        Node parent = find(root, Arrays.copyOf(parts, parts.length - 1));
+        if (parent == null) {
+            return;
+        }
+        String name = parts[parts.length - 1];
+        Node node = parent.getChild(name);
+        if (node != null) {
+            node.retain(mask);
+            if (node._mask == 0) {
+                parent._children.remove(name);
+            }
+        }
+    }
+
+    private static Node find(Node root, String[] parts) {
+        Node node = root;
+        for (String part : parts) {
+            node = node.getChild(part);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return The path components or null if the path can not be indexed
+     */
+    private static String[] split(String path) {
+        ArrayList<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/' || path.charAt(i) == File.separatorChar) {
+                if (i > start) {
+                    String part = path.substring(start, i);
+                    if (part.equals("..")) {
+                        return null;
+                    }
+                    if (!part.equals(".")) {
+                        parts.add(part);
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        return parts.toArray(new String[0]);
+    }
+
+    private static class Node {
+        private long _mask;
+        // True if the children of this node are known for all roots
+        private boolean _listed;
+        private HashMap<String, Node> _children;
+
+
+        private Node getChild(String name) {
+            return _children == null ? null : _children.get(name);
+        }
+
+        /**
+         * Used for paths created through the slave, a directory that was not there when its parent
+         * was listed is new and empty
+         */
+        private Node getOrCreateChild(String name) {
+            return getOrCreateChild(name, _listed);
+        }
+
+        private Node getOrCreateChild(String name, boolean listed) {
+            Node child = getChild(name);
+            if (child == null) {
+                child = new Node();
+                child._listed = listed;
+                putChild(name, child);
+            }
+            return child;
+        }
+
+        private void putChild(String name, Node child) {
+            if (_children == null) {
+                _children = new HashMap<>(4);
+            }
+            _children.put(name, child);
+        }
+
+        /**
+         * Clears all roots not in mask from this node and everything below it,
+         * children left without a root are dropped.
+         */
+        private void retain(long mask) {
+            _mask &= mask;
+            if (_children != null) {
+                for (Iterator<Node> iter = _children.values().iterator(); iter.hasNext(); ) {
+                    Node child = iter.next();
+                    child.retain(mask);
+                    if (child._mask == 0) {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return A detached copy of this node and everything below it, limited to the roots in mask
+         */
+        private Node copy(long mask) {
+            Node copy = new Node();
+            copy._mask = _mask & mask;
+            copy._listed = _listed;
+            if (_children != null) {
+                for (Map.Entry<String, Node> entry : _children.entrySet()) {
+                    if ((entry.getValue()._mask & mask) != 0) {
+                        copy.putChild(entry.getKey(), entry.getValue().copy(mask));
+                    }
+                }
+            }
+            return copy;
+        }
+
+        private void merge(Node other) {
+            _mask |= other._mask;
+            _listed = _listed && other._listed;
+            if (other._children != null) {
+                for (Map.Entry<String, Node> entry : other._children.entrySet()) {
+                    Node child = getChild(entry.getKey());
+                    if (child == null) {
+                        putChild(entry.getKey(), entry.getValue());
+                    } else {
+                        child.merge(entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.io.PhysicalFile;
+import org.drftpd.common.slave.LightRemoteInode;
+import org.drftpd.slave.Slave;
+import org.drftpd.slave.network.AsyncResponseChangeFeed;
+import org.drftpd.slave.network.AsyncResponseRemerge;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the roots for changes made outside of drftpd and sends the listings of the changed
+ * directories to the master, so these changes show up on the master without a remerge.
+ *
+ * Changes are coalesced per directory, a directory is listed once per flush however many of its
+ * entries changed. Directories that no longer exist when the changes are flushed are skipped, the
+ * listing of their parent removes them on the master, so deleting a whole tree ends up as a single
+ * listing. When more directories changed than allowed, or the watch service lost events, the changed
+ * top level directories, or all roots, are listed recursively instead.
+ *
+ * Changes done by the slave itself are ignored, the master made them.
+ *
+ * @version $Id$
+ */
+public class RootWatcher {
+    private static final Logger logger = LogManager.getLogger(RootWatcher.class);
+
+    // listings sent in one response
+    private static final int BATCH_SIZE = 64;
+
+    private final Slave _slave;
+
+    private final RootCollection _roots;
+
+    private final long _delay;
+
+    private final int _maxDirectories;
+
+    // changed directory -> whether everything below it has to be listed as well
+    private final TreeMap<String, Boolean> _changed = new TreeMap<>();
+
+    // paths the slave is changing -> time until which their events are ignored
+    private final Map<String, Long> _ownChanges = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, String> _keys = new HashMap<>();
+
+    private WatchService _watchService;
+
+    private boolean _registrationFailed = false;
+
+    /**
+     * @param delay Milliseconds changes are collected before they are sent
+     * @param maxDirectories Number of changed directories kept before they are merged into recursive listings
+     */
+    public RootWatcher(Slave slave, RootCollection roots, long delay, int maxDirectories) {
+        _slave = slave;
+        _roots = roots;
+        _delay = delay;
+        _maxDirectories = maxDirectories;
+    }
+
+    public void start() throws IOException {
+        _watchService = FileSystems.getDefault().newWatchService();
+        Thread t = new Thread(this::run, "Root Watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Ignores changes to path and everything below it until {@link #endChange(String)}
+     */
+    public void beginChange(String path) {
+        _ownChanges.put(normalize(path), Long.MAX_VALUE);
+    }
+
+    /**
+     * Keeps ignoring changes to path for the flush delay, events may still be on their way
+     */
+    public void endChange(String path) {
+        _ownChanges.put(normalize(path), System.currentTimeMillis() + _delay);
+    }
+
+    private void run() {
+        for (Root root : _roots.getRootList()) {
+            register(root.getFile().toPath(), "/");
+        }
+        logger.info("Watching {} directories for changes made outside of drftpd", _keys.size());
+
+        long flushAt = Long.MAX_VALUE;
+        while (true) {
+            try {
+                long wait = flushAt - System.currentTimeMillis();
+                WatchKey key;
+                if (flushAt == Long.MAX_VALUE) {
+                    key = _watchService.take();
+                } else if (wait > 0) {
+                    key = _watchService.poll(wait, TimeUnit.MILLISECONDS);
+                } else {
+                    key = null;
+                }
+                if (key != null) {
+                    handleEvents(key);
+                }
+                if (flushAt == Long.MAX_VALUE) {
+                    if (hasChanges()) {
+                        flushAt = System.currentTimeMillis() + _delay;
+                    }
+                } else if (System.currentTimeMillis() >= flushAt) {
+                    flush();
+                    // directories the slave was still changing are retried
+                    flushAt = hasChanges() ? System.currentTimeMillis() + _delay : Long.MAX_VALUE;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                logger.info("Root watcher stopped");
+                return;
+            } catch (Exception e) {
+                logger.error("Exception in root watcher", e);
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) {
+        String dir = _keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                logger.warn("Root watcher lost events, listing all roots");
+                markChanged("/", true);
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            String name = event.context().toString();
+            String path = getChild(dir, name);
+            if (isOwnChange(path)) {
+                continue;
+            }
+            markChanged(dir, false);
+            if (event.kind() == ENTRY_CREATE) {
+                Path file = ((Path) key.watchable()).resolve(name);
+                if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                    // might have been filled before it is watched, or moved here with its contents
+                    register(file, path);
+                    markChanged(path, true);
+                }
+            }
+        }
+        if (!key.reset()) {
+            _keys.remove(key);
+        }
+    }
+
+    private void register(Path dir, String path) {
+        if (_registrationFailed) {
+            return;
+        }
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                    WatchKey key = d.register(_watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                    String relative = dir.relativize(d).toString().replace(File.separatorChar, '/');
+                    _keys.put(key, relative.isEmpty() ? path : getChild(path, relative));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // removed while walking
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // most likely the limit of watches, inotify allows fs.inotify.max_user_watches per user
+            _registrationFailed = true;
+            logger.warn("Unable to watch {}, changes in directories that are not watched are only picked up by a remerge",
+                    dir, e);
+        }
+    }
+
+    /**
+     * Records that the listing of path changed, with recursive everything below path is listed as well
+     */
+    synchronized void markChanged(String path, boolean recursive) {
+        for (String parent = path; parent != null; parent = getParent(parent)) {
+            if (_changed.getOrDefault(parent, false)) {
+                return;
+            }
+        }
+        if (recursive) {
+            if (path.equals("/")) {
+                _changed.clear();
+            } else {
+                _changed.subMap(path + "/", path + "/\uffff").clear();
+            }
+        }
+        _changed.merge(path, recursive, Boolean::logicalOr);
+        if (_changed.size() > _maxDirectories) {
+            collapse();
+        }
+    }
+
+    /**
+     * Replaces the changed directories with recursive listings of their top level directories
+     */
+    private void collapse() {
+        TreeMap<String, Boolean> collapsed = new TreeMap<>();
+        for (Map.Entry<String, Boolean> entry : _changed.entrySet()) {
+            String topLevel = getTopLevel(entry.getKey());
+            collapsed.merge(topLevel, topLevel.equals(entry.getKey()) ? entry.getValue() : true, Boolean::logicalOr);
+        }
+        if (collapsed.size() > _maxDirectories) {
+            collapsed.clear();
+            collapsed.put("/", true);
+        }
+        logger.debug("{} changed directories merged into {} listings", _changed.size(), collapsed.size());
+        _changed.clear();
+        _changed.putAll(collapsed);
+    }
+
+    synchronized boolean hasChanges() {
+        return !_changed.isEmpty();
+    }
+
+    synchronized Map<String, Boolean> getChanged() {
+        return new TreeMap<>(_changed);
+    }
+
+    boolean isOwnChange(String path) {
+        long now = System.currentTimeMillis();
+        for (String parent = path; parent != null; parent = getParent(parent)) {
+            Long until = _ownChanges.get(parent);
+            if (until != null && until >= now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the slave is changing entries a listing of path would include
+     */
+    boolean isBusy(String path, boolean recursive) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> entry : _ownChanges.entrySet()) {
+            if (entry.getValue() < now) {
+                continue;
+            }
+            String changing = entry.getKey();
+            if (changing.equals(path) || path.equals(getParent(changing))
+                    || (recursive && (path.equals("/") || changing.startsWith(path + "/")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flush() {
+        Map<String, Boolean> changed;
+        synchronized (this) {
+            changed = new TreeMap<>(_changed);
+            _changed.clear();
+        }
+        long now = System.currentTimeMillis();
+        _ownChanges.values().removeIf(until -> until < now);
+        if (!_slave.isOnline()) {
+            // the remerge when connecting picks these up
+            return;
+        }
+        List<AsyncResponseRemerge> listings = getListings(changed);
+        for (int i = 0; i < listings.size(); i += BATCH_SIZE) {
+            _slave.sendResponse(new AsyncResponseChangeFeed(
+                    new ArrayList<>(listings.subList(i, Math.min(i + BATCH_SIZE, listings.size())))));
+        }
+    }
+
+    /**
+     * Lists the changed directories, subdirectories before their parent like a remerge does. The master
+     * only creates directories through the listing of the directory itself, a listing containing a
+     * directory it doesn't know yet is an error.
+     *
+     * @param changed changed directory -> whether everything below it has to be listed as well
+     */
+    public List<AsyncResponseRemerge> getListings(Map<String, Boolean> changed) {
+        ArrayList<AsyncResponseRemerge> listings = new ArrayList<>();
+        TreeSet<String> deferred = new TreeSet<>();
+        // descending order visits every directory after all directories below it
+        for (Map.Entry<String, Boolean> entry : new TreeMap<>(changed).descendingMap().entrySet()) {
+            String path = entry.getKey();
+            if (isBusy(path, entry.getValue()) || hasDeferredChild(deferred, path)) {
+                // its listing would include directories that are not sent yet
+                deferred.add(path);
+                markChanged(path, entry.getValue());
+                continue;
+            }
+            if (!exists(path)) {
+                // the listing of the parent removes it
+                continue;
+            }
+            list(path, entry.getValue(), listings);
+        }
+        return listings;
+    }
+
+    private static boolean hasDeferredChild(TreeSet<String> deferred, String path) {
+        String child = deferred.higher(path.equals("/") ? "/" : path + "/");
+        return child != null && (path.equals("/") || child.startsWith(path + "/"));
+    }
+
+    private void list(String path, boolean recursive, ArrayList<AsyncResponseRemerge> listings) {
+        AsyncResponseRemerge listing = list(path);
+        if (recursive) {
+            for (LightRemoteInode file : listing.getFiles()) {
+                if (file.isDirectory()) {
+                    list(getChild(path, file.getName()), true, listings);
+                }
+            }
+        }
+        listings.add(listing);
+        logger.debug("Sending changed directory {} to the master", path);
+    }
+
+    protected AsyncResponseRemerge list(String path) {
+        ArrayList<LightRemoteInode> files = new ArrayList<>();
+        for (String name : _roots.getLocalInodes(path)) {
+            String fullPath = getChild(path, name);
+            try {
+                PhysicalFile file = _roots.getFile(fullPath);
+                if (file.isSymbolicLink()) {
+                    continue;
+                }
+                files.add(new LightRemoteInode(file));
+            } catch (IOException e) {
+                // removed since it was listed, the parent is listed again for that
+                logger.debug("Unable to read {}", fullPath, e);
+            }
+        }
+        return new AsyncResponseRemerge(path, files, _roots.getLastModifiedForPath(path));
+    }
+
+    protected boolean exists(String path) {
+        for (Root root : _roots.getRootList()) {
+            if (root.getFile(path).isDirectory()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String path) {
+        path = path.replace('\\', '/');
+        while (path.contains("//")) {
+            path = path.replace("//", "/");
+        }
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.startsWith("/") ? path : "/" + path;
+    }
+
+    private static String getChild(String dir, String name) {
+        return dir.equals("/") ? "/" + name : dir + "/" + name;
+    }
+
+    static String getParent(String path) {
+        if (path.equals("/")) {
+            return null;
+        }
+        int index = path.lastIndexOf('/');
+        return index <= 0 ? "/" : path.substring(0, index);
+    }
+
+    static String getTopLevel(String path) {
+        int index = path.indexOf('/', 1);
+        return index == -1 ? path : path.substring(0, index);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BandwidthShaperTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testTokenBucket() {
+        TokenBucket bucket = new TokenBucket("test", 1000L);
+        long now = System.nanoTime() + SECOND;
+
+        // the burst is free
+        assertTrue(bucket.take(100, now) <= now);
+        // then the bytes are sent at the rate
+        assertEquals(now + SECOND - TokenBucket.BURST_NANOS, bucket.take(900, now), 1000000L);
+        // later takers queue up behind the debt
+        assertEquals(now + 2 * SECOND - TokenBucket.BURST_NANOS, bucket.take(1000, now), 1000000L);
+        assertEquals(2000, bucket.getTaken());
+
+        TokenBucket unlimited = new TokenBucket("unlimited", 0L);
+        assertEquals(now, unlimited.take(Long.MAX_VALUE / SECOND, now));
+    }
+
+    @Test
+    public void testChain() {
+        BandwidthShaper shaper = new BandwidthShaper();
+        shaper.configure(Map.of("shaping.download", "1000", "shaping.user", "500", "shaping.class.mp3", "100"));
+
+        TokenBucket[] buckets = shaper.getBuckets(true, "user", "MP3", 0L);
+        assertEquals(5, buckets.length);
+        assertEquals(0L, buckets[0].getRate());
+        assertEquals(1000L, buckets[1].getRate());
+        assertEquals(500L, buckets[2].getRate());
+        assertEquals(100L, buckets[3].getRate());
+
+        // the same user shares a bucket, uploads have their own direction
+        TokenBucket[] upload = shaper.getBuckets(false, "user", null, 0L);
+        assertEquals(4, upload.length);
+        assertEquals(0L, upload[1].getRate());
+        assertSame(buckets[2], upload[2]);
+
+        // reconfiguring changes the buckets in use
+        shaper.configure(Map.of("shaping.user", "1KB"));
+        assertEquals(1000L, buckets[2].getRate());
+        assertEquals(0L, buckets[1].getRate());
+        assertEquals(0L, buckets[3].getRate());
+    }
+
+    @Test
+    public void testThrottledInputStream() throws IOException {
+        byte[] data = new byte[300000];
+        ThrottledInputStream in = new ThrottledInputStream(new ByteArrayInputStream(data), 1000000L);
+        byte[] buf = new byte[10000];
+        long start = System.nanoTime();
+        while (in.read(buf) != -1) {
+            // reading
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(data.length, in.getTotalBytesRead());
+        // 300KB at 1MB/s minus the burst and the last read, which isn't waited for
+        assertTrue(elapsed >= 150_000_000L, "took " + elapsed);
+    }
+}
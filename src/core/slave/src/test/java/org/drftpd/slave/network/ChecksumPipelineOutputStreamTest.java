@@ -0,0 +1,127 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChecksumPipelineOutputStreamTest {
+
+    @TempDir
+    Path _dir;
+
+    @Test
+    public void testChecksumAcrossWrapAround() throws Exception {
+        byte[] data = new byte[10000];
+        new Random(42).nextBytes(data);
+        File file = _dir.resolve("upload").toFile();
+        CRC32 checksum = new CRC32();
+
+        // two small buffers, so the ring wraps around many times and writes end mid buffer
+        try (ChecksumPipelineOutputStream out = new ChecksumPipelineOutputStream(
+                new FileOutputStream(file), checksum, 2, 64, "test")) {
+            int off = 0;
+            int len = 1;
+            while (off < data.length) {
+                if (len % 7 == 0) {
+                    out.write(data[off++]);
+                } else {
+                    int count = Math.min(len, data.length - off);
+                    out.write(data, off, count);
+                    off += count;
+                }
+                len = len % 150 + 1;
+            }
+            out.flush();
+        }
+
+        CRC32 expected = new CRC32();
+        expected.update(data);
+        assertEquals(expected.getValue(), checksum.getValue());
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testWriterFailureReachesCaller() throws Exception {
+        FileOutputStream fileOut = new FileOutputStream(_dir.resolve("upload").toFile());
+        ChecksumPipelineOutputStream out = new ChecksumPipelineOutputStream(fileOut, new CRC32(), 2, 64, "test");
+        // the writer thread fails on the first buffer it writes to disk
+        fileOut.getChannel().close();
+
+        out.write(new byte[100]);
+        assertThrows(IOException.class, out::flush);
+        assertThrows(IOException.class, () -> out.write(new byte[100]));
+        assertThrows(IOException.class, out::close);
+    }
+
+    @Test
+    public void testCloseDuringBlockedWrite() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Checksum stalling = new CRC32() {
+            @Override
+            public void update(ByteBuffer buffer) {
+                // a stalled disk, the writer thread never gets to the next buffer
+                stalled.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.update(buffer);
+            }
+        };
+        ChecksumPipelineOutputStream out = new ChecksumPipelineOutputStream(
+                new FileOutputStream(_dir.resolve("upload").toFile()), stalling, 1, 16, "test");
+        try {
+            CompletableFuture<Void> transfer = CompletableFuture.runAsync(() -> {
+                try {
+                    // the first buffer is stuck in the writer, the second one never gets a free buffer
+                    out.write(new byte[64]);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            assertTrue(stalled.await(10, TimeUnit.SECONDS));
+
+            // like Transfer.abort() from another thread
+            assertTimeoutPreemptively(Duration.ofSeconds(10), out::close);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> transfer.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause().getCause());
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChecksumCacheTest {
+
+    @TempDir
+    Path _dir;
+
+    @Test
+    public void testRemoveSubtree() throws Exception {
+        ChecksumCache cache = new ChecksumCache(100);
+        File inside = create("dir/sub/file");
+        File direct = create("dir/file");
+        File sibling = create("dir2/file");
+        File prefixed = create("dir-other/file");
+        cache.put(inside, 1L);
+        cache.put(direct, 2L);
+        cache.put(sibling, 3L);
+        cache.put(prefixed, 4L);
+
+        cache.remove(new File(_dir.toFile(), "dir").getPath());
+        assertNull(cache.get(inside));
+        assertNull(cache.get(direct));
+        assertEquals(3L, cache.get(sibling));
+        assertEquals(4L, cache.get(prefixed));
+        assertEquals(2, cache.size());
+
+        cache.remove(sibling.getPath());
+        assertNull(cache.get(sibling));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ChecksumCache cache = new ChecksumCache(2);
+        File first = create("first");
+        File second = create("second");
+        File third = create("third");
+        cache.put(first, 1L);
+        cache.put(second, 2L);
+        cache.put(third, 3L);
+
+        assertNull(cache.get(first));
+        assertEquals(2, cache.size());
+        // the evicted path is gone from the sorted paths as well
+        cache.remove(_dir.toString());
+        assertEquals(0, cache.size());
+    }
+
+    private File create(String path) throws Exception {
+        File file = new File(_dir.toFile(), path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), path.getBytes());
+        return file;
+    }
+}
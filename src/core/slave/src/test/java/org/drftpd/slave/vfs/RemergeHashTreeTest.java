@@ -0,0 +1,98 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.drftpd.common.slave.LightRemoteInode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemergeHashTreeTest {
+
+    private static List<LightRemoteInode> listing(LightRemoteInode... files) {
+        return Arrays.asList(files);
+    }
+
+    private static LightRemoteInode file(String name, long size) {
+        return new LightRemoteInode(name, "drftpd", "drftpd", false, 1000L, size);
+    }
+
+    private static LightRemoteInode dir(String name) {
+        return new LightRemoteInode(name, "drftpd", "drftpd", true, 1000L, 0L);
+    }
+
+    private static RemergeHashTree tree(RemergeHashTree baseline, long releaseSize) {
+        RemergeHashTree tree = new RemergeHashTree(baseline);
+        tree.put("/", RemergeHashTree.hashListing(listing(dir("mp3")), 1000L));
+        tree.put("//mp3", RemergeHashTree.hashListing(listing(dir("release")), 1000L));
+        tree.put("//mp3/release", RemergeHashTree.hashListing(listing(file("a.mp3", releaseSize), file("b.mp3", 20L)), 1000L));
+        return tree;
+    }
+
+    @Test
+    public void testListingHash() {
+        long hash = RemergeHashTree.hashListing(listing(file("a", 1L), dir("b")), 1000L);
+        assertEquals(hash, RemergeHashTree.hashListing(listing(dir("b"), file("a", 1L)), 1000L));
+        assertNotEquals(hash, RemergeHashTree.hashListing(listing(file("a", 2L), dir("b")), 1000L));
+        assertNotEquals(hash, RemergeHashTree.hashListing(listing(file("a", 1L), file("b", 0L)), 1000L));
+        assertNotEquals(hash, RemergeHashTree.hashListing(listing(file("a", 1L), dir("b")), 2000L));
+        assertNotEquals(hash, RemergeHashTree.hashListing(Collections.emptyList(), 1000L));
+    }
+
+    @Test
+    public void testChanges() {
+        RemergeHashTree first = tree(null, 10L);
+        assertFalse(first.hasBaseline());
+        assertEquals(3, first.getChanged());
+
+        RemergeHashTree unchanged = tree(first, 10L);
+        assertEquals(0, unchanged.getChanged());
+        assertEquals(first.getRootHash("/"), unchanged.getRootHash("/"));
+
+        // a change deep down changes that listing and the root hash
+        RemergeHashTree changed = tree(first, 11L);
+        assertEquals(1, changed.getChanged());
+        assertNotEquals(first.getRootHash("/"), changed.getRootHash("/"));
+    }
+
+    @Test
+    public void testReadWrite(@TempDir File dir) throws Exception {
+        File file = new File(dir, "remerge.hashes");
+        RemergeHashTree tree = tree(null, 10L);
+        long rootHash = tree.getRootHash("/");
+
+        assertNull(RemergeHashTree.readRootHash(file));
+        assertNull(RemergeHashTree.read(file, rootHash));
+
+        tree.write(file, rootHash);
+        assertEquals(rootHash, RemergeHashTree.readRootHash(file));
+        assertNull(RemergeHashTree.read(file, rootHash + 1));
+
+        RemergeHashTree read = RemergeHashTree.read(file, rootHash);
+        assertNotNull(read);
+        assertEquals(3, read.size());
+        assertEquals(tree.get("//mp3/release"), read.get("//mp3/release"));
+        assertEquals(rootHash, read.getRootHash("/"));
+    }
+}
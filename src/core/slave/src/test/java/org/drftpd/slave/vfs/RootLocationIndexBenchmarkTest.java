@@ -0,0 +1,124 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares root lookups through {@link RootLocationIndex} with probing every root on disk. Paths that exist
+ * are found on the first matching root, missing ones, like the .sfv a zipscript looks for before it was
+ * uploaded, have every root probed.
+ */
+public class RootLocationIndexBenchmarkTest {
+
+    private static final Logger logger = LogManager.getLogger(RootLocationIndexBenchmarkTest.class);
+
+    private static final int ROOTS = 12;
+
+    private static final int RELEASES = 200;
+
+    private static final int FILES_PER_RELEASE = 50;
+
+    private static final int LOOKUPS = 200000;
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    public void benchmarkLookups(@TempDir Path tmp) throws Exception {
+        List<File> roots = new ArrayList<>();
+        for (int r = 0; r < ROOTS; r++) {
+            roots.add(Files.createDirectories(tmp.resolve("root" + r)).toFile());
+        }
+        List<String> existing = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (int d = 0; d < RELEASES; d++) {
+            // spread releases over the roots like disk selection does
+            Path dir = Files.createDirectories(roots.get(d % ROOTS).toPath().resolve("rel" + d));
+            for (int f = 0; f < FILES_PER_RELEASE; f++) {
+                Files.createFile(dir.resolve("file" + f + ".rar"));
+                existing.add("/rel" + d + "/file" + f + ".rar");
+            }
+            missing.add("/rel" + d + "/rel" + d + ".sfv");
+        }
+
+        RootLocationIndex index = new RootLocationIndex();
+        index.rebuild(roots);
+
+        // the first pass only warms up
+        for (int pass = 0; pass < 2; pass++) {
+            long probeExisting = probe(roots, existing, LOOKUPS);
+            long probeMissing = probe(roots, missing, 0);
+            long indexExisting = lookup(index, existing, LOOKUPS);
+            long indexMissing = lookup(index, missing, 0);
+            if (pass > 0) {
+                logger.info("{} roots, probing: {}ns per existing path, {}ns per missing path", ROOTS,
+                        probeExisting, probeMissing);
+                logger.info("{} roots, index: {}ns per existing path, {}ns per missing path", ROOTS,
+                        indexExisting, indexMissing);
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds per lookup
+     */
+    private static long probe(List<File> roots, List<String> paths, int expected) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String path = paths.get(i % paths.size());
+            for (File root : roots) {
+                if (new File(root, path).exists()) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        assertEquals(expected, found);
+        return nanos / LOOKUPS;
+    }
+
+    /**
+     * @return nanoseconds per lookup
+     */
+    private static long lookup(RootLocationIndex index, List<String> paths, int expected) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            long roots = index.getRoots(paths.get(i % paths.size()));
+            if (roots != 0 && roots != RootLocationIndex.UNKNOWN) {
+                found++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        assertEquals(expected, found);
+        return nanos / LOOKUPS;
+    }
+}
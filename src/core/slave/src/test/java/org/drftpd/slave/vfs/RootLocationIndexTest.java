@@ -0,0 +1,103 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RootLocationIndexTest {
+
+    @Test
+    public void testUnknownUntilListed() {
+        RootLocationIndex index = new RootLocationIndex();
+        assertEquals(RootLocationIndex.UNKNOWN, index.getRoots("/dir/file"));
+
+        Map<String, Long> children = new HashMap<>();
+        children.put("dir", 3L);
+        index.setListing("/", 3L, children);
+        assertEquals(3L, index.getRoots("/dir"));
+        assertEquals(0L, index.getRoots("/other"));
+        // dir itself was not listed yet
+        assertEquals(RootLocationIndex.UNKNOWN, index.getRoots("/dir/file"));
+
+        children.clear();
+        children.put("file", 2L);
+        index.setListing("/dir", 3L, children);
+        assertEquals(2L, index.getRoots("/dir/file"));
+        assertEquals(0L, index.getRoots("/dir/missing"));
+
+        // a directory found by listing its parent again was created outside of drftpd
+        children.clear();
+        children.put("dir", 3L);
+        children.put("new", 1L);
+        index.setListing("/", 3L, children);
+        assertEquals(1L, index.getRoots("/new"));
+        assertEquals(RootLocationIndex.UNKNOWN, index.getRoots("/new/file"));
+        assertEquals(2L, index.getRoots("/dir/file"));
+    }
+
+    @Test
+    public void testAddRemoveMove() {
+        RootLocationIndex index = new RootLocationIndex();
+        index.setListing("/", 1L, new HashMap<>());
+
+        index.add("/new/dir/file", 2L);
+        assertEquals(2L, index.getRoots("/new/dir/file"));
+        assertEquals(2L, index.getRoots("/new"));
+        // created below a listed directory, so its contents are known
+        assertEquals(0L, index.getRoots("/new/dir/other"));
+
+        index.move("/new/dir", "/moved/dir", 2L);
+        assertEquals(0L, index.getRoots("/new/dir"));
+        assertEquals(2L, index.getRoots("/moved/dir/file"));
+        assertEquals(2L, index.getRoots("/new"));
+
+        index.remove("/moved", 2L);
+        assertEquals(0L, index.getRoots("/moved/dir/file"));
+        assertEquals(0L, index.getRoots("/moved"));
+    }
+
+    @Test
+    public void testRebuild(@TempDir Path tmp) throws Exception {
+        Path root1 = Files.createDirectories(tmp.resolve("root1"));
+        Path root2 = Files.createDirectories(tmp.resolve("root2"));
+        Files.createDirectories(root1.resolve("rel/cd1"));
+        Files.createDirectories(root2.resolve("rel"));
+        Files.createFile(root1.resolve("rel/cd1/a.rar"));
+        Files.createFile(root2.resolve("rel/b.sfv"));
+
+        RootLocationIndex index = new RootLocationIndex();
+        index.add("/stale", 1L);
+        index.rebuild(Arrays.asList(root1.toFile(), root2.toFile()));
+
+        assertEquals(3L, index.getRoots("/rel"));
+        assertEquals(1L, index.getRoots("/rel/cd1/a.rar"));
+        assertEquals(2L, index.getRoots("rel" + File.separator + "b.sfv"));
+        assertEquals(0L, index.getRoots("/stale"));
+        assertEquals(0L, index.getRoots("/rel/c.nfo"));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RootWatcherTest {
+
+    @Test
+    public void testCoalesce() {
+        RootWatcher watcher = new RootWatcher(null, null, 1000, 100);
+        watcher.markChanged("/a/b", false);
+        watcher.markChanged("/a/b", false);
+        watcher.markChanged("/a", false);
+        Map<String, Boolean> changed = watcher.getChanged();
+        assertEquals(2, changed.size());
+        assertFalse(changed.get("/a/b"));
+
+        // a recursive listing covers the directories below it
+        watcher.markChanged("/a", true);
+        watcher.markChanged("/a/c", false);
+        changed = watcher.getChanged();
+        assertEquals(1, changed.size());
+        assertTrue(changed.get("/a"));
+
+        // but not directories that only share the prefix
+        watcher.markChanged("/ab", false);
+        assertEquals(2, watcher.getChanged().size());
+    }
+
+    @Test
+    public void testBounded() {
+        RootWatcher watcher = new RootWatcher(null, null, 1000, 3);
+        watcher.markChanged("/", false);
+        watcher.markChanged("/a/1", false);
+        watcher.markChanged("/a/2", false);
+        watcher.markChanged("/b", false);
+        Map<String, Boolean> changed = watcher.getChanged();
+        assertEquals(3, changed.size());
+        assertFalse(changed.get("/"));
+        assertTrue(changed.get("/a"));
+        assertFalse(changed.get("/b"));
+
+        watcher.markChanged("/c/1", false);
+        watcher.markChanged("/d/1", false);
+        changed = watcher.getChanged();
+        assertEquals(1, changed.size());
+        assertTrue(changed.get("/"));
+
+        watcher.markChanged("/e", false);
+        assertEquals(1, watcher.getChanged().size());
+    }
+
+    @Test
+    public void testOwnChanges() {
+        RootWatcher watcher = new RootWatcher(null, null, 1000, 100);
+        watcher.beginChange("/a/b/file");
+        assertTrue(watcher.isOwnChange("/a/b/file"));
+        assertFalse(watcher.isOwnChange("/a/b"));
+        assertTrue(watcher.isBusy("/a/b", false));
+        assertFalse(watcher.isBusy("/a", false));
+        assertTrue(watcher.isBusy("/a", true));
+
+        watcher.beginChange("/a/c");
+        assertTrue(watcher.isOwnChange("/a/c/file"));
+
+        // events may still arrive for the flush delay
+        watcher.endChange("/a/b/file");
+        assertTrue(watcher.isOwnChange("/a/b/file"));
+
+        RootWatcher expired = new RootWatcher(null, null, -1, 100);
+        expired.beginChange("/a/b/file");
+        expired.endChange("/a/b/file");
+        assertFalse(expired.isOwnChange("/a/b/file"));
+        assertFalse(expired.isBusy("/a/b", false));
+    }
+
+    @Test
+    public void testPaths() {
+        assertNull(RootWatcher.getParent("/"));
+        assertEquals("/", RootWatcher.getParent("/a"));
+        assertEquals("/a", RootWatcher.getParent("/a/b"));
+        assertEquals("/", RootWatcher.getTopLevel("/"));
+        assertEquals("/a", RootWatcher.getTopLevel("/a/b/c"));
+    }
+}
@@ -191,12 +191,12 @@ public class AutoNukeCommands extends CommandInterface {
                 for (DirectoryHandle sectionDir : sectionDirs) {
                     for (DirectoryHandle releaseDir : sectionDir.getDirectories(request.getUserObject())) {
                         // Dir globaly excluded?
-                        if (releaseDir.getName().matches(AutoNukeSettings.getSettings().getExcludedDirs())) continue;
+                        if (AutoNukeSettings.getSettings().getExcludedDirs().matcher(releaseDir.getName()).matches()) continue;
                         // return if any matching sub directories exist in _excludeSubDirs
                         boolean foundExcludedSubDir = false;
                         try {
                             for (DirectoryHandle subDir : releaseDir.getDirectoriesUnchecked()) {
-                                if (subDir.getName().matches(AutoNukeSettings.getSettings().getExcludedSubDirs())) {
+                                if (AutoNukeSettings.getSettings().getExcludedSubDirs().matcher(subDir.getName()).matches()) {
                                     foundExcludedSubDir = true;
                                     break;
                                 }
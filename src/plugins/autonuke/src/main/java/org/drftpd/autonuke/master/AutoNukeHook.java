@@ -62,7 +62,7 @@ public class AutoNukeHook {
         // Section globaly excluded?
         if (AutoNukeSettings.getSettings().getExcludedSections().contains(section)) return;
         // Dir globaly excluded?
-        if (newDir.getName().matches(AutoNukeSettings.getSettings().getExcludedDirs())) return;
+        if (AutoNukeSettings.getSettings().getExcludedDirs().matcher(newDir.getName()).matches()) return;
         // Check if parent dir is section root or root of a dated dir, if not return
         try {
             if (section instanceof DatedSection) {
@@ -84,7 +84,7 @@ public class AutoNukeHook {
         // return if any matching sub directories exist in _excludeSubDirs
         try {
             for (DirectoryHandle subDir : newDir.getDirectoriesUnchecked()) {
-                if (subDir.getName().matches(AutoNukeSettings.getSettings().getExcludedSubDirs())) {
+                if (AutoNukeSettings.getSettings().getExcludedSubDirs().matcher(subDir.getName()).matches()) {
                     return;
                 }
             }
@@ -20,6 +20,7 @@ package org.drftpd.autonuke.master;
 import org.drftpd.master.sections.SectionInterface;
 
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 /**
  * Holds all general AutoNuke settings
@@ -29,14 +30,14 @@ import java.util.ArrayList;
 public class AutoNukeSettings {
     private static AutoNukeSettings ref;
     private final ArrayList<SectionInterface> _excludedSections;
-    private String _excludedDirs, _excludedSubDirs;
+    private Pattern _excludedDirs, _excludedSubDirs;
     private boolean _debug;
     private String _nukeUser;
 
     private AutoNukeSettings() {
         _excludedSections = new ArrayList<>();
-        _excludedDirs = "";
-        _excludedSubDirs = "";
+        _excludedDirs = Pattern.compile("");
+        _excludedSubDirs = Pattern.compile("");
         _debug = true;
         _nukeUser = "drftpd";
     }
@@ -60,20 +61,20 @@ public class AutoNukeSettings {
         _excludedSections.clear();
     }
 
-    public String getExcludedDirs() {
+    public Pattern getExcludedDirs() {
         return _excludedDirs;
     }
 
     public void setExcludedDirs(String excludedDirs) {
-        _excludedDirs = excludedDirs;
+        _excludedDirs = Pattern.compile(excludedDirs);
     }
 
-    public String getExcludedSubDirs() {
+    public Pattern getExcludedSubDirs() {
         return _excludedSubDirs;
     }
 
     public void setExcludedSubDirs(String excludedSubDirs) {
-        _excludedSubDirs = excludedSubDirs;
+        _excludedSubDirs = Pattern.compile(excludedSubDirs);
     }
 
     public void setDebug(boolean debug) {
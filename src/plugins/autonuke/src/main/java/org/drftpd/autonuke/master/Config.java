@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 /**
  * @author scitz0
@@ -44,7 +45,7 @@ public abstract class Config {
     private final long _nuke_delay;
     private final String _irc;
     private final String _nuke_reason;
-    private final String _sub_directories;
+    private final Pattern _sub_directories;
     private final String _dated_format;
     private ArrayList<SectionInterface> _sections;
     private HashMap<String, Integer> _dated;
@@ -89,7 +90,7 @@ public abstract class Config {
         // Other
         _irc = PropertyHelper.getProperty(p, i + ".irc", "");
         _nuke_reason = PropertyHelper.getProperty(p, i + ".nuke.reason", "autonuke");
-        _sub_directories = PropertyHelper.getProperty(p, i + ".subdirs", "");
+        _sub_directories = Pattern.compile(PropertyHelper.getProperty(p, i + ".subdirs", ""));
         _dated_format = PropertyHelper.getProperty(p, i + ".dated.format", "MMdd");
         _min_age = Long.parseLong(PropertyHelper.getProperty(p, i + ".minage", "120")) * 60000;
         _max_age = Long.parseLong(PropertyHelper.getProperty(p, i + ".maxage", "20160")) * 60000;
@@ -161,7 +162,7 @@ public abstract class Config {
             // Dir ok, check subdirs
             try {
                 for (DirectoryHandle subDir : dir.getDirectoriesUnchecked()) {
-                    if (subDir.getName().matches(_sub_directories)) {
+                    if (_sub_directories.matcher(subDir.getName()).matches()) {
                         handleDirectory(configData, subDir, true);
                         if (configData.getNukeItem() != null) {
                             // Break and nuke dir!
@@ -25,17 +25,18 @@ import org.drftpd.master.vfs.InodeHandle;
 
 import java.io.FileNotFoundException;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 /**
  * @author scitz0
  */
 public class MissingConfig extends Config {
     private static final Logger logger = LogManager.getLogger(MissingConfig.class);
-    String _missing;
+    Pattern _missing;
 
     public MissingConfig(int i, Properties p) {
         super(i, p);
-        _missing = PropertyHelper.getProperty(p, i + ".missing");
+        _missing = Pattern.compile(PropertyHelper.getProperty(p, i + ".missing"));
     }
 
     /**
@@ -50,7 +51,7 @@ public class MissingConfig extends Config {
         try {
             for (InodeHandle i : dir.getInodeHandlesUnchecked()) {
                 if (i.isFile() || i.isDirectory()) {
-                    if (i.getName().matches(_missing)) {
+                    if (_missing.matcher(i.getName()).matches()) {
                         return true;
                     }
                 }
@@ -28,6 +28,7 @@ import org.drftpd.master.vfs.DirectoryHandle;
 
 import java.io.FileNotFoundException;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 /**
  * @author scitz0
@@ -35,12 +36,16 @@ import java.util.Properties;
 public class IMDBConfig extends Config {
     private static final Logger logger = LogManager.getLogger(IMDBConfig.class);
     String _field, _operator, _value;
+    Pattern _valuePattern;
 
     public IMDBConfig(int i, Properties p) {
         super(i, p);
         _field = PropertyHelper.getProperty(p, i + ".imdb.field", "");
         _operator = PropertyHelper.getProperty(p, i + ".imdb.operator", "");
         _value = PropertyHelper.getProperty(p, i + ".imdb.value", "");
+        if (_field.matches("(?i)Title|Language|Country|Director|Genres|Plot")) {
+            _valuePattern = Pattern.compile(_value);
+        }
     }
 
     /**
@@ -54,19 +59,19 @@ public class IMDBConfig extends Config {
         try {
             IMDBInfo imdbInfo = dir.getPluginMetaData(IMDBInfo.IMDBINFO);
             if (_field.equalsIgnoreCase("Title")) {
-                return _operator.equals("!") == imdbInfo.getTitle().matches(_value);
+                return _operator.equals("!") == _valuePattern.matcher(imdbInfo.getTitle()).matches();
             } else if (_field.equalsIgnoreCase("Language")) {
-                return _operator.equals("!") == imdbInfo.getLanguage().matches(_value);
+                return _operator.equals("!") == _valuePattern.matcher(imdbInfo.getLanguage()).matches();
             } else if (_field.equalsIgnoreCase("Country")) {
-                return _operator.equals("!") == imdbInfo.getCountry().matches(_value);
+                return _operator.equals("!") == _valuePattern.matcher(imdbInfo.getCountry()).matches();
             } else if (_field.equalsIgnoreCase("Year")) {
                 return !handleDigitComparison(imdbInfo.getYear());
             } else if (_field.equalsIgnoreCase("Director")) {
-                return _operator.equals("!") == imdbInfo.getDirector().matches(_value);
+                return _operator.equals("!") == _valuePattern.matcher(imdbInfo.getDirector()).matches();
             } else if (_field.equalsIgnoreCase("Genres")) {
-                return _operator.equals("!") == imdbInfo.getGenres().matches(_value);
+                return _operator.equals("!") == _valuePattern.matcher(imdbInfo.getGenres()).matches();
             } else if (_field.equalsIgnoreCase("Plot")) {
-                return _operator.equals("!") == imdbInfo.getPlot().matches(_value);
+                return _operator.equals("!") == _valuePattern.matcher(imdbInfo.getPlot()).matches();
             } else if (_field.equalsIgnoreCase("Rating")) {
                 return !handleDigitComparison(imdbInfo.getRating());
             } else if (_field.equalsIgnoreCase("Votes")) {
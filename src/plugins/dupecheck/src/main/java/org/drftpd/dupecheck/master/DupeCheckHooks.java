@@ -160,6 +160,8 @@ public class DupeCheckHooks {
 
             AdvancedSearchParams params = new AdvancedSearchParams();
             params.setExact(realname);
+            // must see uploads the index does not show yet
+            params.setCurrent(true);
 
             IndexEngineInterface ie = GlobalContext.getGlobalContext().getIndexEngine();
             Map<String, String> inodes = ie.advancedFind(GlobalContext.getGlobalContext().getRoot(), params, caller);
@@ -74,7 +74,7 @@ public class MediaInfoPostHook {
         }
     }
 
-    @CommandHook(commands = "doSTOR", priority = 100, type = HookType.POST)
+    @CommandHook(commands = "doSTOR", priority = 100, type = HookType.POST, async = true)
     public void doSTORPostHook(CommandRequest request, CommandResponse response) {
         if (response.getCode() != 226) {
             // STOR Failed, skip
@@ -31,7 +31,6 @@ import org.drftpd.nukefilter.master.event.NukeFilterEvent;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.Timer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -42,6 +41,10 @@ import java.util.regex.Pattern;
 public class NukeFilterPostHook {
     private static final Logger logger = LogManager.getLogger(NukeFilterPostHook.class);
 
+    private static final Pattern YEAR_PATTERN = Pattern.compile("^.+[-.]([0-9]{4})[-.].+$");
+
+    private static final Pattern DECADE_PATTERN = Pattern.compile("^.+[-.]([0-9]{3}x)[-.].+$");
+
     private final NukeFilterSettings _nfs;
 
     public NukeFilterPostHook() {
@@ -63,7 +66,7 @@ public class NukeFilterPostHook {
             return;
         }
         //is directory name exempt?
-        if (isExemptDirectoryName(newDir.getName(), _nfs.getExemptDirectories()))
+        if (_nfs.getExemptDirectoryPatterns().firstMatch(newDir.getName()) != -1)
             return;
 
         //do checks
@@ -77,22 +80,6 @@ public class NukeFilterPostHook {
         }
     }
 
-    /**
-     * Checks if directory name is exempt from NukeFilter checks.
-     *
-     * @param dirName     name of the directory
-     * @param exemptRegex string to match against
-     * @return <b>TRUE</b> if dirName is exempt<br>
-     * <b>FALSE</b> if dirName is NOT an exempt
-     */
-    private boolean isExemptDirectoryName(String dirName, String[] exemptRegex) {
-        for (String anExemptRegex : exemptRegex) {
-            if (Pattern.matches(anExemptRegex, dirName))
-                return true;
-        }
-        return false;
-    }
-
     /**
      * This method performs the global checks.
      *
@@ -110,30 +97,7 @@ public class NukeFilterPostHook {
             if (exempt.getName().equals(section.getName()))
                 return false;
         }
-        if (doFilterStringCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getFilterStringList(), "global"))
-            return true;
-        if (doEnforceStringCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getEnforceStringList(), "global"))
-            return true;
-        if (doFilterRegexCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getFilterRegexList(), "global"))
-            return true;
-        if (doEnforceRegexCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getEnforceRegexList(), "global"))
-            return true;
-        if (doFilterYearCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getFilterYearList(), "global"))
-            return true;
-        if (doEnforceYearCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getEnforceYearList(), "global"))
-            return true;
-        if (doFilterGroupCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getFilterGroupList(), "global"))
-            return true;
-        return doEnforceGroupCheck(dir,
-                _nfs.getNukeFilterGlobalConfig().getEnforceGroupList(), "global");
-
+        return doChecks(dir, _nfs.getNukeFilterGlobalRules(), "global");
     }
 
     /**
@@ -145,522 +109,290 @@ public class NukeFilterPostHook {
      * <b>FALSE</b> if dir passed the checks (doesn't get nuked)
      */
     private boolean doSectionCheck(DirectoryHandle dir, String sectionName) {
-        if (doFilterStringCheck(dir, _nfs.getSectionConfig(sectionName).getFilterStringList(), "section"))
+        return doChecks(dir, _nfs.getSectionRules(sectionName), "section");
+    }
+
+    /**
+     * This method performs all checks of a global or section configuration, in order.
+     *
+     * @param dir   DirectoryHandle to be processed
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
+     * @return <b>TRUE</b> if dir failed the checks (gets nuked)
+     * <b>FALSE</b> if dir passed the checks (doesn't get nuked)
+     */
+    private boolean doChecks(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        if (doFilterStringCheck(dir, rules, type))
             return true;
-        if (doEnforceStringCheck(dir, _nfs.getSectionConfig(sectionName).getEnforceStringList(), "section"))
+        if (doEnforceStringCheck(dir, rules, type))
             return true;
-        if (doFilterRegexCheck(dir, _nfs.getSectionConfig(sectionName).getFilterRegexList(), "section"))
+        if (doFilterRegexCheck(dir, rules, type))
             return true;
-        if (doEnforceRegexCheck(dir, _nfs.getSectionConfig(sectionName).getEnforceRegexList(), "section"))
+        if (doEnforceRegexCheck(dir, rules, type))
             return true;
-        if (doFilterYearCheck(dir, _nfs.getSectionConfig(sectionName).getFilterYearList(), "section"))
+        if (doFilterYearCheck(dir, rules, type))
             return true;
-        if (doEnforceYearCheck(dir, _nfs.getSectionConfig(sectionName).getEnforceYearList(), "section"))
+        if (doEnforceYearCheck(dir, rules, type))
             return true;
-        if (doFilterGroupCheck(dir, _nfs.getSectionConfig(sectionName).getFilterGroupList(), "section"))
+        if (doFilterGroupCheck(dir, rules, type))
             return true;
-        return doEnforceGroupCheck(dir, _nfs.getSectionConfig(sectionName).getEnforceGroupList(), "section");
+        return doEnforceGroupCheck(dir, rules, type);
     }
 
     /**
      * This method checks the filter string settings against the given dir.
      *
-     * @param dir              directory handle to be examined
-     * @param filterStringList list of strings
-     * @param type             global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the filter<br>
      * <b>FALSE</b> if dir passed the filter
      */
-    private boolean doFilterStringCheck(DirectoryHandle dir,
-                                        ArrayList<NukeFilterConfigElement> filterStringList, String type) {
-        for (NukeFilterConfigElement e : filterStringList) {
-            if (dir.getName().toLowerCase().contains(e.getElement().toLowerCase())) {
-                if (type.equals("global")) {
-                    nuke(new NukeFilterNukeItem(dir,
-                            "directory.contains.global.banned.string", e.getElement(),
-                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                            e.getNukex()), "global.filter.string.announce");
-                } else if (type.equals("section")) {
-                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                    nuke(new NukeFilterNukeItem(dir,
-                            "directory.contains.section.banned.string", e.getElement(),
-                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                            e.getNukex()), "section.filter.string.announce");
-                }
-                return true;
-            }
+    private boolean doFilterStringCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        NukeFilterConfigElement e = rules.getFilteredString(dir.getName());
+        if (e == null) {
+            return false;
+        }
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir,
+                    "directory.contains.global.banned.string", e.getElement(),
+                    _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                    e.getNukex()), "global.filter.string.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir,
+                    "directory.contains.section.banned.string", e.getElement(),
+                    _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                    e.getNukex()), "section.filter.string.announce");
         }
-        return false;
+        return true;
     }
 
     /**
      * This method checks the enforce string settings against the given dir.
      *
-     * @param dir               directory handle to be examined
-     * @param enforceStringList list of strings
-     * @param type              global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the enforcement<br>
      * <b>FALSE</b> if dir passed the enforcement
      */
-    private boolean doEnforceStringCheck(DirectoryHandle dir,
-                                         ArrayList<NukeFilterConfigElement> enforceStringList, String type) {
-        for (NukeFilterConfigElement e : enforceStringList) {
-            if (!dir.getName().toLowerCase().contains(e.getElement().toLowerCase())) {
-                if (type.equals("global")) {
-                    nuke(new NukeFilterNukeItem(dir,
-                            "directory.is.missing.global.enforced.string", e.getElement(),
-                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                            e.getNukex()), "global.enforce.string.announce");
-                } else if (type.equals("section")) {
-                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                    nuke(new NukeFilterNukeItem(dir,
-                            "directory.is.missing.section.enforced.string", e.getElement(),
-                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                            e.getNukex()), "section.enforce.string.announce");
-                }
-                return true;
-            }
+    private boolean doEnforceStringCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        NukeFilterConfigElement e = rules.getMissingString(dir.getName());
+        if (e == null) {
+            return false;
+        }
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir,
+                    "directory.is.missing.global.enforced.string", e.getElement(),
+                    _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                    e.getNukex()), "global.enforce.string.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir,
+                    "directory.is.missing.section.enforced.string", e.getElement(),
+                    _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                    e.getNukex()), "section.enforce.string.announce");
         }
-        return false;
+        return true;
     }
 
     /**
      * This method checks the filter regex settings against the given dir.
      *
-     * @param dir             directory handle to be examined
-     * @param filterRegexList list of strings
-     * @param type            global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the filter<br>
      * <b>FALSE</b> if dir passed the filter
      */
-    private boolean doFilterRegexCheck(DirectoryHandle dir,
-                                       ArrayList<NukeFilterConfigElement> filterRegexList, String type) {
-        for (NukeFilterConfigElement e : filterRegexList) {
-            Pattern pattern = Pattern.compile(e.getElement());
-            Matcher matcher = pattern.matcher(dir.getName());
-            if (matcher.matches()) {
-                if (type.equals("global")) {
-                    nuke(new NukeFilterNukeItem(dir,
-                            "global.filter.regex.matched", e.getElement(),
-                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                            e.getNukex()), "global.filter.regex.announce");
-                } else if (type.equals("section")) {
-                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                    nuke(new NukeFilterNukeItem(dir,
-                            "section.filter.regex.matched", e.getElement(),
-                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                            e.getNukex()), "section.filter.regex.announce");
-                }
-                return true;
-            }
+    private boolean doFilterRegexCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        NukeFilterConfigElement e = rules.getFilteredRegex(dir.getName());
+        if (e == null) {
+            return false;
+        }
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir,
+                    "global.filter.regex.matched", e.getElement(),
+                    _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                    e.getNukex()), "global.filter.regex.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir,
+                    "section.filter.regex.matched", e.getElement(),
+                    _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                    e.getNukex()), "section.filter.regex.announce");
         }
-        return false;
+        return true;
     }
 
     /**
      * This method checks the enforce regex settings against the given dir.
      *
-     * @param dir              directory handle to be examined
-     * @param enforceRegexList list of strings
-     * @param type             global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the enforcement<br>
      * <b>FALSE</b> if dir passed the enforcement
      */
-    private boolean doEnforceRegexCheck(DirectoryHandle dir,
-                                        ArrayList<NukeFilterConfigElement> enforceRegexList, String type) {
-        for (NukeFilterConfigElement e : enforceRegexList) {
-            Pattern pattern = Pattern.compile(e.getElement());
-            Matcher matcher = pattern.matcher(dir.getName());
-            if (!matcher.matches()) {
-                if (type.equals("global")) {
-                    nuke(new NukeFilterNukeItem(dir,
-                            "global.enforce.regex.did.not.match", e.getElement(),
-                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                            e.getNukex()), "global.enforce.regex.announce");
-                } else if (type.equals("section")) {
-                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                    nuke(new NukeFilterNukeItem(dir,
-                            "section.enforce.regex.did.not.match", e.getElement(),
-                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                            e.getNukex()), "section.enforce.regex.announce");
-                }
-                return true;
-            }
+    private boolean doEnforceRegexCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        NukeFilterConfigElement e = rules.getMissingRegex(dir.getName());
+        if (e == null) {
+            return false;
+        }
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir,
+                    "global.enforce.regex.did.not.match", e.getElement(),
+                    _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                    e.getNukex()), "global.enforce.regex.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir,
+                    "section.enforce.regex.did.not.match", e.getElement(),
+                    _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                    e.getNukex()), "section.enforce.regex.announce");
         }
-        return false;
+        return true;
     }
 
     /**
      * This method checks the filter year settings against the given dir.
      *
-     * @param dir            directory handle to be examined
-     * @param filterYearList list of strings
-     * @param type           global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the filter<br>
      * <b>FALSE</b> if dir passed the filter
      */
-    private boolean doFilterYearCheck(DirectoryHandle dir,
-                                      ArrayList<NukeFilterConfigElement> filterYearList, String type) {
-        Pattern patternYear = Pattern.compile("^.+[-.]([0-9]{4})[-.].+$");
-        Matcher matcherYear = patternYear.matcher(dir.getName());
+    private boolean doFilterYearCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        NukeFilterConfigElement e = null;
+        Matcher matcherYear = YEAR_PATTERN.matcher(dir.getName());
         if (matcherYear.matches()) {
-            try {
-                int rlsYear = Integer.parseInt(matcherYear.group(1));
-                for (NukeFilterConfigElement e : filterYearList) {
-                    if (e.getElement().contains("-")) {
-                        String[] range = e.getElement().split("-");
-                        if (range.length != 2) {
-                            logger.warn("improper formatted global.filter.year range element given, skipping '{}'", e.getElement());
-                            continue;
-                        }
-                        int start;
-                        int stop;
-                        try {
-                            start = Integer.parseInt(range[0]);
-                            stop = Integer.parseInt(range[1]);
-                        } catch (NumberFormatException er) {
-                            logger.warn("improper formatted global.filter.year element given, skipping '{}'", e.getElement());
-                            continue;
-                        }
-                        if (stop < start) {
-                            int tmp = start;
-                            start = stop;
-                            stop = tmp;
-                        }
-                        if (rlsYear >= start && rlsYear <= stop) {
-                            //within range, nuke that bitch
-                            if (type.equals("global")) {
-                                nuke(new NukeFilterNukeItem(dir,
-                                        "global.banned.year", e.getElement(),
-                                        _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                                        e.getNukex()), "global.filter.year.announce");
-                            } else if (type.equals("section")) {
-                                SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                                nuke(new NukeFilterNukeItem(dir,
-                                        "section.banned.year", e.getElement(),
-                                        _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                                        e.getNukex()), "section.filter.year.announce");
-                            }
-                            return true;
-                        }
-                    } else {
-                        try {
-                            if (rlsYear == Integer.parseInt(e.getElement())) {
-                                //nuke that bitch
-                                if (type.equals("global")) {
-                                    nuke(new NukeFilterNukeItem(dir,
-                                            "global.banned.year", e.getElement(),
-                                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                                            e.getNukex()), "global.filter.year.announce");
-                                } else if (type.equals("section")) {
-                                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                                    nuke(new NukeFilterNukeItem(dir,
-                                            "section.banned.year", e.getElement(),
-                                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                                            e.getNukex()), "section.filter.year.announce");
-                                }
-                                return true;
-                            }
-                        } catch (NumberFormatException er) {
-                            logger.warn("improper formatted global.filter.year element given, skipping '{}'", e.getElement());
-                        }
-                    }
-                }
-            } catch (NumberFormatException e) {
-                logger.warn("could not format the year string extracted from '{}', skipping global.filter.year (\\d\\d\\d\\d) on given release", dir.getName());
-            }
+            e = rules.getFilteredYear(Integer.parseInt(matcherYear.group(1)));
         }
-        Pattern patternYearx = Pattern.compile("^.+[-.]([0-9]{3}x)[-.].+$");
-        Matcher matcherYearx = patternYearx.matcher(dir.getName());
-        if (matcherYearx.matches()) {
-            String rlsYear = matcherYearx.group(1).substring(0, 3);
-            try {
-                Integer.parseInt(rlsYear);
-            } catch (NumberFormatException e) {
-                logger.warn("could not format the year string extracted from '{}', skipping global.filter.year (\\d\\d\\dx) on given release", dir.getName());
-                return false;
-            }
-            for (NukeFilterConfigElement e : filterYearList) {
-                if (e.getElement().contains("-")) {
-                    String[] range = e.getElement().split("-");
-                    if (range.length != 2) {
-                        logger.warn("improper formatted global.filter.year element given, skipping '{}'", e.getElement());
-                        continue;
-                    }
-                    int start;
-                    int stop;
-                    try {
-                        start = Integer.parseInt(range[0]);
-                        stop = Integer.parseInt(range[1]);
-                    } catch (NumberFormatException er) {
-                        logger.warn("improper formatted global.filter.year element given, skipping '{}'", e.getElement());
-                        continue;
-                    }
-                    if (stop < start) {
-                        int tmp = start;
-                        start = stop;
-                        stop = tmp;
-                    }
-                    for (int i = 0; i < 10; i++) {
-                        int year = Integer.parseInt(rlsYear + i);
-                        if (year >= start && year <= stop) {
-                            if (type.equals("global")) {
-                                nuke(new NukeFilterNukeItem(dir,
-                                        "global.banned.year", e.getElement(),
-                                        _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                                        e.getNukex()), "global.filter.year.announce");
-                            } else if (type.equals("section")) {
-                                SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                                nuke(new NukeFilterNukeItem(dir,
-                                        "section.banned.year", e.getElement(),
-                                        _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                                        e.getNukex()), "section.filter.year.announce");
-                            }
-                            return true;
-                        }
-                    }
-                } else {
-                    try {
-                        for (int i = 0; i < 10; i++) {
-                            int year = Integer.parseInt(rlsYear + i);
-                            if (year == Integer.parseInt(e.getElement())) {
-                                if (type.equals("global")) {
-                                    nuke(new NukeFilterNukeItem(dir,
-                                            "global.banned.year", e.getElement(),
-                                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                                            e.getNukex()), "global.filter.year.announce");
-                                } else if (type.equals("section")) {
-                                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                                    nuke(new NukeFilterNukeItem(dir,
-                                            "section.banned.year", e.getElement(),
-                                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                                            e.getNukex()), "section.filter.year.announce");
-                                }
-                                return true;
-                            }
-                        }
-                    } catch (NumberFormatException er) {
-                        logger.warn("improper formatted global.filter.year element given, skipping '{}'", e.getElement());
-                    }
-                }
+        if (e == null) {
+            Matcher matcherYearx = DECADE_PATTERN.matcher(dir.getName());
+            if (matcherYearx.matches()) {
+                e = rules.getFilteredDecade(Integer.parseInt(matcherYearx.group(1).substring(0, 3)));
             }
         }
-        return false;
+        if (e == null) {
+            return false;
+        }
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir,
+                    "global.banned.year", e.getElement(),
+                    _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                    e.getNukex()), "global.filter.year.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir,
+                    "section.banned.year", e.getElement(),
+                    _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                    e.getNukex()), "section.filter.year.announce");
+        }
+        return true;
     }
 
     /**
      * This method checks the enforce year settings against the given dir.
      *
-     * @param dir             directory handle to be examined
-     * @param enforceYearList list of strings
-     * @param type            global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the enforcement<br>
      * <b>FALSE</b> if dir passed the enforcement
      */
-    private boolean doEnforceYearCheck(DirectoryHandle dir,
-                                       ArrayList<NukeFilterConfigElement> enforceYearList, String type) {
-        if (enforceYearList.isEmpty()) return false;
+    private boolean doEnforceYearCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        if (!rules.hasEnforceYears()) return false;
         boolean nuke = true;
-        Pattern patternYear = Pattern.compile("^.+[-.]([0-9]{4})[-.].+$");
-        Matcher matcherYear = patternYear.matcher(dir.getName());
+        Matcher matcherYear = YEAR_PATTERN.matcher(dir.getName());
         if (matcherYear.matches()) {
-            try {
-                int rlsYear = Integer.parseInt(matcherYear.group(1));
-                Iterator<NukeFilterConfigElement> fyIter = enforceYearList.iterator();
-                while (fyIter.hasNext() && nuke) {
-                    NukeFilterConfigElement e = fyIter.next();
-                    if (e.getElement().contains("-")) {
-                        String[] range = e.getElement().split("-");
-                        if (range.length != 2) {
-                            logger.warn("improper formatted global.enforce.year/section.enforce.year range element given, skipping '{}'", e.getElement());
-                            continue;
-                        }
-                        int start;
-                        int stop;
-                        try {
-                            start = Integer.parseInt(range[0]);
-                            stop = Integer.parseInt(range[1]);
-                        } catch (NumberFormatException er) {
-                            logger.warn("improper formatted global.enforce.year/section.enforce.year element given, skipping '{}'", e.getElement());
-                            continue;
-                        }
-                        if (stop < start) {
-                            int tmp = start;
-                            start = stop;
-                            stop = tmp;
-                        }
-                        if (rlsYear >= start && rlsYear <= stop) {
-                            nuke = false;
-                            break;
-                        }
-                    } else {
-                        try {
-                            if (rlsYear == Integer.parseInt(e.getElement())) {
-                                nuke = false;
-                                break;
-                            }
-                        } catch (NumberFormatException er) {
-                            logger.warn("improper formatted global.enforce.year/section.enforce.year element given, skipping '{}'", e.getElement());
-                        }
-                    }
-                }
-                if (nuke) {
-                    if (type.equals("global")) {
-                        nuke(new NukeFilterNukeItem(dir, "failing.enforced.year.list", matcherYear.group(1),
-                                        _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                                        _nfs.getNukeFilterGlobalConfig().getEnforceYearNukex()),
-                                "global.enforce.year.announce");
-                    } else if (type.equals("section")) {
-                        SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                        nuke(new NukeFilterNukeItem(dir, "failing.enforced.year.list", matcherYear.group(1),
-                                        _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                                        _nfs.getSectionConfig(section.getName()).getEnforceYearNukex()),
-                                "section.enforce.year.announce");
-                    }
-                }
-            } catch (NumberFormatException e) {
-                logger.warn("could not format the year string extracted from '{}', skipping global.enforce.year/section.enforce.year (\\d\\d\\d\\d) on given release", dir.getName());
-                return false;
+            nuke = !rules.isEnforcedYear(Integer.parseInt(matcherYear.group(1)));
+            if (nuke) {
+                nukeEnforcedYear(dir, matcherYear.group(1), type);
             }
         }
-        Pattern patternYearx = Pattern.compile("^.+[-.]([0-9]{3}x)[-.].+$");
-        Matcher matcherYearx = patternYearx.matcher(dir.getName());
-        if (matcherYearx.matches()) {
-            String rlsYear = matcherYearx.group(1).substring(0, 3);
-            try {
-                Integer.parseInt(rlsYear);
-            } catch (NumberFormatException e) {
-                logger.warn("could not format the year string extracted from '{}', skipping global.enforce.year/section.enforce.year (\\d\\d\\dx) on given release", dir.getName());
-                return false;
-            }
-            Iterator<NukeFilterConfigElement> fyIter = enforceYearList.iterator();
-            while (fyIter.hasNext() && nuke) {
-                NukeFilterConfigElement e = fyIter.next();
-                if (e.getElement().contains("-")) {
-                    String[] range = e.getElement().split("-");
-                    if (range.length != 2) {
-                        logger.warn("improper formatted global.enforce.year/section.enforce.year element given, skipping '{}'", e.getElement());
-                        continue;
-                    }
-                    int start;
-                    int stop;
-                    try {
-                        start = Integer.parseInt(range[0]);
-                        stop = Integer.parseInt(range[1]);
-                    } catch (NumberFormatException er) {
-                        logger.warn("improper formatted global.enforce.year/section.enforce.year element given, skipping '{}'", e.getElement());
-                        continue;
-                    }
-                    if (stop < start) {
-                        int tmp = start;
-                        start = stop;
-                        stop = tmp;
-                    }
-                    for (int i = 0; i < 10; i++) {
-                        int year = Integer.parseInt(rlsYear + i);
-                        if (year >= start && year <= stop) {
-                            nuke = false;
-                            break;
-                        }
-                    }
-                } else {
-                    try {
-                        for (int i = 0; i < 10; i++) {
-                            int year = Integer.parseInt(rlsYear + i);
-                            if (year == Integer.parseInt(e.getElement())) {
-                                nuke = false;
-                                break;
-                            }
-                        }
-                    } catch (NumberFormatException er) {
-                        logger.warn("improper formatted global.enforce.year/section.enforce.year element given, skipping '{}'", e.getElement());
-                    }
-                }
-            }
+        Matcher matcherYearx = DECADE_PATTERN.matcher(dir.getName());
+        if (matcherYearx.matches() && nuke) {
+            nuke = !rules.isEnforcedDecade(Integer.parseInt(matcherYearx.group(1).substring(0, 3)));
             if (nuke) {
-                if (type.equals("global")) {
-                    nuke(new NukeFilterNukeItem(dir, "failing.enforced.year.list", matcherYearx.group(1),
-                                    _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                                    _nfs.getNukeFilterGlobalConfig().getEnforceYearNukex()),
-                            "global.enforce.year.announce");
-                } else if (type.equals("section")) {
-                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                    nuke(new NukeFilterNukeItem(dir, "failing.enforced.year.list", matcherYearx.group(1),
-                                    _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                                    _nfs.getSectionConfig(section.getName()).getEnforceYearNukex()),
-                            "section.enforce.year.announce");
-                }
+                nukeEnforcedYear(dir, matcherYearx.group(1), type);
             }
         }
         return nuke;
     }
 
+    private void nukeEnforcedYear(DirectoryHandle dir, String year, String type) {
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir, "failing.enforced.year.list", year,
+                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                            _nfs.getNukeFilterGlobalConfig().getEnforceYearNukex()),
+                    "global.enforce.year.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir, "failing.enforced.year.list", year,
+                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                            _nfs.getSectionConfig(section.getName()).getEnforceYearNukex()),
+                    "section.enforce.year.announce");
+        }
+    }
+
     /**
      * This method checks the filter group settings against the given dir.
      *
-     * @param dir             directory handle to be examined
-     * @param filterGroupList list of strings
-     * @param type            global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the filter<br>
      * <b>FALSE</b> if dir passed the filter
      */
-    private boolean doFilterGroupCheck(DirectoryHandle dir,
-                                       ArrayList<NukeFilterConfigElement> filterGroupList, String type) {
-        for (NukeFilterConfigElement e : filterGroupList) {
-            if (dir.getName().toLowerCase().endsWith("-" + e.getElement().toLowerCase())) {
-                if (type.equals("global")) {
-                    nuke(new NukeFilterNukeItem(dir, "global.banned.group", e.getElement(),
-                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                            e.getNukex()), "global.filter.group.announce");
-                } else if (type.equals("section")) {
-                    SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                    nuke(new NukeFilterNukeItem(dir,
-                            "section.banned.group", e.getElement(),
-                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                            e.getNukex()), "section.filter.group.announce");
-                }
-                return true;
-            }
+    private boolean doFilterGroupCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        NukeFilterConfigElement e = rules.getFilteredGroup(dir.getName());
+        if (e == null) {
+            return false;
         }
-        return false;
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir, "global.banned.group", e.getElement(),
+                    _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                    e.getNukex()), "global.filter.group.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir,
+                    "section.banned.group", e.getElement(),
+                    _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                    e.getNukex()), "section.filter.group.announce");
+        }
+        return true;
     }
 
     /**
      * This method checks the enforce group settings against the given dir.
      *
-     * @param dir              directory handle to be examined
-     * @param enforceGroupList list of strings
-     * @param type             global or section specific?
+     * @param dir   directory handle to be examined
+     * @param rules compiled elements of the configuration
+     * @param type  global or section specific?
      * @return <b>TRUE</b> if dir did not pass the enforcement<br>
      * <b>FALSE</b> if dir passed the enforcement
      */
-    private boolean doEnforceGroupCheck(DirectoryHandle dir,
-                                        ArrayList<NukeFilterConfigElement> enforceGroupList, String type) {
-        if (enforceGroupList.isEmpty()) return false;
-        boolean nuke = true;
+    private boolean doEnforceGroupCheck(DirectoryHandle dir, NukeFilterRules rules, String type) {
+        if (!rules.hasEnforceGroups()) return false;
+        if (rules.isEnforcedGroup(dir.getName())) return false;
         String grp = dir.getName();
         grp = grp.substring(grp.lastIndexOf('-') + 1);
-        for (NukeFilterConfigElement e : enforceGroupList) {
-            if (dir.getName().toLowerCase().endsWith("-" + e.getElement().toLowerCase())) {
-                nuke = false;
-                break;
-            }
-        }
-        if (nuke) {
-            if (type.equals("global")) {
-                nuke(new NukeFilterNukeItem(dir, "failing.enforced.group.list", grp,
-                                _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
-                                _nfs.getNukeFilterGlobalConfig().getEnforceGroupNukex()),
-                        "global.enforce.group.announce");
-            } else if (type.equals("section")) {
-                SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
-                nuke(new NukeFilterNukeItem(dir, "failing.enforced.group.list", grp,
-                                _nfs.getSectionConfig(section.getName()).getNukeDelay(),
-                                _nfs.getSectionConfig(section.getName()).getEnforceGroupNukex()),
-                        "section.enforce.group.announce");
-            }
+        if (type.equals("global")) {
+            nuke(new NukeFilterNukeItem(dir, "failing.enforced.group.list", grp,
+                            _nfs.getNukeFilterGlobalConfig().getNukeDelay(),
+                            _nfs.getNukeFilterGlobalConfig().getEnforceGroupNukex()),
+                    "global.enforce.group.announce");
+        } else if (type.equals("section")) {
+            SectionInterface section = GlobalContext.getGlobalContext().getSectionManager().lookup(dir);
+            nuke(new NukeFilterNukeItem(dir, "failing.enforced.group.list", grp,
+                            _nfs.getSectionConfig(section.getName()).getNukeDelay(),
+                            _nfs.getSectionConfig(section.getName()).getEnforceGroupNukex()),
+                    "section.enforce.group.announce");
         }
-        return nuke;
+        return true;
     }
 
     /**
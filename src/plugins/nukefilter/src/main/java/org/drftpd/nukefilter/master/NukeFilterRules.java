@@ -0,0 +1,266 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.nukefilter.master;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.util.PatternSet;
+import org.drftpd.common.util.SubstringSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The elements of a global or section configuration, compiled once when the configuration is loaded.
+ *
+ * Each type of check looks at a directory name once however many elements it has: strings are
+ * matched by a single automaton, regexes by a combined pattern, groups by a lookup of the name
+ * suffixes and years by a table of all years.
+ * Where several elements apply the first one in the configuration is returned, like checking them in order.
+ */
+public class NukeFilterRules {
+    private static final Logger logger = LogManager.getLogger(NukeFilterRules.class);
+
+    private static final int YEARS = 10000;
+
+    private final List<NukeFilterConfigElement> _filterString;
+    private final SubstringSet _filterStrings;
+    private final List<NukeFilterConfigElement> _enforceString;
+    private final SubstringSet _enforceStrings;
+    private final List<NukeFilterConfigElement> _filterRegex = new ArrayList<>();
+    private final PatternSet _filterRegexes;
+    private final List<NukeFilterConfigElement> _enforceRegex = new ArrayList<>();
+    private final PatternSet _enforceRegexes;
+    private final List<NukeFilterConfigElement> _filterYear;
+    // year -> index of the first filter year element containing it, -1 for none
+    private final int[] _filterYears;
+    // years allowed by the enforce year elements
+    private final boolean[] _enforceYears;
+    private final List<NukeFilterConfigElement> _filterGroup;
+    // lower case group -> index of the first filter group element
+    private final HashMap<String, Integer> _filterGroups = new HashMap<>();
+    private final HashMap<String, Integer> _enforceGroups = new HashMap<>();
+
+    /**
+     * @param prefix Prefix of the configuration keys, used when logging broken elements
+     */
+    public NukeFilterRules(NukeFilterConfigInterface config, String prefix) {
+        _filterString = config.getFilterStringList();
+        _filterStrings = new SubstringSet(getElements(_filterString));
+        _enforceString = config.getEnforceStringList();
+        _enforceStrings = new SubstringSet(getElements(_enforceString));
+        _filterRegexes = compile(config.getFilterRegexList(), _filterRegex, prefix + "filter.regex");
+        _enforceRegexes = compile(config.getEnforceRegexList(), _enforceRegex, prefix + "enforce.regex");
+        _filterYear = config.getFilterYearList();
+        _filterYears = new int[_filterYear.isEmpty() ? 0 : YEARS];
+        Arrays.fill(_filterYears, -1);
+        for (int i = _filterYear.size() - 1; i >= 0; i--) {
+            int[] range = parseYears(_filterYear.get(i), prefix + "filter.year");
+            if (range != null) {
+                Arrays.fill(_filterYears, range[0], range[1] + 1, i);
+            }
+        }
+        _enforceYears = new boolean[config.getEnforceYearList().isEmpty() ? 0 : YEARS];
+        for (NukeFilterConfigElement e : config.getEnforceYearList()) {
+            int[] range = parseYears(e, prefix + "enforce.year");
+            if (range != null) {
+                Arrays.fill(_enforceYears, range[0], range[1] + 1, true);
+            }
+        }
+        _filterGroup = config.getFilterGroupList();
+        for (int i = 0; i < _filterGroup.size(); i++) {
+            _filterGroups.putIfAbsent(_filterGroup.get(i).getElement().toLowerCase(), i);
+        }
+        List<NukeFilterConfigElement> enforceGroup = config.getEnforceGroupList();
+        for (int i = 0; i < enforceGroup.size(); i++) {
+            _enforceGroups.putIfAbsent(enforceGroup.get(i).getElement().toLowerCase(), i);
+        }
+    }
+
+    private static List<String> getElements(List<NukeFilterConfigElement> elements) {
+        ArrayList<String> strings = new ArrayList<>(elements.size());
+        for (NukeFilterConfigElement e : elements) {
+            strings.add(e.getElement());
+        }
+        return strings;
+    }
+
+    private static PatternSet compile(List<NukeFilterConfigElement> elements,
+                                      List<NukeFilterConfigElement> compiled, String key) {
+        ArrayList<Pattern> patterns = new ArrayList<>(elements.size());
+        for (NukeFilterConfigElement e : elements) {
+            try {
+                patterns.add(Pattern.compile(e.getElement()));
+                compiled.add(e);
+            } catch (PatternSyntaxException er) {
+                logger.warn("improper formatted {} element given, skipping '{}'", key, e.getElement());
+            }
+        }
+        return new PatternSet(patterns);
+    }
+
+    /**
+     * @return The first and last year of the element, null if it is not a year or a range of years
+     */
+    private static int[] parseYears(NukeFilterConfigElement e, String key) {
+        try {
+            int start;
+            int stop;
+            if (e.getElement().contains("-")) {
+                String[] range = e.getElement().split("-");
+                if (range.length != 2) {
+                    logger.warn("improper formatted {} range element given, skipping '{}'", key, e.getElement());
+                    return null;
+                }
+                start = Integer.parseInt(range[0]);
+                stop = Integer.parseInt(range[1]);
+            } else {
+                start = stop = Integer.parseInt(e.getElement());
+            }
+            if (stop < start) {
+                int tmp = start;
+                start = stop;
+                stop = tmp;
+            }
+            // release names only have four digit years
+            start = Math.max(start, 0);
+            stop = Math.min(stop, YEARS - 1);
+            return start <= stop ? new int[]{start, stop} : null;
+        } catch (NumberFormatException er) {
+            logger.warn("improper formatted {} element given, skipping '{}'", key, e.getElement());
+            return null;
+        }
+    }
+
+    private static NukeFilterConfigElement get(List<NukeFilterConfigElement> elements, int index) {
+        return index == -1 ? null : elements.get(index);
+    }
+
+    public boolean hasEnforceYears() {
+        return _enforceYears.length > 0;
+    }
+
+    public boolean hasEnforceGroups() {
+        return !_enforceGroups.isEmpty();
+    }
+
+    /**
+     * @return The first filter string contained in name, null if none is
+     */
+    public NukeFilterConfigElement getFilteredString(String name) {
+        return get(_filterString, _filterStrings.firstContained(name));
+    }
+
+    /**
+     * @return The first enforce string not contained in name, null if all are
+     */
+    public NukeFilterConfigElement getMissingString(String name) {
+        return get(_enforceString, _enforceStrings.firstMissing(name));
+    }
+
+    /**
+     * @return The first filter regex matching name, null if none does
+     */
+    public NukeFilterConfigElement getFilteredRegex(String name) {
+        return get(_filterRegex, _filterRegexes.firstMatch(name));
+    }
+
+    /**
+     * @return The first enforce regex not matching name, null if all do
+     */
+    public NukeFilterConfigElement getMissingRegex(String name) {
+        return get(_enforceRegex, _enforceRegexes.firstMismatch(name));
+    }
+
+    /**
+     * @return The first filter year element containing year, null if none does
+     */
+    public NukeFilterConfigElement getFilteredYear(int year) {
+        if (year < 0 || year >= _filterYears.length) {
+            return null;
+        }
+        return get(_filterYear, _filterYears[year]);
+    }
+
+    /**
+     * @param decade The first three digits of the years
+     * @return The first filter year element containing a year of the decade, null if none does
+     */
+    public NukeFilterConfigElement getFilteredDecade(int decade) {
+        int first = -1;
+        for (int year = decade * 10; year < decade * 10 + 10 && year < _filterYears.length; year++) {
+            int index = _filterYears[year];
+            if (index != -1 && (first == -1 || index < first)) {
+                first = index;
+            }
+        }
+        return get(_filterYear, first);
+    }
+
+    public boolean isEnforcedYear(int year) {
+        return year >= 0 && year < _enforceYears.length && _enforceYears[year];
+    }
+
+    /**
+     * @param decade The first three digits of the years
+     */
+    public boolean isEnforcedDecade(int decade) {
+        for (int year = decade * 10; year < decade * 10 + 10; year++) {
+            if (isEnforcedYear(year)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The first filter group element name ends with, null if there is none
+     */
+    public NukeFilterConfigElement getFilteredGroup(String name) {
+        return get(_filterGroup, findGroup(_filterGroups, name));
+    }
+
+    /**
+     * @return Whether name ends with one of the enforce groups
+     */
+    public boolean isEnforcedGroup(String name) {
+        return findGroup(_enforceGroups, name) != -1;
+    }
+
+    /**
+     * Looks up everything following a '-' in name, which is how a name ending with "-group" is found
+     */
+    private static int findGroup(HashMap<String, Integer> groups, String name) {
+        if (groups.isEmpty()) {
+            return -1;
+        }
+        String lower = name.toLowerCase();
+        int first = -1;
+        for (int dash = lower.indexOf('-'); dash != -1; dash = lower.indexOf('-', dash + 1)) {
+            Integer index = groups.get(lower.substring(dash + 1));
+            if (index != null && (first == -1 || index < first)) {
+                first = index;
+            }
+        }
+        return first;
+    }
+}
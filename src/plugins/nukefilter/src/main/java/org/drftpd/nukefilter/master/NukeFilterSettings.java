@@ -20,10 +20,14 @@ package org.drftpd.nukefilter.master;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.drftpd.common.util.ConfigLoader;
+import org.drftpd.common.util.PatternSet;
 import org.drftpd.common.util.PropertyHelper;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * @author phew
@@ -34,6 +38,9 @@ public class NukeFilterSettings {
     private NukeFilterGlobalConfig nfgc;
     private HashMap<String, NukeFilterSectionConfig> nfscMap;
     private NukeFilterNukeConfig nfnc;
+    private NukeFilterRules nfgr;
+    private HashMap<String, NukeFilterRules> nfsrMap;
+    private PatternSet exemptDirectories;
 
     /*
      * The part reading the configuration files from nukefilter.conf
@@ -46,6 +53,9 @@ public class NukeFilterSettings {
         nfgc = new NukeFilterGlobalConfig();
         nfscMap = new HashMap<>();
         nfnc = new NukeFilterNukeConfig();
+        nfgr = new NukeFilterRules(nfgc, "global.");
+        nfsrMap = new HashMap<>();
+        exemptDirectories = new PatternSet(new ArrayList<>());
     }
 
     /**
@@ -56,6 +66,9 @@ public class NukeFilterSettings {
         nfgc = new NukeFilterGlobalConfig();
         nfscMap = new HashMap<>();
         nfnc = new NukeFilterNukeConfig();
+        nfgr = new NukeFilterRules(nfgc, "global.");
+        nfsrMap = new HashMap<>();
+        exemptDirectories = new PatternSet(new ArrayList<>());
         //grab config file
         Properties props = ConfigLoader.loadPluginConfig("nukefilter.conf");
         if (props == null) {
@@ -464,7 +477,19 @@ public class NukeFilterSettings {
             }
             //save section configuration to nfscMap
             nfscMap.put(sectionName.trim(), nfsc);
+            nfsrMap.put(sectionName.trim(), new NukeFilterRules(nfsc, i + "."));
         }
+        //compile the global rules and exempt patterns once, they are checked on every MKD
+        nfgr = new NukeFilterRules(nfgc, "global.");
+        ArrayList<Pattern> exemptPatterns = new ArrayList<>();
+        for (String exempt : nfnc.getExemptsArray()) {
+            try {
+                exemptPatterns.add(Pattern.compile(exempt));
+            } catch (PatternSyntaxException e) {
+                logger.warn("improper formatted nuke.exempt.dirnames.regex given, skipping one element: '{}'", exempt);
+            }
+        }
+        exemptDirectories = new PatternSet(exemptPatterns);
     }
 
     public NukeFilterGlobalConfig getNukeFilterGlobalConfig() {
@@ -475,6 +500,14 @@ public class NukeFilterSettings {
         return nfscMap.get(section);
     }
 
+    public NukeFilterRules getNukeFilterGlobalRules() {
+        return nfgr;
+    }
+
+    public NukeFilterRules getSectionRules(String section) {
+        return nfsrMap.get(section);
+    }
+
     public boolean hasSectionSpecificConfig(String section) {
         return nfscMap.get(section) != null;
     }
@@ -487,4 +520,8 @@ public class NukeFilterSettings {
         return nfnc.getExemptsArray();
     }
 
+    public PatternSet getExemptDirectoryPatterns() {
+        return exemptDirectories;
+    }
+
 }
@@ -20,6 +20,7 @@ package org.drftpd.master.sitebot.config;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.drftpd.common.util.ConfigLoader;
+import org.drftpd.common.util.PatternSet;
 import org.drftpd.master.sitebot.AnnounceWriter;
 import org.drftpd.master.sitebot.NullOutputWriter;
 import org.drftpd.master.sitebot.OutputWriter;
@@ -31,6 +32,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 /**
@@ -40,7 +42,7 @@ import java.util.regex.PatternSyntaxException;
 public class AnnounceConfig {
 
     private static final Logger logger = LogManager.getLogger(AnnounceConfig.class);
-    private HashMap<String, ArrayList<AnnounceWriter>> _pathWriters = new HashMap<>();
+    private HashMap<String, PathWriters> _pathWriters = new HashMap<>();
     private HashMap<String, ArrayList<AnnounceWriter>> _sectionWriters = new HashMap<>();
     private HashMap<String, AnnounceWriter> _simpleWriters = new HashMap<>();
     private final ArrayList<String> _eventTypes;
@@ -57,12 +59,13 @@ public class AnnounceConfig {
 
     private synchronized void loadConfig(Properties cfg) {
         ArrayList<String> clonedEvents = new ArrayList<>(_eventTypes);
-        HashMap<String, ArrayList<AnnounceWriter>> pathWriters = new HashMap<>();
+        HashMap<String, PathWriters> pathWriters = new HashMap<>();
         HashMap<String, ArrayList<AnnounceWriter>> sectionWriters = new HashMap<>();
         HashMap<String, AnnounceWriter> simpleWriters = new HashMap<>();
         for (String type : clonedEvents) {
             // First check for any path settings for this type
             ArrayList<AnnounceWriter> pWriters = new ArrayList<>();
+            ArrayList<Pattern> pPatterns = new ArrayList<>();
             for (int i = 1; ; i++) {
                 String pathPattern = cfg.getProperty(type + ".path." + i);
                 if (pathPattern == null) {
@@ -86,9 +89,10 @@ public class AnnounceConfig {
                     continue;
                 }
                 pWriters.add(new AnnounceWriter(matcher, writers, displayName));
+                pPatterns.add(matcher.getPattern());
             }
             if (pWriters.size() > 0) {
-                pathWriters.put(type, pWriters);
+                pathWriters.put(type, new PathWriters(pWriters, new PatternSet(pPatterns)));
             }
 
             // Next check for any section settings for this type
@@ -159,14 +163,11 @@ public class AnnounceConfig {
 
     public AnnounceWriter getPathWriter(String type, InodeHandle path) {
         ArrayList<AnnounceWriter> aWriters;
+        String matchPath = PathMatcher.getMatchPath(path);
         // First check path filters for this type
-        aWriters = _pathWriters.get(type);
-        if (aWriters != null) {
-            for (AnnounceWriter writer : aWriters) {
-                if (writer.pathMatches(path)) {
-                    return writer;
-                }
-            }
+        AnnounceWriter pathWriter = getPathWriter(type, matchPath);
+        if (pathWriter != null) {
+            return pathWriter;
         }
         // Check section filters for this type
         aWriters = _sectionWriters.get(type);
@@ -178,13 +179,9 @@ public class AnnounceConfig {
             }
         }
         // Check path filters for default type
-        aWriters = _pathWriters.get("default");
-        if (aWriters != null) {
-            for (AnnounceWriter writer : aWriters) {
-                if (writer.pathMatches(path)) {
-                    return writer;
-                }
-            }
+        pathWriter = getPathWriter("default", matchPath);
+        if (pathWriter != null) {
+            return pathWriter;
         }
         // Check section filters for default type
         aWriters = _sectionWriters.get("default");
@@ -200,6 +197,15 @@ public class AnnounceConfig {
         return null;
     }
 
+    private AnnounceWriter getPathWriter(String type, String matchPath) {
+        PathWriters pathWriters = _pathWriters.get(type);
+        if (pathWriters == null) {
+            return null;
+        }
+        int index = pathWriters._patterns.firstMatch(matchPath);
+        return index == -1 ? null : pathWriters._writers.get(index);
+    }
+
     public void reload() {
         Properties cfg = ConfigLoader.loadPluginConfig(_confDir + "irc.announce.conf");
         loadConfig(cfg);
@@ -208,4 +214,18 @@ public class AnnounceConfig {
     public SiteBot getBot() {
         return _bot;
     }
+
+    /**
+     * The path writers of a type, with their patterns combined to find the first matching writer in a single pass
+     */
+    private static class PathWriters {
+        private final ArrayList<AnnounceWriter> _writers;
+
+        private final PatternSet _patterns;
+
+        private PathWriters(ArrayList<AnnounceWriter> writers, PatternSet patterns) {
+            _writers = writers;
+            _patterns = patterns;
+        }
+    }
 }
@@ -49,15 +49,21 @@ public class PathMatcher {
     }
 
     public boolean checkPath(InodeHandle inode) {
-        String path = inode.isDirectory() ? inode.getPath() + "/" : inode.getPath();
+        return getPattern().matcher(getMatchPath(inode)).matches();
+    }
 
-        if (_regex) {
-            Matcher m = _regexPat.matcher(path);
-            return m.matches();
-        } else {
-            Matcher m = _globPat.matcher(path);
-            return m.matches();
-        }
+    /**
+     * @return The compiled pattern, matched against the path returned by {@link #getMatchPath(InodeHandle)}
+     */
+    public Pattern getPattern() {
+        return _regex ? _regexPat : _globPat;
+    }
+
+    /**
+     * @return The path patterns are matched against, paths of directories end with a '/'
+     */
+    public static String getMatchPath(InodeHandle inode) {
+        return inode.isDirectory() ? inode.getPath() + "/" : inode.getPath();
     }
 
     public String getPathSuffix() {
@@ -28,6 +28,7 @@ import org.drftpd.master.sitebot.plugins.sysop.event.SysopEvent;
 
 public class SysopPostHook {
 
+    // Synchronous, the user of a PASS is read from the session which may have moved on after the reply
     @CommandHook(commands = {"doPASS", "doIDNT", "doUSER"}, type = HookType.POST)
     public void doLOGINPostHook(CommandRequest request, CommandResponse response) {
         String user;
@@ -65,7 +66,7 @@ public class SysopPostHook {
             "doSITE_CHPASS", "doSITE_DELIP", "doSITE_DELUSER", "doSITE_GADDUSER", "doSITE_GIVE", "doSITE_GRPREN",
             "doSITE_KICK", "doSITE_PASSWD", "doSITE_PURGE", "doSITE_READD", "doSITE_RENUSER", "doSITE_TAGLINE",
             "doSITE_TAKE", "doSITE_UNBAN", "doSITE_CHANGEGROUP", "doSITE_ADDGROUP", "doSITE_DELGROUP",
-            "doSITE_CHANGEGROUPADMIN",}, type = HookType.POST)
+            "doSITE_CHANGEGROUPADMIN",}, type = HookType.POST, async = true)
     public void doSITEPostHook(CommandRequest request, CommandResponse response) {
         String cmd = request.getCommand().toUpperCase();
         if (cmd.startsWith("SITE ")) {
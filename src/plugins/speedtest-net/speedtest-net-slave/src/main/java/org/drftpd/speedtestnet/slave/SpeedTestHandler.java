@@ -45,6 +45,8 @@ import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
 import org.drftpd.common.util.ConfigLoader;
 import org.drftpd.slave.protocol.AbstractHandler;
+import org.drftpd.slave.protocol.HandlerExecution;
+import org.drftpd.slave.protocol.HandlerPoolType;
 import org.drftpd.slave.protocol.SlaveProtocolCentral;
 import org.drftpd.speedtestnet.common.AsyncResponseSpeedTestInfo;
 import org.drftpd.speedtestnet.common.SpeedTestInfo;
@@ -128,6 +130,7 @@ public class SpeedTestHandler extends AbstractHandler {
         }
     }
 
+    @HandlerExecution(HandlerPoolType.TRANSFER)
     public AsyncResponse handleSpeedTest(AsyncCommandArgument ac) {
         return new AsyncResponseSpeedTestInfo(ac.getIndex(), doSpeedTest(ac.getArgs()));
     }
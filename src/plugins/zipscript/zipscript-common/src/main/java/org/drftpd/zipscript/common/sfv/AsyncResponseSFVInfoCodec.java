@@ -0,0 +1,67 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.zipscript.common.sfv;
+
+import org.drftpd.common.protocol.MessageCodec;
+import org.drftpd.common.vfs.CaseInsensitiveTreeMap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * @version $Id$
+ */
+public class AsyncResponseSFVInfoCodec extends MessageCodec<AsyncResponseSFVInfo> {
+
+    public Class<AsyncResponseSFVInfo> getMessageClass() {
+        return AsyncResponseSFVInfo.class;
+    }
+
+    public void encode(AsyncResponseSFVInfo message, DataOutputStream out) throws IOException {
+        SFVInfo sfv = message.getSFV();
+        writeString(out, message.getIndex());
+        writeString(out, sfv.getSFVFileName());
+        out.writeLong(sfv.getChecksum());
+        CaseInsensitiveTreeMap<String, Long> entries = sfv.getEntries();
+        out.writeInt(entries == null ? -1 : entries.size());
+        if (entries != null) {
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+    }
+
+    public AsyncResponseSFVInfo decode(DataInputStream in) throws IOException {
+        String index = readString(in);
+        SFVInfo sfv = new SFVInfo();
+        sfv.setSFVFileName(readString(in));
+        sfv.setChecksum(in.readLong());
+        int count = in.readInt();
+        if (count != -1) {
+            CaseInsensitiveTreeMap<String, Long> entries = new CaseInsensitiveTreeMap<>();
+            for (int i = 0; i < count; i++) {
+                entries.put(readString(in), in.readLong());
+            }
+            sfv.setEntries(entries);
+        }
+        return new AsyncResponseSFVInfo(index, sfv);
+    }
+}